@@ -142,39 +142,34 @@ public class AccountabilityBuddyActivity extends BaseActivity {
                 null,
                 null
         );
+        
+        // Try to get column indexes safely, once for the whole cursor
+        int idColIndex = cursor.getColumnIndex("_id");
+        if (idColIndex == -1) {
+            idColIndex = cursor.getColumnIndex("id"); // Try alternative column name
+        }
+        int nameColIndex = cursor.getColumnIndex("name");
+        int phoneColIndex = cursor.getColumnIndex("phone");
+        int enabledColIndex = cursor.getColumnIndex("enabled");
+        int notifyCheckinColIndex = cursor.getColumnIndex("notify_on_checkin");
+        int notifyRelapseColIndex = cursor.getColumnIndex("notify_on_relapse");
+        int notifyMilestoneColIndex = cursor.getColumnIndex("notify_on_milestone");
     
         if (cursor.moveToFirst()) {
             do {
                 AccountabilityBuddy buddy = new AccountabilityBuddy();
                 
-                // Try to get column indexes safely
-                int idColIndex = cursor.getColumnIndex("_id");
-                if (idColIndex == -1) {
-                    idColIndex = cursor.getColumnIndex("id"); // Try alternative column name
-                }
-                
                 // Only set ID if we found a valid column
                 if (idColIndex != -1) {
                     buddy.setId(cursor.getLong(idColIndex));
                 }
                 
                 // Safely get other columns with fallback defaults
-                int nameColIndex = cursor.getColumnIndex("name");
                 buddy.setName(nameColIndex != -1 ? cursor.getString(nameColIndex) : "Unknown");
-                
-                int phoneColIndex = cursor.getColumnIndex("phone");
                 buddy.setPhone(phoneColIndex != -1 ? cursor.getString(phoneColIndex) : "");
-                
-                int enabledColIndex = cursor.getColumnIndex("enabled");
                 buddy.setEnabled(enabledColIndex != -1 && cursor.getInt(enabledColIndex) == 1);
-                
-                int notifyCheckinColIndex = cursor.getColumnIndex("notify_on_checkin");
                 buddy.setNotifyOnCheckin(notifyCheckinColIndex != -1 && cursor.getInt(notifyCheckinColIndex) == 1);
-                
-                int notifyRelapseColIndex = cursor.getColumnIndex("notify_on_relapse");
                 buddy.setNotifyOnRelapse(notifyRelapseColIndex == -1 || cursor.getInt(notifyRelapseColIndex) == 1);
-                
-                int notifyMilestoneColIndex = cursor.getColumnIndex("notify_on_milestone");
                 buddy.setNotifyOnMilestone(notifyMilestoneColIndex == -1 || cursor.getInt(notifyMilestoneColIndex) == 1);
                 
                 buddyList.add(buddy);
@@ -330,16 +325,16 @@ public class AccountabilityBuddyActivity extends BaseActivity {
     }
 
     // Helper method to update buddy info in database
-    private void updateBuddyInfo(AccountabilityBuddy buddy, String yourName, String yourPhone) {
-        SQLiteDatabase db = databaseHelper.getWritableDatabase();
-        ContentValues values = new ContentValues();
+    private void updateBuddyInfo(final AccountabilityBuddy buddy, String yourName, String yourPhone) {
+        final ContentValues values = new ContentValues();
         values.put("name", buddy.getName());
         values.put("phone", buddy.getPhone());
         values.put("user_name", yourName);
         values.put("user_phone", yourPhone);
         
         // Update existing buddy
-        db.update("accountability_buddy", values, "_id = ?", new String[]{String.valueOf(buddy.getId())});
+        databaseHelper.runWrite(() -> databaseHelper.getWritableDatabase().update("accountability_buddy",
+                values, "_id = ?", new String[]{String.valueOf(buddy.getId())}));
         
         // Save the user info
         userName = yourName;
@@ -349,8 +344,7 @@ public class AccountabilityBuddyActivity extends BaseActivity {
     }
 
     private void saveBuddyInfo(String buddyName, String buddyPhone, String yourName, String yourPhone) {
-        SQLiteDatabase db = databaseHelper.getWritableDatabase();
-        ContentValues values = new ContentValues();
+        final ContentValues values = new ContentValues();
         values.put("name", buddyName);
         values.put("phone", buddyPhone);
         values.put("user_name", yourName);
@@ -358,14 +352,16 @@ public class AccountabilityBuddyActivity extends BaseActivity {
     
         if (hasBuddy) {
             // Update existing buddy
-            db.update("accountability_buddy", values, null, null);
+            databaseHelper.runWrite(() -> databaseHelper.getWritableDatabase()
+                    .update("accountability_buddy", values, null, null));
         } else {
             // Insert new buddy
             values.put("enabled", 1);
             values.put("notify_on_checkin", 0);
             values.put("notify_on_relapse", 1);
             values.put("notify_on_milestone", 1);
-            db.insert("accountability_buddy", null, values);
+            databaseHelper.runWrite(() -> databaseHelper.getWritableDatabase()
+                    .insert("accountability_buddy", null, values));
             hasBuddy = true;
         }
     
@@ -443,39 +439,41 @@ public class AccountabilityBuddyActivity extends BaseActivity {
         return idColumnName;
     }
 
-    private void deleteBuddy(long buddyId) {
-        SQLiteDatabase db = databaseHelper.getWritableDatabase();
-        
-        // Check which column name exists in the table
-        String idColumnName = getIdColumnName(db);
-        
-        // Use the correct column name
-        db.delete("accountability_buddy", idColumnName + " = ?", new String[]{String.valueOf(buddyId)});
+    private void deleteBuddy(final long buddyId) {
+        databaseHelper.runWrite(() -> {
+            SQLiteDatabase db = databaseHelper.getWritableDatabase();
+            
+            // Check which column name exists in the table
+            String idColumnName = getIdColumnName(db);
+            
+            // Use the correct column name
+            return db.delete("accountability_buddy", idColumnName + " = ?", new String[]{String.valueOf(buddyId)});
+        });
         Toast.makeText(this, "Buddy removed", Toast.LENGTH_SHORT).show();
     }
 
     private void updateBuddyEnabled(long buddyId, boolean enabled) {
-        SQLiteDatabase db = databaseHelper.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put("enabled", enabled ? 1 : 0);
-        
-        // Check which column name exists in the table
-        String idColumnName = getIdColumnName(db);
-        
-        // Use the correct column name
-        db.update("accountability_buddy", values, idColumnName + " = ?", new String[]{String.valueOf(buddyId)});
+        updateBuddyColumns(buddyId, values);
     }
 
     private void updateBuddyNotificationSetting(long buddyId, String setting, boolean enabled) {
-        SQLiteDatabase db = databaseHelper.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(setting, enabled ? 1 : 0);
-        
-        // Check which column name exists in the table
-        String idColumnName = getIdColumnName(db);
-        
-        // Use the correct column name
-        db.update("accountability_buddy", values, idColumnName + " = ?", new String[]{String.valueOf(buddyId)});
+        updateBuddyColumns(buddyId, values);
+    }
+
+    private void updateBuddyColumns(final long buddyId, final ContentValues values) {
+        databaseHelper.runWrite(() -> {
+            SQLiteDatabase db = databaseHelper.getWritableDatabase();
+            
+            // Check which column name exists in the table
+            String idColumnName = getIdColumnName(db);
+            
+            // Use the correct column name
+            return db.update("accountability_buddy", values, idColumnName + " = ?", new String[]{String.valueOf(buddyId)});
+        });
     }
 
     private void checkSmsPermission() {
@@ -499,10 +497,10 @@ public class AccountabilityBuddyActivity extends BaseActivity {
                         Toast.LENGTH_LONG).show();
                 
                 // Disable all buddies if SMS permission is denied
-                SQLiteDatabase db = databaseHelper.getWritableDatabase();
-                ContentValues values = new ContentValues();
+                final ContentValues values = new ContentValues();
                 values.put("enabled", 0);
-                db.update("accountability_buddy", values, null, null);
+                databaseHelper.runWrite(() -> databaseHelper.getWritableDatabase()
+                        .update("accountability_buddy", values, null, null));
                 
                 // Refresh the UI to show disabled state
                 loadBuddyData();
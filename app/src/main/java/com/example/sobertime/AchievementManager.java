@@ -2,13 +2,12 @@ package com.example.sobertime;
 
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.content.Context;
-import android.content.Intent;
 import android.content.SharedPreferences;
+import android.database.SQLException;
 import android.os.Build;
 
-import androidx.core.app.NotificationCompat;
+import androidx.annotation.VisibleForTesting;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -16,14 +15,18 @@ import org.json.JSONObject;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
-import java.util.Calendar;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
+import com.example.sobertime.AchievementRuleEngine.Event;
+import com.example.sobertime.AchievementRuleEngine.Metric;
 import com.example.sobertime.model.SobrietyTracker;  
 
 /**
@@ -43,9 +46,43 @@ public class AchievementManager {
     private SharedPreferences preferences;
     private SobrietyTracker sobrietyTracker;
     private DatabaseHelper databaseHelper;
+    // Groups unlocks that happen together into one notification
+    private AchievementNotifier notifier;
+    
+    // Time milestones sorted by day count, fixed once the achievements are set up
+    private List<Achievement> timeMilestones;
+    private int[] timeMilestoneDays;
+    
+    // Unlock rules, collected while the achievements are set up and then indexed by event
+    private List<AchievementRuleEngine.Rule> rules;
+    private AchievementRuleEngine ruleEngine;
+    
+    // The time milestone flagged as reached today by the last day count check
+    private Achievement todaysMilestone;
+    
+    // Metric values as the trackers and database have them now
+    private final AchievementRuleEngine.Metrics currentMetrics = new AchievementRuleEngine.Metrics() {
+        @Override
+        public double read(Metric metric) {
+            return readMetric(metric);
+        }
+    };
     
     private static AchievementManager instance;
     
+    // Next milestone for the day count it was found for; the milestones themselves never move
+    private volatile MilestoneState milestoneState;
+    
+    private static final class MilestoneState {
+        final int daysSober;
+        final Achievement nextMilestone;
+        
+        MilestoneState(int daysSober, Achievement nextMilestone) {
+            this.daysSober = daysSober;
+            this.nextMilestone = nextMilestone;
+        }
+    }
+    
     // Create singleton instance
     public static synchronized AchievementManager getInstance(Context context) {
         if (instance == null) {
@@ -54,6 +91,12 @@ public class AchievementManager {
         return instance;
     }
     
+    // Drop the singleton so tests load achievement state again from a fresh database
+    @VisibleForTesting
+    static synchronized void resetInstance() {
+        instance = null;
+    }
+    
     private AchievementManager(Context context) {
         this.context = context.getApplicationContext();
         this.databaseHelper = DatabaseHelper.getInstance(context);
@@ -62,15 +105,20 @@ public class AchievementManager {
         // Initialize collections for achievements
         this.achievements = new ArrayList<>();
         this.achievementMap = new HashMap<>();
+        this.rules = new ArrayList<>();
         
         // Initialize preferences
-        this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.preferences = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME);
         
         // Create notification channel for Android 8.0+
         createNotificationChannel();
+        this.notifier = new AchievementNotifier(context, CHANNEL_ID);
         
         // Initialize achievements list
         initializeAchievements();
+        indexTimeMilestones();
+        this.ruleEngine = new AchievementRuleEngine(rules);
+        this.rules = null;
         
         // Load achievements
         loadAchievements();
@@ -91,22 +139,20 @@ public class AchievementManager {
      */
     public Achievement getNextMilestone() {
         int daysSober = sobrietyTracker.getDaysSober();
-        return getNextMilestone(daysSober);
+        MilestoneState state = milestoneState;
+        if (state == null || state.daysSober != daysSober) {
+            state = new MilestoneState(daysSober, getNextMilestone(daysSober));
+            milestoneState = state;
+        }
+        return state.nextMilestone;
     }
 
     /**
-     * Check for financial achievements using calculated money saved from SobrietyTracker
+     * Evaluate the unlock rules that watch an event, store and announce what they unlock
+     * @return The achievements unlocked by this event, if any
      */
-    public void checkFinancialAchievements() {
-        // Get settings from database
-        float drinkCost = databaseHelper.getFloatSetting("drink_cost", 8.50f);
-        int drinksPerWeek = databaseHelper.getIntSetting("drinks_per_week", 15);
-        
-        // Calculate money saved using SobrietyTracker
-        float moneySaved = sobrietyTracker.calculateMoneySaved(drinkCost, drinksPerWeek);
-        
-        // Use the existing method
-        checkFinancialAchievements(moneySaved);
+    public List<Achievement> onEvent(Event event) {
+        return dispatch(event, currentMetrics);
     }
     
     private void createNotificationChannel() {
@@ -132,7 +178,7 @@ public class AchievementManager {
                 "ic_achievement_day1",
                 Achievement.AchievementCategory.TIME_MILESTONE,
                 1
-        ));
+        ), Metric.DAYS_SOBER, 1, Event.DAY_ROLLOVER);
         
         addAchievement(new Achievement(
                 2,
@@ -141,7 +187,7 @@ public class AchievementManager {
                 "ic_achievement_week1",
                 Achievement.AchievementCategory.TIME_MILESTONE,
                 7
-        ));
+        ), Metric.DAYS_SOBER, 7, Event.DAY_ROLLOVER);
         
         addAchievement(new Achievement(
                 3,
@@ -150,7 +196,7 @@ public class AchievementManager {
                 "ic_achievement_week2",
                 Achievement.AchievementCategory.TIME_MILESTONE,
                 14
-        ));
+        ), Metric.DAYS_SOBER, 14, Event.DAY_ROLLOVER);
         
         addAchievement(new Achievement(
                 4,
@@ -159,7 +205,7 @@ public class AchievementManager {
                 "ic_achievement_month1",
                 Achievement.AchievementCategory.TIME_MILESTONE,
                 30
-        ));
+        ), Metric.DAYS_SOBER, 30, Event.DAY_ROLLOVER);
         
         addAchievement(new Achievement(
                 5,
@@ -168,7 +214,7 @@ public class AchievementManager {
                 "ic_achievement_60days",
                 Achievement.AchievementCategory.TIME_MILESTONE,
                 60
-        ));
+        ), Metric.DAYS_SOBER, 60, Event.DAY_ROLLOVER);
         
         addAchievement(new Achievement(
                 6,
@@ -177,7 +223,7 @@ public class AchievementManager {
                 "ic_achievement_90days",
                 Achievement.AchievementCategory.TIME_MILESTONE,
                 90
-        ));
+        ), Metric.DAYS_SOBER, 90, Event.DAY_ROLLOVER);
         
         addAchievement(new Achievement(
                 7,
@@ -186,7 +232,7 @@ public class AchievementManager {
                 "ic_achievement_6months",
                 Achievement.AchievementCategory.TIME_MILESTONE,
                 180
-        ));
+        ), Metric.DAYS_SOBER, 180, Event.DAY_ROLLOVER);
         
         addAchievement(new Achievement(
                 8,
@@ -195,7 +241,7 @@ public class AchievementManager {
                 "ic_achievement_1year",
                 Achievement.AchievementCategory.TIME_MILESTONE,
                 365
-        ));
+        ), Metric.DAYS_SOBER, 365, Event.DAY_ROLLOVER);
         
         addAchievement(new Achievement(
                 9,
@@ -204,7 +250,7 @@ public class AchievementManager {
                 "ic_achievement_2years",
                 Achievement.AchievementCategory.TIME_MILESTONE,
                 730
-        ));
+        ), Metric.DAYS_SOBER, 730, Event.DAY_ROLLOVER);
         
         addAchievement(new Achievement(
                 10,
@@ -213,7 +259,7 @@ public class AchievementManager {
                 "ic_achievement_3years",
                 Achievement.AchievementCategory.TIME_MILESTONE,
                 1095
-        ));
+        ), Metric.DAYS_SOBER, 1095, Event.DAY_ROLLOVER);
         
         // Journal achievements
         addAchievement(new Achievement(
@@ -222,7 +268,7 @@ public class AchievementManager {
                 "Create your first journal entry",
                 "ic_achievement_journal1",
                 Achievement.AchievementCategory.JOURNAL
-        ));
+        ), Metric.JOURNAL_ENTRIES, 1, Event.JOURNAL_SAVED);
         
         addAchievement(new Achievement(
                 102,
@@ -230,7 +276,7 @@ public class AchievementManager {
                 "Create journal entries for 5 consecutive days",
                 "ic_achievement_journal_streak",
                 Achievement.AchievementCategory.JOURNAL
-        ));
+        ), Metric.JOURNAL_STREAK, 5, Event.JOURNAL_SAVED);
         
         addAchievement(new Achievement(
                 103,
@@ -238,7 +284,7 @@ public class AchievementManager {
                 "Create 30 journal entries",
                 "ic_achievement_journal_master",
                 Achievement.AchievementCategory.JOURNAL
-        ));
+        ), Metric.JOURNAL_ENTRIES, 30, Event.JOURNAL_SAVED);
         
         // Financial achievements
         addAchievement(new Achievement(
@@ -247,7 +293,7 @@ public class AchievementManager {
                 "Save $100 from not drinking",
                 "ic_achievement_money100",
                 Achievement.AchievementCategory.FINANCIAL
-        ));
+        ), Metric.MONEY_SAVED, 100, Event.DAY_ROLLOVER, Event.SETTINGS_CHANGED);
         
         addAchievement(new Achievement(
                 202,
@@ -255,7 +301,7 @@ public class AchievementManager {
                 "Save $500 from not drinking",
                 "ic_achievement_money500",
                 Achievement.AchievementCategory.FINANCIAL
-        ));
+        ), Metric.MONEY_SAVED, 500, Event.DAY_ROLLOVER, Event.SETTINGS_CHANGED);
         
         addAchievement(new Achievement(
                 203,
@@ -263,7 +309,7 @@ public class AchievementManager {
                 "Save $1000 from not drinking",
                 "ic_achievement_money1000",
                 Achievement.AchievementCategory.FINANCIAL
-        ));
+        ), Metric.MONEY_SAVED, 1000, Event.DAY_ROLLOVER, Event.SETTINGS_CHANGED);
         
         // Health achievements
         addAchievement(new Achievement(
@@ -272,7 +318,7 @@ public class AchievementManager {
                 "Save 2,000 calories from not drinking",
                 "ic_achievement_calories",
                 Achievement.AchievementCategory.HEALTH
-        ));
+        ), Metric.CALORIES_SAVED, 2000, Event.DAY_ROLLOVER, Event.SETTINGS_CHANGED);
         
         addAchievement(new Achievement(
                 302,
@@ -280,7 +326,7 @@ public class AchievementManager {
                 "Experience improved sleep after 1 week sober",
                 "ic_achievement_sleep",
                 Achievement.AchievementCategory.HEALTH
-        ));
+        ), Metric.DAYS_SOBER, 7, Event.DAY_ROLLOVER);
         
         // App usage achievements
         addAchievement(new Achievement(
@@ -292,55 +338,122 @@ public class AchievementManager {
         ));
     }
     
+    private void indexTimeMilestones() {
+        List<Achievement> milestones = new ArrayList<>();
+        for (Achievement achievement : achievements) {
+            if (achievement.getCategory() == Achievement.AchievementCategory.TIME_MILESTONE) {
+                milestones.add(achievement);
+            }
+        }
+        Collections.sort(milestones, new Comparator<Achievement>() {
+            @Override
+            public int compare(Achievement a, Achievement b) {
+                return Integer.compare(a.getDaysRequired(), b.getDaysRequired());
+            }
+        });
+        
+        timeMilestones = Collections.unmodifiableList(milestones);
+        timeMilestoneDays = new int[milestones.size()];
+        for (int i = 0; i < timeMilestoneDays.length; i++) {
+            timeMilestoneDays[i] = milestones.get(i).getDaysRequired();
+        }
+    }
+    
     private void addAchievement(Achievement achievement) {
         achievements.add(achievement);
         achievementMap.put(achievement.getId(), achievement);
     }
     
+    // An achievement unlocked once the metric reaches the threshold on one of the events
+    private void addAchievement(Achievement achievement, Metric metric, double threshold,
+                                Event first, Event... rest) {
+        addAchievement(achievement);
+        rules.add(new AchievementRuleEngine.Rule(achievement.getId(), metric, threshold, EnumSet.of(first, rest)));
+    }
+    
     private void loadAchievements() {
-        String jsonData = preferences.getString(ACHIEVEMENTS_KEY, null);
+        migrateLegacyAchievements();
+        
+        Map<Integer, Long> unlocked = databaseHelper.getUnlockedAchievements();
+        for (Map.Entry<Integer, Long> row : unlocked.entrySet()) {
+            Achievement achievement = achievementMap.get(row.getKey());
+            if (achievement != null) {
+                // Set the stored time first so setUnlocked doesn't stamp it with now
+                achievement.setUnlockTime(row.getValue());
+                achievement.setUnlocked(true);
+            }
+        }
         
-        if (jsonData != null) {
-            try {
-                JSONArray jsonArray = new JSONArray(jsonData);
-                
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    JSONObject jsonObject = jsonArray.getJSONObject(i);
-                    int id = jsonObject.getInt("id");
-                    boolean unlocked = jsonObject.getBoolean("unlocked");
-                    long unlockTime = jsonObject.getLong("unlockTime");
-                    
-                    Achievement achievement = achievementMap.get(id);
-                    if (achievement != null) {
-                        achievement.setUnlocked(unlocked);
-                        achievement.setUnlockTime(unlockTime);
-                    }
-                }
-            } catch (JSONException e) {
-                e.printStackTrace();
+        for (Achievement achievement : achievements) {
+            if (achievement.isUnlocked()) {
+                ruleEngine.markMet(achievement.getId());
             }
         }
     }
     
-    public void saveAchievements() {
+    /**
+     * Reload unlock state from the database, e.g. after a backup was restored into the table
+     */
+    public void reloadAchievements() {
+        for (Achievement achievement : achievements) {
+            achievement.setUnlocked(false);
+            achievement.setUnlockTime(0);
+        }
+        ruleEngine.reset();
+        loadAchievements();
+    }
+    
+    // Older versions kept every achievement in one JSON string in preferences. Copy the
+    // unlocked ones into the achievements table once, then drop the blob.
+    private void migrateLegacyAchievements() {
+        String jsonData = preferences.getString(ACHIEVEMENTS_KEY, null);
+        if (jsonData == null) {
+            return;
+        }
+        
+        List<Achievement> unlocked = new ArrayList<>();
         try {
-            JSONArray jsonArray = new JSONArray();
+            JSONArray jsonArray = new JSONArray(jsonData);
             
-            for (Achievement achievement : achievements) {
-                JSONObject jsonObject = new JSONObject();
-                jsonObject.put("id", achievement.getId());
-                jsonObject.put("unlocked", achievement.isUnlocked());
-                jsonObject.put("unlockTime", achievement.getUnlockTime());
-                jsonArray.put(jsonObject);
+            for (int i = 0; i < jsonArray.length(); i++) {
+                JSONObject jsonObject = jsonArray.optJSONObject(i);
+                if (jsonObject == null || !jsonObject.optBoolean("unlocked")) {
+                    continue;
+                }
+                
+                Achievement achievement = achievementMap.get(jsonObject.optInt("id", -1));
+                if (achievement != null) {
+                    achievement.setUnlockTime(jsonObject.optLong("unlockTime"));
+                    achievement.setUnlocked(true);
+                    unlocked.add(achievement);
+                }
             }
-            
-            SharedPreferences.Editor editor = preferences.edit();
-            editor.putString(ACHIEVEMENTS_KEY, jsonArray.toString());
-            editor.apply();
-            
         } catch (JSONException e) {
             e.printStackTrace();
         }
+        
+        try {
+            databaseHelper.saveAchievementUnlocks(unlocked);
+        } catch (SQLException e) {
+            // Keep the blob so the migration is retried on the next start
+            e.printStackTrace();
+            return;
+        }
+        preferences.edit().remove(ACHIEVEMENTS_KEY).apply();
+    }
+    
+    /**
+     * Write every unlocked achievement to the database. Unlocks are already stored one row
+     * at a time as they happen, so this is only needed to repair the table.
+     */
+    public void saveAchievements() {
+        List<Achievement> unlocked = new ArrayList<>();
+        for (Achievement achievement : achievements) {
+            if (achievement.isUnlocked()) {
+                unlocked.add(achievement);
+            }
+        }
+        databaseHelper.saveAchievementUnlocks(unlocked);
     }
     
     public List<Achievement> getAllAchievements() {
@@ -368,16 +481,10 @@ public class AchievementManager {
     }
     
     /**
-     * Get all time-based milestone achievements
+     * Get all time-based milestone achievements, fewest days first
      */
     public List<Achievement> getTimeMilestones() {
-        List<Achievement> milestones = new ArrayList<>();
-        for (Achievement achievement : achievements) {
-            if (achievement.getCategory() == Achievement.AchievementCategory.TIME_MILESTONE) {
-                milestones.add(achievement);
-            }
-        }
-        return milestones;
+        return timeMilestones;
     }
     
     /**
@@ -385,60 +492,39 @@ public class AchievementManager {
      */
     public void updateMilestoneDates(long sobrietyStartDate) {
         SimpleDateFormat dateFormat = new SimpleDateFormat("MMMM d, yyyy", Locale.getDefault());
+        MilestoneTimeline timeline = MilestoneTimeline.forStartDay(EpochDays.localDay(sobrietyStartDate));
         
-        for (Achievement achievement : achievements) {
-            if (achievement.getCategory() == Achievement.AchievementCategory.TIME_MILESTONE) {
-                // Calculate milestone date
-                Calendar calendar = Calendar.getInstance();
-                calendar.setTimeInMillis(sobrietyStartDate);
-                calendar.add(Calendar.DAY_OF_YEAR, achievement.getDaysRequired());
-                
-                Date milestoneDate = calendar.getTime();
-                String formattedDate = dateFormat.format(milestoneDate);
-                achievement.setMilestoneDate(formattedDate);
-            }
+        for (Achievement achievement : timeMilestones) {
+            // The day the day count reaches the milestone
+            long milestoneDay = timeline.dateOf(achievement.getDaysRequired());
+            String formattedDate = dateFormat.format(new Date(EpochDays.startOfDay(milestoneDay)));
+            achievement.setMilestoneDate(formattedDate);
         }
     }
     
     /**
-     * Check for achievement unlocks based on days sober
+     * Check for achievement unlocks based on days sober, as a day rollover event
      * Returns the achievement if today is a milestone, null otherwise
      */
-    public Achievement checkTimeAchievements(int daysSober) {
-        boolean newAchievement = false;
-        Achievement todaysMilestone = null;
-        
-        // Reset "today" flag for all achievements
-        for (Achievement achievement : achievements) {
-            if (achievement.getCategory() == Achievement.AchievementCategory.TIME_MILESTONE) {
-                achievement.setToday(false);
-            }
+    public Achievement checkTimeAchievements(final int daysSober) {
+        // Move the "today" flag to the milestone matching this day count, if any
+        if (todaysMilestone != null) {
+            todaysMilestone.setToday(false);
+            todaysMilestone = null;
         }
-        
-        // Check each time milestone
-        for (Achievement achievement : achievements) {
-            if (achievement.getCategory() == Achievement.AchievementCategory.TIME_MILESTONE) {
-                int daysRequired = achievement.getDaysRequired();
-                
-                if (daysSober >= daysRequired) {
-                    // Achievement should be unlocked
-                    if (!achievement.isUnlocked()) {
-                        achievement.setUnlocked(true);
-                        newAchievement = true;
-                    }
-                    
-                    // Check if this is today's milestone
-                    if (daysSober == daysRequired) {
-                        achievement.setToday(true);
-                        todaysMilestone = achievement;
-                    }
-                }
-            }
+        int index = Arrays.binarySearch(timeMilestoneDays, daysSober);
+        if (index >= 0) {
+            todaysMilestone = timeMilestones.get(index);
+            todaysMilestone.setToday(true);
         }
         
-        if (newAchievement) {
-            saveAchievements();
-        }
+        // The caller's day count stands in for the tracker's; everything else is read as usual
+        dispatch(Event.DAY_ROLLOVER, new AchievementRuleEngine.Metrics() {
+            @Override
+            public double read(Metric metric) {
+                return metric == Metric.DAYS_SOBER ? daysSober : readMetric(metric);
+            }
+        });
         
         return todaysMilestone;
     }
@@ -447,149 +533,85 @@ public class AchievementManager {
      * Get the next milestone based on current day count
      */
     public Achievement getNextMilestone(int daysSober) {
-        Achievement nextMilestone = null;
-        int daysToNext = Integer.MAX_VALUE;
-        
-        for (Achievement achievement : getTimeMilestones()) {
-            int days = achievement.getDaysRequired();
-            if (days > daysSober && (days - daysSober) < daysToNext) {
-                nextMilestone = achievement;
-                daysToNext = days - daysSober;
+        // Binary search for the first milestone above daysSober
+        int low = 0;
+        int high = timeMilestoneDays.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (timeMilestoneDays[mid] <= daysSober) {
+                low = mid + 1;
+            } else {
+                high = mid;
             }
         }
-        
-        return nextMilestone;
+        return low < timeMilestoneDays.length ? timeMilestones.get(low) : null;
     }
     
-    /**
-     * Check for financial achievements based on money saved
-     */
-    public void checkFinancialAchievements(float moneySaved) {
-        boolean newAchievement = false;
-        
-        if (moneySaved >= 100) {
-            newAchievement |= unlockAchievement(201);
-        }
-        
-        if (moneySaved >= 500) {
-            newAchievement |= unlockAchievement(202);
-        }
-        
-        if (moneySaved >= 1000) {
-            newAchievement |= unlockAchievement(203);
-        }
-        
-        if (newAchievement) {
-            saveAchievements();
+    private double readMetric(Metric metric) {
+        switch (metric) {
+            case DAYS_SOBER:
+                return sobrietyTracker.getDaysSober();
+            case MONEY_SAVED:
+                // Priced at the settings in force on each day
+                return sobrietyTracker.calculateMoneySaved();
+            case CALORIES_SAVED:
+                return sobrietyTracker.calculateCaloriesSaved();
+            case JOURNAL_ENTRIES:
+                return databaseHelper.getJournalEntryCount();
+            case JOURNAL_STREAK:
+                // Kept up to date by every journal write, so this is a field read
+                return databaseHelper.getJournalStreak().getCurrentRun();
+            case CHECK_IN_STREAK:
+                return com.example.sobertime.SobrietyTracker.getInstance(context).getCurrentStreak();
+            default:
+                throw new IllegalArgumentException("Unknown metric " + metric);
         }
     }
     
-    /**
-     * Check for journal achievements
-     */
-    public void checkJournalAchievements(List<JournalEntry> entries) {
-        boolean newAchievement = false;
-        
-        // First journal entry
-        if (entries.size() >= 1) {
-            newAchievement |= unlockAchievement(101);
-        }
-        
-        // 30 journal entries
-        if (entries.size() >= 30) {
-            newAchievement |= unlockAchievement(103);
+    private List<Achievement> dispatch(Event event, AchievementRuleEngine.Metrics metrics) {
+        List<Integer> unlockedIds = ruleEngine.evaluate(event, metrics);
+        if (unlockedIds.isEmpty()) {
+            return Collections.emptyList();
         }
         
-        // 5 consecutive days
-        if (checkConsecutiveDaysJournaling(entries, 5)) {
-            newAchievement |= unlockAchievement(102);
-        }
-        
-        if (newAchievement) {
-            saveAchievements();
-        }
-    }
-    
-    private boolean checkConsecutiveDaysJournaling(List<JournalEntry> entries, int days) {
-        if (entries.size() < days) {
-            return false;
+        List<Achievement> newlyUnlocked = new ArrayList<>(unlockedIds.size());
+        for (int id : unlockedIds) {
+            Achievement achievement = achievementMap.get(id);
+            if (!achievement.isUnlocked()) {
+                achievement.setUnlocked(true);
+                newlyUnlocked.add(achievement);
+            }
         }
         
-        // Sort entries by timestamp in descending order (most recent first)
-        entries.sort((a, b) -> Long.compare(b.getTimestamp(), a.getTimestamp()));
+        // Only the rows that changed are written, in one transaction
+        databaseHelper.saveAchievementUnlocks(newlyUnlocked);
         
-        long oneDayMillis = TimeUnit.DAYS.toMillis(1);
-        long previousDay = -1;
-        int consecutiveDays = 0;
-        
-        for (JournalEntry entry : entries) {
-            long entryDay = entry.getTimestamp() / oneDayMillis;
-            
-            if (previousDay == -1) {
-                // First entry
-                previousDay = entryDay;
-                consecutiveDays = 1;
-            } else if (entryDay == previousDay - 1) {
-                // Consecutive day
-                previousDay = entryDay;
-                consecutiveDays++;
-                
-                if (consecutiveDays >= days) {
-                    return true;
-                }
-            } else if (entryDay == previousDay) {
-                // Same day, continue
-                continue;
-            } else {
-                // Streak broken
-                return false;
+        for (Achievement achievement : newlyUnlocked) {
+            // Time milestones get the celebration dialog instead
+            if (achievement.getCategory() != Achievement.AchievementCategory.TIME_MILESTONE) {
+                notifier.post(achievement);
             }
         }
-        
-        return consecutiveDays >= days;
+        return newlyUnlocked;
     }
     
     /**
-     * Unlock an achievement and show notification if newly unlocked
+     * Unlock an achievement and queue its notification if newly unlocked
      */
     public boolean unlockAchievement(int id) {
         Achievement achievement = achievementMap.get(id);
         
         if (achievement != null && !achievement.isUnlocked()) {
             achievement.setUnlocked(true);
-            showAchievementNotification(achievement);
+            ruleEngine.markMet(id);
+            databaseHelper.saveAchievementUnlock(achievement);
+            notifier.post(achievement);
             return true;
         }
         
         return false;
     }
     
-    /**
-     * Show notification for newly unlocked achievement
-     */
-    private void showAchievementNotification(Achievement achievement) {
-        Intent intent = new Intent(context, AchievementsActivity.class);
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-                context,
-                0,
-                intent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-        
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
-                .setSmallIcon(R.drawable.ic_notification)
-                .setContentTitle("Achievement Unlocked!")
-                .setContentText(achievement.getTitle() + ": " + achievement.getDescription())
-                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
-                .setContentIntent(pendingIntent)
-                .setAutoCancel(true);
-        
-        NotificationManager notificationManager = 
-                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
-        
-        notificationManager.notify(achievement.getId(), builder.build());
-    }
-    
     /**
      * Show celebration dialog for time milestone achievement
      */
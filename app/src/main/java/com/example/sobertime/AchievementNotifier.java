@@ -0,0 +1,157 @@
+package com.example.sobertime;
+
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.core.app.NotificationCompat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Posts achievement unlock notifications in batches. Unlocks arriving within COALESCE_MS
+ * of the first one go out together as a group: a child notification per achievement and
+ * a summary listing all of them. Batches are at least MIN_INTERVAL_MS apart, so a restore
+ * or a backdated start date that unlocks a dozen achievements posts one group instead of
+ * a burst. A batch of one is posted as a plain notification.
+ */
+final class AchievementNotifier {
+
+    static final long COALESCE_MS = 1500;
+    static final long MIN_INTERVAL_MS = 10000;
+
+    // Children beyond this are only listed in the summary
+    static final int MAX_CHILDREN = 5;
+
+    // Achievement notifications use their own tag, so achievement ids can't replace the
+    // reminder notifications that share those numbers; no achievement has id 0
+    static final String NOTIFICATION_TAG = "achievement";
+    static final int SUMMARY_ID = 0;
+
+    private static final String GROUP_KEY = "com.example.sobertime.ACHIEVEMENTS";
+
+    private final Context context;
+    private final String channelId;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    // Guarded by pending
+    private final List<Achievement> pending = new ArrayList<>();
+    private boolean flushScheduled;
+    private long lastPostUptime = -MIN_INTERVAL_MS;
+
+    // Every notification opens the same screen, so one PendingIntent serves them all
+    private PendingIntent contentIntent;
+
+    private final Runnable flush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    AchievementNotifier(Context context, String channelId) {
+        this.context = context.getApplicationContext();
+        this.channelId = channelId;
+    }
+
+    /**
+     * Queue an unlock notification; it is posted with whatever else unlocks around it
+     */
+    void post(Achievement achievement) {
+        synchronized (pending) {
+            pending.add(achievement);
+            if (flushScheduled) {
+                return;
+            }
+            flushScheduled = true;
+            long now = SystemClock.uptimeMillis();
+            handler.postAtTime(flush, Math.max(now + COALESCE_MS, lastPostUptime + MIN_INTERVAL_MS));
+        }
+    }
+
+    private void flush() {
+        List<Achievement> batch;
+        synchronized (pending) {
+            batch = new ArrayList<>(pending);
+            pending.clear();
+            flushScheduled = false;
+            lastPostUptime = SystemClock.uptimeMillis();
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        NotificationManager notificationManager =
+                (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
+
+        if (batch.size() == 1) {
+            Achievement achievement = batch.get(0);
+            notificationManager.notify(NOTIFICATION_TAG, achievement.getId(),
+                    childBuilder(achievement).build());
+            return;
+        }
+
+        int children = Math.min(batch.size(), MAX_CHILDREN);
+        for (int i = 0; i < children; i++) {
+            Achievement achievement = batch.get(i);
+            // Only the summary makes a sound
+            notificationManager.notify(NOTIFICATION_TAG, achievement.getId(), childBuilder(achievement)
+                    .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY)
+                    .build());
+        }
+
+        String title = batch.size() + " Achievements Unlocked!";
+        NotificationCompat.InboxStyle style = new NotificationCompat.InboxStyle()
+                .setBigContentTitle(title);
+        StringBuilder text = new StringBuilder();
+        for (Achievement achievement : batch) {
+            style.addLine(achievement.getTitle());
+            if (text.length() > 0) {
+                text.append(", ");
+            }
+            text.append(achievement.getTitle());
+        }
+
+        NotificationCompat.Builder summary = new NotificationCompat.Builder(context, channelId)
+                .setSmallIcon(R.drawable.ic_notification)
+                .setContentTitle(title)
+                .setContentText(text)
+                .setStyle(style)
+                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                .setContentIntent(getContentIntent())
+                .setGroup(GROUP_KEY)
+                .setGroupSummary(true)
+                .setAutoCancel(true);
+        notificationManager.notify(NOTIFICATION_TAG, SUMMARY_ID, summary.build());
+    }
+
+    private NotificationCompat.Builder childBuilder(Achievement achievement) {
+        return new NotificationCompat.Builder(context, channelId)
+                .setSmallIcon(R.drawable.ic_notification)
+                .setContentTitle("Achievement Unlocked!")
+                .setContentText(achievement.getTitle() + ": " + achievement.getDescription())
+                .setPriority(NotificationCompat.PRIORITY_DEFAULT)
+                .setContentIntent(getContentIntent())
+                .setGroup(GROUP_KEY)
+                .setAutoCancel(true);
+    }
+
+    // Only called from flush(), on the main thread
+    private PendingIntent getContentIntent() {
+        if (contentIntent == null) {
+            Intent intent = new Intent(context, AchievementsActivity.class);
+            contentIntent = PendingIntent.getActivity(
+                    context,
+                    0,
+                    intent,
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+            );
+        }
+        return contentIntent;
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.sobertime;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Works out which achievements an event unlocks. Every rule names the events that can move
+ * it, a measured value and the threshold that value has to reach. Rules are indexed by event
+ * and, within an event, grouped by value in threshold order behind a cursor that only moves
+ * forward, so an event reads each value its rules watch once and then only touches the rules
+ * it unlocks. Rules that don't watch the event are never looked at.
+ */
+public final class AchievementRuleEngine {
+
+    /**
+     * Things that happen in the app and can unlock an achievement
+     */
+    public enum Event {
+        DAY_ROLLOVER,
+        JOURNAL_SAVED,
+        CHECK_IN_RECORDED,
+        SETTINGS_CHANGED
+    }
+
+    /**
+     * Values a rule can be measured against
+     */
+    public enum Metric {
+        DAYS_SOBER,
+        MONEY_SAVED,
+        CALORIES_SAVED,
+        JOURNAL_ENTRIES,
+        JOURNAL_STREAK,
+        CHECK_IN_STREAK
+    }
+
+    /**
+     * Reads the current value of a metric; called at most once per metric and event
+     */
+    public interface Metrics {
+        double read(Metric metric);
+    }
+
+    /**
+     * Unlocks an achievement once a metric reaches a threshold on one of the given events
+     */
+    static final class Rule {
+        final int achievementId;
+        final Metric metric;
+        final double threshold;
+        final EnumSet<Event> events;
+
+        // Unlocks are permanent, so a met rule stays met even if its value drops after a relapse
+        boolean met;
+
+        Rule(int achievementId, Metric metric, double threshold, EnumSet<Event> events) {
+            if (events.isEmpty()) {
+                throw new IllegalArgumentException("Achievement " + achievementId + " watches no events");
+            }
+            this.achievementId = achievementId;
+            this.metric = metric;
+            this.threshold = threshold;
+            this.events = events;
+        }
+    }
+
+    // The rules one event watches on one metric, lowest threshold first
+    private static final class Watch {
+        final Metric metric;
+        final Rule[] rules;
+        // Every rule before this one is met
+        int next;
+
+        Watch(Metric metric, Rule[] rules) {
+            this.metric = metric;
+            this.rules = rules;
+        }
+    }
+
+    private static final Watch[] NO_WATCHES = new Watch[0];
+
+    private final EnumMap<Event, Watch[]> watchesByEvent = new EnumMap<>(Event.class);
+    private final Map<Integer, Rule> rulesById = new HashMap<>();
+
+    AchievementRuleEngine(List<Rule> rules) {
+        EnumMap<Event, EnumMap<Metric, List<Rule>>> grouped = new EnumMap<>(Event.class);
+        for (Rule rule : rules) {
+            if (rulesById.put(rule.achievementId, rule) != null) {
+                throw new IllegalArgumentException("Achievement " + rule.achievementId + " has two rules");
+            }
+            for (Event event : rule.events) {
+                EnumMap<Metric, List<Rule>> byMetric = grouped.get(event);
+                if (byMetric == null) {
+                    byMetric = new EnumMap<>(Metric.class);
+                    grouped.put(event, byMetric);
+                }
+                List<Rule> watched = byMetric.get(rule.metric);
+                if (watched == null) {
+                    watched = new ArrayList<>();
+                    byMetric.put(rule.metric, watched);
+                }
+                watched.add(rule);
+            }
+        }
+
+        Comparator<Rule> byThreshold = new Comparator<Rule>() {
+            @Override
+            public int compare(Rule a, Rule b) {
+                return Double.compare(a.threshold, b.threshold);
+            }
+        };
+        for (Event event : Event.values()) {
+            EnumMap<Metric, List<Rule>> byMetric = grouped.get(event);
+            if (byMetric == null) {
+                watchesByEvent.put(event, NO_WATCHES);
+                continue;
+            }
+            List<Watch> watches = new ArrayList<>();
+            for (Map.Entry<Metric, List<Rule>> entry : byMetric.entrySet()) {
+                List<Rule> watched = entry.getValue();
+                Collections.sort(watched, byThreshold);
+                watches.add(new Watch(entry.getKey(), watched.toArray(new Rule[0])));
+            }
+            watchesByEvent.put(event, watches.toArray(NO_WATCHES));
+        }
+    }
+
+    /**
+     * Mark the rule of an achievement met, e.g. when it was unlocked some other way or loaded
+     * as unlocked. Achievements without a rule are ignored.
+     */
+    synchronized void markMet(int achievementId) {
+        Rule rule = rulesById.get(achievementId);
+        if (rule != null) {
+            rule.met = true;
+        }
+    }
+
+    /**
+     * Forget every met rule, e.g. before unlock state is loaded again from a restored backup
+     */
+    synchronized void reset() {
+        for (Rule rule : rulesById.values()) {
+            rule.met = false;
+        }
+        for (Watch[] watches : watchesByEvent.values()) {
+            for (Watch watch : watches) {
+                watch.next = 0;
+            }
+        }
+    }
+
+    /**
+     * Number of rules watching an event, met or not
+     */
+    int countWatching(Event event) {
+        int count = 0;
+        for (Watch watch : watchesByEvent.get(event)) {
+            count += watch.rules.length;
+        }
+        return count;
+    }
+
+    /**
+     * Evaluate the rules watching an event against the current metric values
+     * @return Ids of the achievements whose rules are met for the first time, lowest threshold first
+     */
+    synchronized List<Integer> evaluate(Event event, Metrics metrics) {
+        List<Integer> unlocked = null;
+        for (Watch watch : watchesByEvent.get(event)) {
+            Rule[] rules = watch.rules;
+            // Skip rules met through another event or markMet
+            while (watch.next < rules.length && rules[watch.next].met) {
+                watch.next++;
+            }
+            if (watch.next == rules.length) {
+                // Nothing left to unlock here, so the metric isn't even read
+                continue;
+            }
+
+            double value = metrics.read(watch.metric);
+            while (watch.next < rules.length && rules[watch.next].threshold <= value) {
+                Rule rule = rules[watch.next++];
+                if (!rule.met) {
+                    rule.met = true;
+                    if (unlocked == null) {
+                        unlocked = new ArrayList<>();
+                    }
+                    unlocked.add(rule.achievementId);
+                }
+            }
+        }
+        return unlocked != null ? unlocked : Collections.<Integer>emptyList();
+    }
+}
@@ -36,7 +36,7 @@ public class AchievementsActivity extends BaseActivity {
         achievementManager = AchievementManager.getInstance(this);
         
         // Make sure milestone dates are updated
-        achievementManager.updateMilestoneDates(getSharedPreferences("SobrietyTrackerPrefs", MODE_PRIVATE)
+        achievementManager.updateMilestoneDates(PreferenceStore.getInstance(this).getPreferences("SobrietyTrackerPrefs")
                 .getLong("sobriety_start_date", System.currentTimeMillis()));
 
         // Initialize views
@@ -0,0 +1,131 @@
+package com.example.sobertime;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingPeriodicWorkPolicy;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.PeriodicWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes a backup into the folder the user picked on the Backup & Restore screen.
+ * Runs once a day while the device is charging and idle, and on demand when the
+ * user taps Backup. Both go through WorkManager, so a backup survives the screen
+ * being closed, and a second request while one is queued is dropped rather than
+ * run twice.
+ */
+public class AutoBackupWorker extends Worker {
+
+    private static final String TAG = "AutoBackupWorker";
+
+    static final String PERIODIC_WORK_NAME = "auto_backup";
+    static final String MANUAL_WORK_NAME = "manual_backup";
+
+    // Input and output data keys
+    static final String KEY_SNAPSHOT = "snapshot";
+    static final String KEY_MANUAL = "manual";
+    static final String KEY_ERROR = "error";
+
+    // Same preferences the Backup & Restore screen keeps its folder and last backup time in
+    private static final String PREFS_NAME = "SobrietyTrackerPrefs";
+    private static final String SAF_TREE_URI_KEY = "saf_tree_uri";
+    private static final String LAST_BACKUP_KEY = "last_backup_time";
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    // The periodic and on-demand work can be picked up by different threads; one chain, one writer
+    private static final Object BACKUP_LOCK = new Object();
+
+    public AutoBackupWorker(@NonNull Context context, @NonNull WorkerParameters params) {
+        super(context, params);
+    }
+
+    /**
+     * Schedule the daily backup. Keeps an existing schedule, so this is safe to call
+     * on every app start.
+     */
+    public static void schedule(Context context) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiresCharging(true)
+                .setRequiresDeviceIdle(true)
+                .build();
+        PeriodicWorkRequest request = new PeriodicWorkRequest.Builder(AutoBackupWorker.class, 1, TimeUnit.DAYS)
+                .setConstraints(constraints)
+                .build();
+        WorkManager.getInstance(context).enqueueUniquePeriodicWork(
+                PERIODIC_WORK_NAME, ExistingPeriodicWorkPolicy.KEEP, request);
+    }
+
+    /**
+     * Queue a backup right away, without constraints. Watch MANUAL_WORK_NAME for the result.
+     */
+    public static void runNow(Context context, boolean snapshot) {
+        Data input = new Data.Builder()
+                .putBoolean(KEY_SNAPSHOT, snapshot)
+                .putBoolean(KEY_MANUAL, true)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(AutoBackupWorker.class)
+                .setInputData(input)
+                .build();
+        WorkManager.getInstance(context).enqueueUniqueWork(MANUAL_WORK_NAME, ExistingWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        boolean manual = getInputData().getBoolean(KEY_MANUAL, false);
+        boolean snapshot = getInputData().getBoolean(KEY_SNAPSHOT, false);
+
+        SharedPreferences prefs = PreferenceStore.getInstance(getApplicationContext()).getPreferences(PREFS_NAME);
+        String treeUri = prefs.getString(SAF_TREE_URI_KEY, "");
+        if (treeUri.isEmpty()) {
+            // No folder picked yet; nothing to back up to
+            Log.i(TAG, "No backup folder selected, skipping");
+            return manual ? failure("No saved document tree URI") : Result.success();
+        }
+
+        // Keep the export from competing with the UI thread for CPU
+        int previousPriority = Process.getThreadPriority(Process.myTid());
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        try {
+            synchronized (BACKUP_LOCK) {
+                BackupChain chain = BackupChain.forTree(getApplicationContext(), Uri.parse(treeUri));
+                if (snapshot) {
+                    chain.writeSnapshot();
+                } else {
+                    boolean full = chain.backup(false);
+                    Log.i(TAG, full ? "Wrote full backup" : "Wrote delta backup");
+                }
+            }
+            prefs.edit().putLong(LAST_BACKUP_KEY, System.currentTimeMillis()).apply();
+            return Result.success();
+        } catch (Exception e) {
+            Log.e(TAG, "Backup failed", e);
+            // The user is waiting on a manual backup; a scheduled one can try again later
+            if (!manual && getRunAttemptCount() + 1 < MAX_ATTEMPTS) {
+                return Result.retry();
+            }
+            return failure(e.getMessage());
+        } finally {
+            // The chain state must be on disk before the process can be let go
+            PreferenceStore.getInstance(getApplicationContext()).flush();
+            Process.setThreadPriority(previousPriority);
+        }
+    }
+
+    private static Result failure(String message) {
+        return Result.failure(new Data.Builder().putString(KEY_ERROR, message).build());
+    }
+}
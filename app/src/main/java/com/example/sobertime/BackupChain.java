@@ -0,0 +1,557 @@
+package com.example.sobertime;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.util.Log;
+
+import androidx.documentfile.provider.DocumentFile;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Keeps the backup folder as one full archive followed by numbered delta archives.
+ * Each backup after the first only writes what changed since the previous one; every
+ * MAX_DELTAS backups, or whenever the chain is broken, a new full archive starts a new
+ * chain and the old deltas are deleted. Restoring replays the full archive and then
+ * each delta that belongs to it, in order. The full archives of earlier chains are kept
+ * as older generations, up to the retention limit, and a restore falls back to the newest
+ * of them that can be read. A new full archive is written under a temporary name and only
+ * takes the current one's place once it is complete. A database snapshot, if one was
+ * made, is kept next to the chain as a separate file.
+ */
+public class BackupChain {
+
+    private static final String TAG = "BackupChain";
+
+    static final String FULL_BACKUP = "sobriety_tracker_backup.zip";
+    static final String LEGACY_BACKUP = "sobriety_tracker_backup.json";
+    static final String SNAPSHOT_BACKUP = "sobriety_tracker_snapshot.zip";
+    private static final String DELTA_PREFIX = "sobriety_tracker_backup.delta-";
+    private static final String ARCHIVE_SUFFIX = ".zip";
+    private static final String GENERATION_PREFIX = "sobriety_tracker_backup.gen-";
+    // A full archive being written; renamed to FULL_BACKUP once complete
+    static final String PENDING_BACKUP = "sobriety_tracker_backup.pending.zip";
+    private static final String MIME_TYPE = "application/zip";
+
+    // Full archives kept, counting the current one
+    static final int DEFAULT_RETAINED_GENERATIONS = 3;
+
+    // Bounds how many files a restore has to replay
+    static final int MAX_DELTAS = 13;
+
+    // Chain state; kept on the device, so a reinstall simply starts a new chain
+    private static final String PREFS_NAME = "BackupChainPrefs";
+    private static final String KEY_BASE_CREATED_AT = "base_created_at";
+    private static final String KEY_SEQUENCE = "sequence";
+    private static final String KEY_LAST_CREATED_AT = "last_created_at";
+
+    /**
+     * The folder the chain lives in. The app uses a SAF document tree; tests use a
+     * plain directory.
+     */
+    interface BackupStore {
+        List<String> list() throws IOException;
+
+        boolean exists(String name);
+
+        long length(String name);
+
+        // Replaces any existing file of that name
+        OutputStream create(String name, String mimeType) throws IOException;
+
+        InputStream open(String name) throws IOException;
+
+        boolean delete(String name);
+
+        // Replaces any existing file named to
+        boolean rename(String from, String to);
+    }
+
+    private final Context context;
+    private final BackupStore store;
+    private final SharedPreferences prefs;
+    private int retainedGenerations = DEFAULT_RETAINED_GENERATIONS;
+
+    BackupChain(Context context, BackupStore store) {
+        this.context = context.getApplicationContext();
+        this.store = store;
+        this.prefs = PreferenceStore.getInstance(this.context).getPreferences(PREFS_NAME);
+    }
+
+    /**
+     * Open the chain in a document tree the user granted access to
+     */
+    public static BackupChain forTree(Context context, Uri treeUri) throws IOException {
+        DocumentFile tree = DocumentFile.fromTreeUri(context, treeUri);
+        if (tree == null || !tree.exists()) {
+            throw new IOException("Cannot access the selected folder");
+        }
+        return new BackupChain(context, new DocumentTreeStore(context, tree));
+    }
+
+    /**
+     * Set how many full archives to keep, counting the current one. The oldest is
+     * deleted when a new chain starts.
+     */
+    public void setRetainedGenerations(int retainedGenerations) {
+        this.retainedGenerations = Math.max(1, retainedGenerations);
+    }
+
+    /**
+     * Write the next backup: a delta when the current chain is intact and not too long,
+     * otherwise a new full archive.
+     *
+     * @param forceFull start a new chain even if a delta would do
+     * @return true if a full archive was written
+     */
+    public boolean backup(boolean forceFull) throws IOException {
+        long createdAt = System.currentTimeMillis();
+        BackupWriter writer = new BackupWriter(context);
+
+        if (forceFull || !isChainIntact()) {
+            writeFull(writer, createdAt);
+            return true;
+        }
+
+        long base = prefs.getLong(KEY_BASE_CREATED_AT, 0);
+        int sequence = prefs.getInt(KEY_SEQUENCE, 0) + 1;
+        long since = prefs.getLong(KEY_LAST_CREATED_AT, base);
+        String name = deltaName(sequence);
+
+        OutputStream out = store.create(name, MIME_TYPE);
+        try {
+            writer.writeDeltaArchive(out, createdAt, base, sequence, since);
+            out.flush();
+        } catch (IOException e) {
+            // A half-written delta would end the chain at restore time; leave no trace of it
+            closeQuietly(out);
+            store.delete(name);
+            throw e;
+        }
+        out.close();
+
+        prefs.edit()
+                .putInt(KEY_SEQUENCE, sequence)
+                .putLong(KEY_LAST_CREATED_AT, createdAt)
+                .apply();
+        Log.i(TAG, "Wrote delta backup " + sequence + " since " + since);
+        return false;
+    }
+
+    private void writeFull(BackupWriter writer, long createdAt) throws IOException {
+        // Whatever happens below, the old chain is no longer something to append to
+        reset();
+
+        // The current archive and its deltas stay untouched until the new one is complete
+        OutputStream out = store.create(PENDING_BACKUP, MIME_TYPE);
+        try {
+            writer.writeArchive(out, createdAt);
+            out.flush();
+            out.close();
+        } catch (IOException e) {
+            closeQuietly(out);
+            store.delete(PENDING_BACKUP);
+            throw e;
+        }
+
+        rotateGenerations();
+        if (!store.rename(PENDING_BACKUP, FULL_BACKUP)) {
+            // The previous archive, if any, is generation 1 now and still restorable
+            store.delete(PENDING_BACKUP);
+            throw new IOException("Could not replace the full backup");
+        }
+
+        // The new full archive supersedes every delta and every deletion recorded so far
+        for (String name : store.list()) {
+            if (isDeltaName(name) && !store.delete(name)) {
+                Log.w(TAG, "Could not delete old delta backup " + name);
+            }
+        }
+        DatabaseHelper.getInstance(context).pruneTombstones(createdAt);
+
+        prefs.edit()
+                .putLong(KEY_BASE_CREATED_AT, createdAt)
+                .putInt(KEY_SEQUENCE, 0)
+                .putLong(KEY_LAST_CREATED_AT, createdAt)
+                .apply();
+        Log.i(TAG, "Wrote full backup");
+    }
+
+    // Move the current full archive down to generation 1, and every older one down a step.
+    // An older generation is its chain's starting point; the chain's deltas are not kept.
+    private void rotateGenerations() {
+        if (retainedGenerations < 2) {
+            // The complete new archive simply replaces the current one when it is renamed
+            return;
+        }
+        for (String name : new ArrayList<>(store.list())) {
+            Integer generation = generationOf(name);
+            if (generation != null && generation >= retainedGenerations - 1 && !store.delete(name)) {
+                Log.w(TAG, "Could not delete old backup generation " + name);
+            }
+        }
+        for (int generation = retainedGenerations - 2; generation >= 1; generation--) {
+            if (store.exists(generationName(generation))) {
+                store.rename(generationName(generation), generationName(generation + 1));
+            }
+        }
+        if (store.exists(FULL_BACKUP) && !store.rename(FULL_BACKUP, generationName(1))) {
+            Log.w(TAG, "Could not keep the previous full backup as an older generation");
+        }
+    }
+
+    // A delta can only be appended if the full archive and every earlier delta are still there
+    private boolean isChainIntact() throws IOException {
+        long base = prefs.getLong(KEY_BASE_CREATED_AT, 0);
+        int sequence = prefs.getInt(KEY_SEQUENCE, 0);
+        if (base == 0 || sequence >= MAX_DELTAS || !store.exists(FULL_BACKUP)) {
+            return false;
+        }
+        List<String> names = store.list();
+        for (int i = 1; i <= sequence; i++) {
+            if (!names.contains(deltaName(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Forget the current chain, so the next backup is a full one. Called after a
+     * restore, since the restored rows no longer line up with the recorded changes.
+     */
+    public void reset() {
+        prefs.edit().clear().apply();
+    }
+
+    /**
+     * Whether the folder holds anything to restore from
+     */
+    public boolean hasBackup() throws IOException {
+        return !restoreCandidates().isEmpty();
+    }
+
+    /**
+     * Restore the full archive and then every delta belonging to it. The journal is
+     * written to the database as each file is read; the other sections are merged,
+     * later files winning, and returned for the caller to apply. A delta that cannot
+     * be read ends the chain there: its journal is the last entry and is only committed
+     * once everything ahead of it was read, so the journal and the returned sections
+     * both reflect the last delta that was read. If the full archive itself cannot be
+     * read, the newest older generation that can is restored on its own, as its deltas
+     * were not kept. Archives written before the journal moved to the end don't have
+     * this guarantee: a section after their journal can fail once it was applied.
+     */
+    public JSONObject restore(BackupReader.ProgressListener progressListener) throws IOException {
+        BackupReader reader = new BackupReader(context);
+        reader.setProgressListener(progressListener);
+
+        List<String> candidates = restoreCandidates();
+        if (candidates.isEmpty()) {
+            throw new IOException("Backup file is empty or not found");
+        }
+
+        IOException failure = null;
+        for (String name : candidates) {
+            try {
+                JSONObject sections = restoreFrom(reader, name);
+                reset();
+                return sections;
+            } catch (IOException e) {
+                Log.w(TAG, "Could not restore from " + name, e);
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        // Report why the newest backup failed, not the oldest
+        throw failure;
+    }
+
+    // Full archives worth trying, newest first: the current one, older generations, then a legacy backup
+    private List<String> restoreCandidates() throws IOException {
+        TreeMap<Integer, String> generations = new TreeMap<>();
+        for (String name : store.list()) {
+            Integer generation = generationOf(name);
+            if (generation != null) {
+                generations.put(generation, name);
+            }
+        }
+
+        List<String> candidates = new ArrayList<>();
+        if (store.length(FULL_BACKUP) > 0) {
+            candidates.add(FULL_BACKUP);
+        }
+        for (String name : generations.values()) {
+            if (store.length(name) > 0) {
+                candidates.add(name);
+            }
+        }
+        if (store.length(LEGACY_BACKUP) > 0) {
+            candidates.add(LEGACY_BACKUP);
+        }
+        return candidates;
+    }
+
+    private JSONObject restoreFrom(BackupReader reader, String fullName) throws IOException {
+        // Order the deltas before restoring anything, so a stray file can't be applied
+        Map<Integer, String> deltas = fullName.equals(FULL_BACKUP) ? findDeltas() : new TreeMap<Integer, String>();
+
+        JSONObject sections = readFile(reader, fullName);
+        int sequence = 1;
+        while (deltas.containsKey(sequence)) {
+            String name = deltas.get(sequence);
+            JSONObject delta;
+            try {
+                delta = readFile(reader, name);
+            } catch (IOException e) {
+                Log.w(TAG, "Stopping restore before unreadable delta " + name, e);
+                break;
+            }
+            try {
+                mergeDelta(sections, delta);
+            } catch (JSONException e) {
+                throw new IOException("Invalid backup file format", e);
+            }
+            sequence++;
+        }
+        Log.i(TAG, "Restored " + fullName + " and " + (sequence - 1) + " deltas");
+        return sections;
+    }
+
+    /**
+     * Write a fast snapshot of the database file and preferences, replacing the previous one
+     */
+    public void writeSnapshot() throws IOException {
+        OutputStream out = store.create(SNAPSHOT_BACKUP, MIME_TYPE);
+        try {
+            new SnapshotBackup(context).write(out);
+            out.flush();
+        } catch (IOException e) {
+            closeQuietly(out);
+            store.delete(SNAPSHOT_BACKUP);
+            throw e;
+        }
+        out.close();
+        Log.i(TAG, "Wrote database snapshot");
+    }
+
+    public boolean hasSnapshot() {
+        return store.exists(SNAPSHOT_BACKUP);
+    }
+
+    /**
+     * Swap in the database from the snapshot and return its preference values. The
+     * chain is reset, as the restored rows no longer line up with the recorded changes.
+     */
+    public JSONObject restoreSnapshot() throws IOException {
+        if (!store.exists(SNAPSHOT_BACKUP) || store.length(SNAPSHOT_BACKUP) == 0) {
+            throw new IOException("Snapshot file not found");
+        }
+        InputStream in = store.open(SNAPSHOT_BACKUP);
+        try {
+            JSONObject sections = new SnapshotBackup(context).restore(in);
+            reset();
+            return sections;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    // Deltas whose manifest names the current full archive as their base, by sequence
+    private Map<Integer, String> findDeltas() throws IOException {
+        long base = readManifest(FULL_BACKUP).optLong("created_at");
+        Map<Integer, String> deltas = new TreeMap<>();
+        for (String name : store.list()) {
+            if (!isDeltaName(name)) {
+                continue;
+            }
+            try {
+                JSONObject manifest = readManifest(name);
+                if (BackupWriter.TYPE_DELTA.equals(manifest.optString("type"))
+                        && manifest.optLong("base_created_at") == base) {
+                    deltas.put(manifest.optInt("sequence"), name);
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Skipping unreadable delta " + name, e);
+            }
+        }
+        return deltas;
+    }
+
+    private JSONObject readManifest(String name) throws IOException {
+        InputStream in = store.open(name);
+        try {
+            return BackupReader.readManifest(in);
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    private JSONObject readFile(BackupReader reader, String name) throws IOException {
+        InputStream in = store.open(name);
+        try {
+            return reader.read(in, store.length(name));
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    // Later sections replace earlier ones, except buddies, which a delta only holds in part
+    private static void mergeDelta(JSONObject sections, JSONObject delta) throws JSONException {
+        Iterator<String> keys = delta.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!key.equals("accountability_buddies") && !key.equals("accountability_buddies_deleted")) {
+                sections.put(key, delta.get(key));
+            }
+        }
+
+        Map<Long, JSONObject> buddies = new LinkedHashMap<>();
+        JSONArray base = sections.optJSONArray("accountability_buddies");
+        for (int i = 0; base != null && i < base.length(); i++) {
+            JSONObject buddy = base.getJSONObject(i);
+            buddies.put(buddy.optLong("id"), buddy);
+        }
+        JSONArray deleted = delta.optJSONArray("accountability_buddies_deleted");
+        for (int i = 0; deleted != null && i < deleted.length(); i++) {
+            buddies.remove(deleted.getLong(i));
+        }
+        JSONArray changed = delta.optJSONArray("accountability_buddies");
+        for (int i = 0; changed != null && i < changed.length(); i++) {
+            JSONObject buddy = changed.getJSONObject(i);
+            buddies.put(buddy.optLong("id"), buddy);
+        }
+        sections.put("accountability_buddies", new JSONArray(buddies.values()));
+    }
+
+    static String deltaName(int sequence) {
+        return DELTA_PREFIX + String.format(Locale.US, "%03d", sequence) + ARCHIVE_SUFFIX;
+    }
+
+    static String generationName(int generation) {
+        return GENERATION_PREFIX + generation + ARCHIVE_SUFFIX;
+    }
+
+    private static Integer generationOf(String name) {
+        if (name == null || !name.startsWith(GENERATION_PREFIX) || !name.endsWith(ARCHIVE_SUFFIX)) {
+            return null;
+        }
+        try {
+            return Integer.parseInt(name.substring(GENERATION_PREFIX.length(), name.length() - ARCHIVE_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isDeltaName(String name) {
+        return name != null && name.startsWith(DELTA_PREFIX) && name.endsWith(ARCHIVE_SUFFIX);
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                Log.e(TAG, "Error closing backup stream", e);
+            }
+        }
+    }
+
+    // The folder picked with the Storage Access Framework
+    private static class DocumentTreeStore implements BackupStore {
+
+        private final Context context;
+        private final DocumentFile tree;
+
+        DocumentTreeStore(Context context, DocumentFile tree) {
+            this.context = context.getApplicationContext();
+            this.tree = tree;
+        }
+
+        @Override
+        public List<String> list() {
+            List<String> names = new ArrayList<>();
+            for (DocumentFile file : tree.listFiles()) {
+                names.add(file.getName());
+            }
+            return names;
+        }
+
+        @Override
+        public boolean exists(String name) {
+            DocumentFile file = tree.findFile(name);
+            return file != null && file.exists();
+        }
+
+        @Override
+        public long length(String name) {
+            DocumentFile file = tree.findFile(name);
+            return file != null ? file.length() : -1;
+        }
+
+        @Override
+        public OutputStream create(String name, String mimeType) throws IOException {
+            if (!tree.canWrite()) {
+                throw new IOException("Cannot access or write to the selected folder");
+            }
+            DocumentFile existing = tree.findFile(name);
+            if (existing != null && !existing.delete()) {
+                Log.w(TAG, "Could not delete existing backup file " + name + ", but continuing anyway");
+            }
+            DocumentFile file = tree.createFile(mimeType, name);
+            if (file == null) {
+                throw new IOException("Failed to create backup file");
+            }
+            OutputStream out = context.getContentResolver().openOutputStream(file.getUri());
+            if (out == null) {
+                throw new IOException("Failed to open output stream");
+            }
+            return out;
+        }
+
+        @Override
+        public InputStream open(String name) throws IOException {
+            DocumentFile file = tree.findFile(name);
+            if (file == null || !file.canRead()) {
+                throw new IOException("Cannot read backup file " + name);
+            }
+            InputStream in = context.getContentResolver().openInputStream(file.getUri());
+            if (in == null) {
+                throw new IOException("Failed to open input stream");
+            }
+            return in;
+        }
+
+        @Override
+        public boolean delete(String name) {
+            DocumentFile file = tree.findFile(name);
+            return file == null || file.delete();
+        }
+
+        @Override
+        public boolean rename(String from, String to) {
+            DocumentFile file = tree.findFile(from);
+            if (file == null) {
+                return false;
+            }
+            delete(to);
+            return file.renameTo(to);
+        }
+    }
+}
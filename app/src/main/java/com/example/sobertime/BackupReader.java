@@ -0,0 +1,417 @@
+package com.example.sobertime;
+
+import android.content.Context;
+import android.util.JsonReader;
+import android.util.JsonToken;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads a backup archive or a plain JSON backup with a pull parser. The journal is inserted into the database
+ * while it is being parsed, so restoring never holds more than one entry in memory.
+ * Every other section is small and is handed back as a JSONObject for the caller
+ * to apply. A full backup replaces the journal; a delta archive applies its changed
+ * and deleted entries on top of what is there. Archives carry the journal as their last
+ * entry, so an archive applies to the journal whole or not at all.
+ */
+public class BackupReader {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // Report progress every this many journal entries
+    private static final int PROGRESS_INTERVAL = 1000;
+
+    /**
+     * Called on the database writer thread while the journal is being restored
+     */
+    public interface ProgressListener {
+        void onProgress(int journalEntries, long bytesRead, long totalBytes);
+    }
+
+    private final DatabaseHelper databaseHelper;
+    private ProgressListener progressListener;
+
+    public BackupReader(Context context) {
+        this.databaseHelper = DatabaseHelper.getInstance(context);
+    }
+
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    /**
+     * Read only the manifest of an archive, e.g. to order the files of a backup chain
+     * before restoring any of them. The stream is not closed.
+     *
+     * @throws IOException if the stream is not a backup archive this version can read
+     */
+    public static JSONObject readManifest(InputStream in) throws IOException {
+        try {
+            return readManifest(new ZipInputStream(new BufferedInputStream(in, BUFFER_SIZE)));
+        } catch (JSONException | IllegalStateException e) {
+            throw new IOException("Invalid backup file format", e);
+        }
+    }
+
+    /**
+     * Restore the journal from in and return the remaining sections. Zip archives and
+     * plain JSON backups are told apart by their first bytes.
+     *
+     * @param totalBytes size of the backup for progress reporting, or -1 if unknown
+     * @throws IOException if the stream is not a backup or cannot be parsed; the journal
+     *         is left untouched unless its section was read completely. Archives write
+     *         the journal last, so for them a failure anywhere leaves the journal alone.
+     *         Archives written before that order, and plain backups, may fail in a
+     *         section after the journal was already replaced.
+     */
+    public JSONObject read(InputStream in, long totalBytes) throws IOException {
+        BufferedInputStream buffered = new BufferedInputStream(in, BUFFER_SIZE);
+        boolean zip = isZip(buffered);
+        CountingInputStream counter = new CountingInputStream(buffered);
+        try {
+            if (zip) {
+                return readArchive(new ZipInputStream(counter), counter, totalBytes);
+            }
+            return readPlain(newJsonReader(counter), counter, totalBytes);
+        } catch (JSONException e) {
+            throw new IOException("Invalid backup file format", e);
+        } catch (IllegalStateException e) {
+            // JsonReader reports a token of the wrong type this way
+            throw new IOException("Invalid backup file format", e);
+        }
+    }
+
+    // Every zip file starts with a local file header, "PK\3\4"
+    private static boolean isZip(InputStream in) throws IOException {
+        in.mark(4);
+        byte[] magic = new byte[4];
+        int read = 0;
+        while (read < magic.length) {
+            int count = in.read(magic, read, magic.length - read);
+            if (count == -1) {
+                break;
+            }
+            read += count;
+        }
+        in.reset();
+        return read == 4 && magic[0] == 'P' && magic[1] == 'K' && magic[2] == 3 && magic[3] == 4;
+    }
+
+    // The older format: one JSON object with every section as a top-level key
+    private JSONObject readPlain(JsonReader reader, CountingInputStream counter, long totalBytes)
+            throws IOException, JSONException {
+        JSONObject sections = new JSONObject();
+        boolean isBackup = false;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            // The same key fields the plain JSON check has always looked for
+            isBackup |= name.equals("journal_entries") || name.equals("settings")
+                    || name.equals("sobriety_start_date");
+
+            if (name.equals("journal_entries")) {
+                restoreJournal(reader, counter, totalBytes, null, null);
+            } else {
+                sections.put(name, readValue(reader));
+            }
+        }
+        reader.endObject();
+
+        if (!isBackup) {
+            throw new IOException("Invalid backup file format");
+        }
+        return sections;
+    }
+
+    // The first entry of every archive; archives without a type predate deltas and are full
+    private static JSONObject readManifest(ZipInputStream zip) throws IOException, JSONException {
+        ZipEntry entry = zip.getNextEntry();
+        if (entry == null || !entry.getName().equals(BackupWriter.MANIFEST_ENTRY)) {
+            throw new IOException("Invalid backup file format");
+        }
+        Object manifest = readValue(newJsonReader(zip));
+        if (!(manifest instanceof JSONObject)
+                || !BackupWriter.ARCHIVE_FORMAT.equals(((JSONObject) manifest).optString("format"))) {
+            throw new IOException("Invalid backup file format");
+        }
+        if (((JSONObject) manifest).optInt("version") > BackupWriter.ARCHIVE_VERSION) {
+            throw new IOException("Backup was made by a newer version of the app");
+        }
+        return (JSONObject) manifest;
+    }
+
+    // A manifest entry followed by one JSON entry per section
+    private JSONObject readArchive(ZipInputStream zip, CountingInputStream counter, long totalBytes)
+            throws IOException, JSONException {
+        JSONObject manifest = readManifest(zip);
+        boolean delta = BackupWriter.TYPE_DELTA.equals(manifest.optString("type", BackupWriter.TYPE_FULL));
+        // A delta's deletions are held until its journal entries arrive, so both apply in one transaction
+        long[] deletedJournalIds = delta ? new long[0] : null;
+        boolean journalRestored = false;
+
+        // Hand back the same keys a plain backup has, so callers don't care which format it was
+        JSONObject sections = new JSONObject();
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            String name = entry.getName();
+            if (!name.endsWith(".json")) {
+                continue;
+            }
+            String section = name.substring(0, name.length() - ".json".length());
+            JsonReader reader = newJsonReader(zip);
+
+            if (section.equals("journal_entries")) {
+                restoreJournal(reader, counter, totalBytes, deletedJournalIds, zip);
+                journalRestored = true;
+            } else if (delta && section.equals("journal_deleted")) {
+                deletedJournalIds = readIds(reader);
+            } else if (section.equals(BackupWriter.PREFERENCES_SECTION)) {
+                Object value = readValue(reader);
+                if (!(value instanceof JSONObject)) {
+                    throw new IOException("Invalid backup file format");
+                }
+                JSONObject preferences = (JSONObject) value;
+                JSONArray keys = preferences.names();
+                for (int i = 0; keys != null && i < keys.length(); i++) {
+                    sections.put(keys.getString(i), preferences.get(keys.getString(i)));
+                }
+            } else {
+                sections.put(section, readValue(reader));
+            }
+        }
+
+        if (delta && !journalRestored && deletedJournalIds.length > 0) {
+            databaseHelper.applyJournalChanges(deletedJournalIds, Collections.<JournalEntry>emptyIterator());
+        }
+        return sections;
+    }
+
+    private static long[] readIds(JsonReader reader) throws IOException {
+        long[] ids = new long[16];
+        int count = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2);
+            }
+            ids[count++] = reader.nextLong();
+        }
+        reader.endArray();
+        return Arrays.copyOf(ids, count);
+    }
+
+    // Not closed by the callers, that would close the zip or the caller's stream
+    private static JsonReader newJsonReader(InputStream in) {
+        return new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    // Replace the journal, or with the deleted ids of a delta, apply the entries on top of it.
+    // A zip entry is read to its end before the transaction commits, so a truncated entry or
+    // a bad checksum behind the closing bracket still rolls it back.
+    private void restoreJournal(JsonReader reader, CountingInputStream counter, long totalBytes,
+                                long[] deletedIds, InputStream zipEntry) throws IOException {
+        reader.beginArray();
+        JournalEntryIterator entries = new JournalEntryIterator(reader, counter, totalBytes, zipEntry);
+        try {
+            if (deletedIds == null) {
+                databaseHelper.replaceJournal(entries);
+            } else {
+                databaseHelper.applyJournalChanges(deletedIds, entries);
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        reader.endArray();
+    }
+
+    // Pulls one entry at a time out of the journal_entries array
+    private class JournalEntryIterator implements Iterator<JournalEntry> {
+
+        private final JsonReader reader;
+        private final CountingInputStream counter;
+        private final long totalBytes;
+        private final InputStream zipEntry;
+        private int count;
+
+        JournalEntryIterator(JsonReader reader, CountingInputStream counter, long totalBytes, InputStream zipEntry) {
+            this.reader = reader;
+            this.counter = counter;
+            this.totalBytes = totalBytes;
+            this.zipEntry = zipEntry;
+        }
+
+        @Override
+        public boolean hasNext() {
+            try {
+                if (reader.hasNext()) {
+                    return true;
+                }
+                if (zipEntry != null) {
+                    // ZipInputStream checks the entry's size and CRC once it reaches the end
+                    byte[] skipped = new byte[BUFFER_SIZE];
+                    while (zipEntry.read(skipped) != -1) {
+                        // Past the closing bracket, nothing left to parse
+                    }
+                }
+                return false;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public JournalEntry next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            try {
+                JournalEntry entry = readJournalEntry(reader);
+                count++;
+                if (progressListener != null && count % PROGRESS_INTERVAL == 0) {
+                    progressListener.onProgress(count, counter.getCount(), totalBytes);
+                }
+                return entry;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static JournalEntry readJournalEntry(JsonReader reader) throws IOException {
+        // Start from nulls rather than the empty-entry defaults so missing fields stay missing
+        JournalEntry entry = new JournalEntry(null, null, null, 0, null);
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    entry.setId(reader.nextLong());
+                    break;
+                case "timestamp":
+                    entry.setTimestamp(reader.nextLong());
+                    break;
+                case "title":
+                    entry.setTitle(reader.nextString());
+                    break;
+                case "content":
+                    entry.setContent(reader.nextString());
+                    break;
+                case "mood":
+                    entry.setMood(reader.nextString());
+                    break;
+                case "craving_level":
+                    entry.setCravingLevel(reader.nextInt());
+                    break;
+                case "trigger":
+                    entry.setTrigger(reader.nextString());
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+
+        // Both columns are NOT NULL; fail the whole restore rather than drop the entry
+        if (entry.getTitle() == null || entry.getContent() == null) {
+            throw new IOException("Journal entry is missing its title or content");
+        }
+        return entry;
+    }
+
+    // Read any value into the org.json types the section restore code expects
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                JSONObject object = new JSONObject();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    object.put(reader.nextName(), readValue(reader));
+                }
+                reader.endObject();
+                return object;
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NUMBER:
+                String number = reader.nextString();
+                try {
+                    return Long.parseLong(number);
+                } catch (NumberFormatException e) {
+                    return Double.parseDouble(number);
+                }
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    // Counts bytes pulled from the underlying stream for progress reporting
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
@@ -39,9 +39,12 @@ import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 
 // Add these imports for Storage Access Framework
 import android.app.Activity;
@@ -50,6 +53,9 @@ import android.net.Uri;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.documentfile.provider.DocumentFile;
+import androidx.lifecycle.Observer;
+import androidx.work.WorkInfo;
+import androidx.work.WorkManager;
 
 // Keep existing Android version imports
 import android.os.Build;
@@ -86,6 +92,8 @@ public class BackupRestoreActivity extends BaseActivity {
     private static final String SAF_TREE_URI_KEY = "saf_tree_uri";
     private ActivityResultLauncher<Intent> folderPickerLauncher;
     private boolean isBackupOperation; // Flag to track if we're doing backup or restore
+    private boolean isSnapshotOperation; // Database file snapshot instead of the JSON backup chain
+    private boolean waitingForBackup; // A backup was queued from this screen and hasn't finished
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -102,7 +110,7 @@ public class BackupRestoreActivity extends BaseActivity {
         
         // Initialize database and preferences
         databaseHelper = DatabaseHelper.getInstance(this);
-        preferences = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        preferences = PreferenceStore.getInstance(this).getPreferences(PREFS_NAME);
         
         // Initialize views
         backupButton = findViewById(R.id.backupButton);
@@ -131,6 +139,9 @@ public class BackupRestoreActivity extends BaseActivity {
                             
                             Log.i("BackupRestore", "Folder permission granted and saved: " + treeUri);
                             
+                            // With a folder to write to, daily automatic backups can start
+                            AutoBackupWorker.schedule(BackupRestoreActivity.this);
+                            
                             // Continue with operation
                             if (isBackupOperation) {
                                 performBackup();
@@ -149,6 +160,7 @@ public class BackupRestoreActivity extends BaseActivity {
         
         // Display last backup time
         updateLastBackupText();
+        observeBackupWork();
         
         // Set up click listeners
         backupButton.setOnClickListener(new View.OnClickListener() {
@@ -202,6 +214,16 @@ public class BackupRestoreActivity extends BaseActivity {
         builder.setPositiveButton("Backup", new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialog, int which) {
+                isSnapshotOperation = false;
+                createBackup();
+            }
+        });
+        
+        // Copies the database file as a whole; quicker than the backup above for a large journal
+        builder.setNeutralButton("Fast Snapshot", new DialogInterface.OnClickListener() {
+            @Override
+            public void onClick(DialogInterface dialog, int which) {
+                isSnapshotOperation = true;
                 createBackup();
             }
         });
@@ -215,11 +237,14 @@ public class BackupRestoreActivity extends BaseActivity {
         builder.setTitle("Restore Data");
         
         String message;
+        boolean hasSnapshot = false;
         if (hasExistingSafPermission()) {
             String savedUriString = preferences.getString(SAF_TREE_URI_KEY, "");
             Uri savedUri = Uri.parse(savedUriString);
             DocumentFile folder = DocumentFile.fromTreeUri(this, savedUri);
-            DocumentFile backupFile = folder != null ? folder.findFile(BACKUP_FILENAME) : null;
+            DocumentFile backupFile = folder != null ? findSafBackupFile(folder) : null;
+            DocumentFile snapshotFile = folder != null ? folder.findFile(BackupChain.SNAPSHOT_BACKUP) : null;
+            hasSnapshot = snapshotFile != null && snapshotFile.exists();
             
             if (backupFile != null && backupFile.exists()) {
                 String folderName = folder.getName();
@@ -240,10 +265,21 @@ public class BackupRestoreActivity extends BaseActivity {
         builder.setPositiveButton("Restore", new DialogInterface.OnClickListener() {
             @Override
             public void onClick(DialogInterface dialog, int which) {
+                isSnapshotOperation = false;
                 restoreBackup();
             }
         });
         
+        if (hasSnapshot) {
+            builder.setNeutralButton("Restore Snapshot", new DialogInterface.OnClickListener() {
+                @Override
+                public void onClick(DialogInterface dialog, int which) {
+                    isSnapshotOperation = true;
+                    restoreBackup();
+                }
+            });
+        }
+        
         builder.setNegativeButton("Cancel", null);
         builder.show();
     }
@@ -325,112 +361,54 @@ public class BackupRestoreActivity extends BaseActivity {
     }
     
     /**
-     * Creates and writes the backup file using the SAF DocumentFile API
+     * Queues the backup with WorkManager, so it keeps going if this screen is closed.
+     * The result arrives through observeBackupWork().
      */
     private void performBackup() {
-        new Thread(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    // Create JSON object for all app data
-                    final JSONObject backupData = new JSONObject();
-                    
-                    // Add journal entries
-                    backupData.put("journal_entries", getJournalEntriesJson());
-                    
-                    // Add settings
-                    backupData.put("settings", getSettingsJson());
-                    
-                    // Add sobriety start date from SobrietyTracker
-                    long startDate = sobrietyTracker.getSobrietyStartDate();
-                    backupData.put("sobriety_start_date", startDate);
-                    
-                    // Add notification settings
-                    JSONObject notificationSettings = new JSONObject();
-                    SharedPreferences notifPrefs = getSharedPreferences("SobrietyNotificationPrefs", MODE_PRIVATE);
-                    notificationSettings.put("notifications_enabled", notifPrefs.getBoolean("notifications_enabled", true));
-                    notificationSettings.put("morning_notification_enabled", notifPrefs.getBoolean("morning_notification_enabled", true));
-                    notificationSettings.put("evening_notification_enabled", notifPrefs.getBoolean("evening_notification_enabled", true));
-                    notificationSettings.put("milestone_notification_enabled", notifPrefs.getBoolean("milestone_notification_enabled", true));
-                    notificationSettings.put("custom_notification_times", notifPrefs.getString("custom_notification_times", ""));
-                    
-                    backupData.put("notification_settings", notificationSettings);
-                    
-                    // Add dark theme settings from both possible locations
-                    SharedPreferences themePrefs = getSharedPreferences("ThemePreferences", MODE_PRIVATE);
-                    JSONObject themeSettings = new JSONObject();
-                    themeSettings.put("dark_mode_enabled", themePrefs.getBoolean("dark_mode_enabled", false));
-                    themeSettings.put("follow_system_theme", themePrefs.getBoolean("follow_system_theme", true));
-                    
-                    // Check alternate theme location
-                    SharedPreferences mainPrefs = getSharedPreferences("SobrietyTrackerPrefs", MODE_PRIVATE);
-                    boolean nightModeEnabled = mainPrefs.getBoolean("night_mode_enabled", false);
-                    themeSettings.put("night_mode_enabled", nightModeEnabled);
-                    
-                    backupData.put("theme_settings", themeSettings);
-                    
-                    // Add intrusive notification settings
-                    SharedPreferences intrusivePrefs = getSharedPreferences("IntrusiveNotificationPrefs", MODE_PRIVATE);
-                    JSONObject intrusiveSettings = new JSONObject();
-                    intrusiveSettings.put("intrusive_enabled", intrusivePrefs.getBoolean("intrusive_enabled", false));
-                    intrusiveSettings.put("intrusive_frequency", intrusivePrefs.getString("intrusive_frequency", "medium"));
-                    intrusiveSettings.put("intrusive_start_hour", intrusivePrefs.getInt("intrusive_start_hour", 9));
-                    intrusiveSettings.put("intrusive_end_hour", intrusivePrefs.getInt("intrusive_end_hour", 21));
-                    backupData.put("intrusive_notification_settings", intrusiveSettings);
-                    
-                    // Add accountability buddies
-                    JSONArray buddiesArray = getAccountabilityBuddiesJson();
-                    backupData.put("accountability_buddies", buddiesArray);
-                    
-                    // Add community support resources
-                    JSONArray resourcesArray = getSupportResourcesJson();
-                    backupData.put("support_resources", resourcesArray);
-                    
-                    // Add emergency contacts
-                    JSONObject emergencyContacts = getEmergencyContactsJson();
-                    backupData.put("emergency_contacts", emergencyContacts);
-                    
-                    // Add achievements
-                    JSONArray achievementsArray = getAchievementsJson();
-                    backupData.put("achievements", achievementsArray);
-                    
-                    // Write backup data to SAF document
-                    writeSafBackupFile(backupData.toString());
-                    
-                    // Update last backup time
-                    SharedPreferences.Editor editor = preferences.edit();
-                    editor.putLong(LAST_BACKUP_KEY, System.currentTimeMillis());
-                    editor.apply();
-                    
-                    // Update UI on main thread
-                    runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            progressBar.setVisibility(View.GONE);
-                            backupButton.setEnabled(true);
-                            restoreButton.setEnabled(true);
-                            updateLastBackupText();
-                            Toast.makeText(BackupRestoreActivity.this, 
-                                          "Backup created successfully", 
-                                          Toast.LENGTH_LONG).show();
+        waitingForBackup = true;
+        AutoBackupWorker.runNow(this, isSnapshotOperation);
+    }
+    
+    /**
+     * Follow the on-demand backup work, including one started before this screen was recreated
+     */
+    private void observeBackupWork() {
+        WorkManager.getInstance(this).getWorkInfosForUniqueWorkLiveData(AutoBackupWorker.MANUAL_WORK_NAME)
+                .observe(this, new Observer<List<WorkInfo>>() {
+                    @Override
+                    public void onChanged(List<WorkInfo> workInfos) {
+                        WorkInfo workInfo = workInfos == null || workInfos.isEmpty() ? null : workInfos.get(0);
+                        if (workInfo == null) {
+                            return;
                         }
-                    });
-                } catch (final Exception e) {
-                    e.printStackTrace();
-                    
-                    // Show error on main thread
-                    runOnUiThread(new Runnable() {
-                        @Override
-                        public void run() {
-                            progressBar.setVisibility(View.GONE);
-                            backupButton.setEnabled(true);
-                            restoreButton.setEnabled(true);
-                            Toast.makeText(BackupRestoreActivity.this, "Backup failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                        
+                        if (!workInfo.getState().isFinished()) {
+                            progressBar.setVisibility(View.VISIBLE);
+                            backupButton.setEnabled(false);
+                            restoreButton.setEnabled(false);
+                            return;
                         }
-                    });
-                }
-            }
-        }).start();
+                        
+                        progressBar.setVisibility(View.GONE);
+                        backupButton.setEnabled(true);
+                        restoreButton.setEnabled(true);
+                        updateLastBackupText();
+                        
+                        // Only report on a backup started from this screen
+                        if (!waitingForBackup) {
+                            return;
+                        }
+                        waitingForBackup = false;
+                        if (workInfo.getState() == WorkInfo.State.SUCCEEDED) {
+                            Toast.makeText(BackupRestoreActivity.this,
+                                          "Backup created successfully",
+                                          Toast.LENGTH_LONG).show();
+                        } else {
+                            String error = workInfo.getOutputData().getString(AutoBackupWorker.KEY_ERROR);
+                            Toast.makeText(BackupRestoreActivity.this, "Backup failed: " + error, Toast.LENGTH_LONG).show();
+                        }
+                    }
+                });
     }
     
     /**
@@ -441,22 +419,18 @@ public class BackupRestoreActivity extends BaseActivity {
             @Override
             public void run() {
                 try {
-                    // Read backup data from SAF document
-                    String backupData = readSafBackupFile();
-                    
-                    if (backupData == null || backupData.isEmpty()) {
-                        throw new IOException("Backup file is empty or not found");
-                    }
-                    
-                    if (!isValidBackupContent(backupData)) {
-                        throw new IOException("Invalid backup file format");
-                    }
-                    
-                    JSONObject backupJson = new JSONObject(backupData);
+                    // Stream the backup from the SAF document; the journal is restored
+                    // while it is parsed and the remaining sections come back as JSON.
+                    // A snapshot swaps in the whole database and only returns the preferences.
+                    final boolean snapshot = isSnapshotOperation;
+                    JSONObject backupJson = snapshot
+                            ? openSafBackupChain().restoreSnapshot()
+                            : readSafBackupFile();
                     
                     // Restore all data
-                    restoreJournalEntries(backupJson.getJSONArray("journal_entries"));
-                    restoreSettings(backupJson.getJSONObject("settings"));
+                    if (backupJson.has("settings")) {
+                        restoreSettings(backupJson.getJSONObject("settings"));
+                    }
                     
                     // Restore sobriety start date using SobrietyTracker
                     if (backupJson.has("sobriety_start_date")) {
@@ -464,10 +438,25 @@ public class BackupRestoreActivity extends BaseActivity {
                         sobrietyTracker.setSobrietyStartDate(startDate);
                     }
                     
+                    // Restore the histories after the settings and start date, which add rows of their own
+                    if (backupJson.has("sobriety_periods")) {
+                        restoreSobrietyPeriods(backupJson.getJSONArray("sobriety_periods"));
+                    }
+                    if (backupJson.has("settings_history")) {
+                        restoreSettingsHistory(backupJson.getJSONArray("settings_history"));
+                    } else if (!snapshot) {
+                        // Older backups have no history; restoring the settings recorded this
+                        // device's rates for the past, so price every day at the restored ones
+                        databaseHelper.replaceSettingsHistory(Collections.<ContentValues>emptyList());
+                    }
+                    if (backupJson.has("check_ins")) {
+                        restoreCheckIns(backupJson.getJSONArray("check_ins"));
+                    }
+                    
                     // Restore notification settings
                     if (backupJson.has("notification_settings")) {
                         JSONObject notificationSettings = backupJson.getJSONObject("notification_settings");
-                        SharedPreferences notifPrefs = getSharedPreferences("SobrietyNotificationPrefs", MODE_PRIVATE);
+                        SharedPreferences notifPrefs = PreferenceStore.getInstance(BackupRestoreActivity.this).getPreferences("SobrietyNotificationPrefs");
                         SharedPreferences.Editor editor = notifPrefs.edit();
                         
                         editor.putBoolean("notifications_enabled", notificationSettings.optBoolean("notifications_enabled", true));
@@ -488,7 +477,7 @@ public class BackupRestoreActivity extends BaseActivity {
                         JSONObject themeSettings = backupJson.getJSONObject("theme_settings");
                         
                         // Restore to ThemePreferences
-                        SharedPreferences themePrefs = getSharedPreferences("ThemePreferences", MODE_PRIVATE);
+                        SharedPreferences themePrefs = PreferenceStore.getInstance(BackupRestoreActivity.this).getPreferences("ThemePreferences");
                         SharedPreferences.Editor themeEditor = themePrefs.edit();
                         
                         darkModeEnabled = themeSettings.optBoolean("dark_mode_enabled", false);
@@ -500,7 +489,7 @@ public class BackupRestoreActivity extends BaseActivity {
                         themeEditor.apply();
                         
                         // Restore to main preferences which may be used by some activities
-                        SharedPreferences mainPrefs = getSharedPreferences("SobrietyTrackerPrefs", MODE_PRIVATE);
+                        SharedPreferences mainPrefs = PreferenceStore.getInstance(BackupRestoreActivity.this).getPreferences("SobrietyTrackerPrefs");
                         SharedPreferences.Editor mainEditor = mainPrefs.edit();
                         mainEditor.putBoolean("night_mode_enabled", nightModeEnabled);
                         mainEditor.apply();
@@ -524,7 +513,7 @@ public class BackupRestoreActivity extends BaseActivity {
                     // Restore intrusive notification settings
                     if (backupJson.has("intrusive_notification_settings")) {
                         JSONObject intrusiveSettings = backupJson.getJSONObject("intrusive_notification_settings");
-                        SharedPreferences intrusivePrefs = getSharedPreferences("IntrusiveNotificationPrefs", MODE_PRIVATE);
+                        SharedPreferences intrusivePrefs = PreferenceStore.getInstance(BackupRestoreActivity.this).getPreferences("IntrusiveNotificationPrefs");
                         SharedPreferences.Editor editor = intrusivePrefs.edit();
                         
                         editor.putBoolean("intrusive_enabled", intrusiveSettings.optBoolean("intrusive_enabled", false));
@@ -538,7 +527,7 @@ public class BackupRestoreActivity extends BaseActivity {
                     // Restore emergency contacts
                     if (backupJson.has("emergency_contacts")) {
                         JSONObject emergencyContacts = backupJson.getJSONObject("emergency_contacts");
-                        SharedPreferences emergencyPrefs = getSharedPreferences("EmergencyContactPrefs", MODE_PRIVATE);
+                        SharedPreferences emergencyPrefs = PreferenceStore.getInstance(BackupRestoreActivity.this).getPreferences("EmergencyContactPrefs");
                         SharedPreferences.Editor editor = emergencyPrefs.edit();
                         
                         editor.putString("sponsor_name", emergencyContacts.optString("sponsor_name", ""));
@@ -572,6 +561,11 @@ public class BackupRestoreActivity extends BaseActivity {
                         restoreAchievements(achievementsArray);
                     }
                     
+                    // Whichever way the database came back, drop what was loaded from the old one:
+                    // a snapshot replaces every table, an archive the check-ins and achievements
+                    com.example.sobertime.SobrietyTracker.getInstance(BackupRestoreActivity.this).invalidateCheckInHistory();
+                    AchievementManager.getInstance(BackupRestoreActivity.this).reloadAchievements();
+                    
                     // Reschedule notifications based on restored settings - do this on UI thread
                     runOnUiThread(new Runnable() {
                         @Override
@@ -587,6 +581,7 @@ public class BackupRestoreActivity extends BaseActivity {
                             progressBar.setVisibility(View.GONE);
                             backupButton.setEnabled(true);
                             restoreButton.setEnabled(true);
+                            updateLastBackupText();
                             Toast.makeText(BackupRestoreActivity.this, "Data restored successfully", Toast.LENGTH_SHORT).show();
                         }
                     });
@@ -600,6 +595,7 @@ public class BackupRestoreActivity extends BaseActivity {
                             progressBar.setVisibility(View.GONE);
                             backupButton.setEnabled(true);
                             restoreButton.setEnabled(true);
+                            updateLastBackupText();
                             Toast.makeText(BackupRestoreActivity.this, "Restore failed: " + e.getMessage(), Toast.LENGTH_LONG).show();
                         }
                     });
@@ -609,150 +605,47 @@ public class BackupRestoreActivity extends BaseActivity {
     }
     
     /**
-     * Write backup data to a document file using SAF
+     * Open the backup chain in the saved SAF folder
      */
-    private void writeSafBackupFile(String data) throws IOException {
+    private BackupChain openSafBackupChain() throws IOException {
         String savedUriString = preferences.getString(SAF_TREE_URI_KEY, "");
         if (savedUriString.isEmpty()) {
             throw new IOException("No saved document tree URI");
         }
-        
-        Uri treeUri = Uri.parse(savedUriString);
-        DocumentFile tree = DocumentFile.fromTreeUri(this, treeUri);
-        
-        if (tree == null || !tree.exists() || !tree.canWrite()) {
-            throw new IOException("Cannot access or write to the selected folder");
-        }
-        
-        // Delete existing backup file if it exists
-        DocumentFile existing = tree.findFile(BACKUP_FILENAME);
-        if (existing != null) {
-            if (!existing.delete()) {
-                Log.w("BackupRestore", "Could not delete existing backup file, but continuing anyway");
-            }
-        }
-        
-        // Create new backup file
-        DocumentFile newFile = tree.createFile("application/json", BACKUP_FILENAME);
-        if (newFile == null) {
-            throw new IOException("Failed to create backup file");
-        }
-        
-        // Write data to the file
-        OutputStream out = null;
-        try {
-            out = getContentResolver().openOutputStream(newFile.getUri());
-            if (out == null) {
-                throw new IOException("Failed to open output stream");
-            }
-            out.write(data.getBytes());
-            out.flush();
-            
-            Log.i("BackupRestore", "Successfully wrote backup to SAF file: " + newFile.getUri());
-        } finally {
-            if (out != null) {
-                try {
-                    out.close();
-                } catch (IOException e) {
-                    Log.e("BackupRestore", "Error closing output stream", e);
-                }
-            }
-        }
+        return BackupChain.forTree(this, Uri.parse(savedUriString));
     }
     
     /**
-     * Read backup data from a document file using SAF
+     * Restore from the backup chain using SAF: the full archive, then each delta after it.
+     * The journal is written to the database as it is read; every other section is
+     * returned for the caller to apply.
      */
-    private String readSafBackupFile() throws IOException {
-        String savedUriString = preferences.getString(SAF_TREE_URI_KEY, "");
-        if (savedUriString.isEmpty()) {
-            throw new IOException("No saved document tree URI");
-        }
-        
-        Uri treeUri = Uri.parse(savedUriString);
-        DocumentFile tree = DocumentFile.fromTreeUri(this, treeUri);
-        
-        if (tree == null || !tree.exists() || !tree.canRead()) {
-            throw new IOException("Cannot access or read from the selected folder");
-        }
-        
-        // Find backup file
-        DocumentFile backupFile = tree.findFile(BACKUP_FILENAME);
-        if (backupFile == null || !backupFile.exists()) {
-            throw new IOException("Backup file not found");
-        }
-        
-        // Read data from the file
-        InputStream in = null;
-        try {
-            in = getContentResolver().openInputStream(backupFile.getUri());
-            if (in == null) {
-                throw new IOException("Failed to open input stream");
-            }
-            
-            ByteArrayOutputStream result = new ByteArrayOutputStream();
-            byte[] buffer = new byte[1024];
-            int length;
-            while ((length = in.read(buffer)) != -1) {
-                result.write(buffer, 0, length);
-            }
-            
-            String content = result.toString("UTF-8");
-            Log.i("BackupRestore", "Successfully read backup from SAF file: " + backupFile.getUri());
-            
-            return content;
-        } finally {
-            if (in != null) {
-                try {
-                    in.close();
-                } catch (IOException e) {
-                    Log.e("BackupRestore", "Error closing input stream", e);
-                }
+    private JSONObject readSafBackupFile() throws IOException {
+        return openSafBackupChain().restore(new BackupReader.ProgressListener() {
+            @Override
+            public void onProgress(final int journalEntries, long bytesRead, long totalBytes) {
+                final int percent = totalBytes > 0 ? (int) (100 * bytesRead / totalBytes) : -1;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        lastBackupText.setText(percent >= 0
+                                ? "Restoring journal: " + journalEntries + " entries (" + percent + "%)"
+                                : "Restoring journal: " + journalEntries + " entries");
+                    }
+                });
             }
-        }
-    }
-    
-    private JSONArray getJournalEntriesJson() throws JSONException {
-        JSONArray entriesArray = new JSONArray();
-        
-        SQLiteDatabase db = databaseHelper.getReadableDatabase();
-        Cursor cursor = db.query("journal", null, null, null, null, null, null);
-        
-        if (cursor.moveToFirst()) {
-            do {
-                JSONObject entry = new JSONObject();
-                entry.put("id", cursor.getLong(cursor.getColumnIndex("id")));
-                entry.put("timestamp", cursor.getLong(cursor.getColumnIndex("timestamp")));
-                entry.put("title", cursor.getString(cursor.getColumnIndex("title")));
-                entry.put("content", cursor.getString(cursor.getColumnIndex("content")));
-                entry.put("mood", cursor.getString(cursor.getColumnIndex("mood")));
-                entry.put("craving_level", cursor.getInt(cursor.getColumnIndex("craving_level")));
-                entry.put("trigger", cursor.getString(cursor.getColumnIndex("trigger")));
-                
-                entriesArray.put(entry);
-            } while (cursor.moveToNext());
-        }
-        
-        cursor.close();
-        return entriesArray;
+        });
     }
     
-    private JSONObject getSettingsJson() throws JSONException {
-        JSONObject settingsObject = new JSONObject();
-        
-        SQLiteDatabase db = databaseHelper.getReadableDatabase();
-        Cursor cursor = db.query("settings", null, null, null, null, null, null);
-        
-        if (cursor.moveToFirst()) {
-            do {
-                String key = cursor.getString(cursor.getColumnIndex("key"));
-                String value = cursor.getString(cursor.getColumnIndex("value"));
-                settingsObject.put(key, value);
-            } while (cursor.moveToNext());
+    /**
+     * Find the backup in the SAF folder, preferring an archive over an older plain JSON backup
+     */
+    private DocumentFile findSafBackupFile(DocumentFile tree) {
+        DocumentFile archive = tree.findFile(BackupChain.FULL_BACKUP);
+        if (archive != null && archive.exists()) {
+            return archive;
         }
-        
-        cursor.close();
-        return settingsObject;
+        return tree.findFile(BACKUP_FILENAME);
     }
     
     /**
@@ -773,25 +666,8 @@ public class BackupRestoreActivity extends BaseActivity {
         return "";
     }
     
-    /**
-     * Check if content is a valid backup by verifying it contains expected JSON fields
-     */
-    private boolean isValidBackupContent(String content) {
-        if (content == null || content.isEmpty()) {
-            return false;
-        }
-        
-        try {
-            JSONObject json = new JSONObject(content);
-            // Check for at least one of these key fields
-            return json.has("journal_entries") || json.has("settings") || json.has("sobriety_start_date");
-        } catch (JSONException e) {
-            return false;
-        }
-    }
-    
     private String readBackupFromFile() throws IOException {
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(this).getPreferences(PREFS_NAME);
         StringBuilder stringBuilder = new StringBuilder();
         boolean fileFound = false;
         String errorMessage = "";
@@ -1113,90 +989,91 @@ public class BackupRestoreActivity extends BaseActivity {
         return stringBuilder.toString();
     }
 
-    private void restoreJournalEntries(JSONArray entriesArray) throws JSONException {
-        SQLiteDatabase db = databaseHelper.getWritableDatabase();
-        
-        // Clear existing entries
-        db.delete("journal", null, null);
-        
-        // Insert backup entries
-        for (int i = 0; i < entriesArray.length(); i++) {
-            JSONObject entryJson = entriesArray.getJSONObject(i);
-            
-            ContentValues values = new ContentValues();
-            values.put("id", entryJson.getLong("id"));
-            values.put("timestamp", entryJson.getLong("timestamp"));
-            values.put("title", entryJson.getString("title"));
-            values.put("content", entryJson.getString("content"));
-            
-            // Handle nullable fields
-            if (!entryJson.isNull("mood")) {
-                values.put("mood", entryJson.getString("mood"));
-            }
-            
-            values.put("craving_level", entryJson.getInt("craving_level"));
-            
-            if (!entryJson.isNull("trigger")) {
-                values.put("trigger", entryJson.getString("trigger"));
+    // Delete matching rows and insert the replacements on the database writer thread, in
+    // one transaction so a failure keeps the old rows
+    private void replaceTableRows(final String table, final String deleteWhere, final List<ContentValues> rows) {
+        databaseHelper.runWrite(() -> {
+            SQLiteDatabase db = databaseHelper.getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.delete(table, deleteWhere, null);
+                for (ContentValues values : rows) {
+                    db.insert(table, null, values);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
             }
-            
-            db.insert("journal", null, values);
-        }
+            return null;
+        });
     }
     
     private void restoreSettings(JSONObject settingsObject) throws JSONException {
-        SQLiteDatabase db = databaseHelper.getWritableDatabase();
-        
-        // Clear existing settings
-        db.delete("settings", null, null);
+        Map<String, String> settings = new HashMap<>();
         
-        // Insert backup settings
         JSONArray keys = settingsObject.names();
         if (keys != null) {
             for (int i = 0; i < keys.length(); i++) {
                 String key = keys.getString(i);
-                String value = settingsObject.getString(key);
-                
-                ContentValues values = new ContentValues();
-                values.put("key", key);
-                values.put("value", value);
-                
-                db.insert("settings", null, values);
+                settings.put(key, settingsObject.getString(key));
             }
         }
+        
+        // Clear existing settings and insert backup settings in one transaction
+        databaseHelper.replaceAllSettings(settings);
     }
     
-    private JSONArray getAccountabilityBuddiesJson() throws JSONException {
-        JSONArray buddiesArray = new JSONArray();
+    private void restoreCheckIns(JSONArray checkInsArray) throws JSONException {
+        List<ContentValues> rows = new ArrayList<>();
+        for (int i = 0; i < checkInsArray.length(); i++) {
+            JSONObject checkInJson = checkInsArray.getJSONObject(i);
+            
+            ContentValues values = new ContentValues();
+            values.put("day", checkInJson.getLong("day"));
+            values.put("maintained", checkInJson.optInt("maintained"));
+            values.put("timestamp", checkInJson.optLong("timestamp"));
+            rows.add(values);
+        }
         
-        SQLiteDatabase db = databaseHelper.getReadableDatabase();
-        Cursor cursor = db.query("accountability_buddy", null, null, null, null, null, null);
+        databaseHelper.replaceCheckIns(rows);
+    }
+    
+    private void restoreSobrietyPeriods(JSONArray periodsArray) throws JSONException {
+        List<ContentValues> rows = new ArrayList<>();
+        for (int i = 0; i < periodsArray.length(); i++) {
+            JSONObject periodJson = periodsArray.getJSONObject(i);
+            
+            ContentValues values = new ContentValues();
+            values.put("start_day", periodJson.getLong("start_day"));
+            if (periodJson.has("end_day")) {
+                values.put("end_day", periodJson.getLong("end_day"));
+            } else {
+                values.putNull("end_day");
+            }
+            rows.add(values);
+        }
         
-        if (cursor.moveToFirst()) {
-            do {
-                JSONObject buddy = new JSONObject();
-                buddy.put("id", cursor.getLong(cursor.getColumnIndex("_id")));
-                buddy.put("name", cursor.getString(cursor.getColumnIndex("name")));
-                buddy.put("phone", cursor.getString(cursor.getColumnIndex("phone")));
-                buddy.put("notify_on_checkin", cursor.getInt(cursor.getColumnIndex("notify_on_checkin")));
-                buddy.put("notify_on_milestone", cursor.getInt(cursor.getColumnIndex("notify_on_milestone")));
-                buddy.put("notify_on_relapse", cursor.getInt(cursor.getColumnIndex("notify_on_relapse")));
-                
-                buddiesArray.put(buddy);
-            } while (cursor.moveToNext());
+        databaseHelper.replaceSobrietyPeriods(rows);
+    }
+    
+    private void restoreSettingsHistory(JSONArray historyArray) throws JSONException {
+        List<ContentValues> rows = new ArrayList<>();
+        for (int i = 0; i < historyArray.length(); i++) {
+            JSONObject historyJson = historyArray.getJSONObject(i);
+            
+            ContentValues values = new ContentValues();
+            values.put("day", historyJson.getLong("day"));
+            values.put("drink_cost", historyJson.getDouble("drink_cost"));
+            values.put("drinks_per_week", historyJson.getInt("drinks_per_week"));
+            values.put("calories_per_drink", historyJson.getInt("calories_per_drink"));
+            rows.add(values);
         }
         
-        cursor.close();
-        return buddiesArray;
+        databaseHelper.replaceSettingsHistory(rows);
     }
     
     private void restoreAccountabilityBuddies(JSONArray buddiesArray) throws JSONException {
-        SQLiteDatabase db = databaseHelper.getWritableDatabase();
-        
-        // Clear existing buddies
-        db.delete("accountability_buddy", null, null);
-        
-        // Insert backup buddies
+        List<ContentValues> rows = new ArrayList<>();
         for (int i = 0; i < buddiesArray.length(); i++) {
             JSONObject buddyJson = buddiesArray.getJSONObject(i);
             
@@ -1208,56 +1085,15 @@ public class BackupRestoreActivity extends BaseActivity {
             values.put("notify_on_milestone", buddyJson.optInt("notify_on_milestone"));
             values.put("notify_on_relapse", buddyJson.optInt("notify_on_relapse"));
             
-            db.insert("accountability_buddy", null, values);
-        }
-    }
-    
-    private JSONArray getSupportResourcesJson() throws JSONException {
-        JSONArray resourcesArray = new JSONArray();
-        
-        SQLiteDatabase db = databaseHelper.getReadableDatabase();
-        
-        // Check if the support_resources table exists
-        Cursor tableCheck = db.rawQuery(
-                "SELECT name FROM sqlite_master WHERE type='table' AND name='support_resources'", 
-                null);
-        boolean tableExists = tableCheck.getCount() > 0;
-        tableCheck.close();
-        
-        if (!tableExists) {
-            // If table doesn't exist yet, return empty array
-            return resourcesArray;
-        }
-        
-        // If table exists, proceed with query
-        Cursor cursor = db.query("support_resources", null, null, null, null, null, null);
-        
-        if (cursor.moveToFirst()) {
-            do {
-                JSONObject resource = new JSONObject();
-                resource.put("id", cursor.getLong(cursor.getColumnIndex("id")));
-                resource.put("name", cursor.getString(cursor.getColumnIndex("name")));
-                resource.put("description", cursor.getString(cursor.getColumnIndex("description")));
-                resource.put("phone", cursor.getString(cursor.getColumnIndex("phone")));
-                resource.put("website", cursor.getString(cursor.getColumnIndex("website")));
-                resource.put("category", cursor.getString(cursor.getColumnIndex("category")));
-                resource.put("is_custom", cursor.getInt(cursor.getColumnIndex("is_custom")));
-                
-                resourcesArray.put(resource);
-            } while (cursor.moveToNext());
+            rows.add(values);
         }
         
-        cursor.close();
-        return resourcesArray;
+        // Clear existing buddies and insert backup buddies
+        replaceTableRows("accountability_buddy", null, rows);
     }
     
     private void restoreSupportResources(JSONArray resourcesArray) throws JSONException {
-        SQLiteDatabase db = databaseHelper.getWritableDatabase();
-        
-        // Only delete custom resources, keep default ones
-        db.delete("support_resources", "is_custom = 1", null);
-        
-        // Insert backup custom resources
+        List<ContentValues> rows = new ArrayList<>();
         for (int i = 0; i < resourcesArray.length(); i++) {
             JSONObject resourceJson = resourcesArray.getJSONObject(i);
             
@@ -1271,57 +1107,29 @@ public class BackupRestoreActivity extends BaseActivity {
                 values.put("category", resourceJson.optString("category"));
                 values.put("is_custom", 1);
                 
-                db.insert("support_resources", null, values);
+                rows.add(values);
             }
         }
-    }
-    
-    private JSONArray getAchievementsJson() throws JSONException {
-        JSONArray achievementsArray = new JSONArray();
-        
-        SQLiteDatabase db = databaseHelper.getReadableDatabase();
-        
-        // Check if the achievements table exists
-        Cursor tableCheck = db.rawQuery(
-                "SELECT name FROM sqlite_master WHERE type='table' AND name='achievements'", 
-                null);
-        boolean tableExists = tableCheck.getCount() > 0;
-        tableCheck.close();
-        
-        if (!tableExists) {
-            // Return empty array if table doesn't exist
-            return achievementsArray;
-        }
-        
-        // If table exists, proceed with query
-        Cursor cursor = db.query("achievements", null, null, null, null, null, null);
-        
-        if (cursor.moveToFirst()) {
-            do {
-                JSONObject achievement = new JSONObject();
-                achievement.put("id", cursor.getLong(cursor.getColumnIndex("id")));
-                achievement.put("name", cursor.getString(cursor.getColumnIndex("name")));
-                achievement.put("description", cursor.getString(cursor.getColumnIndex("description")));
-                achievement.put("unlock_date", cursor.getLong(cursor.getColumnIndex("unlock_date")));
-                achievement.put("achievement_type", cursor.getString(cursor.getColumnIndex("achievement_type")));
-                achievement.put("unlocked", cursor.getInt(cursor.getColumnIndex("unlocked")));
-                
-                achievementsArray.put(achievement);
-            } while (cursor.moveToNext());
-        }
         
-        cursor.close();
-        return achievementsArray;
+        // Only delete custom resources, keep default ones
+        replaceTableRows("support_resources", "is_custom = 1", rows);
     }
     
-    private void restoreAchievements(JSONArray achievementsArray) throws JSONException {
-        SQLiteDatabase db = databaseHelper.getWritableDatabase();
-        
+    private void restoreAchievements(final JSONArray achievementsArray) throws JSONException {
         // We'll update existing achievements rather than deleting them all
         // This preserves any new achievements added in app updates
-        
+        databaseHelper.runWrite(() -> {
+            restoreAchievementRows(databaseHelper.getWritableDatabase(), achievementsArray);
+            return null;
+        });
+    }
+    
+    private void restoreAchievementRows(SQLiteDatabase db, JSONArray achievementsArray) {
         for (int i = 0; i < achievementsArray.length(); i++) {
-            JSONObject achievementJson = achievementsArray.getJSONObject(i);
+            JSONObject achievementJson = achievementsArray.optJSONObject(i);
+            if (achievementJson == null) {
+                continue;
+            }
             String name = achievementJson.optString("name");
             
             // Check if achievement exists
@@ -1375,22 +1183,6 @@ public class BackupRestoreActivity extends BaseActivity {
         }
     }
 
-    private JSONObject getEmergencyContactsJson() throws JSONException {
-        JSONObject emergencyContacts = new JSONObject();
-        
-        // Get emergency contacts from their SharedPreferences file
-        SharedPreferences emergencyPrefs = getSharedPreferences("EmergencyContactPrefs", MODE_PRIVATE);
-        
-        emergencyContacts.put("sponsor_name", emergencyPrefs.getString("sponsor_name", ""));
-        emergencyContacts.put("sponsor_phone", emergencyPrefs.getString("sponsor_phone", ""));
-        emergencyContacts.put("therapist_name", emergencyPrefs.getString("therapist_name", ""));
-        emergencyContacts.put("therapist_phone", emergencyPrefs.getString("therapist_phone", ""));
-        emergencyContacts.put("emergency_contact_name", emergencyPrefs.getString("emergency_contact_name", ""));
-        emergencyContacts.put("emergency_contact_phone", emergencyPrefs.getString("emergency_contact_phone", ""));
-        
-        return emergencyContacts;
-    }
-
     /**
      * Restores the custom support resources to the SharedPreferences file
      * used by the CommunitySupportActivity
@@ -1419,7 +1211,7 @@ public class BackupRestoreActivity extends BaseActivity {
                 String json = SupportResource.toJson(customResources);
                 
                 // Save to the CommunitySupportActivity preferences file
-                SharedPreferences prefs = getSharedPreferences("CommunitySupportPrefs", MODE_PRIVATE);
+                SharedPreferences prefs = PreferenceStore.getInstance(this).getPreferences("CommunitySupportPrefs");
                 SharedPreferences.Editor editor = prefs.edit();
                 editor.putString("custom_resources", json);
                 editor.apply();
@@ -0,0 +1,539 @@
+package com.example.sobertime;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.util.JsonWriter;
+
+import com.example.sobertime.model.SobrietyTracker;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a backup straight to an output stream, either as a zip archive with
+ * one entry per section or as the older single JSON object. Each table is read
+ * through a cursor and written one row at a time, so memory use does not grow
+ * with the size of the journal. Archives are either full snapshots or deltas
+ * holding only the journal and buddy rows changed since an earlier archive; the
+ * check-in, sobriety period and settings histories are a row per day or less and
+ * go into every archive whole.
+ */
+public class BackupWriter {
+
+    // Archive layout, shared with BackupReader
+    static final String ARCHIVE_FORMAT = "sobertime-backup";
+    static final int ARCHIVE_VERSION = 1;
+    static final String MANIFEST_ENTRY = "manifest.json";
+    static final String PREFERENCES_SECTION = "preferences";
+    static final String TYPE_FULL = "full";
+    static final String TYPE_DELTA = "delta";
+    // The journal comes last: it is committed as it is read, so every other section has
+    // been read by then and a damaged archive is rejected before the journal is touched
+    static final String[] ARCHIVE_SECTIONS = {
+            "accountability_buddies", "settings", "support_resources", "achievements", "check_ins",
+            "sobriety_periods", "settings_history", PREFERENCES_SECTION, "journal_entries"
+    };
+    // Deletions come before the rows they may be followed by, see DatabaseHelper.applyJournalChanges()
+    static final String[] DELTA_SECTIONS = {
+            "accountability_buddies_deleted", "accountability_buddies", "settings", "support_resources",
+            "achievements", "check_ins", "sobriety_periods", "settings_history", PREFERENCES_SECTION,
+            "journal_deleted", "journal_entries"
+    };
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Context context;
+    private final DatabaseHelper databaseHelper;
+
+    public BackupWriter(Context context) {
+        this.context = context.getApplicationContext();
+        this.databaseHelper = DatabaseHelper.getInstance(context);
+    }
+
+    /**
+     * Write every section to out as one plain JSON object, the format used before
+     * archives. The stream is flushed but not closed.
+     */
+    public void write(OutputStream out) throws IOException {
+        JsonWriter writer = newJsonWriter(out);
+        SQLiteDatabase db = databaseHelper.getReadableDatabase();
+
+        writer.beginObject();
+
+        writer.name("journal_entries");
+        writeJournalEntries(writer, db, null, null);
+
+        writer.name("settings");
+        writeSettings(writer, db);
+
+        writePreferences(writer);
+
+        writer.name("accountability_buddies");
+        writeAccountabilityBuddies(writer, db, null, null);
+
+        writer.name("support_resources");
+        writeSupportResources(writer, db);
+
+        writer.name("achievements");
+        writeAchievements(writer, db);
+
+        writer.name("check_ins");
+        writeCheckIns(writer, db);
+
+        writer.name("sobriety_periods");
+        writeSobrietyPeriods(writer, db);
+
+        writer.name("settings_history");
+        writeSettingsHistory(writer, db);
+
+        writer.endObject();
+
+        // Don't close the writer, that would close the caller's stream
+        writer.flush();
+    }
+
+    /**
+     * Write a zip archive with a manifest followed by one compressed JSON entry per
+     * section. The stream is finished but not closed.
+     */
+    public void writeArchive(OutputStream out) throws IOException {
+        writeArchive(out, System.currentTimeMillis());
+    }
+
+    /**
+     * Write a full archive stamped with createdAt, which later deltas name as their base
+     */
+    public void writeArchive(OutputStream out, long createdAt) throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        SQLiteDatabase db = databaseHelper.getReadableDatabase();
+
+        JsonWriter writer = beginManifest(zip, db, TYPE_FULL, createdAt, ARCHIVE_SECTIONS);
+        writer.endObject();
+        endEntry(zip, writer);
+
+        writer = beginEntry(zip, entryName("accountability_buddies"));
+        writeAccountabilityBuddies(writer, db, null, null);
+        endEntry(zip, writer);
+
+        writeSmallSections(zip, db);
+
+        writer = beginEntry(zip, entryName("journal_entries"));
+        writeJournalEntries(writer, db, null, null);
+        endEntry(zip, writer);
+        zip.finish();
+    }
+
+    /**
+     * Write a delta archive: the journal entries and buddies written since the given
+     * time, the ids of those deleted since then, and the small sections in full.
+     * Restoring replays the full archive created at baseCreatedAt and then each delta
+     * in sequence order. The stream is finished but not closed.
+     */
+    public void writeDeltaArchive(OutputStream out, long createdAt, long baseCreatedAt, int sequence, long since)
+            throws IOException {
+        ZipOutputStream zip = new ZipOutputStream(out);
+        SQLiteDatabase db = databaseHelper.getReadableDatabase();
+        String[] changedSince = {String.valueOf(since)};
+
+        JsonWriter writer = beginManifest(zip, db, TYPE_DELTA, createdAt, DELTA_SECTIONS);
+        writer.name("base_created_at").value(baseCreatedAt);
+        writer.name("sequence").value(sequence);
+        writer.name("since").value(since);
+        writer.endObject();
+        endEntry(zip, writer);
+
+        writer = beginEntry(zip, entryName("accountability_buddies_deleted"));
+        writeDeletedIds(writer, db, "accountability_buddy", since);
+        endEntry(zip, writer);
+
+        writer = beginEntry(zip, entryName("accountability_buddies"));
+        writeAccountabilityBuddies(writer, db, "updated_at >= ?", changedSince);
+        endEntry(zip, writer);
+
+        writeSmallSections(zip, db);
+
+        writer = beginEntry(zip, entryName("journal_deleted"));
+        writeDeletedIds(writer, db, "journal", since);
+        endEntry(zip, writer);
+
+        writer = beginEntry(zip, entryName("journal_entries"));
+        writeJournalEntries(writer, db, "updated_at >= ?", changedSince);
+        endEntry(zip, writer);
+        zip.finish();
+    }
+
+    // Common manifest fields; the caller adds its own and ends the object and entry
+    private static JsonWriter beginManifest(ZipOutputStream zip, SQLiteDatabase db, String type, long createdAt,
+                                            String[] sections) throws IOException {
+        JsonWriter writer = beginEntry(zip, MANIFEST_ENTRY);
+        writer.beginObject();
+        writer.name("format").value(ARCHIVE_FORMAT);
+        writer.name("version").value(ARCHIVE_VERSION);
+        writer.name("type").value(type);
+        writer.name("created_at").value(createdAt);
+        writer.name("database_version").value(db.getVersion());
+        writer.name("journal_entries").value(DatabaseUtils.queryNumEntries(db, "journal"));
+        writer.name("sections").beginArray();
+        for (String section : sections) {
+            writer.value(section);
+        }
+        writer.endArray();
+        return writer;
+    }
+
+    // Sections small enough that every archive, full or delta, carries them whole; a later
+    // archive's copy replaces an earlier one's on restore
+    private void writeSmallSections(ZipOutputStream zip, SQLiteDatabase db) throws IOException {
+        JsonWriter writer = beginEntry(zip, entryName("settings"));
+        writeSettings(writer, db);
+        endEntry(zip, writer);
+
+        writer = beginEntry(zip, entryName("support_resources"));
+        writeSupportResources(writer, db);
+        endEntry(zip, writer);
+
+        writer = beginEntry(zip, entryName("achievements"));
+        writeAchievements(writer, db);
+        endEntry(zip, writer);
+
+        writer = beginEntry(zip, entryName("check_ins"));
+        writeCheckIns(writer, db);
+        endEntry(zip, writer);
+
+        writer = beginEntry(zip, entryName("sobriety_periods"));
+        writeSobrietyPeriods(writer, db);
+        endEntry(zip, writer);
+
+        writer = beginEntry(zip, entryName("settings_history"));
+        writeSettingsHistory(writer, db);
+        endEntry(zip, writer);
+
+        writePreferencesEntry(zip);
+    }
+
+    // The SharedPreferences stores share one entry; their keys are top-level in plain backups
+    void writePreferencesEntry(ZipOutputStream zip) throws IOException {
+        JsonWriter writer = beginEntry(zip, entryName(PREFERENCES_SECTION));
+        writer.beginObject();
+        writePreferences(writer);
+        writer.endObject();
+        endEntry(zip, writer);
+    }
+
+    // Zip entry holding one section of the archive
+    static String entryName(String section) {
+        return section + ".json";
+    }
+
+    private static JsonWriter newJsonWriter(OutputStream out) {
+        return new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE));
+    }
+
+    private static JsonWriter beginEntry(ZipOutputStream zip, String name) throws IOException {
+        zip.putNextEntry(new ZipEntry(name));
+        return newJsonWriter(zip);
+    }
+
+    // Flush rather than close, closing the writer would close the whole archive
+    private static void endEntry(ZipOutputStream zip, JsonWriter writer) throws IOException {
+        writer.flush();
+        zip.closeEntry();
+    }
+
+    // Values kept in SharedPreferences rather than the database
+    private void writePreferences(JsonWriter writer) throws IOException {
+        writer.name("sobriety_start_date").value(SobrietyTracker.getInstance(context).getSobrietyStartDate());
+
+        writer.name("notification_settings");
+        writeNotificationSettings(writer);
+
+        writer.name("theme_settings");
+        writeThemeSettings(writer);
+
+        writer.name("intrusive_notification_settings");
+        writeIntrusiveSettings(writer);
+
+        writer.name("emergency_contacts");
+        writeEmergencyContacts(writer);
+    }
+
+    private void writeJournalEntries(JsonWriter writer, SQLiteDatabase db, String selection,
+                                     String[] selectionArgs) throws IOException {
+        writer.beginArray();
+        Cursor cursor = db.query("journal", null, selection, selectionArgs, null, null, null);
+        try {
+            // Resolve column indexes once for the whole export
+            int idIndex = cursor.getColumnIndex("id");
+            int timestampIndex = cursor.getColumnIndex("timestamp");
+            int titleIndex = cursor.getColumnIndex("title");
+            int contentIndex = cursor.getColumnIndex("content");
+            int moodIndex = cursor.getColumnIndex("mood");
+            int cravingLevelIndex = cursor.getColumnIndex("craving_level");
+            int triggerIndex = cursor.getColumnIndex("trigger");
+
+            while (cursor.moveToNext()) {
+                writer.beginObject();
+                writer.name("id").value(cursor.getLong(idIndex));
+                writer.name("timestamp").value(cursor.getLong(timestampIndex));
+                writeString(writer, "title", cursor, titleIndex);
+                writeString(writer, "content", cursor, contentIndex);
+                writeString(writer, "mood", cursor, moodIndex);
+                writer.name("craving_level").value(cursor.getInt(cravingLevelIndex));
+                writeString(writer, "trigger", cursor, triggerIndex);
+                writer.endObject();
+            }
+        } finally {
+            cursor.close();
+        }
+        writer.endArray();
+    }
+
+    private void writeSettings(JsonWriter writer, SQLiteDatabase db) throws IOException {
+        writer.beginObject();
+        Cursor cursor = db.query("settings", new String[]{"key", "value"}, null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                if (!cursor.isNull(0) && !cursor.isNull(1)) {
+                    writer.name(cursor.getString(0)).value(cursor.getString(1));
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        writer.endObject();
+    }
+
+    private void writeNotificationSettings(JsonWriter writer) throws IOException {
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences("SobrietyNotificationPrefs");
+        writer.beginObject();
+        writer.name("notifications_enabled").value(prefs.getBoolean("notifications_enabled", true));
+        writer.name("morning_notification_enabled").value(prefs.getBoolean("morning_notification_enabled", true));
+        writer.name("evening_notification_enabled").value(prefs.getBoolean("evening_notification_enabled", true));
+        writer.name("milestone_notification_enabled").value(prefs.getBoolean("milestone_notification_enabled", true));
+        writer.name("custom_notification_times").value(prefs.getString("custom_notification_times", ""));
+        writer.endObject();
+    }
+
+    private void writeThemeSettings(JsonWriter writer) throws IOException {
+        SharedPreferences themePrefs = PreferenceStore.getInstance(context).getPreferences("ThemePreferences");
+        SharedPreferences mainPrefs = PreferenceStore.getInstance(context).getPreferences("SobrietyTrackerPrefs");
+        writer.beginObject();
+        writer.name("dark_mode_enabled").value(themePrefs.getBoolean("dark_mode_enabled", false));
+        writer.name("follow_system_theme").value(themePrefs.getBoolean("follow_system_theme", true));
+        // Some activities read the theme from the main preferences instead
+        writer.name("night_mode_enabled").value(mainPrefs.getBoolean("night_mode_enabled", false));
+        writer.endObject();
+    }
+
+    private void writeIntrusiveSettings(JsonWriter writer) throws IOException {
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences("IntrusiveNotificationPrefs");
+        writer.beginObject();
+        writer.name("intrusive_enabled").value(prefs.getBoolean("intrusive_enabled", false));
+        writer.name("intrusive_frequency").value(prefs.getString("intrusive_frequency", "medium"));
+        writer.name("intrusive_start_hour").value(prefs.getInt("intrusive_start_hour", 9));
+        writer.name("intrusive_end_hour").value(prefs.getInt("intrusive_end_hour", 21));
+        writer.endObject();
+    }
+
+    private void writeEmergencyContacts(JsonWriter writer) throws IOException {
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences("EmergencyContactPrefs");
+        String[] keys = {"sponsor_name", "sponsor_phone", "therapist_name", "therapist_phone",
+                "emergency_contact_name", "emergency_contact_phone"};
+        writer.beginObject();
+        for (String key : keys) {
+            writer.name(key).value(prefs.getString(key, ""));
+        }
+        writer.endObject();
+    }
+
+    private void writeAccountabilityBuddies(JsonWriter writer, SQLiteDatabase db, String selection,
+                                            String[] selectionArgs) throws IOException {
+        writer.beginArray();
+        if (tableExists(db, "accountability_buddy")) {
+            Cursor cursor = db.query("accountability_buddy", null, selection, selectionArgs, null, null, null);
+            try {
+                int idIndex = cursor.getColumnIndex("_id");
+                int nameIndex = cursor.getColumnIndex("name");
+                int phoneIndex = cursor.getColumnIndex("phone");
+                int checkInIndex = cursor.getColumnIndex("notify_on_checkin");
+                int milestoneIndex = cursor.getColumnIndex("notify_on_milestone");
+                int relapseIndex = cursor.getColumnIndex("notify_on_relapse");
+
+                while (cursor.moveToNext()) {
+                    writer.beginObject();
+                    writer.name("id").value(cursor.getLong(idIndex));
+                    writeString(writer, "name", cursor, nameIndex);
+                    writeString(writer, "phone", cursor, phoneIndex);
+                    writer.name("notify_on_checkin").value(cursor.getInt(checkInIndex));
+                    writer.name("notify_on_milestone").value(cursor.getInt(milestoneIndex));
+                    writer.name("notify_on_relapse").value(cursor.getInt(relapseIndex));
+                    writer.endObject();
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        writer.endArray();
+    }
+
+    // Ids of the rows of table deleted since the given time, from the tombstone table
+    private void writeDeletedIds(JsonWriter writer, SQLiteDatabase db, String table, long since) throws IOException {
+        writer.beginArray();
+        Cursor cursor = db.query("row_tombstones", new String[]{"row_id"}, "table_name = ? AND deleted_at >= ?",
+                new String[]{table, String.valueOf(since)}, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                writer.value(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        writer.endArray();
+    }
+
+    private void writeSupportResources(JsonWriter writer, SQLiteDatabase db) throws IOException {
+        writer.beginArray();
+        if (tableExists(db, "support_resources")) {
+            Cursor cursor = db.query("support_resources", null, null, null, null, null, null);
+            try {
+                int idIndex = cursor.getColumnIndex("id");
+                int nameIndex = cursor.getColumnIndex("name");
+                int descriptionIndex = cursor.getColumnIndex("description");
+                int phoneIndex = cursor.getColumnIndex("phone");
+                int websiteIndex = cursor.getColumnIndex("website");
+                int categoryIndex = cursor.getColumnIndex("category");
+                int customIndex = cursor.getColumnIndex("is_custom");
+
+                while (cursor.moveToNext()) {
+                    writer.beginObject();
+                    writer.name("id").value(cursor.getLong(idIndex));
+                    writeString(writer, "name", cursor, nameIndex);
+                    writeString(writer, "description", cursor, descriptionIndex);
+                    writeString(writer, "phone", cursor, phoneIndex);
+                    writeString(writer, "website", cursor, websiteIndex);
+                    writeString(writer, "category", cursor, categoryIndex);
+                    writer.name("is_custom").value(cursor.getInt(customIndex));
+                    writer.endObject();
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        writer.endArray();
+    }
+
+    private void writeAchievements(JsonWriter writer, SQLiteDatabase db) throws IOException {
+        writer.beginArray();
+        if (tableExists(db, "achievements")) {
+            Cursor cursor = db.query("achievements", null, null, null, null, null, null);
+            try {
+                int idIndex = cursor.getColumnIndex("id");
+                int nameIndex = cursor.getColumnIndex("name");
+                int descriptionIndex = cursor.getColumnIndex("description");
+                int unlockDateIndex = cursor.getColumnIndex("unlock_date");
+                int typeIndex = cursor.getColumnIndex("achievement_type");
+                int unlockedIndex = cursor.getColumnIndex("unlocked");
+
+                while (cursor.moveToNext()) {
+                    writer.beginObject();
+                    writer.name("id").value(cursor.getLong(idIndex));
+                    writeString(writer, "name", cursor, nameIndex);
+                    writeString(writer, "description", cursor, descriptionIndex);
+                    writer.name("unlock_date").value(cursor.getLong(unlockDateIndex));
+                    writeString(writer, "achievement_type", cursor, typeIndex);
+                    writer.name("unlocked").value(cursor.getInt(unlockedIndex));
+                    writer.endObject();
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        writer.endArray();
+    }
+
+    private void writeCheckIns(JsonWriter writer, SQLiteDatabase db) throws IOException {
+        writer.beginArray();
+        if (tableExists(db, "check_ins")) {
+            Cursor cursor = db.query("check_ins", new String[]{"day", "maintained", "timestamp"},
+                    null, null, null, null, "day");
+            try {
+                while (cursor.moveToNext()) {
+                    writer.beginObject();
+                    writer.name("day").value(cursor.getLong(0));
+                    writer.name("maintained").value(cursor.getInt(1));
+                    writer.name("timestamp").value(cursor.getLong(2));
+                    writer.endObject();
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        writer.endArray();
+    }
+
+    // The ongoing period has no end day, so its entry has no end_day
+    private void writeSobrietyPeriods(JsonWriter writer, SQLiteDatabase db) throws IOException {
+        writer.beginArray();
+        if (tableExists(db, "sobriety_periods")) {
+            Cursor cursor = db.query("sobriety_periods", new String[]{"start_day", "end_day"},
+                    null, null, null, null, "start_day");
+            try {
+                while (cursor.moveToNext()) {
+                    writer.beginObject();
+                    writer.name("start_day").value(cursor.getLong(0));
+                    if (!cursor.isNull(1)) {
+                        writer.name("end_day").value(cursor.getLong(1));
+                    }
+                    writer.endObject();
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        writer.endArray();
+    }
+
+    private void writeSettingsHistory(JsonWriter writer, SQLiteDatabase db) throws IOException {
+        writer.beginArray();
+        if (tableExists(db, "settings_history")) {
+            Cursor cursor = db.query("settings_history",
+                    new String[]{"day", "drink_cost", "drinks_per_week", "calories_per_drink"},
+                    null, null, null, null, "day");
+            try {
+                while (cursor.moveToNext()) {
+                    writer.beginObject();
+                    writer.name("day").value(cursor.getLong(0));
+                    writer.name("drink_cost").value(cursor.getDouble(1));
+                    writer.name("drinks_per_week").value(cursor.getInt(2));
+                    writer.name("calories_per_drink").value(cursor.getInt(3));
+                    writer.endObject();
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        writer.endArray();
+    }
+
+    // Null columns are left out, as JSONObject.put did, so restore's optString defaults still apply
+    private static void writeString(JsonWriter writer, String name, Cursor cursor, int index) throws IOException {
+        if (!cursor.isNull(index)) {
+            writer.name(name).value(cursor.getString(index));
+        }
+    }
+
+    private static boolean tableExists(SQLiteDatabase db, String table) {
+        return DatabaseUtils.longForQuery(db,
+                "SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name=?",
+                new String[]{table}) > 0;
+    }
+}
@@ -17,7 +17,7 @@ public class BootReceiver extends BroadcastReceiver {
     public void onReceive(Context context, Intent intent) {
         if (intent.getAction() != null && intent.getAction().equals(Intent.ACTION_BOOT_COMPLETED)) {
             // Check if notifications are enabled
-            SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME);
             boolean notificationsEnabled = prefs.getBoolean(NOTIFICATIONS_ENABLED_KEY, true);
 
             if (notificationsEnabled) {
@@ -25,5 +25,7 @@ public class BootReceiver extends BroadcastReceiver {
                 NotificationHelper.scheduleNotifications(context);
             }
         }
+        // The process may be killed once this returns
+        PreferenceStore.getInstance(context).flush();
     }
 }
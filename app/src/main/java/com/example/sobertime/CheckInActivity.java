@@ -149,7 +149,7 @@ public class CheckInActivity extends BaseActivity {
                 .setPositiveButton("Yes, Reset", new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
-                        resetSobrietyCounter();
+                        // recordCheckIn() resets the counter and starts a new sobriety period
                         recordCheckIn(false);
                         finish();
                     }
@@ -193,20 +193,22 @@ public class CheckInActivity extends BaseActivity {
             // Confirm sobriety for today
             sobrietyTracker.confirmSobrietyForToday();
             
-            // We could also record this confirmation in a new table for history
-            // recordConfirmationInDatabase(true);
+            // Record this confirmation in the check-in history
+            sobrietyTracker.recordCheckInOutcome(true);
             
             Toast.makeText(this, "Sobriety confirmed for today!", Toast.LENGTH_SHORT).show();
         } else {
             // Reset the counter
             sobrietyTracker.resetSobrietyCounter();
             
-            // We could also record this in a new table for history
-            // recordConfirmationInDatabase(false);
+            // Record the lapse in the check-in history
+            sobrietyTracker.recordCheckInOutcome(false);
             
             Toast.makeText(this, "Counter reset. Every new beginning is progress.", Toast.LENGTH_LONG).show();
         }
         
+        AchievementManager.getInstance(this).onEvent(AchievementRuleEngine.Event.CHECK_IN_RECORDED);
+        
         // Notify accountability buddy if needed - check permissions first
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.SEND_SMS)
                 != PackageManager.PERMISSION_GRANTED) {
@@ -223,12 +225,6 @@ public class CheckInActivity extends BaseActivity {
         NotificationHelper.scheduleNotifications(this);
     }
 
-    private void resetSobrietyCounter() {
-        // Reset sobriety counter to today
-        SobrietyTracker sobrietyTracker = SobrietyTracker.getInstance(this);
-        sobrietyTracker.setSobrietyStartDate(System.currentTimeMillis());
-    }
-
     private void notifyBuddyIfNeeded(boolean maintainedSobriety) {
         SQLiteDatabase db = databaseHelper.getReadableDatabase();
         Cursor cursor = db.query(
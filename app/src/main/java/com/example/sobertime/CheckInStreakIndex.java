@@ -0,0 +1,211 @@
+package com.example.sobertime;
+
+import java.util.Arrays;
+
+/**
+ * Bitset over local epoch-days with one bit per day on which sobriety was confirmed.
+ * Bit i of word w is day baseDay + 64 * w + i, so later days are higher bits.
+ * Streaks are found 64 days at a time with bit tricks instead of walking a Calendar.
+ */
+public class CheckInStreakIndex {
+
+    private long baseDay;
+    private long[] words = new long[0];
+
+    public CheckInStreakIndex() {
+        this.baseDay = Long.MIN_VALUE;
+    }
+
+    /**
+     * Build an index from the confirmed days, in any order
+     */
+    public static CheckInStreakIndex fromDays(long[] days) {
+        CheckInStreakIndex index = new CheckInStreakIndex();
+        for (long day : days) {
+            index.set(day);
+        }
+        return index;
+    }
+
+    public boolean isEmpty() {
+        return baseDay == Long.MIN_VALUE;
+    }
+
+    public boolean contains(long day) {
+        if (isEmpty() || day < baseDay) {
+            return false;
+        }
+        long bit = day - baseDay;
+        int word = (int) (bit >>> 6);
+        return word < words.length && (words[word] & (1L << bit)) != 0;
+    }
+
+    public void set(long day) {
+        if (isEmpty()) {
+            // Align the base to a word so the first day doesn't force a shift later
+            baseDay = day - Math.floorMod(day, 64L);
+        } else if (day < baseDay) {
+            growDown(day);
+        }
+        long bit = day - baseDay;
+        int word = (int) (bit >>> 6);
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+        }
+        words[word] |= 1L << bit;
+    }
+
+    public void clear(long day) {
+        if (isEmpty() || day < baseDay) {
+            return;
+        }
+        long bit = day - baseDay;
+        int word = (int) (bit >>> 6);
+        if (word < words.length) {
+            words[word] &= ~(1L << bit);
+        }
+    }
+
+    // Prepend whole words so that day fits; existing bits keep their positions within words
+    private void growDown(long day) {
+        int extraWords = (int) ((baseDay - day + 63) >>> 6);
+        long[] grown = new long[words.length + extraWords];
+        System.arraycopy(words, 0, grown, extraWords, words.length);
+        words = grown;
+        baseDay -= 64L * extraWords;
+    }
+
+    /**
+     * Length of the run of confirmed days ending today. A run ending yesterday still
+     * counts, since today's check-in may not have happened yet.
+     */
+    public int currentStreak(long today) {
+        if (contains(today)) {
+            return runEndingAt(today);
+        }
+        return contains(today - 1) ? runEndingAt(today - 1) : 0;
+    }
+
+    /**
+     * Length of the run of days ending on the given day, or 0 if that day isn't set
+     */
+    public int runEndingOn(long day) {
+        return contains(day) ? runEndingAt(day) : 0;
+    }
+
+    /**
+     * The latest day set, or Long.MIN_VALUE if there is none
+     */
+    public long lastDay() {
+        for (int w = words.length - 1; w >= 0; w--) {
+            if (words[w] != 0) {
+                return baseDay + 64L * w + 63 - Long.numberOfLeadingZeros(words[w]);
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    // Count set bits walking back from day until the first gap
+    private int runEndingAt(long day) {
+        long bit = day - baseDay;
+        int word = (int) (bit >>> 6);
+        int offset = (int) (bit & 63);
+
+        // Gaps at or below the day in its own word; later days are masked off
+        long gaps = ~words[word] & (offset == 63 ? -1L : (1L << (offset + 1)) - 1);
+        if (gaps != 0) {
+            return offset - (63 - Long.numberOfLeadingZeros(gaps));
+        }
+
+        int run = offset + 1;
+        for (int w = word - 1; w >= 0; w--) {
+            if (words[w] == -1L) {
+                run += 64;
+            } else {
+                return run + Long.numberOfLeadingZeros(~words[w]);
+            }
+        }
+        return run;
+    }
+
+    /**
+     * Longest run of confirmed days ever recorded
+     */
+    public int bestStreak() {
+        return isEmpty() ? 0 : longestStreak(baseDay, baseDay + 64L * words.length - 1);
+    }
+
+    /**
+     * Longest run of confirmed days within fromDay..toDay inclusive
+     */
+    public int longestStreak(long fromDay, long toDay) {
+        if (isEmpty() || toDay < fromDay) {
+            return 0;
+        }
+
+        int best = 0;
+        int carry = 0;
+        for (int w = firstWord(fromDay); w <= lastWord(toDay); w++) {
+            long word = maskedWord(w, fromDay, toDay);
+            if (word == -1L) {
+                carry += 64;
+                best = Math.max(best, carry);
+                continue;
+            }
+
+            // The low bits continue the run carried in from the previous word
+            best = Math.max(best, carry + Long.numberOfTrailingZeros(~word));
+            best = Math.max(best, longestRunInWord(word));
+            // The high bits start the run carried into the next word
+            carry = Long.numberOfLeadingZeros(~word);
+        }
+        return best;
+    }
+
+    /**
+     * Number of confirmed days within fromDay..toDay inclusive
+     */
+    public int countDays(long fromDay, long toDay) {
+        if (isEmpty() || toDay < fromDay) {
+            return 0;
+        }
+
+        int count = 0;
+        for (int w = firstWord(fromDay); w <= lastWord(toDay); w++) {
+            count += Long.bitCount(maskedWord(w, fromDay, toDay));
+        }
+        return count;
+    }
+
+    private int firstWord(long fromDay) {
+        return (int) (Math.max(fromDay - baseDay, 0) >>> 6);
+    }
+
+    private int lastWord(long toDay) {
+        long lastBit = Math.min(toDay - baseDay, 64L * words.length - 1);
+        return lastBit < 0 ? -1 : (int) (lastBit >>> 6);
+    }
+
+    // Word w with the bits for days outside fromDay..toDay cleared
+    private long maskedWord(int w, long fromDay, long toDay) {
+        long word = words[w];
+        long wordStart = baseDay + 64L * w;
+        if (fromDay > wordStart) {
+            word &= -1L << (fromDay - wordStart);
+        }
+        if (toDay < wordStart + 63) {
+            word &= (1L << (toDay - wordStart + 1)) - 1;
+        }
+        return word;
+    }
+
+    // Each x & (x << 1) shortens every run of ones by one bit
+    private static int longestRunInWord(long x) {
+        int length = 0;
+        while (x != 0) {
+            x &= x << 1;
+            length++;
+        }
+        return length;
+    }
+}
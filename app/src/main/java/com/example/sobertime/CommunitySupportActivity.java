@@ -119,7 +119,7 @@ public class CommunitySupportActivity extends BaseActivity {
         ));
         
         // Load custom resources
-        SharedPreferences prefs = getSharedPreferences(CUSTOM_RESOURCES_PREFS, MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(this).getPreferences(CUSTOM_RESOURCES_PREFS);
         String customResourcesJson = prefs.getString(CUSTOM_RESOURCES_KEY, "");
         
         if (!customResourcesJson.isEmpty()) {
@@ -213,7 +213,7 @@ public class CommunitySupportActivity extends BaseActivity {
             String json = SupportResource.toJson(customResources);
             
             // Save to preferences
-            SharedPreferences prefs = getSharedPreferences(CUSTOM_RESOURCES_PREFS, MODE_PRIVATE);
+            SharedPreferences prefs = PreferenceStore.getInstance(this).getPreferences(CUSTOM_RESOURCES_PREFS);
             SharedPreferences.Editor editor = prefs.edit();
             editor.putString(CUSTOM_RESOURCES_KEY, json);
             editor.apply();
@@ -263,7 +263,7 @@ public class CommunitySupportActivity extends BaseActivity {
     private void saveSeekingStatusAndGoToMain() {
         if (isTempSeekingStatus) {
             // Save status to main app preferences
-            SharedPreferences mainPrefs = getSharedPreferences("SobrietyTrackerPrefs", MODE_PRIVATE);
+            SharedPreferences mainPrefs = PreferenceStore.getInstance(this).getPreferences("SobrietyTrackerPrefs");
             SharedPreferences.Editor editor = mainPrefs.edit();
             editor.putInt("current_status", 2); // 2 = STATUS_SEEKING
             editor.putBoolean("onboarding_complete", true);
@@ -2,18 +2,45 @@ package com.example.sobertime;
 
 import android.content.ContentValues;
 import android.content.Context;
+import android.content.SharedPreferences;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+import android.util.Log;
 
+import android.os.Build;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 
 public class DatabaseHelper extends SQLiteOpenHelper {
     
+    private static final String TAG = "DatabaseHelper";
+    
     // Database Information
     private static final String DATABASE_NAME = "sobriety_tracker.db";
-    private static final int DATABASE_VERSION = 4; // Increased from 3 to 4 for achievements table
+    private static final int DATABASE_VERSION = 12; // Increased from 11 to 12 for the check-in index
     
     // Table Names
     private static final String TABLE_JOURNAL = "journal";
@@ -21,6 +48,14 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String TABLE_ACCOUNTABILITY_BUDDY = "accountability_buddy";
     private static final String TABLE_SUPPORT_RESOURCES = "support_resources";
     private static final String TABLE_ACHIEVEMENTS = "achievements";
+    private static final String TABLE_JOURNAL_FTS = "journal_fts";
+    private static final String TABLE_JOURNAL_DAILY_STATS = "journal_daily_stats";
+    private static final String TABLE_JOURNAL_DAILY_MOOD = "journal_daily_mood";
+    private static final String TABLE_JOURNAL_DAILY_TRIGGER = "journal_daily_trigger";
+    private static final String TABLE_CHECK_INS = "check_ins";
+    private static final String TABLE_ROW_TOMBSTONES = "row_tombstones";
+    private static final String TABLE_SOBRIETY_PERIODS = "sobriety_periods";
+    private static final String TABLE_SETTINGS_HISTORY = "settings_history";
     
     // Journal Table Columns
     private static final String JOURNAL_ID = "id";
@@ -30,10 +65,37 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String JOURNAL_MOOD = "mood";
     private static final String JOURNAL_CRAVING_LEVEL = "craving_level";
     private static final String JOURNAL_TRIGGER = "trigger";
+    private static final String JOURNAL_UPDATED_AT = "updated_at";
+    
+    // Journal rollup columns; day is the local epoch-day (days since 1970-01-01 on the device clock)
+    private static final String DAILY_DAY = "day";
+    private static final String DAILY_ENTRY_COUNT = "entry_count";
+    private static final String DAILY_CRAVING_SUM = "craving_sum";
+    private static final String DAILY_CRAVING_MAX = "craving_max";
+    
+    // Check-in history columns; one row per local epoch-day with a check-in
+    private static final String CHECK_IN_DAY = "day";
+    private static final String CHECK_IN_MAINTAINED = "maintained";
+    private static final String CHECK_IN_TIMESTAMP = "timestamp";
+    
+    // Sobriety period columns; local epoch-days, end exclusive and null while the period is ongoing
+    private static final String PERIOD_START_DAY = "start_day";
+    private static final String PERIOD_END_DAY = "end_day";
+    
+    // Tombstone columns; one row per deleted journal entry or buddy, so a delta backup can replay the delete
+    private static final String TOMBSTONE_TABLE_NAME = "table_name";
+    private static final String TOMBSTONE_ROW_ID = "row_id";
+    private static final String TOMBSTONE_DELETED_AT = "deleted_at";
     
     // Settings Table Columns
     private static final String SETTINGS_KEY = "key";
     private static final String SETTINGS_VALUE = "value";
+    
+    // Settings history columns; one row per local epoch-day on which the savings rates changed
+    private static final String HISTORY_DAY = "day";
+    private static final String HISTORY_DRINK_COST = "drink_cost";
+    private static final String HISTORY_DRINKS_PER_WEEK = "drinks_per_week";
+    private static final String HISTORY_CALORIES_PER_DRINK = "calories_per_drink";
 
     // Accountability Buddy Table Columns
     private static final String BUDDY_ID = "_id";  // Using Android standard naming convention
@@ -45,6 +107,7 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     private static final String BUDDY_NOTIFY_ON_CHECKIN = "notify_on_checkin";
     private static final String BUDDY_NOTIFY_ON_RELAPSE = "notify_on_relapse";
     private static final String BUDDY_NOTIFY_ON_MILESTONE = "notify_on_milestone";
+    private static final String BUDDY_UPDATED_AT = "updated_at";
     
     // Support Resources Table Columns
     private static final String RESOURCE_ID = "id";
@@ -72,12 +135,20 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     + JOURNAL_CONTENT + " TEXT NOT NULL, "
                     + JOURNAL_MOOD + " TEXT, "
                     + JOURNAL_CRAVING_LEVEL + " INTEGER, "
-                    + JOURNAL_TRIGGER + " TEXT);";
+                    + JOURNAL_TRIGGER + " TEXT, "
+                    + JOURNAL_UPDATED_AT + " INTEGER);";
     
     private static final String CREATE_TABLE_SETTINGS = 
             "CREATE TABLE " + TABLE_SETTINGS + "("
                     + SETTINGS_KEY + " TEXT PRIMARY KEY, "
                     + SETTINGS_VALUE + " TEXT NOT NULL);";
+    
+    private static final String CREATE_TABLE_SETTINGS_HISTORY =
+            "CREATE TABLE IF NOT EXISTS " + TABLE_SETTINGS_HISTORY + "("
+                    + HISTORY_DAY + " INTEGER PRIMARY KEY, "
+                    + HISTORY_DRINK_COST + " REAL NOT NULL, "
+                    + HISTORY_DRINKS_PER_WEEK + " INTEGER NOT NULL, "
+                    + HISTORY_CALORIES_PER_DRINK + " INTEGER NOT NULL);";
 
     private static final String CREATE_TABLE_ACCOUNTABILITY_BUDDY = 
             "CREATE TABLE " + TABLE_ACCOUNTABILITY_BUDDY + "("
@@ -89,7 +160,8 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     + BUDDY_ENABLED + " INTEGER DEFAULT 1, "
                     + BUDDY_NOTIFY_ON_CHECKIN + " INTEGER DEFAULT 0, "
                     + BUDDY_NOTIFY_ON_RELAPSE + " INTEGER DEFAULT 1, "
-                    + BUDDY_NOTIFY_ON_MILESTONE + " INTEGER DEFAULT 1);";
+                    + BUDDY_NOTIFY_ON_MILESTONE + " INTEGER DEFAULT 1, "
+                    + BUDDY_UPDATED_AT + " INTEGER);";
 
     private static final String CREATE_TABLE_SUPPORT_RESOURCES = 
             "CREATE TABLE " + TABLE_SUPPORT_RESOURCES + "("
@@ -110,8 +182,269 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                     + ACHIEVEMENT_TYPE + " TEXT, "
                     + ACHIEVEMENT_UNLOCKED + " INTEGER DEFAULT 0);";
     
+    // Journal timestamp index. The id column aliases the rowid, which every index carries
+    // as its last column, so this index also serves ORDER BY timestamp, id. The list and
+    // page queries return whole entries, and an index covering them would have to copy the
+    // title and content, roughly doubling the table; this stays a lookup index, so each row
+    // costs one rowid seek after the ordered index walk. COUNT(*) is covered by it.
+    private static final String CREATE_INDEX_JOURNAL_TIMESTAMP =
+            "CREATE INDEX IF NOT EXISTS idx_journal_timestamp ON " + TABLE_JOURNAL
+                    + "(" + JOURNAL_TIMESTAMP + ");";
+    
+    // Mood and trigger indexes from version 5. The reports read the daily rollups instead,
+    // so the rollup migration drops them rather than keep updating them on every write.
+    private static final String[] DROP_JOURNAL_FILTER_INDEXES = {
+            "DROP INDEX IF EXISTS idx_journal_mood;",
+            "DROP INDEX IF EXISTS idx_journal_trigger;"
+    };
+    
+    // Full-text index over journal titles and content. FTS5 is missing from older platform
+    // SQLite builds, so this is FTS4 in external-content mode: it stores only the index and
+    // reads the text back from the journal table. The triggers below keep it in sync.
+    private static final String CREATE_TABLE_JOURNAL_FTS =
+            "CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_JOURNAL_FTS + " USING fts4("
+                    + "content=\"" + TABLE_JOURNAL + "\", "
+                    + JOURNAL_TITLE + ", " + JOURNAL_CONTENT + ", tokenize=porter);";
+    
+    // One row per local day with journal activity, plus per-day mood and trigger histograms.
+    // Triggers on journal keep them current, so analytics read a few hundred day rows
+    // instead of every entry.
+    private static final String CREATE_TABLE_JOURNAL_DAILY_STATS =
+            "CREATE TABLE IF NOT EXISTS " + TABLE_JOURNAL_DAILY_STATS + "("
+                    + DAILY_DAY + " INTEGER PRIMARY KEY, "
+                    + DAILY_ENTRY_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                    + DAILY_CRAVING_SUM + " INTEGER NOT NULL DEFAULT 0, "
+                    + DAILY_CRAVING_MAX + " INTEGER NOT NULL DEFAULT 0);";
+    
+    private static final String CREATE_TABLE_JOURNAL_DAILY_MOOD =
+            "CREATE TABLE IF NOT EXISTS " + TABLE_JOURNAL_DAILY_MOOD + "("
+                    + DAILY_DAY + " INTEGER NOT NULL, "
+                    + JOURNAL_MOOD + " TEXT NOT NULL, "
+                    + DAILY_ENTRY_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                    + "PRIMARY KEY (" + DAILY_DAY + ", " + JOURNAL_MOOD + ")) WITHOUT ROWID;";
+    
+    private static final String CREATE_TABLE_JOURNAL_DAILY_TRIGGER =
+            "CREATE TABLE IF NOT EXISTS " + TABLE_JOURNAL_DAILY_TRIGGER + "("
+                    + DAILY_DAY + " INTEGER NOT NULL, "
+                    + JOURNAL_TRIGGER + " TEXT NOT NULL, "
+                    + DAILY_ENTRY_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                    + "PRIMARY KEY (" + DAILY_DAY + ", " + JOURNAL_TRIGGER + ")) WITHOUT ROWID;";
+    
+    // An update moves the old row out of its day and the new row into its day
+    private static final String[] CREATE_JOURNAL_DAILY_TRIGGERS = {
+            "CREATE TRIGGER IF NOT EXISTS journal_daily_ai AFTER INSERT ON " + TABLE_JOURNAL + " BEGIN "
+                    + addToDailyStatsSql("new") + " END;",
+            "CREATE TRIGGER IF NOT EXISTS journal_daily_ad AFTER DELETE ON " + TABLE_JOURNAL + " BEGIN "
+                    + removeFromDailyStatsSql("old") + " END;",
+            "CREATE TRIGGER IF NOT EXISTS journal_daily_au AFTER UPDATE OF " + JOURNAL_TIMESTAMP + ", "
+                    + JOURNAL_MOOD + ", " + JOURNAL_CRAVING_LEVEL + ", " + JOURNAL_TRIGGER + " ON " + TABLE_JOURNAL
+                    + " BEGIN " + removeFromDailyStatsSql("old") + " " + addToDailyStatsSql("new") + " END;"
+    };
+    
+    private static final String CREATE_TABLE_CHECK_INS =
+            "CREATE TABLE IF NOT EXISTS " + TABLE_CHECK_INS + "("
+                    + CHECK_IN_DAY + " INTEGER PRIMARY KEY, "
+                    + CHECK_IN_MAINTAINED + " INTEGER NOT NULL, "
+                    + CHECK_IN_TIMESTAMP + " INTEGER NOT NULL);";
+    
+    // The last lapse and the maintained-day list each read one value of maintained in day order
+    private static final String CREATE_INDEX_CHECK_INS_MAINTAINED =
+            "CREATE INDEX IF NOT EXISTS idx_check_ins_maintained ON " + TABLE_CHECK_INS
+                    + "(" + CHECK_IN_MAINTAINED + ", " + CHECK_IN_DAY + ");";
+    
+    private static final String CREATE_TABLE_SOBRIETY_PERIODS =
+            "CREATE TABLE IF NOT EXISTS " + TABLE_SOBRIETY_PERIODS + "("
+                    + PERIOD_START_DAY + " INTEGER PRIMARY KEY, "
+                    + PERIOD_END_DAY + " INTEGER);";
+    
+    // External-content FTS must remove a row's old tokens while the row still exists
+    private static final String[] CREATE_JOURNAL_FTS_TRIGGERS = {
+            "CREATE TRIGGER IF NOT EXISTS journal_fts_bu BEFORE UPDATE ON " + TABLE_JOURNAL + " BEGIN "
+                    + "DELETE FROM " + TABLE_JOURNAL_FTS + " WHERE docid = old." + JOURNAL_ID + "; END;",
+            "CREATE TRIGGER IF NOT EXISTS journal_fts_bd BEFORE DELETE ON " + TABLE_JOURNAL + " BEGIN "
+                    + "DELETE FROM " + TABLE_JOURNAL_FTS + " WHERE docid = old." + JOURNAL_ID + "; END;",
+            "CREATE TRIGGER IF NOT EXISTS journal_fts_au AFTER UPDATE ON " + TABLE_JOURNAL + " BEGIN "
+                    + "INSERT INTO " + TABLE_JOURNAL_FTS + "(docid, " + JOURNAL_TITLE + ", " + JOURNAL_CONTENT + ") "
+                    + "VALUES (new." + JOURNAL_ID + ", new." + JOURNAL_TITLE + ", new." + JOURNAL_CONTENT + "); END;",
+            "CREATE TRIGGER IF NOT EXISTS journal_fts_ai AFTER INSERT ON " + TABLE_JOURNAL + " BEGIN "
+                    + "INSERT INTO " + TABLE_JOURNAL_FTS + "(docid, " + JOURNAL_TITLE + ", " + JOURNAL_CONTENT + ") "
+                    + "VALUES (new." + JOURNAL_ID + ", new." + JOURNAL_TITLE + ", new." + JOURNAL_CONTENT + "); END;"
+    };
+    
+    // Wall-clock milliseconds inside SQL, for the updated_at and deleted_at columns
+    static final String NOW_MILLIS_SQL = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+    
+    // Change tracking for delta backups. Journal writes set updated_at themselves (a trigger
+    // updating the row would fire the search index triggers a second time); the buddy table
+    // is written with ContentValues from several places, so triggers stamp it instead.
+    private static final String CREATE_INDEX_JOURNAL_UPDATED_AT =
+            "CREATE INDEX IF NOT EXISTS idx_journal_updated_at ON " + TABLE_JOURNAL
+                    + "(" + JOURNAL_UPDATED_AT + ");";
+    
+    private static final String CREATE_TABLE_ROW_TOMBSTONES =
+            "CREATE TABLE IF NOT EXISTS " + TABLE_ROW_TOMBSTONES + "("
+                    + TOMBSTONE_TABLE_NAME + " TEXT NOT NULL, "
+                    + TOMBSTONE_ROW_ID + " INTEGER NOT NULL, "
+                    + TOMBSTONE_DELETED_AT + " INTEGER NOT NULL, "
+                    + "PRIMARY KEY (" + TOMBSTONE_TABLE_NAME + ", " + TOMBSTONE_ROW_ID + ")) WITHOUT ROWID;";
+    
+    private static final String CREATE_JOURNAL_TOMBSTONE_TRIGGER =
+            "CREATE TRIGGER IF NOT EXISTS journal_tombstone_ad AFTER DELETE ON " + TABLE_JOURNAL + " BEGIN "
+                    + addTombstoneSql(TABLE_JOURNAL, "old." + JOURNAL_ID) + " END;";
+    
+    private static final String[] CREATE_BUDDY_CHANGE_TRIGGERS = {
+            "CREATE TRIGGER IF NOT EXISTS accountability_buddy_changed_ai AFTER INSERT ON " + TABLE_ACCOUNTABILITY_BUDDY
+                    + " BEGIN " + touchBuddySql() + " END;",
+            "CREATE TRIGGER IF NOT EXISTS accountability_buddy_changed_au AFTER UPDATE OF " + BUDDY_NAME + ", "
+                    + BUDDY_PHONE + ", " + BUDDY_USER_NAME + ", " + BUDDY_USER_PHONE + ", " + BUDDY_ENABLED + ", "
+                    + BUDDY_NOTIFY_ON_CHECKIN + ", " + BUDDY_NOTIFY_ON_RELAPSE + ", " + BUDDY_NOTIFY_ON_MILESTONE
+                    + " ON " + TABLE_ACCOUNTABILITY_BUDDY + " BEGIN " + touchBuddySql() + " END;",
+            "CREATE TRIGGER IF NOT EXISTS accountability_buddy_tombstone_ad AFTER DELETE ON " + TABLE_ACCOUNTABILITY_BUDDY
+                    + " BEGIN " + addTombstoneSql(TABLE_ACCOUNTABILITY_BUDDY, "old." + BUDDY_ID) + " END;"
+    };
+    
+    // Every trigger that keeps the search index, rollups and tombstones in step with the journal
+    private static final String[] JOURNAL_SYNC_TRIGGERS = {
+            "journal_fts_bu", "journal_fts_bd", "journal_fts_au", "journal_fts_ai",
+            "journal_daily_ai", "journal_daily_ad", "journal_daily_au", "journal_tombstone_ad"
+    };
+    
+    // Queries. These are package-private so the query plan tests can EXPLAIN them.
+    static final String QUERY_JOURNAL_BY_ID =
+            "SELECT * FROM " + TABLE_JOURNAL + " WHERE " + JOURNAL_ID + " = ?";
+    
+    static final String QUERY_JOURNAL_ALL =
+            "SELECT * FROM " + TABLE_JOURNAL + " ORDER BY " + JOURNAL_TIMESTAMP + " DESC";
+    
+    static final String QUERY_JOURNAL_PAGE =
+            "SELECT * FROM " + TABLE_JOURNAL
+                    + " WHERE " + JOURNAL_TIMESTAMP + " <= ?"
+                    + " AND (" + JOURNAL_TIMESTAMP + " < ? OR " + JOURNAL_ID + " < ?)"
+                    + " ORDER BY " + JOURNAL_TIMESTAMP + " DESC, " + JOURNAL_ID + " DESC"
+                    + " LIMIT ?";
+    
+    static final String QUERY_JOURNAL_COUNT =
+            "SELECT COUNT(*) FROM " + TABLE_JOURNAL;
+    
+    static final String QUERY_JOURNAL_DAYS =
+            "SELECT " + DAILY_DAY + " FROM " + TABLE_JOURNAL_DAILY_STATS;
+    
+    static final String QUERY_JOURNAL_DAY_EXISTS =
+            "SELECT COUNT(*) FROM " + TABLE_JOURNAL_DAILY_STATS + " WHERE " + DAILY_DAY + " = ?";
+    
+    static final String QUERY_JOURNAL_TIMESTAMP_BY_ID =
+            "SELECT " + JOURNAL_TIMESTAMP + " FROM " + TABLE_JOURNAL + " WHERE " + JOURNAL_ID + " = ?";
+    
+    static final String QUERY_JOURNAL_RECENT_DAYS =
+            "SELECT " + DAILY_DAY + " FROM " + TABLE_JOURNAL_DAILY_STATS
+                    + " ORDER BY " + DAILY_DAY + " DESC LIMIT ?";
+    
+    static final String QUERY_JOURNAL_DAILY_STATS_RANGE =
+            "SELECT * FROM " + TABLE_JOURNAL_DAILY_STATS
+                    + " WHERE " + DAILY_DAY + " BETWEEN ? AND ? ORDER BY " + DAILY_DAY;
+    
+    static final String QUERY_JOURNAL_DAILY_MOOD_RANGE =
+            "SELECT * FROM " + TABLE_JOURNAL_DAILY_MOOD + " WHERE " + DAILY_DAY + " BETWEEN ? AND ?";
+    
+    static final String QUERY_JOURNAL_DAILY_TRIGGER_RANGE =
+            "SELECT * FROM " + TABLE_JOURNAL_DAILY_TRIGGER + " WHERE " + DAILY_DAY + " BETWEEN ? AND ?";
+    
+    // Per-document match statistics for ranking: phrase and column counts, document count,
+    // average and current column lengths, then hit counts per phrase and column
+    static final String QUERY_JOURNAL_SEARCH_MATCHINFO =
+            "SELECT docid, matchinfo(" + TABLE_JOURNAL_FTS + ", 'pcnalx') FROM " + TABLE_JOURNAL_FTS
+                    + " WHERE " + TABLE_JOURNAL_FTS + " MATCH ?";
+    
+    static final String QUERY_JOURNAL_DAILY_COUNTS_SINCE =
+            "SELECT " + DAILY_DAY + ", " + DAILY_ENTRY_COUNT + " FROM " + TABLE_JOURNAL_DAILY_STATS
+                    + " WHERE " + DAILY_DAY + " >= ?";
+    
+    static final String QUERY_LAST_LAPSE_DAY =
+            "SELECT MAX(" + CHECK_IN_DAY + ") FROM " + TABLE_CHECK_INS + " WHERE " + CHECK_IN_MAINTAINED + " = 0";
+    
+    static final String QUERY_CHECK_IN_DAYS_MAINTAINED =
+            "SELECT " + CHECK_IN_DAY + " FROM " + TABLE_CHECK_INS
+                    + " WHERE " + CHECK_IN_MAINTAINED + " = 1 ORDER BY " + CHECK_IN_DAY;
+    
+    static final String QUERY_SOBRIETY_PERIODS =
+            "SELECT " + PERIOD_START_DAY + ", " + PERIOD_END_DAY + " FROM " + TABLE_SOBRIETY_PERIODS
+                    + " ORDER BY " + PERIOD_START_DAY;
+    
+    static final String QUERY_ACHIEVEMENTS_UNLOCKED =
+            "SELECT " + ACHIEVEMENT_ID + ", " + ACHIEVEMENT_UNLOCK_DATE + " FROM " + TABLE_ACHIEVEMENTS
+                    + " WHERE " + ACHIEVEMENT_UNLOCKED + " = 1";
+    
+    // One row per unlocked achievement, replaced in place if it is ever written again
+    static final String UPSERT_ACHIEVEMENT_UNLOCK =
+            "INSERT OR REPLACE INTO " + TABLE_ACHIEVEMENTS + "(" + ACHIEVEMENT_ID + ", " + ACHIEVEMENT_NAME + ", "
+                    + ACHIEVEMENT_DESCRIPTION + ", " + ACHIEVEMENT_UNLOCK_DATE + ", " + ACHIEVEMENT_TYPE + ", "
+                    + ACHIEVEMENT_UNLOCKED + ") VALUES (?, ?, ?, ?, ?, 1)";
+    
+    // Read once per process to fill the settings cache; the table holds a handful of rows
+    static final String QUERY_SETTINGS_ALL =
+            "SELECT " + SETTINGS_KEY + ", " + SETTINGS_VALUE + " FROM " + TABLE_SETTINGS;
+    
+    static final String QUERY_SETTINGS_HISTORY =
+            "SELECT " + HISTORY_DAY + ", " + HISTORY_DRINK_COST + ", " + HISTORY_DRINKS_PER_WEEK + ", "
+                    + HISTORY_CALORIES_PER_DRINK + " FROM " + TABLE_SETTINGS_HISTORY + " ORDER BY " + HISTORY_DAY;
+    
+    static final String UPSERT_SETTINGS_HISTORY =
+            "INSERT OR REPLACE INTO " + TABLE_SETTINGS_HISTORY + "(" + HISTORY_DAY + ", " + HISTORY_DRINK_COST + ", "
+                    + HISTORY_DRINKS_PER_WEEK + ", " + HISTORY_CALORIES_PER_DRINK + ") VALUES (?, ?, ?, ?)";
+    
+    // Single-statement upsert. ON CONFLICT ... DO UPDATE needs SQLite 3.24 (API 30), so with
+    // minSdk 24 we use INSERT OR REPLACE, which is equivalent for a key/value table.
+    static final String UPSERT_SETTING =
+            "INSERT OR REPLACE INTO " + TABLE_SETTINGS + "(" + SETTINGS_KEY + ", " + SETTINGS_VALUE + ") VALUES (?, ?)";
+    
+    // Compiled journal writes; both bind the data columns in the same order and stamp updated_at
+    static final String INSERT_JOURNAL =
+            "INSERT INTO " + TABLE_JOURNAL + "(" + JOURNAL_TIMESTAMP + ", " + JOURNAL_TITLE + ", "
+                    + JOURNAL_CONTENT + ", " + JOURNAL_MOOD + ", " + JOURNAL_CRAVING_LEVEL + ", "
+                    + JOURNAL_TRIGGER + ", " + JOURNAL_UPDATED_AT + ") VALUES (?, ?, ?, ?, ?, ?, "
+                    + NOW_MILLIS_SQL + ")";
+    
+    // Restores keep the backed-up id; a duplicate id is skipped like SQLiteDatabase.insert() would
+    static final String RESTORE_JOURNAL =
+            "INSERT OR IGNORE INTO " + TABLE_JOURNAL + "(" + JOURNAL_TIMESTAMP + ", " + JOURNAL_TITLE + ", "
+                    + JOURNAL_CONTENT + ", " + JOURNAL_MOOD + ", " + JOURNAL_CRAVING_LEVEL + ", "
+                    + JOURNAL_TRIGGER + ", " + JOURNAL_ID + ", " + JOURNAL_UPDATED_AT + ") VALUES (?, ?, ?, ?, ?, ?, ?, "
+                    + NOW_MILLIS_SQL + ")";
+    
+    static final String UPDATE_JOURNAL =
+            "UPDATE " + TABLE_JOURNAL + " SET " + JOURNAL_TIMESTAMP + " = ?, " + JOURNAL_TITLE + " = ?, "
+                    + JOURNAL_CONTENT + " = ?, " + JOURNAL_MOOD + " = ?, " + JOURNAL_CRAVING_LEVEL + " = ?, "
+                    + JOURNAL_TRIGGER + " = ?, " + JOURNAL_UPDATED_AT + " = " + NOW_MILLIS_SQL
+                    + " WHERE " + JOURNAL_ID + " = ?";
+    
     private static DatabaseHelper instance;
     
+    // Application context, for the preferences the upgrades read
+    private final Context context;
+    
+    // Every write runs on this one thread, so writers never contend for the database lock.
+    // With write-ahead logging, reads on other threads run in parallel with it.
+    private final ExecutorService writeExecutor;
+    private volatile Thread writerThread;
+    
+    // Compiled once and reused for every write; only touched on the writer thread
+    private SQLiteStatement upsertSettingStatement;
+    private SQLiteStatement insertJournalStatement;
+    private SQLiteStatement updateJournalStatement;
+    private SQLiteStatement upsertAchievementStatement;
+    
+    // In-memory copy of the settings table, replaced wholesale on every write
+    private volatile SettingsSnapshot settingsSnapshot;
+    
+    // Every sobriety period, loaded on first use and rebuilt after each change
+    private volatile SobrietyPeriodIndex sobrietyPeriods;
+    
+    // Savings rates over time, loaded on first use and rebuilt after each change
+    private volatile SavingsRateIndex savingsRates;
+    
+    // Journaling streak, loaded on first use and then kept up to date by single entry writes
+    private volatile JournalStreakTracker journalStreak;
+    
     // Get singleton instance
     public static synchronized DatabaseHelper getInstance(Context context) {
         if (instance == null) {
@@ -122,6 +455,84 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     
     private DatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        this.context = context;
+        
+        // WAL lets readers keep going while the writer commits
+        setWriteAheadLoggingEnabled(true);
+        
+        writeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                writerThread = new Thread(runnable, "DatabaseWriter");
+                return writerThread;
+            }
+        });
+    }
+    
+    // Drop the singleton so tests get a fresh database per application instance
+    @VisibleForTesting
+    static synchronized void resetInstance() {
+        if (instance != null) {
+            instance.writeExecutor.shutdown();
+            instance.close();
+            instance = null;
+        }
+    }
+    
+    @Override
+    public synchronized void close() {
+        // Compiled statements belong to the connection being closed
+        closeStatement(upsertSettingStatement);
+        closeStatement(insertJournalStatement);
+        closeStatement(updateJournalStatement);
+        closeStatement(upsertAchievementStatement);
+        upsertSettingStatement = null;
+        insertJournalStatement = null;
+        updateJournalStatement = null;
+        upsertAchievementStatement = null;
+        super.close();
+    }
+    
+    private static void closeStatement(SQLiteStatement statement) {
+        if (statement != null) {
+            statement.close();
+        }
+    }
+    
+    /**
+     * Run a write on the single writer thread and wait for its result.
+     * Calls made from the writer thread itself run inline.
+     */
+    public <T> T runWrite(Callable<T> write) {
+        if (Thread.currentThread() == writerThread) {
+            try {
+                return write.call();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new SQLException("Database write failed", e);
+            }
+        }
+        
+        try {
+            return writeExecutor.submit(write).get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new SQLException("Database write failed", cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted waiting for database write", e);
+        }
+    }
+    
+    /**
+     * Queue a write on the writer thread without waiting for it
+     */
+    public void runWriteAsync(Runnable write) {
+        writeExecutor.execute(write);
     }
     
     @Override
@@ -131,6 +542,14 @@ public class DatabaseHelper extends SQLiteOpenHelper {
         db.execSQL(CREATE_TABLE_ACCOUNTABILITY_BUDDY);
         db.execSQL(CREATE_TABLE_SUPPORT_RESOURCES);
         db.execSQL(CREATE_TABLE_ACHIEVEMENTS);
+        db.execSQL(CREATE_INDEX_JOURNAL_TIMESTAMP);
+        createJournalSearchIndex(db);
+        createJournalDailyStats(db);
+        db.execSQL(CREATE_TABLE_CHECK_INS);
+        db.execSQL(CREATE_INDEX_CHECK_INS_MAINTAINED);
+        createChangeTracking(db);
+        db.execSQL(CREATE_TABLE_SOBRIETY_PERIODS);
+        db.execSQL(CREATE_TABLE_SETTINGS_HISTORY);
         
         // Initialize default settings
         ContentValues defaultSettings = new ContentValues();
@@ -176,32 +595,337 @@ public class DatabaseHelper extends SQLiteOpenHelper {
             // Create the achievements table for existing users
             db.execSQL(CREATE_TABLE_ACHIEVEMENTS);
         }
+        if (oldVersion < 5) {
+            // Index the journal timestamp used for ordering
+            db.execSQL(CREATE_INDEX_JOURNAL_TIMESTAMP);
+        }
+        if (oldVersion < 6) {
+            // Build the full-text index from the existing journal
+            createJournalSearchIndex(db);
+            db.execSQL("INSERT INTO " + TABLE_JOURNAL_FTS + "(" + TABLE_JOURNAL_FTS + ") VALUES ('rebuild')");
+        }
+        if (oldVersion < 7) {
+            // Roll up the existing journal into per-day stats
+            createJournalDailyStats(db);
+            rebuildJournalDailyStats(db);
+            for (String drop : DROP_JOURNAL_FILTER_INDEXES) {
+                db.execSQL(drop);
+            }
+        }
+        if (oldVersion < 8) {
+            // Create the check-in history table for existing users
+            db.execSQL(CREATE_TABLE_CHECK_INS);
+        }
+        if (oldVersion < 9) {
+            // Start tracking changes for delta backups; existing rows keep a null updated_at
+            // and are covered by the next full backup
+            createChangeTracking(db);
+        }
+        if (oldVersion < 10) {
+            // Create the sobriety period table and open the current period at the start
+            // date, the only part of the history known from before periods were kept
+            db.execSQL(CREATE_TABLE_SOBRIETY_PERIODS);
+            SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences(SobrietyTracker.PREFS_NAME);
+            if (prefs.contains(SobrietyTracker.START_DATE_KEY)) {
+                openSobrietyPeriod(db, EpochDays.localDay(prefs.getLong(SobrietyTracker.START_DATE_KEY, 0)));
+            }
+        }
+        if (oldVersion < 11) {
+            // Create the settings history table; until the first change the current
+            // settings apply to every day
+            db.execSQL(CREATE_TABLE_SETTINGS_HISTORY);
+        }
+        if (oldVersion < 12) {
+            // Index the check-in history by outcome
+            db.execSQL(CREATE_INDEX_CHECK_INS_MAINTAINED);
+        }
         // Add further upgrade paths for future versions
-        // if (oldVersion < 5) { ... }
+        // if (oldVersion < 13) { ... }
+    }
+    
+    private void createJournalSearchIndex(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_JOURNAL_FTS);
+        for (String trigger : CREATE_JOURNAL_FTS_TRIGGERS) {
+            db.execSQL(trigger);
+        }
+    }
+    
+    private void createJournalDailyStats(SQLiteDatabase db) {
+        db.execSQL(CREATE_TABLE_JOURNAL_DAILY_STATS);
+        db.execSQL(CREATE_TABLE_JOURNAL_DAILY_MOOD);
+        db.execSQL(CREATE_TABLE_JOURNAL_DAILY_TRIGGER);
+        for (String trigger : CREATE_JOURNAL_DAILY_TRIGGERS) {
+            db.execSQL(trigger);
+        }
+    }
+    
+    // Idempotent, so it can also follow a rebuild of the buddy table
+    private void createChangeTracking(SQLiteDatabase db) {
+        addColumnIfNotExists(db, TABLE_JOURNAL, JOURNAL_UPDATED_AT, "INTEGER");
+        addColumnIfNotExists(db, TABLE_ACCOUNTABILITY_BUDDY, BUDDY_UPDATED_AT, "INTEGER");
+        db.execSQL(CREATE_INDEX_JOURNAL_UPDATED_AT);
+        db.execSQL(CREATE_TABLE_ROW_TOMBSTONES);
+        db.execSQL(CREATE_JOURNAL_TOMBSTONE_TRIGGER);
+        for (String trigger : CREATE_BUDDY_CHANGE_TRIGGERS) {
+            db.execSQL(trigger);
+        }
+    }
+    
+    // Trigger statement recording that a row of table was deleted
+    private static String addTombstoneSql(String table, String rowId) {
+        return "INSERT OR REPLACE INTO " + TABLE_ROW_TOMBSTONES + "(" + TOMBSTONE_TABLE_NAME + ", "
+                + TOMBSTONE_ROW_ID + ", " + TOMBSTONE_DELETED_AT + ") VALUES ('" + table + "', " + rowId + ", "
+                + NOW_MILLIS_SQL + ");";
+    }
+    
+    // Trigger statement stamping the buddy row that was just written. The update trigger is
+    // limited to the data columns, so this does not fire it again.
+    private static String touchBuddySql() {
+        return "UPDATE " + TABLE_ACCOUNTABILITY_BUDDY + " SET " + BUDDY_UPDATED_AT + " = " + NOW_MILLIS_SQL
+                + " WHERE " + BUDDY_ID + " = new." + BUDDY_ID + ";";
+    }
+    
+    // SQL for the local epoch-day of a millisecond timestamp; matches EpochDays.localDay()
+    private static String localEpochDaySql(String timestamp) {
+        return "CAST(julianday(" + timestamp + " / 1000, 'unixepoch', 'localtime') - 2440587.5 AS INTEGER)";
+    }
+    
+    // Trigger statements counting one journal row ("new" or "old") into its day
+    private static String addToDailyStatsSql(String row) {
+        String day = localEpochDaySql(row + "." + JOURNAL_TIMESTAMP);
+        String craving = "IFNULL(" + row + "." + JOURNAL_CRAVING_LEVEL + ", 0)";
+        return "INSERT OR IGNORE INTO " + TABLE_JOURNAL_DAILY_STATS + "(" + DAILY_DAY + ") VALUES (" + day + "); "
+                + "UPDATE " + TABLE_JOURNAL_DAILY_STATS + " SET "
+                + DAILY_ENTRY_COUNT + " = " + DAILY_ENTRY_COUNT + " + 1, "
+                + DAILY_CRAVING_SUM + " = " + DAILY_CRAVING_SUM + " + " + craving + ", "
+                + DAILY_CRAVING_MAX + " = MAX(" + DAILY_CRAVING_MAX + ", " + craving + ")"
+                + " WHERE " + DAILY_DAY + " = " + day + "; "
+                + addToHistogramSql(TABLE_JOURNAL_DAILY_MOOD, JOURNAL_MOOD, row, day)
+                + addToHistogramSql(TABLE_JOURNAL_DAILY_TRIGGER, JOURNAL_TRIGGER, row, day);
+    }
+    
+    private static String addToHistogramSql(String table, String column, String row, String day) {
+        String value = row + "." + column;
+        return "INSERT OR IGNORE INTO " + table + "(" + DAILY_DAY + ", " + column + ") "
+                + "SELECT " + day + ", " + value + " WHERE IFNULL(" + value + ", '') != ''; "
+                + "UPDATE " + table + " SET " + DAILY_ENTRY_COUNT + " = " + DAILY_ENTRY_COUNT + " + 1"
+                + " WHERE " + DAILY_DAY + " = " + day + " AND " + column + " = " + value + "; ";
+    }
+    
+    // Trigger statements taking one journal row back out of its day. The maximum can't be
+    // decremented, so when the removed row held it, it is recomputed from that day's entries
+    // (found through the timestamp index within two days either side).
+    private static String removeFromDailyStatsSql(String row) {
+        String timestamp = row + "." + JOURNAL_TIMESTAMP;
+        String day = localEpochDaySql(timestamp);
+        String craving = "IFNULL(" + row + "." + JOURNAL_CRAVING_LEVEL + ", 0)";
+        return "UPDATE " + TABLE_JOURNAL_DAILY_STATS + " SET "
+                + DAILY_ENTRY_COUNT + " = " + DAILY_ENTRY_COUNT + " - 1, "
+                + DAILY_CRAVING_SUM + " = " + DAILY_CRAVING_SUM + " - " + craving
+                + " WHERE " + DAILY_DAY + " = " + day + "; "
+                + "UPDATE " + TABLE_JOURNAL_DAILY_STATS + " SET " + DAILY_CRAVING_MAX + " = ("
+                + "SELECT IFNULL(MAX(IFNULL(" + JOURNAL_CRAVING_LEVEL + ", 0)), 0) FROM " + TABLE_JOURNAL
+                + " WHERE " + JOURNAL_TIMESTAMP + " BETWEEN " + timestamp + " - 172800000 AND " + timestamp + " + 172800000"
+                + " AND " + localEpochDaySql(JOURNAL_TIMESTAMP) + " = " + day + ")"
+                + " WHERE " + DAILY_DAY + " = " + day + " AND " + DAILY_CRAVING_MAX + " <= " + craving + "; "
+                + "DELETE FROM " + TABLE_JOURNAL_DAILY_STATS
+                + " WHERE " + DAILY_DAY + " = " + day + " AND " + DAILY_ENTRY_COUNT + " <= 0; "
+                + removeFromHistogramSql(TABLE_JOURNAL_DAILY_MOOD, JOURNAL_MOOD, row, day)
+                + removeFromHistogramSql(TABLE_JOURNAL_DAILY_TRIGGER, JOURNAL_TRIGGER, row, day);
+    }
+    
+    private static String removeFromHistogramSql(String table, String column, String row, String day) {
+        String value = row + "." + column;
+        return "UPDATE " + table + " SET " + DAILY_ENTRY_COUNT + " = " + DAILY_ENTRY_COUNT + " - 1"
+                + " WHERE " + DAILY_DAY + " = " + day + " AND " + column + " = " + value + "; "
+                + "DELETE FROM " + table + " WHERE " + DAILY_DAY + " = " + day
+                + " AND " + column + " = " + value + " AND " + DAILY_ENTRY_COUNT + " <= 0; ";
+    }
+    
+    // Recompute every rollup row from the journal, e.g. after the device time zone changes
+    private void rebuildJournalDailyStats(SQLiteDatabase db) {
+        String day = localEpochDaySql(JOURNAL_TIMESTAMP);
+        db.execSQL("DELETE FROM " + TABLE_JOURNAL_DAILY_STATS);
+        db.execSQL("DELETE FROM " + TABLE_JOURNAL_DAILY_MOOD);
+        db.execSQL("DELETE FROM " + TABLE_JOURNAL_DAILY_TRIGGER);
+        db.execSQL("INSERT INTO " + TABLE_JOURNAL_DAILY_STATS + "(" + DAILY_DAY + ", " + DAILY_ENTRY_COUNT + ", "
+                + DAILY_CRAVING_SUM + ", " + DAILY_CRAVING_MAX + ") "
+                + "SELECT " + day + " AS d, COUNT(*), SUM(IFNULL(" + JOURNAL_CRAVING_LEVEL + ", 0)), "
+                + "MAX(IFNULL(" + JOURNAL_CRAVING_LEVEL + ", 0)) FROM " + TABLE_JOURNAL + " GROUP BY d");
+        for (String column : new String[]{JOURNAL_MOOD, JOURNAL_TRIGGER}) {
+            String table = column.equals(JOURNAL_MOOD) ? TABLE_JOURNAL_DAILY_MOOD : TABLE_JOURNAL_DAILY_TRIGGER;
+            db.execSQL("INSERT INTO " + table + "(" + DAILY_DAY + ", " + column + ", " + DAILY_ENTRY_COUNT + ") "
+                    + "SELECT " + day + " AS d, " + column + ", COUNT(*) FROM " + TABLE_JOURNAL
+                    + " WHERE IFNULL(" + column + ", '') != '' GROUP BY d, " + column);
+        }
+    }
+    
+    /**
+     * Rebuild the daily journal rollups, e.g. after the device time zone changes
+     * and entries now fall on different local days
+     */
+    public void rebuildJournalDailyStats() {
+        runWrite(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                rebuildJournalDailyStats(db);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                invalidateJournalStreak();
+            }
+            return null;
+        });
     }
     
     // Journal CRUD Operations
     
-    public long addJournalEntry(JournalEntry entry) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        
-        ContentValues values = new ContentValues();
-        values.put(JOURNAL_TIMESTAMP, entry.getTimestamp());
-        values.put(JOURNAL_TITLE, entry.getTitle());
-        values.put(JOURNAL_CONTENT, entry.getContent());
-        values.put(JOURNAL_MOOD, entry.getMood());
-        values.put(JOURNAL_CRAVING_LEVEL, entry.getCravingLevel());
-        values.put(JOURNAL_TRIGGER, entry.getTrigger());
-        
-        // Insert row
-        long id = db.insert(TABLE_JOURNAL, null, values);
-        
-        return id;
+    public long addJournalEntry(final JournalEntry entry) {
+        // Insert row; like SQLiteDatabase.insert(), a failed insert returns -1
+        return runWrite(() -> {
+            SQLiteStatement statement = getInsertJournalStatement();
+            bindJournalColumns(statement, entry);
+            try {
+                long id = statement.executeInsert();
+                if (id != -1) {
+                    markJournalDay(EpochDays.localDay(entry.getTimestamp()));
+                }
+                return id;
+            } catch (SQLException e) {
+                Log.e(TAG, "Error inserting journal entry", e);
+                return -1L;
+            }
+        });
+    }
+    
+    /**
+     * Replace the whole journal with the entries from a restore, in one transaction.
+     * Entries are pulled from the iterator on the writer thread, so a streaming parser
+     * can feed it without the journal ever being held in memory. The search index and
+     * daily rollups are rebuilt once at the end instead of by a trigger per row.
+     *
+     * @return the number of entries inserted
+     */
+    public int replaceJournal(final Iterator<JournalEntry> entries) {
+        return runWrite(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            SQLiteStatement statement = db.compileStatement(RESTORE_JOURNAL);
+            int inserted = 0;
+            db.beginTransaction();
+            try {
+                for (String trigger : JOURNAL_SYNC_TRIGGERS) {
+                    db.execSQL("DROP TRIGGER IF EXISTS " + trigger);
+                }
+                db.delete(TABLE_JOURNAL, null, null);
+                
+                while (entries.hasNext()) {
+                    JournalEntry entry = entries.next();
+                    bindJournalColumns(statement, entry);
+                    statement.bindLong(7, entry.getId());
+                    if (statement.executeInsert() != -1) {
+                        inserted++;
+                    }
+                }
+                
+                db.execSQL("INSERT INTO " + TABLE_JOURNAL_FTS + "(" + TABLE_JOURNAL_FTS + ") VALUES ('rebuild')");
+                rebuildJournalDailyStats(db);
+                // Tombstones for the replaced journal no longer describe anything a backup holds
+                db.delete(TABLE_ROW_TOMBSTONES, TOMBSTONE_TABLE_NAME + " = ?", new String[]{TABLE_JOURNAL});
+                createJournalSearchIndex(db);
+                createJournalDailyStats(db);
+                db.execSQL(CREATE_JOURNAL_TOMBSTONE_TRIGGER);
+                db.setTransactionSuccessful();
+            } finally {
+                // On failure the rollback restores the old rows and the dropped triggers together
+                db.endTransaction();
+                statement.close();
+                invalidateJournalStreak();
+            }
+            return inserted;
+        });
+    }
+    
+    /**
+     * Apply the journal part of a delta backup in one transaction: delete the given ids,
+     * then update each entry in place or insert it under its backed-up id. Unlike
+     * replaceJournal() the sync triggers stay active, since a delta touches few rows.
+     *
+     * @return the number of entries updated or inserted
+     */
+    public int applyJournalChanges(final long[] deletedIds, final Iterator<JournalEntry> entries) {
+        return runWrite(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            SQLiteStatement update = db.compileStatement(UPDATE_JOURNAL);
+            SQLiteStatement insert = db.compileStatement(RESTORE_JOURNAL);
+            int applied = 0;
+            db.beginTransaction();
+            try {
+                // Deletes first, so an id that was deleted and then restored ends up present
+                for (long id : deletedIds) {
+                    db.delete(TABLE_JOURNAL, JOURNAL_ID + " = ?", new String[]{String.valueOf(id)});
+                }
+                
+                while (entries.hasNext()) {
+                    JournalEntry entry = entries.next();
+                    bindJournalColumns(update, entry);
+                    update.bindLong(7, entry.getId());
+                    if (update.executeUpdateDelete() > 0) {
+                        applied++;
+                        continue;
+                    }
+                    bindJournalColumns(insert, entry);
+                    insert.bindLong(7, entry.getId());
+                    if (insert.executeInsert() != -1) {
+                        applied++;
+                    }
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                update.close();
+                insert.close();
+                invalidateJournalStreak();
+            }
+            return applied;
+        });
+    }
+    
+    /**
+     * Forget deletions recorded before the given time. Called once a full backup
+     * no longer contains the deleted rows, so no later delta needs to replay them.
+     */
+    public void pruneTombstones(final long before) {
+        runWrite(() -> getWritableDatabase().delete(TABLE_ROW_TOMBSTONES, TOMBSTONE_DELETED_AT + " < ?",
+                new String[]{String.valueOf(before)}));
+    }
+    
+    // Bind the six data columns in the order shared by the insert and update statements
+    private static void bindJournalColumns(SQLiteStatement statement, JournalEntry entry) {
+        statement.bindLong(1, entry.getTimestamp());
+        bindStringOrNull(statement, 2, entry.getTitle());
+        bindStringOrNull(statement, 3, entry.getContent());
+        bindStringOrNull(statement, 4, entry.getMood());
+        statement.bindLong(5, entry.getCravingLevel());
+        bindStringOrNull(statement, 6, entry.getTrigger());
+    }
+    
+    private static void bindStringOrNull(SQLiteStatement statement, int index, String value) {
+        if (value == null) {
+            statement.bindNull(index);
+        } else {
+            statement.bindString(index, value);
+        }
     }
     
     public void ensureAccountabilityBuddyTableExists() {
-        SQLiteDatabase db = getWritableDatabase();
-        
+        runWrite(() -> {
+            ensureAccountabilityBuddyTable(getWritableDatabase());
+            return null;
+        });
+    }
+    
+    private void ensureAccountabilityBuddyTable(SQLiteDatabase db) {        
         // Check if the table exists first
         Cursor cursor = db.rawQuery(
                 "SELECT name FROM sqlite_master WHERE type='table' AND name='" + TABLE_ACCOUNTABILITY_BUDDY + "'", 
@@ -254,6 +978,9 @@ public class DatabaseHelper extends SQLiteOpenHelper {
                 addColumnIfNotExists(db, TABLE_ACCOUNTABILITY_BUDDY, BUDDY_NOTIFY_ON_MILESTONE, "INTEGER DEFAULT 1");
             }
         }
+        
+        // A rebuilt table lost its updated_at column and triggers
+        createChangeTracking(db);
     }
 
     private void migrateAccountabilityBuddyTable(SQLiteDatabase db) {
@@ -333,23 +1060,10 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     public JournalEntry getJournalEntry(long id) {
         SQLiteDatabase db = this.getReadableDatabase();
         
-        String selectQuery = "SELECT * FROM " + TABLE_JOURNAL + " WHERE " + JOURNAL_ID + " = " + id;
-        Cursor cursor = db.rawQuery(selectQuery, null);
-        
-        JournalEntry entry = null;
-        if (cursor.moveToFirst()) {
-            entry = new JournalEntry();
-            entry.setId(cursor.getLong(cursor.getColumnIndex(JOURNAL_ID)));
-            entry.setTimestamp(cursor.getLong(cursor.getColumnIndex(JOURNAL_TIMESTAMP)));
-            entry.setTitle(cursor.getString(cursor.getColumnIndex(JOURNAL_TITLE)));
-            entry.setContent(cursor.getString(cursor.getColumnIndex(JOURNAL_CONTENT)));
-            entry.setMood(cursor.getString(cursor.getColumnIndex(JOURNAL_MOOD)));
-            entry.setCravingLevel(cursor.getInt(cursor.getColumnIndex(JOURNAL_CRAVING_LEVEL)));
-            entry.setTrigger(cursor.getString(cursor.getColumnIndex(JOURNAL_TRIGGER)));
-        }
+        Cursor cursor = db.rawQuery(QUERY_JOURNAL_BY_ID, new String[]{String.valueOf(id)});
         
-        cursor.close();
-        return entry;
+        List<JournalEntry> entries = JournalRowMapper.mapAll(cursor);
+        return entries.isEmpty() ? null : entries.get(0);
     }
     
     // Helper method to add a column if it doesn't exist
@@ -383,117 +1097,939 @@ public class DatabaseHelper extends SQLiteOpenHelper {
     }
 
     public List<JournalEntry> getAllJournalEntries() {
-        List<JournalEntry> entries = new ArrayList<>();
-        
-        String selectQuery = "SELECT * FROM " + TABLE_JOURNAL + " ORDER BY " + JOURNAL_TIMESTAMP + " DESC";
+        SQLiteDatabase db = this.getReadableDatabase();
+        return JournalRowMapper.mapAll(db.rawQuery(QUERY_JOURNAL_ALL, null));
+    }
+
+    /**
+     * Load one page of journal entries, newest first, using a keyset cursor.
+     * Only entries strictly older than (beforeTimestamp, beforeId) are returned, so
+     * each page costs the same regardless of how deep into the journal it is.
+     * Pass Long.MAX_VALUE for both cursor values to load the first page.
+     */
+    public List<JournalEntry> getJournalEntriesPage(long beforeTimestamp, long beforeId, int limit) {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_JOURNAL_PAGE, new String[]{
+                String.valueOf(beforeTimestamp),
+                String.valueOf(beforeTimestamp),
+                String.valueOf(beforeId),
+                String.valueOf(limit)});
+
+        return JournalRowMapper.mapAll(cursor);
+    }
+
+    public int getJournalEntryCount() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        return (int) DatabaseUtils.longForQuery(db, QUERY_JOURNAL_COUNT, null);
+    }
+
+    /**
+     * Get the local epoch-days that have journal entries, most recent first.
+     * Read straight from the daily rollup's primary key.
+     * @param limit Maximum number of days to return
+     */
+    public long[] getRecentJournalDays(int limit) {
+        long[] days = new long[limit];
+        int count = 0;
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_JOURNAL_RECENT_DAYS, new String[]{String.valueOf(limit)});
+
+        while (cursor.moveToNext()) {
+            days[count++] = cursor.getLong(0);
+        }
+
+        cursor.close();
+        return Arrays.copyOf(days, count);
+    }
+
+    /**
+     * Count journal entries per week since the given start time.
+     * Reads the daily rollup, so the cost is one row per active day.
+     * @return Map of 1-based week number to entry count
+     */
+    public Map<Integer, Integer> getJournalEntryCountsByWeek(long sinceMillis) {
+        long startDay = EpochDays.localDay(sinceMillis);
+        Map<Integer, Integer> entriesByWeek = new HashMap<>();
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_JOURNAL_DAILY_COUNTS_SINCE, new String[]{String.valueOf(startDay)});
+
+        while (cursor.moveToNext()) {
+            int weekNumber = (int) ((cursor.getLong(0) - startDay) / 7) + 1;
+            entriesByWeek.put(weekNumber, entriesByWeek.getOrDefault(weekNumber, 0) + cursor.getInt(1));
+        }
+
+        cursor.close();
+        return entriesByWeek;
+    }
+
+    /**
+     * Get the daily journal rollups for an inclusive range of local epoch-days,
+     * oldest first. Days without entries are omitted.
+     */
+    public List<JournalDailyStats> getJournalDailyStats(long fromDay, long toDay) {
+        String[] range = {String.valueOf(fromDay), String.valueOf(toDay)};
+        Map<Long, JournalDailyStats> statsByDay = new HashMap<>();
+        List<JournalDailyStats> stats = new ArrayList<>();
+
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_JOURNAL_DAILY_STATS_RANGE, range);
+        int dayIndex = cursor.getColumnIndexOrThrow(DAILY_DAY);
+        int countIndex = cursor.getColumnIndexOrThrow(DAILY_ENTRY_COUNT);
+        int sumIndex = cursor.getColumnIndexOrThrow(DAILY_CRAVING_SUM);
+        int maxIndex = cursor.getColumnIndexOrThrow(DAILY_CRAVING_MAX);
+        while (cursor.moveToNext()) {
+            JournalDailyStats day = new JournalDailyStats(cursor.getLong(dayIndex), cursor.getInt(countIndex),
+                    cursor.getInt(sumIndex), cursor.getInt(maxIndex));
+            statsByDay.put(day.getDay(), day);
+            stats.add(day);
+        }
+        cursor.close();
+
+        cursor = db.rawQuery(QUERY_JOURNAL_DAILY_MOOD_RANGE, range);
+        while (cursor.moveToNext()) {
+            JournalDailyStats day = statsByDay.get(cursor.getLong(0));
+            if (day != null) {
+                day.getMoodCounts().put(cursor.getString(1), cursor.getInt(2));
+            }
+        }
+        cursor.close();
+
+        cursor = db.rawQuery(QUERY_JOURNAL_DAILY_TRIGGER_RANGE, range);
+        while (cursor.moveToNext()) {
+            JournalDailyStats day = statsByDay.get(cursor.getLong(0));
+            if (day != null) {
+                day.getTriggerCounts().put(cursor.getString(1), cursor.getInt(2));
+            }
+        }
+        cursor.close();
+
+        return stats;
+    }
+
+    /**
+     * Full-text search over journal titles and content, best matches first.
+     * The text the user typed is reduced to plain terms (the last one matched as a
+     * prefix, for search-as-you-type), ranked with BM25 and returned with a snippet
+     * in which matches are wrapped in JournalSearchResult's highlight markers.
+     */
+    public List<JournalSearchResult> searchJournal(String userQuery, int limit) {
+        List<JournalSearchResult> results = new ArrayList<>();
+        String matchQuery = JournalSearchResult.toMatchQuery(userQuery);
+        if (matchQuery == null || limit <= 0) {
+            return results;
+        }
         
         SQLiteDatabase db = this.getReadableDatabase();
-        Cursor cursor = db.rawQuery(selectQuery, null);
         
-        if (cursor.moveToFirst()) {
-            do {
-                JournalEntry entry = new JournalEntry();
-                entry.setId(cursor.getLong(cursor.getColumnIndex(JOURNAL_ID)));
-                entry.setTimestamp(cursor.getLong(cursor.getColumnIndex(JOURNAL_TIMESTAMP)));
-                entry.setTitle(cursor.getString(cursor.getColumnIndex(JOURNAL_TITLE)));
-                entry.setContent(cursor.getString(cursor.getColumnIndex(JOURNAL_CONTENT)));
-                entry.setMood(cursor.getString(cursor.getColumnIndex(JOURNAL_MOOD)));
-                entry.setCravingLevel(cursor.getInt(cursor.getColumnIndex(JOURNAL_CRAVING_LEVEL)));
-                entry.setTrigger(cursor.getString(cursor.getColumnIndex(JOURNAL_TRIGGER)));
-                
-                entries.add(entry);
-            } while (cursor.moveToNext());
+        // Rank every match from its matchinfo; only the top hits are loaded in full
+        List<long[]> ranked = new ArrayList<>();
+        final List<Double> scores = new ArrayList<>();
+        Cursor cursor = db.rawQuery(QUERY_JOURNAL_SEARCH_MATCHINFO, new String[]{matchQuery});
+        while (cursor.moveToNext()) {
+            scores.add(JournalSearchResult.bm25(cursor.getBlob(1)));
+            ranked.add(new long[]{cursor.getLong(0), ranked.size()});
+        }
+        cursor.close();
+        
+        Collections.sort(ranked, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Double.compare(scores.get((int) b[1]), scores.get((int) a[1]));
+            }
+        });
+        if (ranked.size() > limit) {
+            ranked = ranked.subList(0, limit);
+        }
+        if (ranked.isEmpty()) {
+            return results;
+        }
+        
+        StringBuilder ids = new StringBuilder();
+        for (long[] hit : ranked) {
+            if (ids.length() > 0) {
+                ids.append(',');
+            }
+            ids.append(hit[0]);
         }
         
+        Map<Long, String> snippets = new HashMap<>();
+        cursor = db.rawQuery("SELECT docid, snippet(" + TABLE_JOURNAL_FTS + ", ?, ?, '...', -1, 12) FROM "
+                        + TABLE_JOURNAL_FTS + " WHERE " + TABLE_JOURNAL_FTS + " MATCH ? AND docid IN (" + ids + ")",
+                new String[]{JournalSearchResult.HIGHLIGHT_START, JournalSearchResult.HIGHLIGHT_END, matchQuery});
+        while (cursor.moveToNext()) {
+            snippets.put(cursor.getLong(0), cursor.getString(1));
+        }
         cursor.close();
-        return entries;
-    }
-    
-    public int updateJournalEntry(JournalEntry entry) {
-        SQLiteDatabase db = this.getWritableDatabase();
         
-        ContentValues values = new ContentValues();
-        values.put(JOURNAL_TIMESTAMP, entry.getTimestamp());
-        values.put(JOURNAL_TITLE, entry.getTitle());
-        values.put(JOURNAL_CONTENT, entry.getContent());
-        values.put(JOURNAL_MOOD, entry.getMood());
-        values.put(JOURNAL_CRAVING_LEVEL, entry.getCravingLevel());
-        values.put(JOURNAL_TRIGGER, entry.getTrigger());
+        Map<Long, JournalEntry> entries = new HashMap<>();
+        for (JournalEntry entry : JournalRowMapper.mapAll(db.rawQuery(
+                "SELECT * FROM " + TABLE_JOURNAL + " WHERE " + JOURNAL_ID + " IN (" + ids + ")", null))) {
+            entries.put(entry.getId(), entry);
+        }
         
+        for (long[] hit : ranked) {
+            JournalEntry entry = entries.get(hit[0]);
+            if (entry != null) {
+                results.add(new JournalSearchResult(entry, snippets.get(hit[0]), scores.get((int) hit[1])));
+            }
+        }
+        return results;
+    }
+    
+    public int updateJournalEntry(final JournalEntry entry) {
         // Update row
-        return db.update(TABLE_JOURNAL, values, JOURNAL_ID + " = ?",
-                new String[]{String.valueOf(entry.getId())});
+        return runWrite(() -> {
+            long oldDay = getJournalDay(entry.getId());
+            SQLiteStatement statement = getUpdateJournalStatement();
+            bindJournalColumns(statement, entry);
+            statement.bindLong(7, entry.getId());
+            int updated = statement.executeUpdateDelete();
+            
+            long newDay = EpochDays.localDay(entry.getTimestamp());
+            if (updated > 0 && newDay != oldDay) {
+                markJournalDay(newDay);
+                recheckJournalDay(oldDay);
+            }
+            return updated;
+        });
     }
     
-    public void deleteJournalEntry(long id) {
-        SQLiteDatabase db = this.getWritableDatabase();
-        db.delete(TABLE_JOURNAL, JOURNAL_ID + " = ?", new String[]{String.valueOf(id)});
+    public void deleteJournalEntry(final long id) {
+        runWrite(() -> {
+            long day = getJournalDay(id);
+            int deleted = getWritableDatabase().delete(TABLE_JOURNAL, JOURNAL_ID + " = ?",
+                    new String[]{String.valueOf(id)});
+            if (deleted > 0) {
+                recheckJournalDay(day);
+            }
+            return deleted;
+        });
     }
     
-    // Settings Operations
+    // Journal Streak Operations
     
-    public void setSetting(String key, String value) {
-        SQLiteDatabase db = this.getWritableDatabase();
+    /**
+     * Get the journaling streak state. It is loaded from the daily rollups once and then
+     * updated by every journal write, so checking a streak doesn't touch the database.
+     */
+    public JournalStreakTracker getJournalStreak() {
+        JournalStreakTracker streak = journalStreak;
+        if (streak == null) {
+            streak = loadJournalStreak();
+        }
+        return streak;
+    }
+    
+    private synchronized JournalStreakTracker loadJournalStreak() {
+        if (journalStreak != null) {
+            return journalStreak;
+        }
         
-        ContentValues values = new ContentValues();
-        values.put(SETTINGS_VALUE, value);
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_JOURNAL_DAYS, null);
+        long[] days = new long[cursor.getCount()];
+        int count = 0;
+        while (cursor.moveToNext()) {
+            days[count++] = cursor.getLong(0);
+        }
+        cursor.close();
         
-        // Check if setting exists
-        Cursor cursor = db.query(TABLE_SETTINGS, new String[]{SETTINGS_KEY}, 
-                SETTINGS_KEY + "=?", new String[]{key}, null, null, null);
+        journalStreak = new JournalStreakTracker(Arrays.copyOf(days, count));
+        return journalStreak;
+    }
+    
+    // Under the loader's lock, so a load that read the rows before a bulk write can't
+    // publish them after this has dropped them
+    private synchronized void invalidateJournalStreak() {
+        journalStreak = null;
+    }
+    
+    // Local epoch-day of an entry's timestamp, or Long.MIN_VALUE if there is no such entry
+    private long getJournalDay(long id) {
+        Cursor cursor = getWritableDatabase().rawQuery(QUERY_JOURNAL_TIMESTAMP_BY_ID,
+                new String[]{String.valueOf(id)});
+        try {
+            return cursor.moveToFirst() ? EpochDays.localDay(cursor.getLong(0)) : Long.MIN_VALUE;
+        } finally {
+            cursor.close();
+        }
+    }
+    
+    // Runs on the writer thread under the loader's lock: a load racing a write either reads
+    // the written row or is updated right after it, and marking a day twice is harmless
+    private synchronized void markJournalDay(long day) {
+        if (journalStreak != null) {
+            journalStreak.dayJournaled(day);
+        }
+    }
+    
+    // After an entry left a day, clear the day unless other entries keep it in the rollups
+    private synchronized void recheckJournalDay(long day) {
+        if (journalStreak == null || day == Long.MIN_VALUE) {
+            return;
+        }
+        long entries = DatabaseUtils.longForQuery(getWritableDatabase(), QUERY_JOURNAL_DAY_EXISTS,
+                new String[]{String.valueOf(day)});
+        if (entries == 0) {
+            journalStreak.dayCleared(day);
+        }
+    }
+    
+    // Check-in History Operations
+    
+    /**
+     * Record the outcome of a check-in for a local epoch-day. A lapse is final for its
+     * day: a later confirmation on the same day does not turn it back into a sober day.
+     * @return The outcome now stored for the day
+     */
+    public boolean recordCheckIn(final long day, final boolean maintained, final long timestamp) {
+        return runWrite(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            db.execSQL("INSERT OR IGNORE INTO " + TABLE_CHECK_INS + "(" + CHECK_IN_DAY + ", "
+                            + CHECK_IN_MAINTAINED + ", " + CHECK_IN_TIMESTAMP + ") VALUES (?, ?, ?)",
+                    new Object[]{day, maintained ? 1 : 0, timestamp});
+            db.execSQL("UPDATE " + TABLE_CHECK_INS + " SET "
+                            + CHECK_IN_MAINTAINED + " = MIN(" + CHECK_IN_MAINTAINED + ", ?), "
+                            + CHECK_IN_TIMESTAMP + " = ? WHERE " + CHECK_IN_DAY + " = ?",
+                    new Object[]{maintained ? 1 : 0, timestamp, day});
+            return DatabaseUtils.longForQuery(db, "SELECT " + CHECK_IN_MAINTAINED + " FROM " + TABLE_CHECK_INS
+                    + " WHERE " + CHECK_IN_DAY + " = ?", new String[]{String.valueOf(day)}) == 1;
+        });
+    }
+    
+    /**
+     * Record many days at once in one transaction, e.g. to seed history from the old streak counters
+     */
+    public void recordCheckIns(final long[] days, final boolean maintained, final long timestamp) {
+        runWrite(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            SQLiteStatement statement = db.compileStatement("INSERT OR IGNORE INTO " + TABLE_CHECK_INS
+                    + "(" + CHECK_IN_DAY + ", " + CHECK_IN_MAINTAINED + ", " + CHECK_IN_TIMESTAMP + ") VALUES (?, ?, ?)");
+            db.beginTransaction();
+            try {
+                for (long day : days) {
+                    statement.bindLong(1, day);
+                    statement.bindLong(2, maintained ? 1 : 0);
+                    statement.bindLong(3, timestamp);
+                    statement.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+                statement.close();
+            }
+            return null;
+        });
+    }
+    
+    /**
+     * Get the latest day with a lapse recorded, or Long.MIN_VALUE if there is none
+     */
+    public long getLastLapseDay() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_LAST_LAPSE_DAY, null);
+        try {
+            return cursor.moveToFirst() && !cursor.isNull(0) ? cursor.getLong(0) : Long.MIN_VALUE;
+        } finally {
+            cursor.close();
+        }
+    }
+    
+    /**
+     * Get every day on which sobriety was confirmed, oldest first
+     */
+    public long[] getMaintainedCheckInDays() {
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_CHECK_IN_DAYS_MAINTAINED, null);
         
-        if (cursor.getCount() > 0) {
-            // Update existing setting
-            db.update(TABLE_SETTINGS, values, SETTINGS_KEY + " = ?", new String[]{key});
-        } else {
-            // Insert new setting
-            values.put(SETTINGS_KEY, key);
-            db.insert(TABLE_SETTINGS, null, values);
+        long[] days = new long[cursor.getCount()];
+        int count = 0;
+        while (cursor.moveToNext()) {
+            days[count++] = cursor.getLong(0);
         }
         
         cursor.close();
+        return Arrays.copyOf(days, count);
     }
     
-    public String getSetting(String key, String defaultValue) {
+    /**
+     * Replace the whole check-in history, e.g. from a backup. Rows hold the day,
+     * maintained and timestamp columns.
+     */
+    public void replaceCheckIns(final List<ContentValues> rows) {
+        replaceRows(TABLE_CHECK_INS, rows);
+    }
+    
+    // Sobriety Period Operations
+    
+    /**
+     * Close the ongoing sobriety period and open a new one on day, e.g. after a relapse.
+     * If no period is open yet, as on installs from before periods were kept, the
+     * closed one is taken to have started on previousStartDay.
+     */
+    public void startSobrietyPeriod(final long previousStartDay, final long day) {
+        runWrite(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                if (DatabaseUtils.queryNumEntries(db, TABLE_SOBRIETY_PERIODS, PERIOD_END_DAY + " IS NULL") == 0) {
+                    openSobrietyPeriod(db, previousStartDay);
+                }
+                db.execSQL("UPDATE " + TABLE_SOBRIETY_PERIODS + " SET " + PERIOD_END_DAY + " = ? WHERE "
+                                + PERIOD_END_DAY + " IS NULL AND " + PERIOD_START_DAY + " < ?",
+                        new Object[]{day, day});
+                openSobrietyPeriod(db, day);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            invalidateSobrietyPeriods();
+            return null;
+        });
+    }
+    
+    /**
+     * Move the start of the ongoing sobriety period to day, e.g. when the start date is
+     * corrected. Earlier periods are cut short or dropped where the new start overlaps them.
+     */
+    public void setCurrentSobrietyPeriodStart(final long day) {
+        runWrite(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.delete(TABLE_SOBRIETY_PERIODS, PERIOD_END_DAY + " IS NULL", null);
+                openSobrietyPeriod(db, day);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            invalidateSobrietyPeriods();
+            return null;
+        });
+    }
+    
+    /**
+     * Replace every sobriety period, e.g. from a backup. Rows hold the start_day and
+     * end_day columns; the ongoing period's end_day is null.
+     */
+    public void replaceSobrietyPeriods(final List<ContentValues> rows) {
+        replaceRows(TABLE_SOBRIETY_PERIODS, rows);
+    }
+    
+    // Trim the closed periods back to day and open a period there
+    private static void openSobrietyPeriod(SQLiteDatabase db, long day) {
+        db.delete(TABLE_SOBRIETY_PERIODS, PERIOD_START_DAY + " >= ?", new String[]{String.valueOf(day)});
+        db.execSQL("UPDATE " + TABLE_SOBRIETY_PERIODS + " SET " + PERIOD_END_DAY + " = ? WHERE "
+                + PERIOD_END_DAY + " > ?", new Object[]{day, day});
+        db.execSQL("INSERT INTO " + TABLE_SOBRIETY_PERIODS + "(" + PERIOD_START_DAY + ", " + PERIOD_END_DAY
+                + ") VALUES (?, NULL)", new Object[]{day});
+    }
+    
+    /**
+     * Get every sobriety period, oldest first; empty until the first period is recorded
+     */
+    public SobrietyPeriodIndex getSobrietyPeriods() {
+        SobrietyPeriodIndex periods = sobrietyPeriods;
+        if (periods == null) {
+            periods = loadSobrietyPeriods();
+        }
+        return periods;
+    }
+    
+    private synchronized SobrietyPeriodIndex loadSobrietyPeriods() {
+        if (sobrietyPeriods != null) {
+            return sobrietyPeriods;
+        }
+        
         SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_SOBRIETY_PERIODS, null);
+        long[] starts = new long[cursor.getCount()];
+        long[] ends = new long[starts.length];
+        int count = 0;
+        while (cursor.moveToNext()) {
+            starts[count] = cursor.getLong(0);
+            ends[count] = cursor.isNull(1) ? SobrietyPeriodIndex.OPEN : cursor.getLong(1);
+            count++;
+        }
+        cursor.close();
+        
+        sobrietyPeriods = new SobrietyPeriodIndex(Arrays.copyOf(starts, count), Arrays.copyOf(ends, count));
+        return sobrietyPeriods;
+    }
+    
+    // Under the loader's lock, like invalidateJournalStreak()
+    private synchronized void invalidateSobrietyPeriods() {
+        sobrietyPeriods = null;
+    }
+
+    // Achievement Operations
+
+    /**
+     * Get the unlock time of every unlocked achievement, keyed by achievement id
+     */
+    public Map<Integer, Long> getUnlockedAchievements() {
+        Map<Integer, Long> unlocked = new HashMap<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_ACHIEVEMENTS_UNLOCKED, null);
+
+        while (cursor.moveToNext()) {
+            unlocked.put(cursor.getInt(0), cursor.isNull(1) ? 0L : cursor.getLong(1));
+        }
+
+        cursor.close();
+        return unlocked;
+    }
+
+    /**
+     * Store one achievement's unlock as a single row write
+     */
+    public void saveAchievementUnlock(final Achievement achievement) {
+        runWrite(() -> {
+            bindAchievementUnlock(getUpsertAchievementStatement(), achievement).executeInsert();
+            return null;
+        });
+    }
+
+    /**
+     * Store several unlocks in one transaction, e.g. when migrating the old preferences blob
+     */
+    public void saveAchievementUnlocks(final List<Achievement> unlocked) {
+        if (unlocked.isEmpty()) {
+            return;
+        }
+        runWrite(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            SQLiteStatement statement = getUpsertAchievementStatement();
+            db.beginTransaction();
+            try {
+                for (Achievement achievement : unlocked) {
+                    bindAchievementUnlock(statement, achievement).executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            return null;
+        });
+    }
+
+    // Rows are keyed by achievement id; the name is what backups match on when restoring
+    private static SQLiteStatement bindAchievementUnlock(SQLiteStatement statement, Achievement achievement) {
+        statement.bindLong(1, achievement.getId());
+        statement.bindString(2, achievement.getTitle());
+        statement.bindString(3, achievement.getDescription());
+        statement.bindLong(4, achievement.getUnlockTime());
+        statement.bindString(5, achievement.getCategory().name());
+        return statement;
+    }
+
+    // Settings Operations
+    
+    public void setSetting(final String key, final String value) {
+        runWrite(() -> {
+            // Read before the write: a cold cache would otherwise load the new value as the old one
+            SettingsSnapshot previous = getSettingsSnapshot();
+            SQLiteStatement statement = getUpsertSettingStatement();
+            statement.bindString(1, key);
+            statement.bindString(2, value);
+            statement.executeInsert();
+            
+            // Write through to the cache once the row is stored
+            settingsSnapshot = previous.with(key, value);
+            recordSavingsRatesIfChanged(previous, settingsSnapshot);
+            return null;
+        });
+    }
+    
+    /**
+     * Write several settings in one transaction, leaving other keys untouched
+     */
+    public void setSettings(Map<String, String> settings) {
+        writeSettings(settings, false);
+    }
+    
+    /**
+     * Replace the whole settings table with the given keys in one transaction
+     */
+    public void replaceAllSettings(Map<String, String> settings) {
+        writeSettings(settings, true);
+    }
+    
+    private void writeSettings(final Map<String, String> settings, final boolean clearExisting) {
+        runWrite(() -> {
+            SQLiteDatabase db = this.getWritableDatabase();
+            SQLiteStatement statement = getUpsertSettingStatement();
+            // Read before the write: a cold cache would otherwise load the new values as the old ones
+            SettingsSnapshot previous = getSettingsSnapshot();
+            
+            db.beginTransaction();
+            try {
+                if (clearExisting) {
+                    db.delete(TABLE_SETTINGS, null, null);
+                }
+                for (Map.Entry<String, String> setting : settings.entrySet()) {
+                    statement.bindString(1, setting.getKey());
+                    statement.bindString(2, setting.getValue());
+                    statement.executeInsert();
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            
+            Map<String, String> values = clearExisting
+                    ? new HashMap<String, String>()
+                    : new HashMap<>(previous.asMap());
+            values.putAll(settings);
+            settingsSnapshot = new SettingsSnapshot(values);
+            recordSavingsRatesIfChanged(previous, settingsSnapshot);
+            return null;
+        });
+    }
+    
+    // Runs on the writer thread after a settings write; the new rates apply from today
+    private void recordSavingsRatesIfChanged(SettingsSnapshot previous, SettingsSnapshot current) {
+        if (previous.getDrinkCost() == current.getDrinkCost()
+                && previous.getDrinksPerWeek() == current.getDrinksPerWeek()
+                && previous.getCaloriesPerDrink() == current.getCaloriesPerDrink()) {
+            return;
+        }
         
-        String value = defaultValue;
+        SQLiteDatabase db = getWritableDatabase();
+        long today = EpochDays.today();
+        db.beginTransaction();
+        try {
+            // The first change also stores the rates that held before it, so earlier days keep
+            // them. Defaults nobody entered aren't kept: the first rates entered, e.g. after
+            // backdating the start date, are the best guess for the days before as well.
+            if (previous.hasSavingsRates() && DatabaseUtils.queryNumEntries(db, TABLE_SETTINGS_HISTORY) == 0) {
+                insertSavingsRates(db, today - 1, previous);
+            }
+            insertSavingsRates(db, today, current);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        invalidateSavingsRates();
+    }
+    
+    /**
+     * Replace the savings rate history, e.g. from a backup. Rows hold the day, drink_cost,
+     * drinks_per_week and calories_per_drink columns.
+     */
+    public void replaceSettingsHistory(final List<ContentValues> rows) {
+        replaceRows(TABLE_SETTINGS_HISTORY, rows);
+    }
+    
+    // Empty a history table and insert rows in one transaction, then drop the cached indexes
+    // built from it; the check-in streaks live in SobrietyTracker, which the caller invalidates
+    private void replaceRows(final String table, final List<ContentValues> rows) {
+        runWrite(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            db.beginTransaction();
+            try {
+                db.delete(table, null, null);
+                for (ContentValues values : rows) {
+                    db.insertOrThrow(table, null, values);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            invalidateSobrietyPeriods();
+            invalidateSavingsRates();
+            return null;
+        });
+    }
+    
+    private static void insertSavingsRates(SQLiteDatabase db, long day, SettingsSnapshot settings) {
+        db.execSQL(UPSERT_SETTINGS_HISTORY, new Object[]{day, settings.getDrinkCost(),
+                settings.getDrinksPerWeek(), settings.getCaloriesPerDrink()});
+    }
+    
+    /**
+     * Get the money and calories saved per sober day over time. Until the settings are
+     * first changed this is the current settings, applied to every day.
+     */
+    public SavingsRateIndex getSavingsRates() {
+        SavingsRateIndex rates = savingsRates;
+        if (rates == null) {
+            rates = loadSavingsRates();
+        }
+        return rates;
+    }
+    
+    private synchronized SavingsRateIndex loadSavingsRates() {
+        if (savingsRates != null) {
+            return savingsRates;
+        }
         
-        Cursor cursor = db.query(TABLE_SETTINGS, new String[]{SETTINGS_VALUE},
-                SETTINGS_KEY + "=?", new String[]{key}, null, null, null);
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_SETTINGS_HISTORY, null);
+        long[] days = new long[cursor.getCount()];
+        double[] money = new double[days.length];
+        double[] calories = new double[days.length];
+        int count = 0;
+        while (cursor.moveToNext()) {
+            days[count] = cursor.getLong(0);
+            double drinksPerDay = cursor.getInt(2) / 7.0;
+            money[count] = drinksPerDay * cursor.getDouble(1);
+            calories[count] = drinksPerDay * cursor.getInt(3);
+            count++;
+        }
+        cursor.close();
         
-        if (cursor.moveToFirst()) {
-            value = cursor.getString(cursor.getColumnIndex(SETTINGS_VALUE));
+        savingsRates = count == 0
+                ? SavingsRateIndex.constant(getSettingsSnapshot())
+                : new SavingsRateIndex(Arrays.copyOf(days, count),
+                        Arrays.copyOf(money, count), Arrays.copyOf(calories, count));
+        return savingsRates;
+    }
+    
+    // Under the loader's lock, like invalidateJournalStreak()
+    private synchronized void invalidateSavingsRates() {
+        savingsRates = null;
+    }
+    
+    private SQLiteStatement getUpsertSettingStatement() {
+        if (upsertSettingStatement == null) {
+            upsertSettingStatement = getWritableDatabase().compileStatement(UPSERT_SETTING);
+        }
+        return upsertSettingStatement;
+    }
+    
+    private SQLiteStatement getInsertJournalStatement() {
+        if (insertJournalStatement == null) {
+            insertJournalStatement = getWritableDatabase().compileStatement(INSERT_JOURNAL);
+        }
+        return insertJournalStatement;
+    }
+    
+    private SQLiteStatement getUpdateJournalStatement() {
+        if (updateJournalStatement == null) {
+            updateJournalStatement = getWritableDatabase().compileStatement(UPDATE_JOURNAL);
+        }
+        return updateJournalStatement;
+    }
+    
+    private SQLiteStatement getUpsertAchievementStatement() {
+        if (upsertAchievementStatement == null) {
+            upsertAchievementStatement = getWritableDatabase().compileStatement(UPSERT_ACHIEVEMENT_UNLOCK);
+        }
+        return upsertAchievementStatement;
+    }
+    
+    /**
+     * Get the cached settings. The table is read on first use only; after that
+     * this is a single volatile read with no locking and no I/O.
+     */
+    public SettingsSnapshot getSettingsSnapshot() {
+        SettingsSnapshot snapshot = settingsSnapshot;
+        if (snapshot == null) {
+            snapshot = loadSettingsSnapshot();
+        }
+        return snapshot;
+    }
+    
+    private synchronized SettingsSnapshot loadSettingsSnapshot() {
+        if (settingsSnapshot != null) {
+            return settingsSnapshot;
         }
         
+        Map<String, String> values = new HashMap<>();
+        SQLiteDatabase db = this.getReadableDatabase();
+        Cursor cursor = db.rawQuery(QUERY_SETTINGS_ALL, null);
+        while (cursor.moveToNext()) {
+            values.put(cursor.getString(0), cursor.getString(1));
+        }
         cursor.close();
-        return value;
+        
+        settingsSnapshot = new SettingsSnapshot(values);
+        return settingsSnapshot;
+    }
+    
+    /**
+     * Drop the cached settings after the table was changed outside of setSetting(),
+     * for example by a backup restore
+     */
+    public synchronized void invalidateSettingsCache() {
+        settingsSnapshot = null;
+        savingsRates = null;
+    }
+    
+    public String getSetting(String key, String defaultValue) {
+        return getSettingsSnapshot().getString(key, defaultValue);
     }
     
     public float getFloatSetting(String key, float defaultValue) {
-        String value = getSetting(key, String.valueOf(defaultValue));
+        return getSettingsSnapshot().getFloat(key, defaultValue);
+    }
+    
+    public int getIntSetting(String key, int defaultValue) {
+        return getSettingsSnapshot().getInt(key, defaultValue);
+    }
+
+    // Database Snapshots
+    
+    /**
+     * Write a consistent copy of the whole database to target as a single file, for
+     * snapshot backups. VACUUM INTO (SQLite 3.27, API 30) writes a compacted copy in
+     * one pass; older platforms copy the database and its write-ahead log while
+     * holding the write lock, then fold the log into the copy.
+     */
+    public void copyDatabaseTo(final File target) throws IOException {
+        try {
+            runWrite(() -> {
+                SQLiteDatabase db = getWritableDatabase();
+                deleteDatabaseFiles(target);
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                    try {
+                        db.execSQL("VACUUM INTO ?", new Object[]{target.getPath()});
+                        return null;
+                    } catch (SQLException e) {
+                        Log.w(TAG, "VACUUM INTO failed, copying the database file instead", e);
+                        deleteDatabaseFiles(target);
+                    }
+                }
+                
+                // A passive checkpoint never waits on readers; it only keeps the log short.
+                // The pragma only runs when its result row is stepped, so read it.
+                DatabaseUtils.longForQuery(db, "PRAGMA wal_checkpoint(PASSIVE)", null);
+                File source = new File(db.getPath());
+                File sourceWal = new File(source.getPath() + "-wal");
+                db.beginTransaction();
+                try {
+                    // No other write can commit or checkpoint while this transaction is open
+                    copyFile(source, target);
+                    if (sourceWal.exists()) {
+                        copyFile(sourceWal, new File(target.getPath() + "-wal"));
+                    }
+                } finally {
+                    db.endTransaction();
+                }
+                
+                // Opening the copy without write-ahead logging checkpoints the log into it
+                SQLiteDatabase copy = SQLiteDatabase.openDatabase(target.getPath(), null,
+                        SQLiteDatabase.OPEN_READWRITE);
+                copy.close();
+                new File(target.getPath() + "-wal").delete();
+                new File(target.getPath() + "-shm").delete();
+                return null;
+            });
+        } catch (SQLException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Check that file is a database this version of the app can open: a schema
+     * version no newer than ours, holding the journal table. Older versions are
+     * upgraded by onUpgrade() once the file is in place.
+     *
+     * @return the file's schema version
+     */
+    public static int validateDatabaseFile(File file) throws IOException {
+        SQLiteDatabase db;
         try {
-            return Float.parseFloat(value);
-        } catch (NumberFormatException e) {
-            return defaultValue;
+            db = SQLiteDatabase.openDatabase(file.getPath(), null, SQLiteDatabase.OPEN_READWRITE);
+        } catch (SQLException e) {
+            throw new IOException("Snapshot is not a database", e);
+        }
+        try {
+            int version = db.getVersion();
+            if (version > DATABASE_VERSION) {
+                throw new IOException("Snapshot was made by a newer version of the app");
+            }
+            long tables = DatabaseUtils.longForQuery(db,
+                    "SELECT COUNT(*) FROM sqlite_master WHERE type='table' AND name=?", new String[]{TABLE_JOURNAL});
+            if (version < 1 || tables == 0) {
+                throw new IOException("Snapshot is not a SoberTime database");
+            }
+            return version;
+        } catch (SQLException e) {
+            throw new IOException("Snapshot database is damaged", e);
+        } finally {
+            db.close();
         }
     }
     
-    public int getIntSetting(String key, int defaultValue) {
-        String value = getSetting(key, String.valueOf(defaultValue));
+    /**
+     * Swap the database file for source, which should have passed validateDatabaseFile().
+     * Runs on the writer thread with the database closed; the next access reopens it and
+     * upgrades it if it came from an older version.
+     */
+    public void replaceDatabase(final File source) throws IOException {
         try {
-            return Integer.parseInt(value);
-        } catch (NumberFormatException e) {
-            return defaultValue;
+            runWrite(() -> {
+                File database = new File(getWritableDatabase().getPath());
+                close();
+                deleteDatabaseFiles(database);
+                if (!source.renameTo(database)) {
+                    copyFile(source, database);
+                    source.delete();
+                }
+                // Under the loaders' lock, so none of them publishes what it read from the old file
+                synchronized (this) {
+                    settingsSnapshot = null;
+                    sobrietyPeriods = null;
+                    savingsRates = null;
+                    journalStreak = null;
+                }
+                
+                // Reopen now, so an upgrade runs here rather than on the next caller's thread
+                getWritableDatabase();
+                return null;
+            });
+        } catch (SQLException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+    }
+    
+    private static void deleteDatabaseFiles(File database) {
+        database.delete();
+        for (String suffix : new String[]{"-wal", "-shm", "-journal"}) {
+            new File(database.getPath() + suffix).delete();
+        }
+    }
+    
+    private static void copyFile(File from, File to) throws IOException {
+        try (FileChannel in = new FileInputStream(from).getChannel();
+             FileChannel out = new FileOutputStream(to).getChannel()) {
+            long position = 0;
+            long size = in.size();
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
+            }
         }
     }
 
     // Reset Database
     public void resetAllData() {
-        SQLiteDatabase db = getWritableDatabase();
-        // Clear all tables
-        db.delete("journal", null, null);
-        db.delete("settings", null, null);
-        // Add other tables as needed
+        runWrite(() -> {
+            SQLiteDatabase db = getWritableDatabase();
+            // Clear all tables
+            db.delete("journal", null, null);
+            db.delete("settings", null, null);
+            db.delete(TABLE_CHECK_INS, null, null);
+            db.delete(TABLE_SOBRIETY_PERIODS, null, null);
+            db.delete(TABLE_SETTINGS_HISTORY, null, null);
+            // Add other tables as needed
+            
+            synchronized (this) {
+                settingsSnapshot = SettingsSnapshot.EMPTY;
+                sobrietyPeriods = SobrietyPeriodIndex.EMPTY;
+                savingsRates = null;
+                journalStreak = null;
+            }
+            return null;
+        });
     }
 }
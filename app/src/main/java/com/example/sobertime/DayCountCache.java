@@ -0,0 +1,134 @@
+package com.example.sobertime;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.util.Log;
+
+import androidx.core.content.ContextCompat;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Holds a day count until the moment it next changes, so reading it is a volatile read
+ * and a clock check instead of building and normalizing calendars. The count is worked
+ * out again once that moment has passed, when the start date changes, and when the
+ * system date, time or time zone changes.
+ */
+public final class DayCountCache {
+
+    private static final String TAG = "DayCountCache";
+
+    /**
+     * How a tracker counts days from the start date
+     */
+    public interface Counter {
+        int count(long startDate, long now);
+
+        // The first time after now at which count() gives a different answer
+        long nextChange(long startDate, long now);
+    }
+
+    /**
+     * Told when the cached count may have changed; read it again to get the new value
+     */
+    public interface Listener {
+        void onDayCountChanged();
+    }
+
+    // Every cache in the process, so one receiver can invalidate them all
+    private static final List<DayCountCache> caches = new CopyOnWriteArrayList<>();
+    private static Context registeredContext;
+
+    // A count and the span of time it holds for; replaced, never changed
+    private static final class Entry {
+        final long startDate;
+        final int days;
+        final long validFrom;
+        final long validUntil;
+
+        Entry(long startDate, int days, long validFrom, long validUntil) {
+            this.startDate = startDate;
+            this.days = days;
+            this.validFrom = validFrom;
+            this.validUntil = validUntil;
+        }
+    }
+
+    private final Counter counter;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile Entry entry;
+
+    public DayCountCache(Context context, Counter counter) {
+        this.counter = counter;
+        caches.add(this);
+        registerClockReceiver(context.getApplicationContext());
+    }
+
+    /**
+     * The day count for this start date at the current time
+     */
+    public int getDays(long startDate) {
+        Entry current = entry;
+        long now = System.currentTimeMillis();
+        // A clock set backwards lands before validFrom, in case the broadcast is missed
+        if (current == null || current.startDate != startDate
+                || now < current.validFrom || now >= current.validUntil) {
+            current = new Entry(startDate, counter.count(startDate, now), now, counter.nextChange(startDate, now));
+            entry = current;
+        }
+        return current.days;
+    }
+
+    /**
+     * Drop the cached count and tell the listeners, e.g. after the start date was changed
+     */
+    public void invalidate() {
+        entry = null;
+        for (Listener listener : listeners) {
+            listener.onDayCountChanged();
+        }
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    static void invalidateAll() {
+        for (DayCountCache cache : caches) {
+            cache.invalidate();
+        }
+    }
+
+    // Registered at runtime: it only matters while the process, and so the caches, are alive
+    private static synchronized void registerClockReceiver(Context context) {
+        if (registeredContext == context) {
+            return;
+        }
+        registeredContext = context;
+
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        filter.addAction(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        ContextCompat.registerReceiver(context, new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Log.d(TAG, "Day counts invalidated by " + intent.getAction());
+                if (Intent.ACTION_TIMEZONE_CHANGED.equals(intent.getAction())) {
+                    EpochDays.onTimeZoneChanged();
+                    // Journal entries may now fall on different local days
+                    final DatabaseHelper databaseHelper = DatabaseHelper.getInstance(context);
+                    databaseHelper.runWriteAsync(databaseHelper::rebuildJournalDailyStats);
+                }
+                invalidateAll();
+            }
+        }, filter, ContextCompat.RECEIVER_NOT_EXPORTED);
+    }
+}
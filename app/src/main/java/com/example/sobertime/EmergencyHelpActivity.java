@@ -62,7 +62,7 @@ public class EmergencyHelpActivity extends BaseActivity {
         }
         
         // Initialize preferences
-        preferences = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        preferences = PreferenceStore.getInstance(this).getPreferences(PREFS_NAME);
         
         // Initialize views
         initializeViews();
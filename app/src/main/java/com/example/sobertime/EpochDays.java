@@ -0,0 +1,87 @@
+package com.example.sobertime;
+
+import androidx.annotation.VisibleForTesting;
+
+import java.util.TimeZone;
+
+/**
+ * Day arithmetic on local epoch-days: the number of days since 1970-01-01 in the device's
+ * time zone, as a plain long. Two timestamps are on the same local day exactly when their
+ * epoch-days are equal, and the days between them is a subtraction, whatever DST
+ * transitions lie in between. Nothing here allocates.
+ */
+public final class EpochDays {
+
+    public static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+
+    // TimeZone.getDefault() hands out a copy on every call, so keep one until the zone changes
+    private static volatile TimeZone zone = TimeZone.getDefault();
+
+    private EpochDays() {
+    }
+
+    /**
+     * Local epoch-day of a millisecond timestamp
+     */
+    public static long localDay(long millis) {
+        return Math.floorDiv(millis + zone.getOffset(millis), MILLIS_PER_DAY);
+    }
+
+    /**
+     * Local epoch-day of the current time
+     */
+    public static long today() {
+        return localDay(System.currentTimeMillis());
+    }
+
+    /**
+     * Calendar days from the day of fromMillis to the day of toMillis; 0 on the same day
+     */
+    public static long daysBetween(long fromMillis, long toMillis) {
+        return localDay(toMillis) - localDay(fromMillis);
+    }
+
+    /**
+     * First millisecond of a local epoch-day. Where DST starts at midnight the day has
+     * no 00:00 and begins at the transition instead.
+     */
+    public static long startOfDay(long epochDay) {
+        TimeZone current = zone;
+        long localMidnight = epochDay * MILLIS_PER_DAY;
+        // The offset at UTC midnight may not be the one in force at local midnight;
+        // a second pass uses the offset at the first guess
+        long millis = localMidnight - current.getOffset(localMidnight);
+        millis = localMidnight - current.getOffset(millis);
+        if (localDay(millis) != epochDay) {
+            // Landed in the hour before a midnight transition; the other offset is right
+            millis = localMidnight - current.getOffset(millis);
+        }
+        return millis;
+    }
+
+    /**
+     * Epoch-day of a calendar date
+     * @param month 1 for January through 12 for December
+     */
+    public static long of(int year, int month, int dayOfMonth) {
+        // Count from March so the leap day falls at the end of the year
+        long y = month <= 2 ? year - 1 : year;
+        long era = Math.floorDiv(y, 400);
+        long yearOfEra = y - era * 400;
+        long dayOfYear = (153 * ((month + 9) % 12) + 2) / 5 + dayOfMonth - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    /**
+     * Pick up the device's new time zone; called when ACTION_TIMEZONE_CHANGED arrives
+     */
+    public static void onTimeZoneChanged() {
+        zone = TimeZone.getDefault();
+    }
+
+    @VisibleForTesting
+    static void setTimeZone(TimeZone timeZone) {
+        zone = timeZone;
+    }
+}
@@ -79,8 +79,9 @@ public class HealthBenefitsActivity extends BaseActivity {
         StringBuilder physicalBenefits = new StringBuilder();
 
         // Get user's custom values from database
-        int drinksPerWeek = databaseHelper.getIntSetting("drinks_per_week", 15);
-        int caloriesPerDrink = databaseHelper.getIntSetting("calories_per_drink", 150);
+        SettingsSnapshot settings = databaseHelper.getSettingsSnapshot();
+        int drinksPerWeek = settings.getDrinksPerWeek();
+        int caloriesPerDrink = settings.getCaloriesPerDrink();
 
         // Calories saved
         float drinksAvoided = (daysSober / 7.0f) * drinksPerWeek;
@@ -184,8 +185,9 @@ public class HealthBenefitsActivity extends BaseActivity {
         StringBuilder financialBenefits = new StringBuilder();
 
         // Get user's custom values from database
-        float drinkCost = databaseHelper.getFloatSetting("drink_cost", 8.50f);
-        int drinksPerWeek = databaseHelper.getIntSetting("drinks_per_week", 15);
+        SettingsSnapshot settings = databaseHelper.getSettingsSnapshot();
+        float drinkCost = settings.getDrinkCost();
+        int drinksPerWeek = settings.getDrinksPerWeek();
 
         // Calculate money saved
         float drinksAvoided = (daysSober / 7.0f) * drinksPerWeek;
@@ -161,7 +161,7 @@ public class IntrusiveCheckInActivity extends BaseActivity {
     }
     
     private void startAlarmAndVibration() {
-        SharedPreferences prefs = getSharedPreferences("notification_settings", MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(this).getPreferences("notification_settings");
         int alarmVolume = prefs.getInt("alarm_volume", 100); // Default to max
         boolean useVibration = prefs.getBoolean("use_vibration", true);
         
@@ -342,7 +342,7 @@ public class IntrusiveCheckInActivity extends BaseActivity {
                 .setPositiveButton("Yes, Reset", new DialogInterface.OnClickListener() {
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
-                        resetSobrietyCounter();
+                        // recordCheckIn() resets the counter and starts a new sobriety period
                         recordCheckIn(false);
                         finish();
                     }
@@ -364,12 +364,16 @@ public class IntrusiveCheckInActivity extends BaseActivity {
         
         if (maintainedSobriety) {
             sobrietyTracker.confirmSobrietyForToday();
+            sobrietyTracker.recordCheckInOutcome(true);
             Toast.makeText(this, "Sobriety confirmed for today!", Toast.LENGTH_SHORT).show();
         } else {
             sobrietyTracker.resetSobrietyCounter();
+            sobrietyTracker.recordCheckInOutcome(false);
             Toast.makeText(this, "Counter reset. Every new beginning is progress.", Toast.LENGTH_LONG).show();
         }
         
+        AchievementManager.getInstance(this).onEvent(AchievementRuleEngine.Event.CHECK_IN_RECORDED);
+        
         // Notify accountability buddy if needed - check permissions first
         if (ContextCompat.checkSelfPermission(this, Manifest.permission.SEND_SMS)
                 != PackageManager.PERMISSION_GRANTED) {
@@ -383,11 +387,6 @@ public class IntrusiveCheckInActivity extends BaseActivity {
         }
     }
     
-    private void resetSobrietyCounter() {
-        SobrietyTracker sobrietyTracker = SobrietyTracker.getInstance(this);
-        sobrietyTracker.setSobrietyStartDate(System.currentTimeMillis());
-    }
-    
     private void notifyBuddyIfNeeded(boolean maintainedSobriety) {
         SQLiteDatabase db = databaseHelper.getReadableDatabase();
         Cursor cursor = db.query(
@@ -55,6 +55,9 @@ public class IntrusiveNotificationReceiver extends BroadcastReceiver {
         // Always reschedule next alarm to ensure we don't miss future check-ins
         Log.d(TAG, "Rescheduling next intrusive check-in alarm");
         NotificationHelper.scheduleIntrusiveCheckInNotification(context);
+        
+        // The process may be killed once this returns
+        PreferenceStore.getInstance(context).flush();
     }
     
     /**
@@ -233,7 +236,7 @@ public class IntrusiveNotificationReceiver extends BroadcastReceiver {
                     (NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE);
             
             // Add vibration pattern if enabled
-            SharedPreferences prefs = context.getSharedPreferences("notification_settings", Context.MODE_PRIVATE);
+            SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences("notification_settings");
             boolean useVibration = prefs.getBoolean("use_vibration", true);
             
             if (useVibration) {
@@ -264,7 +267,7 @@ public class IntrusiveNotificationReceiver extends BroadcastReceiver {
                 .setContentIntent(contentIntent);
                 
             // Add vibration pattern if enabled
-            SharedPreferences prefs = context.getSharedPreferences("notification_settings", Context.MODE_PRIVATE);
+            SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences("notification_settings");
             boolean useVibration = prefs.getBoolean("use_vibration", true);
             
             if (useVibration) {
@@ -349,7 +352,7 @@ public class IntrusiveNotificationReceiver extends BroadcastReceiver {
     }
     
     private boolean hasCheckedInToday(SobrietyTracker tracker, Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(SOBRIETY_PREFS_NAME, Context.MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences(SOBRIETY_PREFS_NAME);
         long lastConfirmed = prefs.getLong(LAST_CONFIRMED_DATE_KEY, 0);
         
         if (lastConfirmed == 0) {
@@ -357,28 +360,11 @@ public class IntrusiveNotificationReceiver extends BroadcastReceiver {
             return false;
         }
         
-        java.util.Calendar lastConfirmedCal = java.util.Calendar.getInstance();
-        lastConfirmedCal.setTimeInMillis(lastConfirmed);
-        
-        java.util.Calendar todayCal = java.util.Calendar.getInstance();
-        
-        // Reset time portion to compare just the dates
-        lastConfirmedCal.set(java.util.Calendar.HOUR_OF_DAY, 0);
-        lastConfirmedCal.set(java.util.Calendar.MINUTE, 0);
-        lastConfirmedCal.set(java.util.Calendar.SECOND, 0);
-        lastConfirmedCal.set(java.util.Calendar.MILLISECOND, 0);
-        
-        todayCal.set(java.util.Calendar.HOUR_OF_DAY, 0);
-        todayCal.set(java.util.Calendar.MINUTE, 0);
-        todayCal.set(java.util.Calendar.SECOND, 0);
-        todayCal.set(java.util.Calendar.MILLISECOND, 0);
-        
-        // Compare just the date portions
-        boolean checkedInToday = lastConfirmedCal.get(java.util.Calendar.YEAR) == todayCal.get(java.util.Calendar.YEAR) &&
-               lastConfirmedCal.get(java.util.Calendar.DAY_OF_YEAR) == todayCal.get(java.util.Calendar.DAY_OF_YEAR);
+        // Compare just the local days
+        boolean checkedInToday = EpochDays.localDay(lastConfirmed) == EpochDays.today();
         
         // Get the settings to see if we should enforce daily check-ins
-        SharedPreferences notifSettings = context.getSharedPreferences("notification_settings", Context.MODE_PRIVATE);
+        SharedPreferences notifSettings = PreferenceStore.getInstance(context).getPreferences("notification_settings");
         boolean enforceDailyCheckins = notifSettings.getBoolean("enforce_daily_checkins", true);
         
         // If daily check-ins are not enforced, act as if the user hasn't checked in yet
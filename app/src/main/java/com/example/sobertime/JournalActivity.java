@@ -3,6 +3,8 @@ package com.example.sobertime;
 import android.content.DialogInterface;
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
@@ -14,11 +16,13 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
+import androidx.appcompat.widget.SearchView;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
 
+import java.util.ArrayList;
 import java.util.List;
 
 public class JournalActivity extends BaseActivity implements JournalAdapter.OnEntryClickListener {
@@ -32,8 +36,23 @@ public class JournalActivity extends BaseActivity implements JournalAdapter.OnEn
     private LinearLayout emptyStateContainer;
     private TextView emptyStateText;
     
+    // Keyset paging: entries are loaded a page at a time as the list scrolls
+    private static final int PAGE_SIZE = 30;
+    private static final int PREFETCH_DISTANCE = 10;
+    
     private DatabaseHelper databaseHelper;
-    private List<JournalEntry> journalEntries;
+    private LinearLayoutManager layoutManager;
+    private boolean isLoadingPage = false;
+    private boolean hasMoreEntries = true;
+    private int loadGeneration = 0;
+    
+    // Search replaces the paged list while a query is active
+    private static final int SEARCH_RESULT_LIMIT = 50;
+    private static final long SEARCH_DEBOUNCE_MS = 250;
+    
+    private String searchQuery;
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private Runnable pendingSearch;
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -55,7 +74,22 @@ public class JournalActivity extends BaseActivity implements JournalAdapter.OnEn
         emptyStateText = findViewById(R.id.emptyStateText);
         
         // Set up RecyclerView
-        recyclerView.setLayoutManager(new LinearLayoutManager(this));
+        layoutManager = new LinearLayoutManager(this);
+        recyclerView.setLayoutManager(layoutManager);
+        
+        // Prefetch the next page before the user reaches the end of the list
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (adapter == null) {
+                    return;
+                }
+                int lastVisible = layoutManager.findLastVisibleItemPosition();
+                if (lastVisible >= adapter.getItemCount() - PREFETCH_DISTANCE) {
+                    loadNextPage();
+                }
+            }
+        });
         
         // Load journal entries
         loadJournalEntries();
@@ -71,20 +105,123 @@ public class JournalActivity extends BaseActivity implements JournalAdapter.OnEn
     }
     
     private void loadJournalEntries() {
-        journalEntries = databaseHelper.getAllJournalEntries();
+        // Start over from the newest entry; any page still in flight is discarded
+        loadGeneration++;
+        isLoadingPage = false;
+        hasMoreEntries = true;
+        
+        adapter = new JournalAdapter(this, new ArrayList<JournalEntry>(), this);
+        recyclerView.setAdapter(adapter);
+        
+        loadNextPage();
+    }
+    
+    // Reload whatever is on screen: the search results while searching, otherwise the journal
+    private void refreshEntries() {
+        if (searchQuery != null) {
+            runSearch(searchQuery);
+        } else {
+            loadJournalEntries();
+        }
+    }
+    
+    private void scheduleSearch(final String query) {
+        if (pendingSearch != null) {
+            searchHandler.removeCallbacks(pendingSearch);
+        }
+        pendingSearch = new Runnable() {
+            @Override
+            public void run() {
+                runSearch(query);
+            }
+        };
+        searchHandler.postDelayed(pendingSearch, SEARCH_DEBOUNCE_MS);
+    }
+    
+    private void runSearch(final String query) {
+        if (query == null || query.trim().isEmpty()) {
+            if (searchQuery != null) {
+                searchQuery = null;
+                loadJournalEntries();
+            }
+            return;
+        }
+        
+        searchQuery = query;
+        loadGeneration++;
+        isLoadingPage = false;
+        hasMoreEntries = false;
+        final int generation = loadGeneration;
+        
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final List<JournalSearchResult> results =
+                        databaseHelper.searchJournal(query, SEARCH_RESULT_LIMIT);
+                
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != loadGeneration || isFinishing()) {
+                            return;
+                        }
+                        adapter = new JournalAdapter(JournalActivity.this, new ArrayList<JournalEntry>(), JournalActivity.this);
+                        adapter.setSearchResults(results);
+                        recyclerView.setAdapter(adapter);
+                        updateEmptyState();
+                    }
+                });
+            }
+        }).start();
+    }
+    
+    private void loadNextPage() {
+        if (isLoadingPage || !hasMoreEntries || searchQuery != null) {
+            return;
+        }
+        isLoadingPage = true;
         
+        // The oldest loaded entry is the cursor for the next page
+        JournalEntry lastEntry = adapter.getLastEntry();
+        final long beforeTimestamp = lastEntry != null ? lastEntry.getTimestamp() : Long.MAX_VALUE;
+        final long beforeId = lastEntry != null ? lastEntry.getId() : Long.MAX_VALUE;
+        final int generation = loadGeneration;
+        
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                final List<JournalEntry> page =
+                        databaseHelper.getJournalEntriesPage(beforeTimestamp, beforeId, PAGE_SIZE);
+                
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation != loadGeneration || isFinishing()) {
+                            return;
+                        }
+                        isLoadingPage = false;
+                        hasMoreEntries = page.size() == PAGE_SIZE;
+                        adapter.addEntries(page);
+                        updateEmptyState();
+                    }
+                });
+            }
+        }).start();
+    }
+    
+    private void updateEmptyState() {
         // Show empty state if no entries
-        if (journalEntries.isEmpty()) {
+        if (adapter.getItemCount() == 0 && !hasMoreEntries) {
             recyclerView.setVisibility(View.GONE);
             emptyStateContainer.setVisibility(View.VISIBLE);
-            emptyStateText.setText("No journal entries yet.\nTap the + button to add your first entry.");
+            if (searchQuery != null) {
+                emptyStateText.setText("No journal entries match \"" + searchQuery.trim() + "\".");
+            } else {
+                emptyStateText.setText("No journal entries yet.\nTap the + button to add your first entry.");
+            }
         } else {
             recyclerView.setVisibility(View.VISIBLE);
             emptyStateContainer.setVisibility(View.GONE);
-            
-            // Set up adapter
-            adapter = new JournalAdapter(this, journalEntries, this);
-            recyclerView.setAdapter(adapter);
         }
     }
     
@@ -95,11 +232,11 @@ public class JournalActivity extends BaseActivity implements JournalAdapter.OnEn
         if (resultCode == RESULT_OK) {
             if (requestCode == REQUEST_ADD_ENTRY || requestCode == REQUEST_EDIT_ENTRY) {
                 // Reload entries on successful add/edit
-                loadJournalEntries();
+                refreshEntries();
                 
                 // Check for journal achievements
                 AchievementManager achievementManager = AchievementManager.getInstance(this);
-                achievementManager.checkJournalAchievements(journalEntries);
+                achievementManager.onEvent(AchievementRuleEngine.Event.JOURNAL_SAVED);
                 
                 if (requestCode == REQUEST_ADD_ENTRY) {
                     Toast.makeText(this, "Journal entry added", Toast.LENGTH_SHORT).show();
@@ -128,7 +265,7 @@ public class JournalActivity extends BaseActivity implements JournalAdapter.OnEn
                     @Override
                     public void onClick(DialogInterface dialog, int which) {
                         databaseHelper.deleteJournalEntry(entry.getId());
-                        loadJournalEntries();
+                        refreshEntries();
                         Toast.makeText(JournalActivity.this, "Entry deleted", Toast.LENGTH_SHORT).show();
                     }
                 })
@@ -139,6 +276,43 @@ public class JournalActivity extends BaseActivity implements JournalAdapter.OnEn
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         getMenuInflater().inflate(R.menu.menu_journal, menu);
+        
+        MenuItem searchItem = menu.findItem(R.id.action_search_journal);
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        searchView.setQueryHint("Search journal");
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                if (pendingSearch != null) {
+                    searchHandler.removeCallbacks(pendingSearch);
+                }
+                runSearch(query);
+                return true;
+            }
+            
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                scheduleSearch(newText);
+                return true;
+            }
+        });
+        
+        // Closing the search box goes back to the full journal
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                return true;
+            }
+            
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                if (pendingSearch != null) {
+                    searchHandler.removeCallbacks(pendingSearch);
+                }
+                runSearch(null);
+                return true;
+            }
+        });
         return true;
     }
     
@@ -10,7 +10,9 @@ import androidx.annotation.NonNull;
 import androidx.cardview.widget.CardView;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class JournalAdapter extends RecyclerView.Adapter<JournalAdapter.ViewHolder> {
     
@@ -18,6 +20,9 @@ public class JournalAdapter extends RecyclerView.Adapter<JournalAdapter.ViewHold
     private List<JournalEntry> entries;
     private OnEntryClickListener listener;
     
+    // Highlighted search snippets by entry id; null when showing the plain list
+    private Map<Long, CharSequence> snippets;
+    
     public interface OnEntryClickListener {
         void onEntryClick(JournalEntry entry);
         void onEntryLongClick(JournalEntry entry);
@@ -42,7 +47,8 @@ public class JournalAdapter extends RecyclerView.Adapter<JournalAdapter.ViewHold
         
         holder.titleTextView.setText(entry.getTitle());
         holder.dateTextView.setText(entry.getFormattedDateTime());
-        holder.summaryTextView.setText(entry.getSummary(100));
+        CharSequence snippet = snippets != null ? snippets.get(entry.getId()) : null;
+        holder.summaryTextView.setText(snippet != null ? snippet : entry.getSummary(100));
         
         // Show mood if available
         if (entry.getMood() != null && !entry.getMood().isEmpty()) {
@@ -87,6 +93,35 @@ public class JournalAdapter extends RecyclerView.Adapter<JournalAdapter.ViewHold
         return entries.size();
     }
     
+    /**
+     * Append a freshly loaded page of entries to the end of the list
+     */
+    public void addEntries(List<JournalEntry> page) {
+        int start = entries.size();
+        entries.addAll(page);
+        notifyItemRangeInserted(start, page.size());
+    }
+    
+    /**
+     * Replace the list with search results, showing each match's snippet as its summary
+     */
+    public void setSearchResults(List<JournalSearchResult> results) {
+        entries.clear();
+        snippets = new HashMap<>();
+        for (JournalSearchResult result : results) {
+            entries.add(result.getEntry());
+            snippets.put(result.getEntry().getId(), result.getHighlightedSnippet());
+        }
+        notifyDataSetChanged();
+    }
+    
+    /**
+     * Get the oldest loaded entry, used as the cursor for the next page
+     */
+    public JournalEntry getLastEntry() {
+        return entries.isEmpty() ? null : entries.get(entries.size() - 1);
+    }
+    
     private String getCravingLevelString(int level) {
         switch (level) {
             case 1: return "Very Low";
@@ -0,0 +1,55 @@
+package com.example.sobertime;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Journal activity for one local day, read from the journal_daily_stats rollup
+ */
+public class JournalDailyStats {
+
+    private final long day;
+    private final int entryCount;
+    private final int cravingSum;
+    private final int cravingMax;
+    private final Map<String, Integer> moodCounts = new HashMap<>();
+    private final Map<String, Integer> triggerCounts = new HashMap<>();
+
+    public JournalDailyStats(long day, int entryCount, int cravingSum, int cravingMax) {
+        this.day = day;
+        this.entryCount = entryCount;
+        this.cravingSum = cravingSum;
+        this.cravingMax = cravingMax;
+    }
+
+    // Local epoch-day (days since 1970-01-01 in the device time zone)
+    public long getDay() {
+        return day;
+    }
+
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    public int getCravingSum() {
+        return cravingSum;
+    }
+
+    public int getCravingMax() {
+        return cravingMax;
+    }
+
+    public float getAverageCraving() {
+        return entryCount > 0 ? (float) cravingSum / entryCount : 0f;
+    }
+
+    // Number of entries per mood on this day
+    public Map<String, Integer> getMoodCounts() {
+        return moodCounts;
+    }
+
+    // Number of entries per trigger on this day
+    public Map<String, Integer> getTriggerCounts() {
+        return triggerCounts;
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.sobertime;
+
+import android.database.Cursor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Maps journal rows to JournalEntry objects.
+ * Column indexes are resolved once per cursor instead of once per column per row.
+ */
+final class JournalRowMapper {
+
+    private final int idIndex;
+    private final int timestampIndex;
+    private final int titleIndex;
+    private final int contentIndex;
+    private final int moodIndex;
+    private final int cravingLevelIndex;
+    private final int triggerIndex;
+
+    JournalRowMapper(Cursor cursor) {
+        idIndex = cursor.getColumnIndexOrThrow("id");
+        timestampIndex = cursor.getColumnIndexOrThrow("timestamp");
+        titleIndex = cursor.getColumnIndexOrThrow("title");
+        contentIndex = cursor.getColumnIndexOrThrow("content");
+        moodIndex = cursor.getColumnIndexOrThrow("mood");
+        cravingLevelIndex = cursor.getColumnIndexOrThrow("craving_level");
+        triggerIndex = cursor.getColumnIndexOrThrow("trigger");
+    }
+
+    /**
+     * Map the row the cursor is currently positioned on
+     */
+    JournalEntry map(Cursor cursor) {
+        JournalEntry entry = new JournalEntry();
+        entry.setId(cursor.getLong(idIndex));
+        entry.setTimestamp(cursor.getLong(timestampIndex));
+        entry.setTitle(cursor.getString(titleIndex));
+        entry.setContent(cursor.getString(contentIndex));
+        entry.setMood(cursor.getString(moodIndex));
+        entry.setCravingLevel(cursor.getInt(cravingLevelIndex));
+        entry.setTrigger(cursor.getString(triggerIndex));
+        return entry;
+    }
+
+    /**
+     * Map every remaining row and close the cursor
+     */
+    static List<JournalEntry> mapAll(Cursor cursor) {
+        try {
+            List<JournalEntry> entries = new ArrayList<>(Math.max(cursor.getCount(), 0));
+            JournalRowMapper mapper = new JournalRowMapper(cursor);
+            while (cursor.moveToNext()) {
+                entries.add(mapper.map(cursor));
+            }
+            return entries;
+        } finally {
+            cursor.close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.sobertime;
+
+import android.graphics.Typeface;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.style.StyleSpan;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Locale;
+
+/**
+ * One journal search hit: the entry, a snippet around the matched terms and its rank score
+ */
+public class JournalSearchResult {
+
+    // Control characters cannot appear in typed journal text, so they are safe match markers
+    static final String HIGHLIGHT_START = "\u0002";
+    static final String HIGHLIGHT_END = "\u0003";
+
+    // BM25 parameters and per-column weights (title, content); a title hit counts double
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+    private static final double[] COLUMN_WEIGHTS = {2.0, 1.0};
+
+    private final JournalEntry entry;
+    private final String snippet;
+    private final double score;
+
+    public JournalSearchResult(JournalEntry entry, String snippet, double score) {
+        this.entry = entry;
+        this.snippet = snippet;
+        this.score = score;
+    }
+
+    public JournalEntry getEntry() {
+        return entry;
+    }
+
+    public String getSnippet() {
+        return snippet;
+    }
+
+    public double getScore() {
+        return score;
+    }
+
+    /**
+     * Get the snippet with matched terms in bold and the markers removed
+     */
+    public CharSequence getHighlightedSnippet() {
+        if (snippet == null) {
+            return entry.getSummary(100);
+        }
+
+        SpannableStringBuilder builder = new SpannableStringBuilder();
+        int matchStart = -1;
+        for (int i = 0; i < snippet.length(); i++) {
+            char c = snippet.charAt(i);
+            if (c == HIGHLIGHT_START.charAt(0)) {
+                matchStart = builder.length();
+            } else if (c == HIGHLIGHT_END.charAt(0)) {
+                if (matchStart >= 0) {
+                    builder.setSpan(new StyleSpan(Typeface.BOLD), matchStart, builder.length(),
+                            Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+                }
+                matchStart = -1;
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder;
+    }
+
+    /**
+     * Turn what the user typed into an FTS MATCH expression, or null if there is nothing to match.
+     * Terms are lowercased so words like "or" and "not" are never read as operators, punctuation
+     * is dropped so the query can't be malformed, and the last term is a prefix match.
+     */
+    static String toMatchQuery(String userQuery) {
+        if (userQuery == null) {
+            return null;
+        }
+
+        StringBuilder query = new StringBuilder();
+        StringBuilder term = new StringBuilder();
+        String lower = userQuery.toLowerCase(Locale.ROOT);
+        for (int i = 0; i <= lower.length(); i++) {
+            char c = i < lower.length() ? lower.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                term.append(c);
+            } else if (term.length() > 0) {
+                if (query.length() > 0) {
+                    query.append(' ');
+                }
+                query.append(term);
+                term.setLength(0);
+            }
+        }
+
+        if (query.length() == 0) {
+            return null;
+        }
+        return query.append('*').toString();
+    }
+
+    /**
+     * Score one match from its FTS4 matchinfo 'pcnalx' blob using BM25
+     */
+    static double bm25(byte[] matchinfo) {
+        ByteBuffer buffer = ByteBuffer.wrap(matchinfo).order(ByteOrder.nativeOrder());
+        int phrases = buffer.getInt(0);
+        int columns = buffer.getInt(4);
+        long documents = buffer.getInt(8) & 0xFFFFFFFFL;
+
+        int averageLengthOffset = 3;
+        int lengthOffset = averageLengthOffset + columns;
+        int hitsOffset = lengthOffset + columns;
+
+        double score = 0;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns; column++) {
+                int base = hitsOffset + 3 * (phrase * columns + column);
+                int hitsInRow = buffer.getInt(4 * base);
+                if (hitsInRow == 0) {
+                    continue;
+                }
+                int rowsWithHits = buffer.getInt(4 * (base + 2));
+
+                // Clamp so a term that appears in most entries still counts a little
+                double idf = Math.log((documents - rowsWithHits + 0.5) / (rowsWithHits + 0.5));
+                idf = Math.max(idf, 0.01);
+
+                double averageLength = Math.max(buffer.getInt(4 * (averageLengthOffset + column)), 1);
+                double length = buffer.getInt(4 * (lengthOffset + column));
+                double norm = K1 * (1 - B + B * length / averageLength);
+
+                double weight = column < COLUMN_WEIGHTS.length ? COLUMN_WEIGHTS[column] : 1.0;
+                score += weight * idf * hitsInRow * (K1 + 1) / (hitsInRow + norm);
+            }
+        }
+        return score;
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.sobertime;
+
+/**
+ * Journaling streak state, kept up to date as journal days gain or lose their last entry
+ * instead of being worked out from the entries on every check: the last journaled day,
+ * the run of consecutive days ending on it and the longest run ever. Days are local
+ * epoch-days, held in the same bitset as the check-in streaks, and reading the state
+ * is a field load.
+ */
+public final class JournalStreakTracker {
+
+    private final CheckInStreakIndex days;
+    private long lastDay;
+    private int currentRun;
+    private int longestRun;
+
+    /**
+     * @param journaledDays Every day with at least one entry, in any order
+     */
+    JournalStreakTracker(long[] journaledDays) {
+        this.days = CheckInStreakIndex.fromDays(journaledDays);
+        this.lastDay = days.lastDay();
+        this.currentRun = days.runEndingOn(lastDay);
+        this.longestRun = days.bestStreak();
+    }
+
+    /**
+     * The latest day with an entry, or Long.MIN_VALUE before the first one
+     */
+    public synchronized long getLastDay() {
+        return lastDay;
+    }
+
+    /**
+     * Consecutive days journaled, counting back from the latest day with an entry
+     */
+    public synchronized int getCurrentRun() {
+        return currentRun;
+    }
+
+    public synchronized int getLongestRun() {
+        return longestRun;
+    }
+
+    /**
+     * Record that a day has at least one entry
+     */
+    synchronized void dayJournaled(long day) {
+        if (days.contains(day)) {
+            return;
+        }
+        days.set(day);
+
+        if (lastDay == Long.MIN_VALUE || day > lastDay) {
+            lastDay = day;
+            currentRun = days.runEndingOn(day);
+            longestRun = Math.max(longestRun, currentRun);
+        } else {
+            // A backdated entry can fill a gap anywhere, joining the runs on either side
+            currentRun = days.runEndingOn(lastDay);
+            longestRun = days.bestStreak();
+        }
+    }
+
+    /**
+     * Record that a day's last entry was deleted or moved to another day
+     */
+    synchronized void dayCleared(long day) {
+        if (!days.contains(day)) {
+            return;
+        }
+        days.clear(day);
+
+        if (day == lastDay) {
+            lastDay = days.lastDay();
+        }
+        currentRun = days.runEndingOn(lastDay);
+        // The day may have split the longest run
+        longestRun = days.bestStreak();
+    }
+}
@@ -78,6 +78,19 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
 
     private AchievementManager achievementManager;
 
+    // Refreshes the counters when the day changes while the screen is showing
+    private final DayCountCache.Listener dayCountListener = new DayCountCache.Listener() {
+        @Override
+        public void onDayCountChanged() {
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    updateSobrietyInfo();
+                }
+            });
+        }
+    };
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         // Apply theme preference before setContentView
@@ -130,6 +143,9 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
         
         // Schedule notifications including intrusive check-ins
         scheduleAllNotifications();
+        
+        // Daily backup while charging and idle; keeps the existing schedule if there is one
+        AutoBackupWorker.schedule(this);
     }
     
     private void setupToolbarAndDrawer() {
@@ -168,7 +184,7 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
 
     // Apply saved theme preference
     private void applyThemePreference() {
-        SharedPreferences prefs = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(this).getPreferences(PREFS_NAME);
         boolean isNightMode = prefs.getBoolean("night_mode_enabled", false);
 
         if (isNightMode) {
@@ -182,10 +198,9 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
     protected void onResume() {
         super.onResume();
         checkIfCheckInNeeded();
-        int daysSober = sobrietyTracker.getDaysSober();
-        updateNextMilestone(daysSober);
         // Refresh data when returning to the app
         updateSobrietyInfo();
+        sobrietyTracker.addDayCountListener(dayCountListener);
 
         // Check and request permissions
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU) {
@@ -197,11 +212,17 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
         }
     }
 
+    @Override
+    protected void onPause() {
+        super.onPause();
+        sobrietyTracker.removeDayCountListener(dayCountListener);
+    }
+
     /**
      * Checks if user needs to check in and opens the check-in screen if necessary
      */
     private void checkIfCheckInNeeded() {
-        SharedPreferences prefs = getSharedPreferences("CheckInPrefs", MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(this).getPreferences("CheckInPrefs");
         long lastPromptTime = prefs.getLong("last_checkin_prompt", 0);
         long currentTime = System.currentTimeMillis();
         
@@ -214,10 +235,10 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
         
         // SPECIAL CASE: First launch detection
         // If last confirmed date is 0 and app has been installed for more than 1 hour
-        SharedPreferences trackerPrefs = getSharedPreferences(SobrietyTracker.PREFS_NAME, MODE_PRIVATE);
+        SharedPreferences trackerPrefs = PreferenceStore.getInstance(this).getPreferences(SobrietyTracker.PREFS_NAME);
         long lastConfirmed = trackerPrefs.getLong(SobrietyTracker.LAST_CONFIRMED_DATE_KEY, 0);
         if (lastConfirmed == 0) {
-            SharedPreferences firstLaunchPrefs = getSharedPreferences("app_first_launch", MODE_PRIVATE);
+            SharedPreferences firstLaunchPrefs = PreferenceStore.getInstance(this).getPreferences("app_first_launch");
             long firstLaunchTime = firstLaunchPrefs.getLong("first_launch_time", 0);
             
             if (firstLaunchTime == 0) {
@@ -251,7 +272,7 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
         
         // Check custom check-in times from settings
         boolean hasCustomTime = false;
-        SharedPreferences settingsPrefs = getSharedPreferences("app_settings", MODE_PRIVATE);
+        SharedPreferences settingsPrefs = PreferenceStore.getInstance(this).getPreferences("app_settings");
         String customTimesString = settingsPrefs.getString("custom_notification_times", "");
         
         if (!customTimesString.isEmpty()) {
@@ -314,21 +335,15 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
      * Checks if the user has already checked in today
      */
     private boolean hasCheckedInToday(SobrietyTracker tracker) {
-        SharedPreferences prefs = getSharedPreferences(SobrietyTracker.PREFS_NAME, MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(this).getPreferences(SobrietyTracker.PREFS_NAME);
         long lastConfirmed = prefs.getLong(SobrietyTracker.LAST_CONFIRMED_DATE_KEY, 0);
         
         if (lastConfirmed == 0) {
             return false;
         }
         
-        Calendar lastConfirmedCal = Calendar.getInstance();
-        lastConfirmedCal.setTimeInMillis(lastConfirmed);
-        
-        Calendar todayCal = Calendar.getInstance();
-        
-        // Compare just the date portions
-        return lastConfirmedCal.get(Calendar.YEAR) == todayCal.get(Calendar.YEAR) &&
-               lastConfirmedCal.get(Calendar.DAY_OF_YEAR) == todayCal.get(Calendar.DAY_OF_YEAR);
+        // Compare just the local days
+        return EpochDays.localDay(lastConfirmed) == EpochDays.today();
     }
 
     private void setupPermissions() {
@@ -620,8 +635,8 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
         // Update sober since text (still uses the start date for this)
         soberSinceTextView.setText("Sober since: " + dateFormat.format(new Date(sobrietyTracker.getSobrietyStartDate())));
         
-        // Update next milestone info
-        updateNextMilestone(confirmedDaysSober);
+        // Milestones go by calendar days, the same count the widget, notifications and achievements use
+        updateNextMilestone(sobrietyTracker.getDaysSober());
         
         // Update motivation message
         updateMotivationMessage(confirmedDaysSober);
@@ -649,56 +664,29 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
     }*/
 
     private void updateNextMilestone(int daysSober) {
-        // Get next milestone from achievement manager
-        Achievement nextMilestone = achievementManager.getNextMilestone(daysSober);
+        // The milestone timeline covers the early milestones and every year after them
+        int nextMilestoneDays = MilestoneTimeline.nextAfter(daysSober);
+        int previousMilestoneDays = MilestoneTimeline.lastReached(daysSober);
+        int daysToNextMilestone = nextMilestoneDays - daysSober;
         
-        if (nextMilestone != null) {
-            int nextMilestoneDays = nextMilestone.getDaysRequired();
-            int daysToNextMilestone = nextMilestoneDays - daysSober;
-            
-            // Find previous milestone
-            int previousMilestoneDays = 0;
-            for (Achievement achievement : achievementManager.getTimeMilestones()) {
-                int days = achievement.getDaysRequired();
-                if (days < nextMilestoneDays && days > previousMilestoneDays && days <= daysSober) {
-                    previousMilestoneDays = days;
-                }
-            }
-            
-            int totalDaysInMilestone = nextMilestoneDays - previousMilestoneDays;
-            int progressDays = daysSober - previousMilestoneDays;
-            
-            // Calculate progress percentage
-            int progressPercentage = (int)(((float)progressDays / totalDaysInMilestone) * 100);
-            
-            // Update progress bar with the new ID
-            if (achievementMilestoneProgressBar != null) {
-                achievementMilestoneProgressBar.setProgress(progressPercentage);
-            }
-            
-            // Update next milestone text
-            if (daysToNextMilestone == 0) {
-                // Today is a milestone!
-                nextMilestoneTextView.setText("Today is a milestone day! 🎉");
-            } else {
-                nextMilestoneTextView.setText("Next milestone: " + nextMilestoneDays + " days\n" +
-                        daysToNextMilestone + " days to go!");
-            }
+        int totalDaysInMilestone = nextMilestoneDays - previousMilestoneDays;
+        int progressDays = daysSober - previousMilestoneDays;
+        
+        // Calculate progress percentage
+        int progressPercentage = (int)(((float)progressDays / totalDaysInMilestone) * 100);
+        
+        // Update progress bar with the new ID
+        if (achievementMilestoneProgressBar != null) {
+            achievementMilestoneProgressBar.setProgress(progressPercentage);
+        }
+        
+        // Update next milestone text
+        if (MilestoneTimeline.isMilestone(daysSober)) {
+            // Today is a milestone!
+            nextMilestoneTextView.setText("Today is a milestone day! 🎉");
         } else {
-            // No predefined milestones left, calculate next year milestone
-            int yearsSober = daysSober / 365;
-            int nextYearMilestone = (yearsSober + 1) * 365;
-            int daysToNextYearMilestone = nextYearMilestone - daysSober;
-            
-            // Update next milestone text
-            nextMilestoneTextView.setText("Next milestone: " + nextYearMilestone + " days\n" +
-                    daysToNextYearMilestone + " days to go!");
-            
-            // Update progress bar with the new ID
-            if (achievementMilestoneProgressBar != null) {
-                int progressPercentage = (int)(((float)(daysSober % 365) / 365) * 100);
-                achievementMilestoneProgressBar.setProgress(progressPercentage);
-            }
+            nextMilestoneTextView.setText("Next milestone: " + nextMilestoneDays + " days\n" +
+                    daysToNextMilestone + " days to go!");
         }
     }
 
@@ -734,23 +722,14 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
         // Get days sober from SobrietyTracker
         int daysSober = sobrietyTracker.getDaysSober();
         
-        // Check for achievement unlocks based on current day count
+        // Check for achievement unlocks based on current day count; this runs every rule
+        // that watches the day rollover, financial and health ones included
         Achievement todaysMilestone = achievementManager.checkTimeAchievements(daysSober);
         
         // Show celebration dialog if today is a milestone
         if (todaysMilestone != null) {
             achievementManager.showMilestoneCelebration(this, todaysMilestone);
         }
-    
-        // Also check financial achievements
-        DatabaseHelper databaseHelper = DatabaseHelper.getInstance(this);
-        float drinkCost = databaseHelper.getFloatSetting("drink_cost", 8.50f);
-        int drinksPerWeek = databaseHelper.getIntSetting("drinks_per_week", 15);
-    
-        // Use SobrietyTracker to calculate money saved instead of calculating it here
-        float moneySaved = sobrietyTracker.calculateMoneySaved(drinkCost, drinksPerWeek);
-    
-        achievementManager.checkFinancialAchievements(moneySaved);
     }
     
     /**
@@ -767,7 +746,7 @@ public class MainActivity extends AppCompatActivity implements NavigationView.On
             NotificationHelper.scheduleNotifications(this);
             
             // Specifically schedule intrusive check-in (with logging)
-            SharedPreferences notifSettings = getSharedPreferences("notification_settings", MODE_PRIVATE);
+            SharedPreferences notifSettings = PreferenceStore.getInstance(this).getPreferences("notification_settings");
             boolean intrusiveEnabled = notifSettings.getBoolean("intrusive_notifications_enabled", true);
             
             if (intrusiveEnabled) {
@@ -80,40 +80,30 @@ public class MilestoneCelebration {
                                               TextView titleTextView, 
                                               TextView messageTextView, 
                                               ImageView celebrationImageView) {
-        String title;
+        String title = MilestoneTimeline.titleFor(daysSober);
         String message;
         int imageResId = R.drawable.ic_notification; // Default image, update with actual image resources
         
         if (daysSober == 1) {
-            title = "First Day Milestone!";
             message = "Congratulations on your first day of sobriety! This is where it all begins. Every journey starts with a single step, and you've taken that brave first step.";
         } else if (daysSober == 7) {
-            title = "One Week Milestone!";
             message = "A full week of sobriety! Your body is already thanking you. The first week can be one of the hardest, and you conquered it!";
         } else if (daysSober == 14) {
-            title = "Two Weeks Milestone!";
             message = "Two weeks strong! Your determination is inspiring. You're establishing healthy patterns that will serve you well going forward.";
         } else if (daysSober == 30) {
-            title = "One Month Milestone!";
             message = "A whole month of sobriety! This is a major achievement. Your mind and body are experiencing significant healing already.";
         } else if (daysSober == 60) {
-            title = "Two Months Milestone!";
             message = "60 days of choosing yourself and your health. You're building incredible strength and resilience every day.";
         } else if (daysSober == 90) {
-            title = "Three Months Milestone!";
             message = "90 days sober! This is a huge milestone in recovery. Many experts consider this a critical turning point. Your new habits are taking root.";
         } else if (daysSober == 180) {
-            title = "Six Months Milestone!";
             message = "Half a year of sobriety! You've faced challenges, weathered storms, and emerged stronger. Your dedication is paying off in countless ways.";
-        } else if (daysSober == 365) {
-            title = "One Year Milestone!";
+        } else if (daysSober == MilestoneTimeline.DAYS_PER_YEAR) {
             message = "ONE YEAR SOBER! This incredible achievement deserves massive celebration. You've experienced all seasons, holidays, and challenges while maintaining your sobriety. You are amazing!";
-        } else if (daysSober % 365 == 0) {
-            int years = daysSober / 365;
-            title = years + " Year" + (years > 1 ? "s" : "") + " Milestone!";
+        } else if (daysSober % MilestoneTimeline.DAYS_PER_YEAR == 0) {
+            int years = daysSober / MilestoneTimeline.DAYS_PER_YEAR;
             message = "Incredible! " + years + " year" + (years > 1 ? "s" : "") + " of sobriety is a monumental achievement. Your journey inspires others and shows what determination and commitment can accomplish.";
         } else {
-            title = daysSober + " Days Milestone!";
             message = "Congratulations on " + daysSober + " days of sobriety! Every day is a victory worth celebrating. Keep going, you're doing amazing!";
         }
         
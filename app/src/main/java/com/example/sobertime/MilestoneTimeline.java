@@ -0,0 +1,166 @@
+package com.example.sobertime;
+
+import java.util.Arrays;
+
+/**
+ * Every sobriety milestone in one place: the fixed early ones and one for every year,
+ * as day counts and, for a given start day, as sorted local epoch-days. A day count of n
+ * is reached on start day + n - 1, as the calendar day count shows it. Lookups are binary
+ * searches, and the timeline for a start day is built once and reused until it changes.
+ */
+public final class MilestoneTimeline {
+
+    public static final int DAYS_PER_YEAR = 365;
+
+    // Yearly milestones are kept this far ahead; nobody's count gets past the end
+    private static final int YEARS = 100;
+
+    private static final int[] EARLY_DAYS = {1, 7, 14, 30, 60, 90, 180};
+
+    private static final int[] DAYS = buildDays();
+
+    private static volatile MilestoneTimeline latest;
+
+    private final long startDay;
+    private final long[] dates;
+
+    private MilestoneTimeline(long startDay) {
+        this.startDay = startDay;
+        this.dates = new long[DAYS.length];
+        for (int i = 0; i < DAYS.length; i++) {
+            dates[i] = startDay + DAYS[i] - 1;
+        }
+    }
+
+    /**
+     * The timeline for a local epoch-day of sobriety start, shared until the start changes
+     */
+    public static MilestoneTimeline forStartDay(long startDay) {
+        MilestoneTimeline timeline = latest;
+        if (timeline == null || timeline.startDay != startDay) {
+            timeline = new MilestoneTimeline(startDay);
+            latest = timeline;
+        }
+        return timeline;
+    }
+
+    private static int[] buildDays() {
+        int[] days = Arrays.copyOf(EARLY_DAYS, EARLY_DAYS.length + YEARS);
+        for (int year = 1; year <= YEARS; year++) {
+            days[EARLY_DAYS.length + year - 1] = year * DAYS_PER_YEAR;
+        }
+        return days;
+    }
+
+    // Day count lookups; these don't depend on the start day
+
+    public static boolean isMilestone(int daysSober) {
+        return Arrays.binarySearch(DAYS, daysSober) >= 0;
+    }
+
+    /**
+     * The first milestone after the given day count
+     */
+    public static int nextAfter(int daysSober) {
+        int index = firstIndexAbove(DAYS, daysSober);
+        return index < DAYS.length ? DAYS[index] : (daysSober / DAYS_PER_YEAR + 1) * DAYS_PER_YEAR;
+    }
+
+    /**
+     * The last milestone at or before the given day count, or 0 before the first one
+     */
+    public static int lastReached(int daysSober) {
+        int index = firstIndexAbove(DAYS, daysSober) - 1;
+        return index >= 0 ? DAYS[index] : 0;
+    }
+
+    /**
+     * A short title for the milestone of the given day count
+     */
+    public static String titleFor(int days) {
+        switch (days) {
+            case 1:
+                return "First Day Milestone!";
+            case 7:
+                return "One Week Milestone!";
+            case 14:
+                return "Two Weeks Milestone!";
+            case 30:
+                return "One Month Milestone!";
+            case 60:
+                return "Two Months Milestone!";
+            case 90:
+                return "Three Months Milestone!";
+            case 180:
+                return "Six Months Milestone!";
+            case DAYS_PER_YEAR:
+                return "One Year Milestone!";
+            default:
+                if (days % DAYS_PER_YEAR == 0) {
+                    return days / DAYS_PER_YEAR + " Years Milestone!";
+                }
+                return days + " Days Milestone!";
+        }
+    }
+
+    // Date lookups, in local epoch-days
+
+    public long getStartDay() {
+        return startDay;
+    }
+
+    public boolean isMilestoneDay(long day) {
+        return Arrays.binarySearch(dates, day) >= 0;
+    }
+
+    /**
+     * The day count of the first milestone after the given day, or -1 past the end
+     */
+    public int nextAfterDay(long day) {
+        int index = firstIndexAbove(dates, day);
+        return index < dates.length ? DAYS[index] : -1;
+    }
+
+    /**
+     * The local epoch-day on which a milestone's day count is reached
+     */
+    public long dateOf(int days) {
+        return startDay + days - 1;
+    }
+
+    /**
+     * Every milestone date from the given day on, oldest first
+     */
+    public long[] datesFrom(long day) {
+        int index = firstIndexAbove(dates, day - 1);
+        return Arrays.copyOfRange(dates, index, dates.length);
+    }
+
+    private static int firstIndexAbove(int[] values, int value) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int firstIndexAbove(long[] values, long value) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -171,7 +171,7 @@ public class NotificationHelper {
      * Schedule an intrusive alarm-style check-in notification
      */
     public static void scheduleIntrusiveCheckInNotification(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences("notification_settings", Context.MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences("notification_settings");
         boolean intrusiveEnabled = prefs.getBoolean("intrusive_notifications_enabled", true); // Default to enabled
         
         if (!intrusiveEnabled) {
@@ -336,7 +336,7 @@ public class NotificationHelper {
      * @param context The application context
      */
     public static void scheduleNotifications(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences("SobrietyNotificationPrefs", Context.MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences("SobrietyNotificationPrefs");
         boolean notificationsEnabled = prefs.getBoolean("notifications_enabled", true);
         
         Log.d(TAG, "Scheduling notifications. Master switch enabled: " + notificationsEnabled);
@@ -355,7 +355,7 @@ public class NotificationHelper {
         SobrietyTracker sobrietyTracker = SobrietyTracker.getInstance(context);
     
         // Check if user prefers intrusive notifications
-        SharedPreferences notifSettings = context.getSharedPreferences("notification_settings", Context.MODE_PRIVATE);
+        SharedPreferences notifSettings = PreferenceStore.getInstance(context).getPreferences("notification_settings");
         boolean intrusiveEnabled = notifSettings.getBoolean("intrusive_notifications_enabled", true);
         
         // Cancel existing regular notifications before creating new ones
@@ -523,38 +523,29 @@ public class NotificationHelper {
         );
     }
 
-    // Updated to use SobrietyTracker
+    // Uses the milestone timeline, so yearly milestones past the achievements are announced too
     private static void scheduleMilestoneNotifications(Context context, long sobrietyStartDate) {
-        SobrietyTracker sobrietyTracker = SobrietyTracker.getInstance(context);
-        int currentDaysSober = sobrietyTracker.getDaysSober();
-        
-        // Get next milestones based on achievements
-        AchievementManager achievementManager = AchievementManager.getInstance(context);
-        Achievement nextMilestone = achievementManager.getNextMilestone(currentDaysSober);
+        MilestoneTimeline timeline = MilestoneTimeline.forStartDay(EpochDays.localDay(sobrietyStartDate));
+        int nextMilestone = timeline.nextAfterDay(EpochDays.today());
         
-        if (nextMilestone != null) {
-            // Calculate when the next milestone will be reached
-            int daysToMilestone = nextMilestone.getDaysRequired() - currentDaysSober;
+        if (nextMilestone > 0) {
+            // The day this milestone will be reached
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(EpochDays.startOfDay(timeline.dateOf(nextMilestone)));
             
-            if (daysToMilestone > 0) {
-                // Calculate the date for this milestone
-                Calendar calendar = Calendar.getInstance();
-                calendar.add(Calendar.DAY_OF_YEAR, daysToMilestone);
-                
-                // Set time to 9:00 AM for milestone notification
-                calendar.set(Calendar.HOUR_OF_DAY, 9);
-                calendar.set(Calendar.MINUTE, 0);
-                calendar.set(Calendar.SECOND, 0);
-                
-                // Schedule notification
-                scheduleNotification(
-                        context,
-                        "Milestone Reached!",
-                        "Congratulations on " + nextMilestone.getDaysRequired() + " days of sobriety!",
-                        calendar.getTimeInMillis(),
-                        MILESTONE_NOTIFICATION_ID
-                );
-            }
+            // Set time to 9:00 AM for milestone notification
+            calendar.set(Calendar.HOUR_OF_DAY, 9);
+            calendar.set(Calendar.MINUTE, 0);
+            calendar.set(Calendar.SECOND, 0);
+            
+            // Schedule notification
+            scheduleNotification(
+                    context,
+                    "Milestone Reached!",
+                    "Congratulations on " + nextMilestone + " days of sobriety!",
+                    calendar.getTimeInMillis(),
+                    MILESTONE_NOTIFICATION_ID
+            );
         }
     }
 
@@ -630,7 +621,7 @@ public class NotificationHelper {
         }
 
         // Cancel custom notifications
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME);
         String customTimesString = prefs.getString(CUSTOM_TIMES_KEY, "");
         if (!customTimesString.isEmpty()) {
             String[] customTimes = customTimesString.split(",");
@@ -655,7 +646,7 @@ public class NotificationHelper {
         }
 
         // Cancel custom notifications
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME);
         String customTimesString = prefs.getString(CUSTOM_TIMES_KEY, "");
         if (!customTimesString.isEmpty()) {
             String[] customTimes = customTimesString.split(",");
@@ -5,7 +5,6 @@ import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.media.RingtoneManager;
 import android.net.Uri;
 import androidx.core.app.NotificationCompat;
@@ -13,12 +12,9 @@ import com.example.sobertime.CheckInActivity;
 
 import java.util.Calendar;
 import java.util.Random;
-import java.util.concurrent.TimeUnit;
 
 public class NotificationReceiver extends BroadcastReceiver {
 
-    private static final String PREFS_NAME = "SobrietyTrackerPrefs";
-    private static final String START_DATE_KEY = "sobriety_start_date";
     private static final int NOTIFICATION_ID = 1001;
     private static final int CHECK_IN_NOTIFICATION_ID = 1001;
     private static final int MILESTONE_NOTIFICATION_ID = 2001;
@@ -50,6 +46,9 @@ public class NotificationReceiver extends BroadcastReceiver {
                     break;
             }
         }
+
+        // The process may be killed once this returns
+        PreferenceStore.getInstance(context).flush();
     }
 
 
@@ -138,29 +137,22 @@ public class NotificationReceiver extends BroadcastReceiver {
      * Send milestone celebration notification
      */
     private void sendMilestoneNotification(Context context, int milestoneDays) {
-        String title;
+        String title = MilestoneTimeline.titleFor(milestoneDays);
         String message;
 
         if (milestoneDays == 1) {
-            title = "First Day Milestone!";
             message = "Congratulations on your first day of sobriety! This is where it all begins.";
         } else if (milestoneDays == 7) {
-            title = "One Week Milestone!";
             message = "A full week of sobriety! Your body is already thanking you.";
         } else if (milestoneDays == 30) {
-            title = "One Month Milestone!";
             message = "A whole month of sobriety! This is a major achievement.";
         } else if (milestoneDays == 90) {
-            title = "90 Day Milestone!";
             message = "90 days sober! This is a huge turning point in recovery.";
         } else if (milestoneDays == 180) {
-            title = "Six Months Milestone!";
             message = "Half a year of sobriety! Your dedication is paying off in countless ways.";
-        } else if (milestoneDays == 365) {
-            title = "ONE YEAR MILESTONE!";
+        } else if (milestoneDays == MilestoneTimeline.DAYS_PER_YEAR) {
             message = "A FULL YEAR OF SOBRIETY! This incredible achievement deserves massive celebration!";
         } else {
-            title = milestoneDays + " Day Milestone!";
             message = "Congratulations on " + milestoneDays + " days of sobriety! Every day is a victory worth celebrating.";
         }
 
@@ -264,12 +256,6 @@ public class NotificationReceiver extends BroadcastReceiver {
      * Get days sober based on saved start date
      */
     private int getDaysSober(Context context) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        long startDate = prefs.getLong(START_DATE_KEY, System.currentTimeMillis());
-
-        long currentTime = System.currentTimeMillis();
-        long diffInMillis = currentTime - startDate;
-
-        return (int) TimeUnit.MILLISECONDS.toDays(diffInMillis);
+        return SobrietyTracker.getInstance(context).getDaysSober();
     }
 }
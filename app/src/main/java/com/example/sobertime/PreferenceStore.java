@@ -0,0 +1,627 @@
+package com.example.sobertime;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.AtomicFile;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Every preference the app keeps, in one versioned file. The file is read once, into an
+ * immutable map that readers use without locking; each edit swaps in a new map and the
+ * file is rewritten atomically on a background thread, several edits at a time.
+ * Like the framework's own SharedPreferences, edits still waiting for that thread are
+ * written out when an activity pauses or stops; receivers and workers call flush()
+ * before they return, as the process may be killed right after.
+ *
+ * The old SharedPreferences files live on as scopes of this store: getPreferences(name)
+ * returns a SharedPreferences over the keys that used to be in the file with that name,
+ * so the code reading them did not have to change. On the first run the legacy files
+ * are copied in and deleted.
+ */
+public final class PreferenceStore {
+
+    private static final String TAG = "PreferenceStore";
+
+    static final String FILE_NAME = "preferences.json";
+    static final int STORE_VERSION = 1;
+
+    // The SharedPreferences files that were folded into the store by version 1
+    static final String[] LEGACY_FILES = {
+            "SobrietyTrackerPrefs",
+            "SobrietyNotificationPrefs",
+            "notification_settings",
+            "IntrusiveNotificationPrefs",
+            "ThemePreferences",
+            "EmergencyContactPrefs",
+            "CheckInPrefs",
+            "app_settings",
+            "app_first_launch",
+            "AchievementsPrefs",
+            "QuotePrefs",
+            "CommunitySupportPrefs",
+            "BackupChainPrefs"
+    };
+
+    private static final String TYPE_BOOLEAN = "boolean";
+    private static final String TYPE_INT = "int";
+    private static final String TYPE_LONG = "long";
+    private static final String TYPE_FLOAT = "float";
+    private static final String TYPE_STRING = "string";
+    private static final String TYPE_STRING_SET = "string_set";
+
+    // Keys are "<scope>/<key>"; scope names never contain a slash
+    private static final char SCOPE_SEPARATOR = '/';
+
+    // Stands in for a removed key in a pending edit, since null values are allowed there
+    private static final Object REMOVED = new Object();
+
+    private static PreferenceStore instance;
+
+    private final Context context;
+    private final AtomicFile file;
+    private final ExecutorService writeExecutor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    @Nullable
+    private final Application.ActivityLifecycleCallbacks flushOnPause;
+
+    // Guards generation, writePending and scopes; readers only touch the volatile snapshot
+    private final Object lock = new Object();
+    private final Map<String, Scope> scopes = new HashMap<>();
+    private volatile Map<String, Object> snapshot;
+    private long generation;
+    private boolean writePending;
+
+    // Only touched while holding writeLock, so a commit() and the background write never race
+    private final Object writeLock = new Object();
+    private long writtenGeneration;
+
+    public static synchronized PreferenceStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new PreferenceStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    // Drop the singleton so tests load the store of their own application instance
+    @VisibleForTesting
+    static synchronized void resetInstance() {
+        if (instance != null) {
+            if (instance.flushOnPause != null) {
+                ((Application) instance.context).unregisterActivityLifecycleCallbacks(instance.flushOnPause);
+            }
+            instance.writeExecutor.shutdown();
+            instance = null;
+        }
+    }
+
+    private PreferenceStore(Context context) {
+        this.context = context;
+        this.file = new AtomicFile(new File(context.getFilesDir(), FILE_NAME));
+        this.writeExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "PreferenceWriter");
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        load();
+
+        if (context instanceof Application) {
+            flushOnPause = new FlushOnPause();
+            ((Application) context).registerActivityLifecycleCallbacks(flushOnPause);
+        } else {
+            flushOnPause = null;
+        }
+    }
+
+    /**
+     * Write edits made with apply() now, on the calling thread, instead of waiting for the
+     * background write. Returns at once if they are already on disk.
+     *
+     * @return false if the file could not be written
+     */
+    public boolean flush() {
+        return writeToDisk();
+    }
+
+    /**
+     * The preferences that used to be kept in the SharedPreferences file with this name.
+     * Edits are visible to every reader as soon as apply() or commit() returns.
+     */
+    public SharedPreferences getPreferences(String name) {
+        synchronized (lock) {
+            Scope scope = scopes.get(name);
+            if (scope == null) {
+                scope = new Scope(name);
+                scopes.put(name, scope);
+            }
+            return scope;
+        }
+    }
+
+    // Read the file once, bringing it (and the legacy files) up to the current version
+    private void load() {
+        Map<String, Object> values = new HashMap<>();
+        int version = 0;
+        try {
+            JSONObject root = new JSONObject(new String(file.readFully(), StandardCharsets.UTF_8));
+            version = root.optInt("version");
+            if (version > STORE_VERSION) {
+                Log.w(TAG, "Preferences were written by a newer version " + version);
+            }
+            readValues(root.optJSONObject("values"), values);
+        } catch (FileNotFoundException e) {
+            // First run, or still on the legacy files
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Could not read preferences, starting over", e);
+        }
+
+        List<String> migrated = new ArrayList<>();
+        if (version < 1) {
+            importLegacyFiles(values, migrated);
+        }
+        snapshot = Collections.unmodifiableMap(values);
+
+        if (version < STORE_VERSION) {
+            generation = 1;
+            // Only drop the legacy files once their values are safely in ours
+            if (writeToDisk() && !migrated.isEmpty()) {
+                deleteLegacyFiles(migrated);
+            }
+        }
+    }
+
+    private void importLegacyFiles(Map<String, Object> values, List<String> migrated) {
+        for (String name : LEGACY_FILES) {
+            Map<String, ?> legacy = context.getSharedPreferences(name, Context.MODE_PRIVATE).getAll();
+            if (legacy.isEmpty()) {
+                continue;
+            }
+            for (Map.Entry<String, ?> entry : legacy.entrySet()) {
+                Object value = entry.getValue();
+                if (value instanceof Set) {
+                    value = copyStringSet(value);
+                }
+                if (value != null) {
+                    values.put(name + SCOPE_SEPARATOR + entry.getKey(), value);
+                }
+            }
+            migrated.add(name);
+            Log.i(TAG, "Migrated " + legacy.size() + " preferences from " + name);
+        }
+    }
+
+    private void deleteLegacyFiles(List<String> names) {
+        for (String name : names) {
+            // Clear first: the framework keeps a loaded file in memory after it is deleted
+            context.getSharedPreferences(name, Context.MODE_PRIVATE).edit().clear().commit();
+            context.deleteSharedPreferences(name);
+        }
+    }
+
+    private static void readValues(@Nullable JSONObject json, Map<String, Object> values) throws JSONException {
+        if (json == null) {
+            return;
+        }
+        JSONArray keys = json.names();
+        for (int i = 0; keys != null && i < keys.length(); i++) {
+            String key = keys.getString(i);
+            JSONObject typed = json.getJSONObject(key);
+            String type = typed.getString("type");
+            switch (type) {
+                case TYPE_BOOLEAN:
+                    values.put(key, typed.getBoolean("value"));
+                    break;
+                case TYPE_INT:
+                    values.put(key, typed.getInt("value"));
+                    break;
+                case TYPE_LONG:
+                    values.put(key, typed.getLong("value"));
+                    break;
+                case TYPE_FLOAT:
+                    values.put(key, (float) typed.getDouble("value"));
+                    break;
+                case TYPE_STRING:
+                    values.put(key, typed.getString("value"));
+                    break;
+                case TYPE_STRING_SET:
+                    JSONArray array = typed.getJSONArray("value");
+                    Set<String> set = new HashSet<>();
+                    for (int j = 0; j < array.length(); j++) {
+                        set.add(array.getString(j));
+                    }
+                    values.put(key, Collections.unmodifiableSet(set));
+                    break;
+                default:
+                    Log.w(TAG, "Skipping preference " + key + " of unknown type " + type);
+            }
+        }
+    }
+
+    private static void writeValue(JsonWriter writer, Object value) throws IOException {
+        writer.beginObject();
+        if (value instanceof Boolean) {
+            writer.name("type").value(TYPE_BOOLEAN);
+            writer.name("value").value((Boolean) value);
+        } else if (value instanceof Integer) {
+            writer.name("type").value(TYPE_INT);
+            writer.name("value").value((Integer) value);
+        } else if (value instanceof Long) {
+            writer.name("type").value(TYPE_LONG);
+            writer.name("value").value((Long) value);
+        } else if (value instanceof Float) {
+            writer.name("type").value(TYPE_FLOAT);
+            float number = (Float) value;
+            if (Float.isNaN(number) || Float.isInfinite(number)) {
+                // JSON has no such numbers; "NaN" and "Infinity" are parsed back by getDouble()
+                writer.name("value").value(value.toString());
+            } else {
+                // Through the float's own decimal form, so 0.1f doesn't come back as 0.10000000149
+                writer.name("value").value(Double.parseDouble(value.toString()));
+            }
+        } else if (value instanceof Set) {
+            writer.name("type").value(TYPE_STRING_SET);
+            writer.name("value").beginArray();
+            for (Object item : (Set<?>) value) {
+                writer.value((String) item);
+            }
+            writer.endArray();
+        } else {
+            writer.name("type").value(TYPE_STRING);
+            writer.name("value").value((String) value);
+        }
+        writer.endObject();
+    }
+
+    // Swap in a new snapshot with the edit applied and return the keys that changed
+    private List<String> applyEdit(String scopeName, boolean clear, Map<String, Object> changes) {
+        String prefix = scopeName + SCOPE_SEPARATOR;
+        List<String> changed = new ArrayList<>();
+        synchronized (lock) {
+            // The whole map is a few hundred entries at most, so copying it is cheap
+            Map<String, Object> next = new HashMap<>(snapshot);
+            if (clear) {
+                for (String key : snapshot.keySet()) {
+                    if (key.startsWith(prefix) && !changes.containsKey(key.substring(prefix.length()))) {
+                        next.remove(key);
+                        changed.add(key.substring(prefix.length()));
+                    }
+                }
+            }
+            for (Map.Entry<String, Object> change : changes.entrySet()) {
+                String key = prefix + change.getKey();
+                Object value = change.getValue();
+                Object previous = value == REMOVED || value == null ? next.remove(key) : next.put(key, value);
+                if (previous == null ? next.containsKey(key) : !previous.equals(next.get(key))) {
+                    changed.add(change.getKey());
+                }
+            }
+            if (!changed.isEmpty()) {
+                snapshot = Collections.unmodifiableMap(next);
+                generation++;
+            }
+        }
+        return changed;
+    }
+
+    // Queue one write for however many edits arrive before it runs
+    private void scheduleWrite() {
+        synchronized (lock) {
+            if (writePending) {
+                return;
+            }
+            writePending = true;
+        }
+        writeExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (lock) {
+                    writePending = false;
+                }
+                writeToDisk();
+            }
+        });
+    }
+
+    // Write the latest snapshot unless it is already on disk
+    private boolean writeToDisk() {
+        synchronized (writeLock) {
+            Map<String, Object> values;
+            long target;
+            synchronized (lock) {
+                values = snapshot;
+                target = generation;
+            }
+            if (target <= writtenGeneration) {
+                return true;
+            }
+
+            FileOutputStream out = null;
+            try {
+                out = file.startWrite();
+                JsonWriter writer = new JsonWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+                writer.beginObject();
+                writer.name("version").value(STORE_VERSION);
+                writer.name("values").beginObject();
+                for (Map.Entry<String, Object> entry : values.entrySet()) {
+                    writer.name(entry.getKey());
+                    writeValue(writer, entry.getValue());
+                }
+                writer.endObject();
+                writer.endObject();
+                writer.flush();
+                file.finishWrite(out);
+                writtenGeneration = target;
+                return true;
+            } catch (IOException e) {
+                Log.e(TAG, "Could not write preferences", e);
+                if (out != null) {
+                    file.failWrite(out);
+                }
+                return false;
+            }
+        }
+    }
+
+    private void notifyListeners(final Scope scope, final List<String> keys) {
+        final List<SharedPreferences.OnSharedPreferenceChangeListener> listeners;
+        synchronized (scope.listeners) {
+            if (scope.listeners.isEmpty()) {
+                return;
+            }
+            listeners = new ArrayList<>(scope.listeners.keySet());
+        }
+        // Same as SharedPreferences: listeners hear about changes on the main thread
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (SharedPreferences.OnSharedPreferenceChangeListener listener : listeners) {
+                    for (String key : keys) {
+                        listener.onSharedPreferenceChanged(scope, key);
+                    }
+                }
+            }
+        });
+    }
+
+    // Stands in for the framework's QueuedWork, which it waits on at the same points
+    private final class FlushOnPause implements Application.ActivityLifecycleCallbacks {
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+            flush();
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+            flush();
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, @Nullable Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+        }
+    }
+
+    private static Set<String> copyStringSet(Object value) {
+        Set<String> copy = new HashSet<>();
+        for (Object item : (Set<?>) value) {
+            copy.add((String) item);
+        }
+        return Collections.unmodifiableSet(copy);
+    }
+
+    // One legacy file's worth of keys, read from the shared snapshot
+    private final class Scope implements SharedPreferences {
+
+        private final String name;
+        private final String prefix;
+        private final Map<OnSharedPreferenceChangeListener, Object> listeners = new WeakHashMap<>();
+
+        Scope(String name) {
+            this.name = name;
+            this.prefix = name + SCOPE_SEPARATOR;
+        }
+
+        private Object get(String key) {
+            return snapshot.get(prefix + key);
+        }
+
+        @Override
+        public Map<String, ?> getAll() {
+            Map<String, Object> all = new HashMap<>();
+            for (Map.Entry<String, Object> entry : snapshot.entrySet()) {
+                if (entry.getKey().startsWith(prefix)) {
+                    all.put(entry.getKey().substring(prefix.length()), entry.getValue());
+                }
+            }
+            return all;
+        }
+
+        @Nullable
+        @Override
+        public String getString(String key, @Nullable String defValue) {
+            Object value = get(key);
+            return value != null ? (String) value : defValue;
+        }
+
+        @Nullable
+        @Override
+        @SuppressWarnings("unchecked")
+        public Set<String> getStringSet(String key, @Nullable Set<String> defValues) {
+            Object value = get(key);
+            return value != null ? (Set<String>) value : defValues;
+        }
+
+        @Override
+        public int getInt(String key, int defValue) {
+            Object value = get(key);
+            return value != null ? (Integer) value : defValue;
+        }
+
+        @Override
+        public long getLong(String key, long defValue) {
+            Object value = get(key);
+            return value != null ? (Long) value : defValue;
+        }
+
+        @Override
+        public float getFloat(String key, float defValue) {
+            Object value = get(key);
+            return value != null ? (Float) value : defValue;
+        }
+
+        @Override
+        public boolean getBoolean(String key, boolean defValue) {
+            Object value = get(key);
+            return value != null ? (Boolean) value : defValue;
+        }
+
+        @Override
+        public boolean contains(String key) {
+            return snapshot.containsKey(prefix + key);
+        }
+
+        @Override
+        public Editor edit() {
+            return new ScopeEditor(this);
+        }
+
+        @Override
+        public void registerOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+            synchronized (listeners) {
+                listeners.put(listener, Boolean.TRUE);
+            }
+        }
+
+        @Override
+        public void unregisterOnSharedPreferenceChangeListener(OnSharedPreferenceChangeListener listener) {
+            synchronized (listeners) {
+                listeners.remove(listener);
+            }
+        }
+    }
+
+    private final class ScopeEditor implements SharedPreferences.Editor {
+
+        private final Scope scope;
+        private final Map<String, Object> changes = new HashMap<>();
+        private boolean clear;
+
+        ScopeEditor(Scope scope) {
+            this.scope = scope;
+        }
+
+        @Override
+        public SharedPreferences.Editor putString(String key, @Nullable String value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putStringSet(String key, @Nullable Set<String> values) {
+            changes.put(key, values != null ? copyStringSet(values) : null);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putInt(String key, int value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putLong(String key, long value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putFloat(String key, float value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor putBoolean(String key, boolean value) {
+            changes.put(key, value);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor remove(String key) {
+            changes.put(key, REMOVED);
+            return this;
+        }
+
+        @Override
+        public SharedPreferences.Editor clear() {
+            clear = true;
+            return this;
+        }
+
+        @Override
+        public boolean commit() {
+            List<String> changed = applyEdit(scope.name, clear, changes);
+            boolean written = writeToDisk();
+            notifyListeners(scope, changed);
+            return written;
+        }
+
+        @Override
+        public void apply() {
+            List<String> changed = applyEdit(scope.name, clear, changes);
+            if (!changed.isEmpty()) {
+                scheduleWrite();
+                notifyListeners(scope, changed);
+            }
+        }
+    }
+}
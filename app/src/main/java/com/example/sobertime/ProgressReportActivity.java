@@ -91,7 +91,7 @@ public class ProgressReportActivity extends BaseActivity {
     private int totalDaysSober;
     private float moneySaved;
     private int caloriesSaved;
-    private List<JournalEntry> journalEntries;
+    private int journalEntryCount;
     private List<Achievement> achievements;
     private DatabaseHelper databaseHelper;
     private AchievementManager achievementManager;
@@ -178,19 +178,16 @@ public class ProgressReportActivity extends BaseActivity {
             // Load data needed for the report
             
             // Get money saved calculation using SobrietyTracker
-            float drinkCost = databaseHelper.getFloatSetting("drink_cost", 8.50f);
-            int drinksPerWeek = databaseHelper.getIntSetting("drinks_per_week", 15);
-            moneySaved = sobrietyTracker.calculateMoneySaved(drinkCost, drinksPerWeek);
+            moneySaved = sobrietyTracker.calculateMoneySaved();
             
             // Calculate calories saved using SobrietyTracker
-            int caloriesPerDrink = databaseHelper.getIntSetting("calories_per_drink", 150);
-            caloriesSaved = sobrietyTracker.calculateCaloriesSaved(caloriesPerDrink, drinksPerWeek);
+            caloriesSaved = sobrietyTracker.calculateCaloriesSaved();
             
             // Get achievements
             achievements = achievementManager.getUnlockedAchievements();
             
-            // Get journal entries
-            journalEntries = databaseHelper.getAllJournalEntries();
+            // Get journal entry count (entries themselves are never loaded here)
+            journalEntryCount = databaseHelper.getJournalEntryCount();
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -214,7 +211,7 @@ public class ProgressReportActivity extends BaseActivity {
             
             achievementsCountTextView.setText(String.valueOf(achievements.size()));
             
-            journalCountTextView.setText(String.valueOf(journalEntries.size()));
+            journalCountTextView.setText(String.valueOf(journalEntryCount));
             
             // Set detailed data
             setupDetailedContent();
@@ -361,9 +358,6 @@ public class ProgressReportActivity extends BaseActivity {
             Calendar calendar = Calendar.getInstance();
             calendar.setTimeInMillis(System.currentTimeMillis());
             
-            float drinkCost = databaseHelper.getFloatSetting("drink_cost", 8.50f);
-            int drinksPerWeek = databaseHelper.getIntSetting("drinks_per_week", 15);
-            
             // Month labels for X-axis
             final ArrayList<String> monthLabels = new ArrayList<>();
             
@@ -376,16 +370,12 @@ public class ProgressReportActivity extends BaseActivity {
                 SimpleDateFormat monthFormat = new SimpleDateFormat("MMM", Locale.getDefault());
                 monthLabels.add(monthFormat.format(monthCal.getTime()));
                 
-                // Calculate days sober in this month using SobrietyTracker
-                int daysSoberInMonth = sobrietyTracker.getDaysSoberInMonth(
+                // Money saved in this month, at the settings in force on each sober day
+                float moneySavedInMonth = sobrietyTracker.getMoneySavedInMonth(
                     monthCal.get(Calendar.YEAR), 
                     monthCal.get(Calendar.MONTH)
                 );
                 
-                // Calculate money saved in this month
-                float drinksAvoidedInMonth = (daysSoberInMonth / 7.0f) * drinksPerWeek;
-                float moneySavedInMonth = drinksAvoidedInMonth * drinkCost;
-                
                 // Add entry (position i, value)
                 entries.add(new BarEntry(5-i, moneySavedInMonth));
             }
@@ -987,22 +977,9 @@ public class ProgressReportActivity extends BaseActivity {
         Map<Integer, Integer> entriesByWeek = new HashMap<>();
         
         try {
-            // Calculate weeks since sobriety start
+            // Weeks are counted from sobriety start; the database does the grouping
             long sobrietyStartTimeMillis = sobrietyTracker.getSobrietyStartDate();
-            
-            for (JournalEntry entry : journalEntries) {
-                long entryTimeMillis = entry.getTimestamp();
-                
-                // Skip entries before sobriety start
-                if (entryTimeMillis < sobrietyStartTimeMillis) continue;
-                
-                // Calculate which week this entry belongs to
-                long weekMillis = entryTimeMillis - sobrietyStartTimeMillis;
-                int weekNumber = (int)(weekMillis / (7 * 24 * 60 * 60 * 1000)) + 1;
-                
-                // Increment count for this week
-                entriesByWeek.put(weekNumber, entriesByWeek.getOrDefault(weekNumber, 0) + 1);
-            }
+            entriesByWeek = databaseHelper.getJournalEntryCountsByWeek(sobrietyStartTimeMillis);
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -41,7 +41,7 @@ public class QuoteManager {
         this.context = context;
         this.quotes = new ArrayList<>();
         this.quoteMap = new HashMap<>();
-        this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.preferences = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME);
         this.random = new Random();
         
         // Initialize quotes
@@ -0,0 +1,101 @@
+package com.example.sobertime;
+
+/**
+ * Immutable history of the money and calories a sober day saves, as segments of local
+ * epoch-days. Each segment holds the rates set by a settings change and lasts until the
+ * next one; the first also reaches back to before anything was recorded. A running total
+ * at each segment start makes "saved between day A and day B" two binary searches, and
+ * a change of price only affects the days after it.
+ */
+public final class SavingsRateIndex {
+
+    private final long[] startDays;
+    private final double[] moneyPerDay;
+    private final double[] caloriesPerDay;
+    // Totals from the first segment start up to each segment start
+    private final double[] moneyBefore;
+    private final double[] caloriesBefore;
+
+    /**
+     * @param startDays Segment starts, ascending; at least one
+     */
+    SavingsRateIndex(long[] startDays, double[] moneyPerDay, double[] caloriesPerDay) {
+        if (startDays.length == 0 || startDays.length != moneyPerDay.length
+                || startDays.length != caloriesPerDay.length) {
+            throw new IllegalArgumentException("Every segment needs a start and both rates");
+        }
+        this.startDays = startDays;
+        this.moneyPerDay = moneyPerDay;
+        this.caloriesPerDay = caloriesPerDay;
+        this.moneyBefore = runningTotals(startDays, moneyPerDay);
+        this.caloriesBefore = runningTotals(startDays, caloriesPerDay);
+    }
+
+    /**
+     * One segment with the given settings, for when no change has been recorded yet
+     */
+    static SavingsRateIndex constant(SettingsSnapshot settings) {
+        return new SavingsRateIndex(new long[]{0},
+                new double[]{moneyPerDay(settings)}, new double[]{caloriesPerDay(settings)});
+    }
+
+    static double moneyPerDay(SettingsSnapshot settings) {
+        return settings.getDrinksPerWeek() / 7.0 * settings.getDrinkCost();
+    }
+
+    static double caloriesPerDay(SettingsSnapshot settings) {
+        return settings.getDrinksPerWeek() / 7.0 * settings.getCaloriesPerDrink();
+    }
+
+    /**
+     * Money saved by being sober on every day between two local epoch-days, inclusive
+     */
+    public double moneySaved(long fromDay, long toDay) {
+        return between(fromDay, toDay, moneyPerDay, moneyBefore);
+    }
+
+    /**
+     * Calories saved by being sober on every day between two local epoch-days, inclusive
+     */
+    public double caloriesSaved(long fromDay, long toDay) {
+        return between(fromDay, toDay, caloriesPerDay, caloriesBefore);
+    }
+
+    private double between(long fromDay, long toDay, double[] rates, double[] before) {
+        if (toDay < fromDay) {
+            return 0;
+        }
+        return totalBefore(toDay + 1, rates, before) - totalBefore(fromDay, rates, before);
+    }
+
+    // Total from the first segment start up to day; negative before it, where the first rates apply
+    private double totalBefore(long day, double[] rates, double[] before) {
+        int segment = Math.max(0, countStartingAtOrBefore(day) - 1);
+        return before[segment] + (day - startDays[segment]) * rates[segment];
+    }
+
+    private int countStartingAtOrBefore(long day) {
+        int low = 0;
+        int high = startDays.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (startDays[mid] <= day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static double[] runningTotals(long[] startDays, double[] rates) {
+        double[] totals = new double[startDays.length];
+        for (int i = 1; i < startDays.length; i++) {
+            if (startDays[i] <= startDays[i - 1]) {
+                throw new IllegalArgumentException("Rate segments out of order at day " + startDays[i]);
+            }
+            totals[i] = totals[i - 1] + (startDays[i] - startDays[i - 1]) * rates[i - 1];
+        }
+        return totals;
+    }
+}
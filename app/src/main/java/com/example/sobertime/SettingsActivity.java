@@ -99,7 +99,7 @@ public class SettingsActivity extends BaseActivity {
         }
 
         // Initialize preferences and database
-        preferences = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        preferences = PreferenceStore.getInstance(this).getPreferences(PREFS_NAME);
         databaseHelper = DatabaseHelper.getInstance(this);
 
         // Initialize views
@@ -182,7 +182,7 @@ public class SettingsActivity extends BaseActivity {
         intrusiveSettingsContainer.setPadding(32, 0, 0, 16);
         
         // Get saved preference or default to true
-        SharedPreferences prefs = getSharedPreferences("notification_settings", MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(this).getPreferences("notification_settings");
         boolean intrusiveEnabled = prefs.getBoolean("intrusive_notifications_enabled", true);
         
         // Set initial visibility
@@ -471,7 +471,7 @@ public class SettingsActivity extends BaseActivity {
                     @Override
                     public void onCheckedChanged(CompoundButton buttonView, boolean isChecked) {
                         // Save preference
-                        SharedPreferences prefs = getSharedPreferences("SobrietyTrackerPrefs", MODE_PRIVATE);
+                        SharedPreferences prefs = PreferenceStore.getInstance(SettingsActivity.this).getPreferences("SobrietyTrackerPrefs");
                         SharedPreferences.Editor editor = prefs.edit();
                         editor.putBoolean("night_mode_enabled", isChecked);
                         editor.apply();
@@ -582,18 +582,19 @@ public class SettingsActivity extends BaseActivity {
     private void resetAppData() {
         try {
             // 1. Clear all SharedPreferences
-            getSharedPreferences(PREFS_NAME, MODE_PRIVATE).edit().clear().apply();
-            getSharedPreferences(SOBRIETY_PREFS_NAME, MODE_PRIVATE).edit().clear().apply();
-            getSharedPreferences("SobrietyTrackerPrefs", MODE_PRIVATE).edit().clear().apply();
+            PreferenceStore.getInstance(this).getPreferences(PREFS_NAME).edit().clear().apply();
+            PreferenceStore.getInstance(this).getPreferences(SOBRIETY_PREFS_NAME).edit().clear().apply();
+            PreferenceStore.getInstance(this).getPreferences("SobrietyTrackerPrefs").edit().clear().apply();
             
             // 2. Reset database
             databaseHelper.resetAllData();
+            com.example.sobertime.SobrietyTracker.getInstance(this).invalidateCheckInHistory();
     
             // 3. Reset sobriety tracker date to today
             sobrietyTracker.setSobrietyStartDate(System.currentTimeMillis());
     
             // 4. Reset onboarding status to ensure welcome screen appears
-            getSharedPreferences("SobrietyTrackerPrefs", MODE_PRIVATE)
+            PreferenceStore.getInstance(this).getPreferences("SobrietyTrackerPrefs")
                 .edit()
                 .putBoolean("onboarding_complete", false)
                 .apply();
@@ -693,6 +694,7 @@ public class SettingsActivity extends BaseActivity {
             try {
                 float newCost = Float.parseFloat(input.getText().toString());
                 databaseHelper.setSetting("drink_cost", String.valueOf(newCost));
+                AchievementManager.getInstance(SettingsActivity.this).onEvent(AchievementRuleEngine.Event.SETTINGS_CHANGED);
                 drinkCostText.setText(String.format(Locale.getDefault(), "$%.2f", newCost));
                 Toast.makeText(SettingsActivity.this, "Drink cost updated", Toast.LENGTH_SHORT).show();
             } catch (NumberFormatException e) {
@@ -723,6 +725,7 @@ public class SettingsActivity extends BaseActivity {
             try {
                 int newCount = Integer.parseInt(input.getText().toString());
                 databaseHelper.setSetting("drinks_per_week", String.valueOf(newCount));
+                AchievementManager.getInstance(SettingsActivity.this).onEvent(AchievementRuleEngine.Event.SETTINGS_CHANGED);
                 drinksPerWeekText.setText(String.valueOf(newCount));
                 Toast.makeText(SettingsActivity.this, "Drinks per week updated", Toast.LENGTH_SHORT).show();
             } catch (NumberFormatException e) {
@@ -753,6 +756,7 @@ public class SettingsActivity extends BaseActivity {
             try {
                 int newCalories = Integer.parseInt(input.getText().toString());
                 databaseHelper.setSetting("calories_per_drink", String.valueOf(newCalories));
+                AchievementManager.getInstance(SettingsActivity.this).onEvent(AchievementRuleEngine.Event.SETTINGS_CHANGED);
                 caloriesPerDrinkText.setText(String.valueOf(newCalories));
                 Toast.makeText(SettingsActivity.this, "Calories per drink updated", Toast.LENGTH_SHORT).show();
             } catch (NumberFormatException e) {
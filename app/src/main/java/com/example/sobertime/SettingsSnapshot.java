@@ -0,0 +1,98 @@
+package com.example.sobertime;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Immutable view of the settings table at one point in time.
+ * DatabaseHelper swaps in a new snapshot on every write, so readers never lock or touch disk.
+ */
+public final class SettingsSnapshot {
+
+    public static final String KEY_DRINK_COST = "drink_cost";
+    public static final String KEY_DRINKS_PER_WEEK = "drinks_per_week";
+    public static final String KEY_CALORIES_PER_DRINK = "calories_per_drink";
+
+    public static final float DEFAULT_DRINK_COST = 8.50f;
+    public static final int DEFAULT_DRINKS_PER_WEEK = 15;
+    public static final int DEFAULT_CALORIES_PER_DRINK = 150;
+
+    static final SettingsSnapshot EMPTY = new SettingsSnapshot(new HashMap<String, String>());
+
+    private final Map<String, String> values;
+
+    // Hot settings parsed once up front
+    private final float drinkCost;
+    private final int drinksPerWeek;
+    private final int caloriesPerDrink;
+
+    SettingsSnapshot(Map<String, String> values) {
+        this.values = Collections.unmodifiableMap(values);
+        this.drinkCost = getFloat(KEY_DRINK_COST, DEFAULT_DRINK_COST);
+        this.drinksPerWeek = getInt(KEY_DRINKS_PER_WEEK, DEFAULT_DRINKS_PER_WEEK);
+        this.caloriesPerDrink = getInt(KEY_CALORIES_PER_DRINK, DEFAULT_CALORIES_PER_DRINK);
+    }
+
+    /**
+     * Return a new snapshot with one key changed
+     */
+    SettingsSnapshot with(String key, String value) {
+        Map<String, String> copy = new HashMap<>(values);
+        copy.put(key, value);
+        return new SettingsSnapshot(copy);
+    }
+
+    public float getDrinkCost() {
+        return drinkCost;
+    }
+
+    public int getDrinksPerWeek() {
+        return drinksPerWeek;
+    }
+
+    public int getCaloriesPerDrink() {
+        return caloriesPerDrink;
+    }
+
+    /**
+     * Whether any of the savings rates was set, rather than all three being the defaults
+     */
+    boolean hasSavingsRates() {
+        return values.containsKey(KEY_DRINK_COST) || values.containsKey(KEY_DRINKS_PER_WEEK)
+                || values.containsKey(KEY_CALORIES_PER_DRINK);
+    }
+
+    public String getString(String key, String defaultValue) {
+        String value = values.get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    public float getFloat(String key, float defaultValue) {
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Float.parseFloat(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public int getInt(String key, int defaultValue) {
+        String value = values.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    public Map<String, String> asMap() {
+        return values;
+    }
+}
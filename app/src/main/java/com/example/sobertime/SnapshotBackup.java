@@ -0,0 +1,177 @@
+package com.example.sobertime;
+
+import android.content.Context;
+import android.util.JsonWriter;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Fast snapshot backups: a copy of the database file itself plus the preference
+ * values, in one zip. Both directions are a sequential copy of the database instead of
+ * a row-by-row export, so they stay quick however large the journal gets. Restoring
+ * checks the copy's schema version and swaps it in for the live database file.
+ */
+public class SnapshotBackup {
+
+    private static final String TAG = "SnapshotBackup";
+
+    static final String SNAPSHOT_FORMAT = "sobertime-snapshot";
+    static final int SNAPSHOT_VERSION = 1;
+    static final String DATABASE_ENTRY = "database.db";
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // The manifest and preferences are a few kilobytes; anything larger is not ours
+    private static final int MAX_JSON_ENTRY_SIZE = 1024 * 1024;
+
+    private final Context context;
+    private final DatabaseHelper databaseHelper;
+
+    public SnapshotBackup(Context context) {
+        this.context = context.getApplicationContext();
+        this.databaseHelper = DatabaseHelper.getInstance(context);
+    }
+
+    /**
+     * Write a manifest, the preferences and a consistent copy of the database to out.
+     * The stream is finished but not closed.
+     */
+    public void write(OutputStream out) throws IOException {
+        File copy = File.createTempFile("snapshot", ".db", context.getCacheDir());
+        try {
+            databaseHelper.copyDatabaseTo(copy);
+            int databaseVersion = DatabaseHelper.validateDatabaseFile(copy);
+
+            ZipOutputStream zip = new ZipOutputStream(out);
+
+            zip.putNextEntry(new ZipEntry(BackupWriter.MANIFEST_ENTRY));
+            JsonWriter writer = new JsonWriter(new OutputStreamWriter(zip, StandardCharsets.UTF_8));
+            writer.beginObject();
+            writer.name("format").value(SNAPSHOT_FORMAT);
+            writer.name("version").value(SNAPSHOT_VERSION);
+            writer.name("created_at").value(System.currentTimeMillis());
+            writer.name("database_version").value(databaseVersion);
+            writer.name("database_size").value(copy.length());
+            writer.endObject();
+            writer.flush();
+            zip.closeEntry();
+
+            new BackupWriter(context).writePreferencesEntry(zip);
+
+            // Favour speed over size; the copy is the bulk of the work
+            zip.setLevel(Deflater.BEST_SPEED);
+            zip.putNextEntry(new ZipEntry(DATABASE_ENTRY));
+            InputStream in = new FileInputStream(copy);
+            try {
+                copy(in, zip);
+            } finally {
+                in.close();
+            }
+            zip.closeEntry();
+
+            zip.finish();
+        } finally {
+            if (!copy.delete()) {
+                Log.w(TAG, "Could not delete temporary snapshot " + copy);
+            }
+        }
+    }
+
+    /**
+     * Replace the database with the one in the snapshot and return the preference
+     * values, keyed like the sections BackupReader returns. Nothing is changed unless
+     * the whole snapshot was read and its database passed validation.
+     *
+     * @throws IOException if in is not a snapshot or its database can't be used
+     */
+    public JSONObject restore(InputStream in) throws IOException {
+        ZipInputStream zip = new ZipInputStream(in);
+        File restored = File.createTempFile("restore", ".db", context.getCacheDir());
+        try {
+            ZipEntry entry = zip.getNextEntry();
+            if (entry == null || !entry.getName().equals(BackupWriter.MANIFEST_ENTRY)) {
+                throw new IOException("Invalid snapshot file format");
+            }
+            JSONObject manifest = new JSONObject(readSmallEntry(zip));
+            if (!SNAPSHOT_FORMAT.equals(manifest.optString("format"))) {
+                throw new IOException("Invalid snapshot file format");
+            }
+            if (manifest.optInt("version") > SNAPSHOT_VERSION) {
+                throw new IOException("Snapshot was made by a newer version of the app");
+            }
+
+            JSONObject sections = new JSONObject();
+            boolean hasDatabase = false;
+            while ((entry = zip.getNextEntry()) != null) {
+                if (entry.getName().equals(DATABASE_ENTRY)) {
+                    OutputStream out = new FileOutputStream(restored);
+                    try {
+                        copy(zip, out);
+                    } finally {
+                        out.close();
+                    }
+                    hasDatabase = true;
+                } else if (entry.getName().equals(BackupWriter.entryName(BackupWriter.PREFERENCES_SECTION))) {
+                    JSONObject preferences = new JSONObject(readSmallEntry(zip));
+                    JSONArray keys = preferences.names();
+                    for (int i = 0; keys != null && i < keys.length(); i++) {
+                        sections.put(keys.getString(i), preferences.get(keys.getString(i)));
+                    }
+                }
+            }
+            if (!hasDatabase) {
+                throw new IOException("Snapshot has no database");
+            }
+
+            DatabaseHelper.validateDatabaseFile(restored);
+            databaseHelper.replaceDatabase(restored);
+            Log.i(TAG, "Restored database snapshot from " + manifest.optLong("created_at"));
+            return sections;
+        } catch (JSONException e) {
+            throw new IOException("Invalid snapshot file format", e);
+        } finally {
+            // Already moved into place on success
+            if (restored.exists() && !restored.delete()) {
+                Log.w(TAG, "Could not delete temporary snapshot " + restored);
+            }
+        }
+    }
+
+    private static String readSmallEntry(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+            if (out.size() > MAX_JSON_ENTRY_SIZE) {
+                throw new IOException("Invalid snapshot file format");
+            }
+        }
+        return out.toString("UTF-8");
+    }
+
+    private static void copy(InputStream in, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.sobertime;
+
+/**
+ * Immutable, sorted index over every sobriety period, as half-open ranges of local
+ * epoch-days [start, end). Only the last period may be open, with an end of Long.MAX_VALUE.
+ * A prefix sum of the period lengths turns "sober days in a range" into two binary
+ * searches, so a chart bucket costs O(log n) however long the history is.
+ */
+public final class SobrietyPeriodIndex {
+
+    public static final long OPEN = Long.MAX_VALUE;
+
+    /**
+     * Something sober days add up to, over a run of days, e.g. money saved
+     */
+    public interface DailyAmount {
+        double between(long fromDay, long toDay);
+    }
+
+    static final SobrietyPeriodIndex EMPTY = new SobrietyPeriodIndex(new long[0], new long[0]);
+
+    private final long[] starts;
+    private final long[] ends;
+    // daysBefore[i] is the total length of periods 0 to i - 1; never includes an open period
+    private final long[] daysBefore;
+
+    /**
+     * @param starts Period starts, ascending
+     * @param ends Period ends, exclusive, in the same order; the periods must not overlap
+     */
+    SobrietyPeriodIndex(long[] starts, long[] ends) {
+        if (starts.length != ends.length) {
+            throw new IllegalArgumentException("Every period needs a start and an end");
+        }
+        this.starts = starts;
+        this.ends = ends;
+        this.daysBefore = new long[starts.length];
+        for (int i = 1; i < starts.length; i++) {
+            if (starts[i] < ends[i - 1]) {
+                throw new IllegalArgumentException("Sobriety periods overlap at day " + starts[i]);
+            }
+            daysBefore[i] = daysBefore[i - 1] + ends[i - 1] - starts[i - 1];
+        }
+    }
+
+    public boolean isEmpty() {
+        return starts.length == 0;
+    }
+
+    public int size() {
+        return starts.length;
+    }
+
+    public long getStart(int index) {
+        return starts[index];
+    }
+
+    // OPEN for the current period
+    public long getEnd(int index) {
+        return ends[index];
+    }
+
+    /**
+     * Sober days between two local epoch-days, inclusive. An open period counts up to
+     * toDay, so callers that only want completed days should stop at yesterday.
+     */
+    public long countDays(long fromDay, long toDay) {
+        if (toDay < fromDay) {
+            return 0;
+        }
+        return daysBefore(toDay + 1) - daysBefore(fromDay);
+    }
+
+    /**
+     * Total of amount over the sober days between two local epoch-days, inclusive. Each
+     * period in the range is passed to amount once, clipped to the range, and the first
+     * one is found by binary search.
+     */
+    public double sum(long fromDay, long toDay, DailyAmount amount) {
+        double total = 0;
+        // Start at the period that may hold fromDay
+        int i = Math.max(0, countStartingBefore(fromDay + 1) - 1);
+        for (; i < starts.length && starts[i] <= toDay; i++) {
+            long from = Math.max(fromDay, starts[i]);
+            long to = Math.min(toDay, ends[i] - 1);
+            if (from <= to) {
+                total += amount.between(from, to);
+            }
+        }
+        return total;
+    }
+
+    // Sober days before the given day, over the whole history
+    private long daysBefore(long day) {
+        // Periods before the last one starting before day end before it starts, so only
+        // that one can be cut short
+        int last = countStartingBefore(day) - 1;
+        if (last < 0) {
+            return 0;
+        }
+        return daysBefore[last] + Math.min(ends[last], day) - starts[last];
+    }
+
+    private int countStartingBefore(long day) {
+        int low = 0;
+        int high = starts.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -1,11 +1,10 @@
 package com.example.sobertime;
 
-import java.util.Calendar;
-import java.util.concurrent.TimeUnit;
-
 import android.content.Context;
 import android.content.SharedPreferences;
 
+import androidx.annotation.VisibleForTesting;
+
 public class SobrietyTracker {
     private static SobrietyTracker instance;
     public static final String PREFS_NAME = "SobrietyTrackerPrefs";
@@ -15,76 +14,119 @@ public class SobrietyTracker {
     public static final String CURRENT_STREAK_KEY = "current_checkin_streak";
     public static final String BEST_STREAK_KEY = "best_checkin_streak";
     
+    // Set once the old streak counters have been copied into the check-in history
+    private static final String HISTORY_SEEDED_KEY = "check_in_history_seeded";
+    // Best streak from before history was kept; it can't be placed on specific days
+    private static final String LEGACY_BEST_STREAK_KEY = "legacy_best_checkin_streak";
+    
     private Context context;
     
-    public int getCurrentStreak() {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        return prefs.getInt(CURRENT_STREAK_KEY, 0);
+    // Calendar days sober including today (1 on the start date), worked out again only
+    // when that number changes
+    private final DayCountCache dayCountCache;
+    
+    // Days with a confirmed check-in, loaded from the database on first use
+    private CheckInStreakIndex streakIndex;
+    // Latest day with a lapse recorded, loaded with the index; Long.MIN_VALUE if none
+    private long lastLapseDay = Long.MIN_VALUE;
+    
+    public synchronized int getCurrentStreak() {
+        CheckInStreakIndex index = getStreakIndex();
+        long today = EpochDays.today();
+        // After a lapse today the run up to yesterday is over, not waiting on today's check-in
+        return lastLapseDay == today ? 0 : index.currentStreak(today);
     }
     
     public int getBestStreak() {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        return prefs.getInt(BEST_STREAK_KEY, 0);
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME);
+        return Math.max(getStreakIndex().bestStreak(), prefs.getInt(LEGACY_BEST_STREAK_KEY, 0));
     }
     
-    // Update streak when confirming sobriety
-    public void updateStreak() {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
-        
-        // Get current streak
-        int currentStreak = prefs.getInt(CURRENT_STREAK_KEY, 0);
-        int bestStreak = prefs.getInt(BEST_STREAK_KEY, 0);
-        
-        // Get last confirmed date
-        long lastConfirmedMillis = prefs.getLong(LAST_CONFIRMED_DATE_KEY, 0);
-        
-        // If never confirmed before, start streak at 1
-        if (lastConfirmedMillis == 0) {
-            editor.putInt(CURRENT_STREAK_KEY, 1);
-            editor.putInt(BEST_STREAK_KEY, 1);
-            editor.apply();
-            return;
+    /**
+     * Longest run of confirmed check-ins between two local epoch-days, inclusive
+     */
+    public int getLongestStreakBetween(long fromDay, long toDay) {
+        return getStreakIndex().longestStreak(fromDay, toDay);
+    }
+    
+    /**
+     * Number of days with a confirmed check-in between two local epoch-days, inclusive
+     */
+    public int getCheckInDaysBetween(long fromDay, long toDay) {
+        return getStreakIndex().countDays(fromDay, toDay);
+    }
+    
+    /**
+     * Store today's check-in outcome in the history and update the streaks
+     */
+    public synchronized void recordCheckInOutcome(boolean maintainedSobriety) {
+        long now = System.currentTimeMillis();
+        long today = EpochDays.localDay(now);
+        CheckInStreakIndex index = getStreakIndex();
+        
+        // A lapse earlier today wins over a later confirmation
+        boolean maintained = DatabaseHelper.getInstance(context).recordCheckIn(today, maintainedSobriety, now);
+        if (maintained) {
+            index.set(today);
+        } else {
+            index.clear(today);
+            lastLapseDay = today;
         }
         
-        Calendar lastConfirmed = Calendar.getInstance();
-        lastConfirmed.setTimeInMillis(lastConfirmedMillis);
-        
-        Calendar today = Calendar.getInstance();
-        
-        // Clear time portion for accurate day comparison
-        lastConfirmed.set(Calendar.HOUR_OF_DAY, 0);
-        lastConfirmed.set(Calendar.MINUTE, 0);
-        lastConfirmed.set(Calendar.SECOND, 0);
-        lastConfirmed.set(Calendar.MILLISECOND, 0);
-        
-        today.set(Calendar.HOUR_OF_DAY, 0);
-        today.set(Calendar.MINUTE, 0);
-        today.set(Calendar.SECOND, 0);
-        today.set(Calendar.MILLISECOND, 0);
-        
-        // Calculate days difference
-        long diffInMillis = today.getTimeInMillis() - lastConfirmed.getTimeInMillis();
-        int daysDifference = (int) (diffInMillis / (24 * 60 * 60 * 1000));
-        
-        if (daysDifference == 1) {
-            // Consecutive day, increase streak
-            currentStreak++;
-        } else if (daysDifference > 1) {
-            // Missed days, reset streak
-            currentStreak = 1;
+        updateStreak();
+    }
+    
+    // Copy the streaks into the old preference keys for anything still reading them
+    public void updateStreak() {
+        SharedPreferences.Editor editor = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME).edit();
+        editor.putInt(CURRENT_STREAK_KEY, getCurrentStreak());
+        editor.putInt(BEST_STREAK_KEY, getBestStreak());
+        editor.apply();
+    }
+    
+    /**
+     * Drop the in-memory streak index, e.g. after the history table was cleared
+     */
+    public synchronized void invalidateCheckInHistory() {
+        streakIndex = null;
+        lastLapseDay = Long.MIN_VALUE;
+    }
+    
+    private synchronized CheckInStreakIndex getStreakIndex() {
+        if (streakIndex == null) {
+            seedCheckInHistoryIfNeeded();
+            DatabaseHelper databaseHelper = DatabaseHelper.getInstance(context);
+            streakIndex = CheckInStreakIndex.fromDays(databaseHelper.getMaintainedCheckInDays());
+            lastLapseDay = databaseHelper.getLastLapseDay();
+        }
+        return streakIndex;
+    }
+    
+    // Before the history table existed only the current streak and the last confirmed day
+    // were stored; turn them into that many confirmed days ending on the last confirmation.
+    // Anything that writes LAST_CONFIRMED_DATE_KEY loads the index first, so this still
+    // sees the day the old streak really ended.
+    private void seedCheckInHistoryIfNeeded() {
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME);
+        if (prefs.getBoolean(HISTORY_SEEDED_KEY, false)) {
+            return;
         }
-        // If daysDifference == 0, it's the same day, don't change streak
         
-        // Update best streak if needed
-        if (currentStreak > bestStreak) {
-            bestStreak = currentStreak;
+        int currentStreak = prefs.getInt(CURRENT_STREAK_KEY, 0);
+        long lastConfirmedMillis = prefs.getLong(LAST_CONFIRMED_DATE_KEY, 0);
+        if (currentStreak > 0 && lastConfirmedMillis > 0) {
+            long lastDay = EpochDays.localDay(lastConfirmedMillis);
+            long[] days = new long[currentStreak];
+            for (int i = 0; i < currentStreak; i++) {
+                days[i] = lastDay - i;
+            }
+            DatabaseHelper.getInstance(context).recordCheckIns(days, true, lastConfirmedMillis);
         }
         
-        // Save updated values
-        editor.putInt(CURRENT_STREAK_KEY, currentStreak);
-        editor.putInt(BEST_STREAK_KEY, bestStreak);
-        editor.apply();
+        prefs.edit()
+                .putInt(LEGACY_BEST_STREAK_KEY, prefs.getInt(BEST_STREAK_KEY, 0))
+                .putBoolean(HISTORY_SEEDED_KEY, true)
+                .apply();
     }
 
     /**
@@ -93,29 +135,13 @@ public class SobrietyTracker {
      * @return Number of confirmed days sober
      */
     public int getConfirmedDaysSober() {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME);
         int confirmedDays = prefs.getInt(CONFIRMED_DAYS_KEY, 0);
         
         // If we have no confirmed days but we have a start date, calculate based on start date
         if (confirmedDays == 0) {
             long startDate = prefs.getLong(START_DATE_KEY, System.currentTimeMillis());
-            long currentTime = System.currentTimeMillis();
-            
-            Calendar startCalendar = Calendar.getInstance();
-            startCalendar.setTimeInMillis(startDate);
-            startCalendar.set(Calendar.HOUR_OF_DAY, 0);
-            startCalendar.set(Calendar.MINUTE, 0);
-            startCalendar.set(Calendar.SECOND, 0);
-            startCalendar.set(Calendar.MILLISECOND, 0);
-            
-            Calendar currentCalendar = Calendar.getInstance();
-            currentCalendar.set(Calendar.HOUR_OF_DAY, 0);
-            currentCalendar.set(Calendar.MINUTE, 0);
-            currentCalendar.set(Calendar.SECOND, 0);
-            currentCalendar.set(Calendar.MILLISECOND, 0);
-            
-            long diffInMillis = currentCalendar.getTimeInMillis() - startCalendar.getTimeInMillis();
-            confirmedDays = (int) TimeUnit.MILLISECONDS.toDays(diffInMillis) + 1; // +1 to include today
+            confirmedDays = (int) EpochDays.daysBetween(startDate, System.currentTimeMillis()) + 1; // +1 to include today
             
             // Save this calculation
             prefs.edit().putInt(CONFIRMED_DAYS_KEY, confirmedDays).apply();
@@ -126,34 +152,24 @@ public class SobrietyTracker {
 
     // Confirm today's sobriety
     public void confirmSobrietyForToday() {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        SharedPreferences.Editor editor = prefs.edit();
+        // Seed the history from the old counters before they are overwritten
+        getStreakIndex();
         
-        // Get current date (normalized to start of day)
-        Calendar today = Calendar.getInstance();
-        today.set(Calendar.HOUR_OF_DAY, 0);
-        today.set(Calendar.MINUTE, 0);
-        today.set(Calendar.SECOND, 0);
-        today.set(Calendar.MILLISECOND, 0);
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME);
+        SharedPreferences.Editor editor = prefs.edit();
         
-        // Get last confirmed date
+        // Get current date and the last confirmed date as local epoch-days
+        long today = EpochDays.today();
         long lastConfirmedMillis = prefs.getLong(LAST_CONFIRMED_DATE_KEY, 0);
-        Calendar lastConfirmed = Calendar.getInstance();
-        lastConfirmed.setTimeInMillis(lastConfirmedMillis);
-        lastConfirmed.set(Calendar.HOUR_OF_DAY, 0);
-        lastConfirmed.set(Calendar.MINUTE, 0);
-        lastConfirmed.set(Calendar.SECOND, 0);
-        lastConfirmed.set(Calendar.MILLISECOND, 0);
         
         // Check if we already confirmed today
-        if (today.getTimeInMillis() == lastConfirmed.getTimeInMillis()) {
+        if (today == EpochDays.localDay(lastConfirmedMillis)) {
             // Already confirmed today, nothing to do
             return;
         }
         
         // Calculate days difference - how many days to add to count
-        long diffInMillis = today.getTimeInMillis() - lastConfirmed.getTimeInMillis();
-        int daysToAdd = (int) TimeUnit.MILLISECONDS.toDays(diffInMillis);
+        int daysToAdd = (int) (today - EpochDays.localDay(lastConfirmedMillis));
         
         // If this is the first check-in, add 1 for today
         if (lastConfirmedMillis == 0) {
@@ -164,7 +180,7 @@ public class SobrietyTracker {
         int currentCount = prefs.getInt(CONFIRMED_DAYS_KEY, 0);
         
         // Update values - add days difference (usually 1) to count
-        editor.putLong(LAST_CONFIRMED_DATE_KEY, today.getTimeInMillis());
+        editor.putLong(LAST_CONFIRMED_DATE_KEY, EpochDays.startOfDay(today));
         editor.putInt(CONFIRMED_DAYS_KEY, currentCount + daysToAdd);
         editor.apply();
         
@@ -172,26 +188,30 @@ public class SobrietyTracker {
         updateStreak();
     }
     
-    // Reset sobriety counter but maintain the start date for reference
+    // Reset sobriety counter after a relapse; the period that ended stays in the period history
     public void resetSobrietyCounter() {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        // Seed the history from the old counters before they are overwritten
+        getStreakIndex();
+        
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME);
         SharedPreferences.Editor editor = prefs.edit();
         
+        // Close the period that just ended and start a new one today, keeping the old one in the history
+        long now = System.currentTimeMillis();
+        DatabaseHelper.getInstance(context).startSobrietyPeriod(
+                EpochDays.localDay(prefs.getLong(START_DATE_KEY, now)), EpochDays.localDay(now));
+        
         // Update start date to today
-        editor.putLong(START_DATE_KEY, System.currentTimeMillis());
+        editor.putLong(START_DATE_KEY, now);
         
         // Reset confirmed count
         editor.putInt(CONFIRMED_DAYS_KEY, 1);  // Start with 1 for today
         
         // Set last confirmed to today
-        Calendar today = Calendar.getInstance();
-        today.set(Calendar.HOUR_OF_DAY, 0);
-        today.set(Calendar.MINUTE, 0);
-        today.set(Calendar.SECOND, 0);
-        today.set(Calendar.MILLISECOND, 0);
-        editor.putLong(LAST_CONFIRMED_DATE_KEY, today.getTimeInMillis());
+        editor.putLong(LAST_CONFIRMED_DATE_KEY, EpochDays.startOfDay(EpochDays.today()));
         
         editor.apply();
+        dayCountCache.invalidate();
     }
 
     /**
@@ -199,45 +219,33 @@ public class SobrietyTracker {
      * @param startDate New sobriety start date in milliseconds
      */
     public void setSobrietyStartDateAndInitDays(long startDate) {
+        // Seed the history from the old counters before they are overwritten
+        getStreakIndex();
         this.setSobrietyStartDate(startDate);
         
         // Calculate days between start date and today
-        Calendar startCalendar = Calendar.getInstance();
-        startCalendar.setTimeInMillis(startDate);
-        startCalendar.set(Calendar.HOUR_OF_DAY, 0);
-        startCalendar.set(Calendar.MINUTE, 0);
-        startCalendar.set(Calendar.SECOND, 0);
-        startCalendar.set(Calendar.MILLISECOND, 0);
-        
-        Calendar todayCalendar = Calendar.getInstance();
-        todayCalendar.set(Calendar.HOUR_OF_DAY, 0);
-        todayCalendar.set(Calendar.MINUTE, 0);
-        todayCalendar.set(Calendar.SECOND, 0);
-        todayCalendar.set(Calendar.MILLISECOND, 0);
-        
-        long diffInMillis = todayCalendar.getTimeInMillis() - startCalendar.getTimeInMillis();
-        int daysDifference = (int) TimeUnit.MILLISECONDS.toDays(diffInMillis) + 1; // +1 to include today
+        long today = EpochDays.today();
+        int daysDifference = (int) (today - EpochDays.localDay(startDate)) + 1; // +1 to include today
         
         // Update confirmed days count
-        SharedPreferences.Editor editor = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit();
+        SharedPreferences.Editor editor = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME).edit();
         editor.putInt(CONFIRMED_DAYS_KEY, daysDifference);
         
         // Set last confirmed date to today
-        editor.putLong(LAST_CONFIRMED_DATE_KEY, todayCalendar.getTimeInMillis());
+        editor.putLong(LAST_CONFIRMED_DATE_KEY, EpochDays.startOfDay(today));
         editor.apply();
     }
 
     /**
-     * Calculate money saved by not drinking
-     * @param drinkCost the average cost per drink
-     * @param drinksPerWeek average number of drinks consumed per week before sobriety
+     * Calculate money saved by not drinking, pricing each day at the drink cost and
+     * drinks per week that were set on it
      * @return total money saved during the sobriety period
      */
-    public float calculateMoneySaved(float drinkCost, int drinksPerWeek) {
+    public float calculateMoneySaved() {
         int daysSober = getDaysSober();
-        float daysInWeek = 7.0f;
-        float drinksPerDay = drinksPerWeek / daysInWeek;
-        return daysSober * drinksPerDay * drinkCost;
+        long startDay = EpochDays.localDay(getSobrietyStartDate());
+        SavingsRateIndex rates = DatabaseHelper.getInstance(context).getSavingsRates();
+        return (float) rates.moneySaved(startDay, startDay + daysSober - 1);
     }
 
     public static synchronized SobrietyTracker getInstance(Context context) {
@@ -247,57 +255,71 @@ public class SobrietyTracker {
         return instance;
     }
     
+    // Drop the singleton so tests load the check-in history again from a fresh database
+    @VisibleForTesting
+    static synchronized void resetInstance() {
+        instance = null;
+    }
+    
     private SobrietyTracker(Context context) {
         this.context = context;
+        this.dayCountCache = new DayCountCache(context, new DayCountCache.Counter() {
+            @Override
+            public int count(long startDate, long now) {
+                // Counted in local epoch-days including today, as the model tracker, the
+                // milestone timeline and the achievements count, so they all agree on the day
+                return (int) EpochDays.daysBetween(startDate, now) + 1;
+            }
+            
+            @Override
+            public long nextChange(long startDate, long now) {
+                return EpochDays.startOfDay(EpochDays.localDay(now) + 1);
+            }
+        });
     }
     
     public void setSobrietyStartDate(long startDate) {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME);
         SharedPreferences.Editor editor = prefs.edit();
         editor.putLong(START_DATE_KEY, startDate);
         editor.apply();
+        DatabaseHelper.getInstance(context).setCurrentSobrietyPeriodStart(EpochDays.localDay(startDate));
+        dayCountCache.invalidate();
     }
     
     public long getSobrietyStartDate() {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME);
         return prefs.getLong(START_DATE_KEY, System.currentTimeMillis());
     }
     
+    /**
+     * Calendar days sober, including today; 1 on the start date
+     */
     public int getDaysSober() {
-        long startDate = getSobrietyStartDate();
-        long currentTime = System.currentTimeMillis();
-        long diffInMillis = currentTime - startDate;
-        
-        return (int) java.util.concurrent.TimeUnit.MILLISECONDS.toDays(diffInMillis);
+        return dayCountCache.getDays(getSobrietyStartDate());
+    }
+    
+    /**
+     * Be told when the day count may have changed: at midnight, when the clock or
+     * time zone is changed, or when the start date is set
+     */
+    public void addDayCountListener(DayCountCache.Listener listener) {
+        dayCountCache.addListener(listener);
+    }
+    
+    public void removeDayCountListener(DayCountCache.Listener listener) {
+        dayCountCache.removeListener(listener);
     }
 
     public boolean hasCheckedInRecently() {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME);
         long lastConfirmed = prefs.getLong(LAST_CONFIRMED_DATE_KEY, 0);
         
         // If never confirmed, return false
         if (lastConfirmed == 0) return false;
         
         // Calculate days since last confirmation
-        Calendar lastConfirmedCal = Calendar.getInstance();
-        lastConfirmedCal.setTimeInMillis(lastConfirmed);
-        
-        Calendar todayCal = Calendar.getInstance();
-        
-        // Clear time portion for accurate day comparison
-        lastConfirmedCal.set(Calendar.HOUR_OF_DAY, 0);
-        lastConfirmedCal.set(Calendar.MINUTE, 0);
-        lastConfirmedCal.set(Calendar.SECOND, 0);
-        lastConfirmedCal.set(Calendar.MILLISECOND, 0);
-        
-        todayCal.set(Calendar.HOUR_OF_DAY, 0);
-        todayCal.set(Calendar.MINUTE, 0);
-        todayCal.set(Calendar.SECOND, 0);
-        todayCal.set(Calendar.MILLISECOND, 0);
-        
-        // Calculate days difference
-        long diffInMillis = todayCal.getTimeInMillis() - lastConfirmedCal.getTimeInMillis();
-        int daysDifference = (int) (diffInMillis / (24 * 60 * 60 * 1000));
+        long daysDifference = EpochDays.today() - EpochDays.localDay(lastConfirmed);
         
         // Return true if checked in yesterday or today
         return daysDifference <= 1;
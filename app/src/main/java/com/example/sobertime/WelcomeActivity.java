@@ -40,7 +40,7 @@ public class WelcomeActivity extends AppCompatActivity {
         sobrietyTracker = SobrietyTracker.getInstance(this);
         
         // Check if onboarding is complete
-        SharedPreferences preferences = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        SharedPreferences preferences = PreferenceStore.getInstance(this).getPreferences(PREFS_NAME);
         boolean onboardingComplete = preferences.getBoolean(ONBOARDING_COMPLETE_KEY, false);
         
         if (onboardingComplete) {
@@ -62,7 +62,7 @@ public class WelcomeActivity extends AppCompatActivity {
     }
 
     private void saveUserStatus(int status) {
-        SharedPreferences preferences = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        SharedPreferences preferences = PreferenceStore.getInstance(this).getPreferences(PREFS_NAME);
         SharedPreferences.Editor editor = preferences.edit();
         editor.putInt(CURRENT_STATUS_KEY, status);
         editor.putBoolean(ONBOARDING_COMPLETE_KEY, true);
@@ -145,7 +145,7 @@ public class WelcomeActivity extends AppCompatActivity {
     }
     
     private void saveSobrietyStartDate(long startDate) {
-        SharedPreferences preferences = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        SharedPreferences preferences = PreferenceStore.getInstance(this).getPreferences(PREFS_NAME);
         SharedPreferences.Editor editor = preferences.edit();
         editor.putLong(START_DATE_KEY, startDate);
         editor.apply();
@@ -180,7 +180,7 @@ public class WelcomeActivity extends AppCompatActivity {
     }
     
     private void navigateBasedOnStatus() {
-        SharedPreferences preferences = getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
+        SharedPreferences preferences = PreferenceStore.getInstance(this).getPreferences(PREFS_NAME);
         int status = preferences.getInt(CURRENT_STATUS_KEY, STATUS_UNKNOWN);
         
         switch (status) {
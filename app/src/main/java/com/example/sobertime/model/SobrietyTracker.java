@@ -2,8 +2,13 @@ package com.example.sobertime.model;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import java.util.Calendar;
-import java.util.concurrent.TimeUnit;
+
+import com.example.sobertime.DatabaseHelper;
+import com.example.sobertime.DayCountCache;
+import com.example.sobertime.EpochDays;
+import com.example.sobertime.PreferenceStore;
+import com.example.sobertime.SavingsRateIndex;
+import com.example.sobertime.SobrietyPeriodIndex;
 
 /**
  * Singleton class that handles all sobriety tracking calculations.
@@ -18,11 +23,26 @@ public class SobrietyTracker {
     private Context context;
     private long sobrietyStartDate;
     
+    // Calendar days since the start date, worked out again only after midnight
+    private final DayCountCache dayCountCache;
+    
     /**
      * Private constructor to enforce singleton pattern
      */
     private SobrietyTracker(Context context) {
         this.context = context.getApplicationContext(); // Use application context to prevent leaks
+        this.dayCountCache = new DayCountCache(this.context, new DayCountCache.Counter() {
+            @Override
+            public int count(long startDate, long now) {
+                // Counted in local epoch-days, so a short day at a DST change still counts
+                return (int) EpochDays.daysBetween(startDate, now) + 1;
+            }
+            
+            @Override
+            public long nextChange(long startDate, long now) {
+                return EpochDays.startOfDay(EpochDays.localDay(now) + 1);
+            }
+        });
         loadSobrietyStartDate();
     }
     
@@ -42,7 +62,7 @@ public class SobrietyTracker {
      * Load the sobriety start date from shared preferences
      */
     private void loadSobrietyStartDate() {
-        SharedPreferences prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME);
         sobrietyStartDate = prefs.getLong(START_DATE_KEY, System.currentTimeMillis());
     }
     
@@ -60,9 +80,11 @@ public class SobrietyTracker {
      */
     public void setSobrietyStartDate(long startDate) {
         this.sobrietyStartDate = startDate;
-        SharedPreferences.Editor editor = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit();
+        SharedPreferences.Editor editor = PreferenceStore.getInstance(context).getPreferences(PREFS_NAME).edit();
         editor.putLong(START_DATE_KEY, startDate);
         editor.apply();
+        DatabaseHelper.getInstance(context).setCurrentSobrietyPeriodStart(EpochDays.localDay(startDate));
+        dayCountCache.invalidate();
     }
     
     /**
@@ -70,24 +92,20 @@ public class SobrietyTracker {
      * @return Number of days sober, including today
      */
     public int getDaysSober() {
-        Calendar startCalendar = Calendar.getInstance();
-        startCalendar.setTimeInMillis(sobrietyStartDate);
-        // Clear time portion to start at beginning of day
-        startCalendar.set(Calendar.HOUR_OF_DAY, 0);
-        startCalendar.set(Calendar.MINUTE, 0);
-        startCalendar.set(Calendar.SECOND, 0);
-        startCalendar.set(Calendar.MILLISECOND, 0);
-        
-        Calendar currentCalendar = Calendar.getInstance();
-        // Clear time portion to count full days
-        currentCalendar.set(Calendar.HOUR_OF_DAY, 0);
-        currentCalendar.set(Calendar.MINUTE, 0);
-        currentCalendar.set(Calendar.SECOND, 0);
-        currentCalendar.set(Calendar.MILLISECOND, 0);
-        
-        // Calculate days between (including today)
-        long diffInMillis = currentCalendar.getTimeInMillis() - startCalendar.getTimeInMillis();
-        return (int) TimeUnit.MILLISECONDS.toDays(diffInMillis) + 1; // Add 1 to count today
+        return dayCountCache.getDays(sobrietyStartDate);
+    }
+    
+    /**
+     * Be told when the day count may have changed: at midnight, when the clock or
+     * time zone is changed, or when the start date is set
+     * @param listener Called on the thread that caused the change
+     */
+    public void addDayCountListener(DayCountCache.Listener listener) {
+        dayCountCache.addListener(listener);
+    }
+    
+    public void removeDayCountListener(DayCountCache.Listener listener) {
+        dayCountCache.removeListener(listener);
     }
     
     /**
@@ -97,55 +115,65 @@ public class SobrietyTracker {
      * @return Number of days sober in specified month
      */
     public int getDaysSoberInMonth(int year, int month) {
-        // Create calendar for first day of month
-        Calendar firstDayOfMonth = Calendar.getInstance();
-        firstDayOfMonth.set(year, month, 1, 0, 0, 0);
-        firstDayOfMonth.set(Calendar.MILLISECOND, 0);
-        
-        // Create calendar for first day of next month
-        Calendar firstDayOfNextMonth = (Calendar) firstDayOfMonth.clone();
-        firstDayOfNextMonth.add(Calendar.MONTH, 1);
-        
-        // If sobriety started after this month, return 0
-        if (sobrietyStartDate > firstDayOfNextMonth.getTimeInMillis()) {
-            return 0;
-        }
-        
-        // If sobriety started before this month
-        if (sobrietyStartDate <= firstDayOfMonth.getTimeInMillis()) {
-            // Calculate days in this month
-            return (int) TimeUnit.MILLISECONDS.toDays(
-                Math.min(System.currentTimeMillis(), firstDayOfNextMonth.getTimeInMillis()) - 
-                firstDayOfMonth.getTimeInMillis());
-        }
-        
-        // If sobriety started during this month
-        return (int) TimeUnit.MILLISECONDS.toDays(
-            Math.min(System.currentTimeMillis(), firstDayOfNextMonth.getTimeInMillis()) - 
-            sobrietyStartDate);
+        long firstDayOfMonth = EpochDays.of(year, month + 1, 1);
+        long firstDayOfNextMonth = month == 11 ? EpochDays.of(year + 1, 1, 1) : EpochDays.of(year, month + 2, 1);
+        return getDaysSoberBetween(firstDayOfMonth, firstDayOfNextMonth - 1);
+    }
+    
+    /**
+     * Calculate days sober between two local epoch-days, inclusive, over every sobriety
+     * period rather than only the current one. Today is left out until it is over.
+     * @return Number of completed sober days in the range
+     */
+    public int getDaysSoberBetween(long fromDay, long toDay) {
+        long lastCompletedDay = EpochDays.today() - 1;
+        SobrietyPeriodIndex periods = DatabaseHelper.getInstance(context).getSobrietyPeriods();
+        return (int) periods.countDays(fromDay, Math.min(toDay, lastCompletedDay));
     }
     
     /**
-     * Calculate the money saved based on drink cost and frequency
-     * @param drinkCost Cost per drink
-     * @param drinksPerWeek Number of drinks typically consumed per week
+     * Calculate the money saved since the sobriety start date, at the drink cost and
+     * frequency that were set on each of those days
      * @return Total money saved since sobriety start date
      */
-    public float calculateMoneySaved(float drinkCost, int drinksPerWeek) {
-        int daysSober = getDaysSober();
-        float drinksAvoided = (daysSober / 7.0f) * drinksPerWeek;
-        return drinksAvoided * drinkCost;
+    public float calculateMoneySaved() {
+        long startDay = EpochDays.localDay(sobrietyStartDate);
+        SavingsRateIndex rates = DatabaseHelper.getInstance(context).getSavingsRates();
+        return (float) rates.moneySaved(startDay, startDay + getDaysSober() - 1);
     }
     
     /**
-     * Calculate calories saved based on calories per drink and frequency
-     * @param caloriesPerDrink Calories in a typical drink
-     * @param drinksPerWeek Number of drinks typically consumed per week
+     * Calculate the calories saved since the sobriety start date, at the calories per
+     * drink and frequency that were set on each of those days
      * @return Total calories saved since sobriety start date
      */
-    public int calculateCaloriesSaved(int caloriesPerDrink, int drinksPerWeek) {
-        int daysSober = getDaysSober();
-        float drinksAvoided = (daysSober / 7.0f) * drinksPerWeek;
-        return (int)(drinksAvoided * caloriesPerDrink);
+    public int calculateCaloriesSaved() {
+        long startDay = EpochDays.localDay(sobrietyStartDate);
+        SavingsRateIndex rates = DatabaseHelper.getInstance(context).getSavingsRates();
+        return (int) rates.caloriesSaved(startDay, startDay + getDaysSober() - 1);
+    }
+    
+    /**
+     * Calculate money saved in a specific month, over every sobriety period
+     * @param year The year to calculate for
+     * @param month The month to calculate for (0-based, January is 0)
+     * @return Money saved on the completed sober days of the month
+     */
+    public float getMoneySavedInMonth(int year, int month) {
+        long firstDayOfMonth = EpochDays.of(year, month + 1, 1);
+        long firstDayOfNextMonth = month == 11 ? EpochDays.of(year + 1, 1, 1) : EpochDays.of(year, month + 2, 1);
+        return getMoneySavedBetween(firstDayOfMonth, firstDayOfNextMonth - 1);
+    }
+    
+    /**
+     * Calculate money saved between two local epoch-days, inclusive, pricing each sober
+     * day at the settings in force on it. Today is left out until it is over.
+     */
+    public float getMoneySavedBetween(long fromDay, long toDay) {
+        long lastCompletedDay = EpochDays.today() - 1;
+        DatabaseHelper databaseHelper = DatabaseHelper.getInstance(context);
+        final SavingsRateIndex rates = databaseHelper.getSavingsRates();
+        return (float) databaseHelper.getSobrietyPeriods()
+                .sum(fromDay, Math.min(toDay, lastCompletedDay), rates::moneySaved);
     }
 }
\ No newline at end of file
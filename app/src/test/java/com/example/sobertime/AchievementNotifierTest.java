@@ -0,0 +1,91 @@
+package com.example.sobertime;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.content.Context;
+import android.os.Looper;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowNotificationManager;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that unlocks close together are posted as one group, that batches are spaced
+ * out, and that a single unlock still gets a plain notification.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class AchievementNotifierTest {
+
+    private AchievementNotifier notifier;
+    private ShadowNotificationManager notifications;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.getApplication();
+        notifier = new AchievementNotifier(context, "achievement_channel");
+        notifications = shadowOf((NotificationManager) context.getSystemService(Context.NOTIFICATION_SERVICE));
+    }
+
+    @Test
+    public void unlocksWithinTheWindowShareOneGroup() {
+        for (int id = 201; id <= 203; id++) {
+            notifier.post(achievement(id));
+        }
+        idle(AchievementNotifier.COALESCE_MS - 1);
+        assertEquals(0, notifications.size());
+
+        idle(1);
+        assertEquals(4, notifications.size());
+        Notification summary = notifications.getNotification(
+                AchievementNotifier.NOTIFICATION_TAG, AchievementNotifier.SUMMARY_ID);
+        assertNotNull(summary);
+        assertTrue((summary.flags & Notification.FLAG_GROUP_SUMMARY) != 0);
+        assertNotNull(notifications.getNotification(AchievementNotifier.NOTIFICATION_TAG, 202));
+    }
+
+    @Test
+    public void largeBatchesPostAtMostMaxChildren() {
+        for (int id = 1; id <= 10; id++) {
+            notifier.post(achievement(id));
+        }
+        idle(AchievementNotifier.COALESCE_MS);
+        assertEquals(AchievementNotifier.MAX_CHILDREN + 1, notifications.size());
+    }
+
+    @Test
+    public void batchesAreRateLimited() {
+        notifier.post(achievement(101));
+        idle(AchievementNotifier.COALESCE_MS);
+        assertEquals(1, notifications.size());
+        Notification single = notifications.getNotification(AchievementNotifier.NOTIFICATION_TAG, 101);
+        assertEquals(0, single.flags & Notification.FLAG_GROUP_SUMMARY);
+
+        // The next batch waits out the interval from the last one, however soon it starts
+        notifier.post(achievement(102));
+        idle(AchievementNotifier.MIN_INTERVAL_MS - 1);
+        assertEquals(1, notifications.size());
+        idle(1);
+        assertEquals(2, notifications.size());
+    }
+
+    private static Achievement achievement(int id) {
+        return new Achievement(id, "Achievement " + id, "Description", "ic_achievement_day1",
+                Achievement.AchievementCategory.FINANCIAL);
+    }
+
+    private static void idle(long millis) {
+        shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(millis));
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.sobertime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+
+import com.example.sobertime.AchievementRuleEngine.Event;
+import com.example.sobertime.AchievementRuleEngine.Metric;
+import com.example.sobertime.AchievementRuleEngine.Rule;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that events only evaluate the rules watching them and unlock each rule once,
+ * also when a thousand day count rules are registered.
+ */
+public class AchievementRuleEngineTest {
+
+    @Test
+    public void unlocksEachRuleOnceInThresholdOrder() {
+        AchievementRuleEngine engine = new AchievementRuleEngine(Arrays.asList(
+                rule(3, Metric.DAYS_SOBER, 30, Event.DAY_ROLLOVER),
+                rule(1, Metric.DAYS_SOBER, 1, Event.DAY_ROLLOVER),
+                rule(2, Metric.DAYS_SOBER, 7, Event.DAY_ROLLOVER),
+                rule(201, Metric.MONEY_SAVED, 100, Event.DAY_ROLLOVER, Event.SETTINGS_CHANGED)));
+        Values values = new Values();
+
+        values.set(Metric.DAYS_SOBER, 7);
+        assertEquals(Arrays.asList(1, 2), engine.evaluate(Event.DAY_ROLLOVER, values));
+        assertEquals(Collections.emptyList(), engine.evaluate(Event.DAY_ROLLOVER, values));
+
+        // A relapse doesn't take anything back, and the old thresholds aren't met again
+        values.set(Metric.DAYS_SOBER, 1);
+        assertEquals(Collections.emptyList(), engine.evaluate(Event.DAY_ROLLOVER, values));
+        values.set(Metric.DAYS_SOBER, 30);
+        assertEquals(Collections.singletonList(3), engine.evaluate(Event.DAY_ROLLOVER, values));
+
+        values.set(Metric.MONEY_SAVED, 150);
+        assertEquals(Collections.singletonList(201), engine.evaluate(Event.SETTINGS_CHANGED, values));
+        assertEquals(Collections.emptyList(), engine.evaluate(Event.DAY_ROLLOVER, values));
+    }
+
+    @Test
+    public void readsOnlyTheMetricsWatchedByTheEvent() {
+        AchievementRuleEngine engine = new AchievementRuleEngine(Arrays.asList(
+                rule(1, Metric.DAYS_SOBER, 1, Event.DAY_ROLLOVER),
+                rule(101, Metric.JOURNAL_ENTRIES, 1, Event.JOURNAL_SAVED),
+                rule(103, Metric.JOURNAL_ENTRIES, 30, Event.JOURNAL_SAVED)));
+        Values values = new Values();
+        values.set(Metric.JOURNAL_ENTRIES, 1);
+
+        assertEquals(Collections.singletonList(101), engine.evaluate(Event.JOURNAL_SAVED, values));
+        assertEquals(Collections.emptyList(), engine.evaluate(Event.CHECK_IN_RECORDED, values));
+        assertEquals(1, values.reads);
+        assertEquals(0, engine.countWatching(Event.CHECK_IN_RECORDED));
+
+        // Once every rule on a metric is met, the metric isn't read any more
+        engine.markMet(103);
+        engine.evaluate(Event.JOURNAL_SAVED, values);
+        assertEquals(1, values.reads);
+
+        engine.reset();
+        values.set(Metric.JOURNAL_ENTRIES, 30);
+        assertEquals(Arrays.asList(101, 103), engine.evaluate(Event.JOURNAL_SAVED, values));
+        assertEquals(2, values.reads);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTwoRulesForOneAchievement() {
+        new AchievementRuleEngine(Arrays.asList(
+                rule(1, Metric.DAYS_SOBER, 1, Event.DAY_ROLLOVER),
+                rule(1, Metric.DAYS_SOBER, 7, Event.DAY_ROLLOVER)));
+    }
+
+    @Test
+    public void journalEventSkipsTheDayCountRules() {
+        List<Rule> rules = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            rules.add(rule(i + 1, Metric.DAYS_SOBER, i + 1, Event.DAY_ROLLOVER));
+        }
+        rules.add(rule(2001, Metric.JOURNAL_ENTRIES, 1, Event.JOURNAL_SAVED));
+        rules.add(rule(2002, Metric.JOURNAL_STREAK, 5, Event.JOURNAL_SAVED));
+        rules.add(rule(2003, Metric.JOURNAL_ENTRIES, 30, Event.JOURNAL_SAVED));
+        AchievementRuleEngine engine = new AchievementRuleEngine(rules);
+        Values values = new Values();
+        values.set(Metric.JOURNAL_ENTRIES, 10);
+        values.set(Metric.JOURNAL_STREAK, 2);
+
+        assertEquals(Collections.singletonList(2001), engine.evaluate(Event.JOURNAL_SAVED, values));
+        assertEquals(Collections.<Integer>emptyList(), engine.evaluate(Event.JOURNAL_SAVED, values));
+        assertEquals(3, engine.countWatching(Event.JOURNAL_SAVED));
+        assertEquals(1000, engine.countWatching(Event.DAY_ROLLOVER));
+
+        // Each event read the two journal metrics and never the day count
+        assertEquals(4, values.reads);
+    }
+
+    private static Rule rule(int id, Metric metric, double threshold, Event first, Event... rest) {
+        return new Rule(id, metric, threshold, EnumSet.of(first, rest));
+    }
+
+    // Fixed metric values, counting how often they are read
+    private static final class Values implements AchievementRuleEngine.Metrics {
+        private final EnumMap<Metric, Double> values = new EnumMap<>(Metric.class);
+        int reads;
+
+        void set(Metric metric, double value) {
+            values.put(metric, value);
+        }
+
+        @Override
+        public double read(Metric metric) {
+            reads++;
+            Double value = values.get(metric);
+            return value != null ? value : 0;
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.sobertime;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that unlocks are stored as rows in the achievements table, that the
+ * old preferences blob is migrated into it once, and that rules unlock only once.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class AchievementStorageTest {
+
+    private Context context;
+    private DatabaseHelper databaseHelper;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+        AchievementManager.resetInstance();
+        context = RuntimeEnvironment.getApplication();
+        databaseHelper = DatabaseHelper.getInstance(context);
+    }
+
+    @After
+    public void tearDown() {
+        AchievementManager.resetInstance();
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+    }
+
+    @Test
+    public void unlock_writesOneRowAndSurvivesRestart() {
+        AchievementManager manager = AchievementManager.getInstance(context);
+        assertTrue(manager.unlockAchievement(201));
+        assertFalse(manager.unlockAchievement(201));
+
+        Map<Integer, Long> rows = databaseHelper.getUnlockedAchievements();
+        assertEquals(1, rows.size());
+        assertTrue(rows.get(201) > 0);
+
+        AchievementManager.resetInstance();
+        manager = AchievementManager.getInstance(context);
+        assertTrue(find(manager, 201).isUnlocked());
+        assertEquals((long) rows.get(201), find(manager, 201).getUnlockTime());
+        assertFalse(find(manager, 202).isUnlocked());
+    }
+
+    @Test
+    public void legacyBlob_isMigratedOnce() throws Exception {
+        JSONArray legacy = new JSONArray();
+        legacy.put(new JSONObject().put("id", 1).put("unlocked", true).put("unlockTime", 1700000000000L));
+        legacy.put(new JSONObject().put("id", 2).put("unlocked", false).put("unlockTime", 0L));
+        legacy.put(new JSONObject().put("id", 101).put("unlocked", true).put("unlockTime", 1700000500000L));
+        SharedPreferences preferences = context.getSharedPreferences("AchievementsPrefs", Context.MODE_PRIVATE);
+        preferences.edit().putString("achievements_data", legacy.toString()).commit();
+
+        AchievementManager manager = AchievementManager.getInstance(context);
+        assertTrue(find(manager, 1).isUnlocked());
+        assertEquals(1700000000000L, find(manager, 1).getUnlockTime());
+        assertFalse(find(manager, 2).isUnlocked());
+
+        Map<Integer, Long> rows = databaseHelper.getUnlockedAchievements();
+        assertEquals(2, rows.size());
+        assertEquals(Long.valueOf(1700000500000L), rows.get(101));
+        assertNull(preferences.getString("achievements_data", null));
+    }
+
+    @Test
+    public void dayRollover_unlocksWatchingRulesOnce() {
+        AchievementManager manager = AchievementManager.getInstance(context);
+        Achievement today = manager.checkTimeAchievements(7);
+        assertEquals(2, today.getId());
+        assertTrue(today.isToday());
+        assertTrue(find(manager, 1).isUnlocked());
+        assertTrue(find(manager, 302).isUnlocked());
+        assertFalse(find(manager, 3).isUnlocked());
+        // Journal rules don't watch the day rollover
+        assertFalse(find(manager, 101).isUnlocked());
+
+        assertNull(manager.checkTimeAchievements(8));
+        assertFalse(today.isToday());
+
+        Map<Integer, Long> rows = databaseHelper.getUnlockedAchievements();
+        AchievementManager.resetInstance();
+        manager = AchievementManager.getInstance(context);
+        assertEquals(2, manager.checkTimeAchievements(7).getId());
+        assertEquals(rows, databaseHelper.getUnlockedAchievements());
+    }
+
+    private static Achievement find(AchievementManager manager, int id) {
+        for (Achievement achievement : manager.getAllAchievements()) {
+            if (achievement.getId() == id) {
+                return achievement;
+            }
+        }
+        throw new AssertionError("No achievement " + id);
+    }
+}
@@ -0,0 +1,201 @@
+package com.example.sobertime;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Checks that archive backups restore to the same sections as plain JSON backups,
+ * that they carry the check-in, period and settings histories, that they compress
+ * the journal, and that foreign or newer archives are rejected. Size and time over a
+ * large journal are compared in Benchmarks.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class BackupArchiveTest {
+
+    private static final int JOURNAL_SIZE = 500;
+
+    private Context context;
+    private DatabaseHelper databaseHelper;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+        context = RuntimeEnvironment.getApplication();
+        databaseHelper = DatabaseHelper.getInstance(context);
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+    }
+
+    @Test
+    public void archiveAndPlainRestoreTheSameSections() throws Exception {
+        databaseHelper.addJournalEntry(new JournalEntry("Evening walk", "Went to the park", "Calm", 2, null));
+        databaseHelper.setSetting("drink_cost", "6");
+        BackupWriter writer = new BackupWriter(context);
+
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        writer.write(plain);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        writer.writeArchive(archive);
+
+        JSONObject fromPlain = new BackupReader(context).read(new ByteArrayInputStream(plain.toByteArray()), -1);
+        JSONObject fromArchive = new BackupReader(context).read(new ByteArrayInputStream(archive.toByteArray()), -1);
+
+        // Same keys and values; only the order of the top-level keys differs
+        assertEquals(fromPlain.length(), fromArchive.length());
+        Iterator<String> keys = fromPlain.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            assertEquals(key, fromPlain.get(key).toString(), fromArchive.get(key).toString());
+        }
+        assertEquals("6", fromArchive.getJSONObject("settings").getString("drink_cost"));
+        assertTrue(fromArchive.has("sobriety_start_date"));
+        assertTrue(fromArchive.has("emergency_contacts"));
+        assertEquals(1, databaseHelper.searchJournal("park", 10).size());
+    }
+
+    @Test
+    public void historiesRoundTrip() throws Exception {
+        long today = EpochDays.today();
+        databaseHelper.recordCheckIns(new long[]{today - 2, today - 1}, true, 1700000000000L);
+        databaseHelper.recordCheckIn(today, false, 1700000000000L);
+        databaseHelper.startSobrietyPeriod(today - 30, today);
+        databaseHelper.setSetting(SettingsSnapshot.KEY_DRINK_COST, "10");
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        new BackupWriter(context).writeArchive(archive);
+        databaseHelper.resetAllData();
+        JSONObject sections = new BackupReader(context).read(new ByteArrayInputStream(archive.toByteArray()), -1);
+
+        JSONArray checkIns = sections.getJSONArray("check_ins");
+        assertEquals(3, checkIns.length());
+        assertEquals(0, checkIns.getJSONObject(2).getInt("maintained"));
+        JSONArray periods = sections.getJSONArray("sobriety_periods");
+        assertEquals(2, periods.length());
+        assertEquals(today, periods.getJSONObject(0).getLong("end_day"));
+        assertFalse(periods.getJSONObject(1).has("end_day"));
+        assertEquals(2, sections.getJSONArray("settings_history").length());
+
+        // Restoring the rows replaces the tables and the cached indexes built from them
+        assertTrue(databaseHelper.getSobrietyPeriods().isEmpty());
+        List<ContentValues> periodRows = new ArrayList<>();
+        for (int i = 0; i < periods.length(); i++) {
+            ContentValues values = new ContentValues();
+            values.put("start_day", periods.getJSONObject(i).getLong("start_day"));
+            if (periods.getJSONObject(i).has("end_day")) {
+                values.put("end_day", periods.getJSONObject(i).getLong("end_day"));
+            } else {
+                values.putNull("end_day");
+            }
+            periodRows.add(values);
+        }
+        databaseHelper.replaceSobrietyPeriods(periodRows);
+        assertEquals(2, databaseHelper.getSobrietyPeriods().size());
+        assertEquals(SobrietyPeriodIndex.OPEN, databaseHelper.getSobrietyPeriods().getEnd(1));
+
+        ContentValues checkIn = new ContentValues();
+        checkIn.put("day", today - 1);
+        checkIn.put("maintained", 1);
+        checkIn.put("timestamp", 1700000000000L);
+        List<ContentValues> checkInRows = new ArrayList<>();
+        checkInRows.add(checkIn);
+        databaseHelper.replaceCheckIns(checkInRows);
+        assertEquals(1, databaseHelper.getMaintainedCheckInDays().length);
+    }
+
+    @Test
+    public void foreignAndNewerArchivesAreRejected() throws Exception {
+        assertRejected(zip("readme.txt", "hello"));
+        assertRejected(zip(BackupWriter.MANIFEST_ENTRY, "{\"format\":\"something-else\",\"version\":1}"));
+        assertRejected(zip(BackupWriter.MANIFEST_ENTRY, "{\"format\":\"" + BackupWriter.ARCHIVE_FORMAT
+                + "\",\"version\":" + (BackupWriter.ARCHIVE_VERSION + 1) + "}"));
+    }
+
+    @Test
+    public void archiveIsSmallerThanPlain() throws Exception {
+        insertJournal();
+        BackupWriter writer = new BackupWriter(context);
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        writer.write(plain);
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        writer.writeArchive(archive);
+
+        assertTrue(archive.size() * 2 < plain.size());
+        new BackupReader(context).read(new ByteArrayInputStream(archive.toByteArray()), archive.size());
+        assertEquals(JOURNAL_SIZE, databaseHelper.getJournalEntryCount());
+    }
+
+    private void insertJournal() {
+        String[] words = {"meeting", "sponsor", "walk", "craving", "family", "work", "sleep", "gym"};
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement(DatabaseHelper.INSERT_JOURNAL);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < JOURNAL_SIZE; i++) {
+                statement.bindLong(1, 1700000000000L + i * 3600000L);
+                statement.bindString(2, "Day " + i);
+                statement.bindString(3, "Today was about " + words[i % words.length] + " and "
+                        + words[(i / 8) % words.length] + ". Entry " + i + " of the journal.");
+                statement.bindString(4, i % 2 == 0 ? "Calm" : "Anxious");
+                statement.bindLong(5, i % 6);
+                statement.bindNull(6);
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+    }
+
+    private void assertRejected(byte[] backup) {
+        try {
+            new BackupReader(context).read(new ByteArrayInputStream(backup), backup.length);
+            fail("Expected the archive to be rejected");
+        } catch (IOException expected) {
+            // Not one of ours
+        }
+    }
+
+    private static byte[] zip(String entryName, String content) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(out)) {
+            zip.putNextEntry(new ZipEntry(entryName));
+            zip.write(content.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+        return out.toByteArray();
+    }
+}
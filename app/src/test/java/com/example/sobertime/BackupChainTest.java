@@ -0,0 +1,374 @@
+package com.example.sobertime;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Writes a full backup followed by deltas into a plain directory, checks that the
+ * deltas only carry what changed, that restoring replays the whole chain, that
+ * older full archives are kept up to the retention limit, that a failed or damaged
+ * full archive leaves an older one to restore from, and that a damaged delta is
+ * skipped whole.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class BackupChainTest {
+
+    private static final int JOURNAL_SIZE = 2000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Context context;
+    private DatabaseHelper databaseHelper;
+    private File folder;
+    private DirectoryStore store;
+    private BackupChain chain;
+
+    @Before
+    public void setUp() throws IOException {
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+        context = RuntimeEnvironment.getApplication();
+        databaseHelper = DatabaseHelper.getInstance(context);
+        folder = temporaryFolder.newFolder("backups");
+        store = new DirectoryStore(folder);
+        chain = new BackupChain(context, store);
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+    }
+
+    @Test
+    public void deltaHoldsOnlyTheChanges() throws Exception {
+        List<Long> ids = addEntries(JOURNAL_SIZE);
+        assertTrue(chain.backup(false));
+
+        waitForClockTick();
+        JournalEntry edited = databaseHelper.getJournalEntry(ids.get(10));
+        edited.setTitle("Edited title");
+        databaseHelper.updateJournalEntry(edited);
+        databaseHelper.deleteJournalEntry(ids.get(20));
+        databaseHelper.addJournalEntry(new JournalEntry("New entry", "Written after the full backup", "Calm", 1, null));
+        assertFalse(chain.backup(false));
+
+        File full = new File(folder, BackupChain.FULL_BACKUP);
+        File delta = new File(folder, BackupChain.deltaName(1));
+        assertTrue(delta.length() * 10 < full.length());
+
+        JSONObject manifest;
+        try (InputStream in = new FileInputStream(delta)) {
+            manifest = BackupReader.readManifest(in);
+        }
+        assertEquals(BackupWriter.TYPE_DELTA, manifest.getString("type"));
+        assertEquals(1, manifest.getInt("sequence"));
+    }
+
+    @Test
+    public void restoreReplaysTheChain() throws Exception {
+        List<Long> ids = addEntries(50);
+        long keptBuddy = addBuddy("Sam");
+        long removedBuddy = addBuddy("Alex");
+        assertTrue(chain.backup(false));
+
+        waitForClockTick();
+        JournalEntry edited = databaseHelper.getJournalEntry(ids.get(0));
+        edited.setContent("Changed in the first delta");
+        databaseHelper.updateJournalEntry(edited);
+        databaseHelper.deleteJournalEntry(ids.get(1));
+        renameBuddy(keptBuddy, "Sam R.");
+        assertFalse(chain.backup(false));
+
+        waitForClockTick();
+        long added = databaseHelper.addJournalEntry(new JournalEntry("Second delta", "Added later", "Hopeful", 2, null));
+        databaseHelper.deleteJournalEntry(ids.get(2));
+        deleteBuddy(removedBuddy);
+        databaseHelper.setSetting("drink_cost", "7");
+        assertFalse(chain.backup(false));
+
+        // Lose everything, then bring it back from the three files
+        databaseHelper.replaceJournal(Collections.<JournalEntry>emptyIterator());
+        JSONObject sections = chain.restore(null);
+
+        assertEquals(50 - 2 + 1, databaseHelper.getJournalEntryCount());
+        assertEquals("Changed in the first delta", databaseHelper.getJournalEntry(ids.get(0)).getContent());
+        assertNull(databaseHelper.getJournalEntry(ids.get(1)));
+        assertNull(databaseHelper.getJournalEntry(ids.get(2)));
+        assertEquals("Second delta", databaseHelper.getJournalEntry(added).getTitle());
+        assertEquals(1, databaseHelper.searchJournal("first delta", 10).size());
+
+        JSONArray buddies = sections.getJSONArray("accountability_buddies");
+        assertEquals(1, buddies.length());
+        assertEquals("Sam R.", buddies.getJSONObject(0).getString("name"));
+        assertEquals("7", sections.getJSONObject("settings").getString("drink_cost"));
+
+        // A restore starts a new chain
+        assertTrue(chain.backup(false));
+    }
+
+    @Test
+    public void startsNewChainWhenTooLongOrBroken() throws Exception {
+        addEntries(5);
+        assertTrue(chain.backup(false));
+        for (int i = 0; i < BackupChain.MAX_DELTAS; i++) {
+            assertFalse(chain.backup(false));
+        }
+        assertTrue(chain.backup(false));
+        assertEquals(Arrays.asList(BackupChain.generationName(1), BackupChain.FULL_BACKUP), sortedFiles());
+
+        assertFalse(chain.backup(false));
+        assertFalse(chain.backup(false));
+        assertTrue(new File(folder, BackupChain.deltaName(1)).delete());
+        assertTrue(chain.backup(false));
+        assertEquals(Arrays.asList(BackupChain.generationName(1), BackupChain.generationName(2),
+                BackupChain.FULL_BACKUP), sortedFiles());
+    }
+
+    @Test
+    public void keepsTheConfiguredNumberOfGenerations() throws Exception {
+        long first = databaseHelper.addJournalEntry(new JournalEntry("First", "Only in the oldest", "Calm", 1, null));
+        chain.setRetainedGenerations(2);
+        for (int i = 0; i < 4; i++) {
+            assertTrue(chain.backup(true));
+            databaseHelper.addJournalEntry(new JournalEntry("Entry " + i, "Between full backups", "Calm", 1, null));
+        }
+        assertEquals(Arrays.asList(BackupChain.generationName(1), BackupChain.FULL_BACKUP), sortedFiles());
+
+        // Generation 1 is the full archive before the current one: first plus two entries
+        databaseHelper.replaceJournal(Collections.<JournalEntry>emptyIterator());
+        try (InputStream in = new FileInputStream(new File(folder, BackupChain.generationName(1)))) {
+            new BackupReader(context).read(in, -1);
+        }
+        assertEquals(3, databaseHelper.getJournalEntryCount());
+        assertEquals("First", databaseHelper.getJournalEntry(first).getTitle());
+    }
+
+    @Test
+    public void failedFullWriteKeepsTheOnlyBackup() throws Exception {
+        addEntries(50);
+        chain.setRetainedGenerations(1);
+        assertTrue(chain.backup(false));
+        File full = new File(folder, BackupChain.FULL_BACKUP);
+        byte[] written = Files.readAllBytes(full.toPath());
+
+        addEntries(10);
+        store.failWritesAfter = 512;
+        try {
+            chain.backup(true);
+            fail("The write should have failed");
+        } catch (IOException expected) {
+            // The disk filled up part way through
+        }
+        assertEquals(Collections.singletonList(BackupChain.FULL_BACKUP), sortedFiles());
+        assertArrayEquals(written, Files.readAllBytes(full.toPath()));
+
+        store.failWritesAfter = -1;
+        databaseHelper.replaceJournal(Collections.<JournalEntry>emptyIterator());
+        chain.restore(null);
+        assertEquals(50, databaseHelper.getJournalEntryCount());
+    }
+
+    @Test
+    public void restoreFallsBackToTheNewestReadableGeneration() throws Exception {
+        addEntries(3);
+        assertTrue(chain.backup(true));
+        addEntries(1);
+        assertTrue(chain.backup(true));
+        addEntries(1);
+        assertTrue(chain.backup(true));
+
+        // Damage the current archive, so generation 1 with four entries is the newest usable one
+        File full = new File(folder, BackupChain.FULL_BACKUP);
+        byte[] written = Files.readAllBytes(full.toPath());
+        try (OutputStream out = new FileOutputStream(full)) {
+            out.write(written, 0, written.length / 2);
+        }
+
+        databaseHelper.replaceJournal(Collections.<JournalEntry>emptyIterator());
+        chain.restore(null);
+        assertEquals(4, databaseHelper.getJournalEntryCount());
+    }
+
+    @Test
+    public void deltaWithATruncatedLastSectionIsNotApplied() throws Exception {
+        List<Long> ids = addEntries(10);
+        databaseHelper.setSetting("drink_cost", "6");
+        assertTrue(chain.backup(false));
+
+        waitForClockTick();
+        databaseHelper.deleteJournalEntry(ids.get(0));
+        databaseHelper.addJournalEntry(new JournalEntry("In the delta", "Lost with it", "Calm", 1, null));
+        databaseHelper.setSetting("drink_cost", "9");
+        assertFalse(chain.backup(false));
+
+        // Everything ahead of the delta's last section still reads
+        truncateLastEntry(new File(folder, BackupChain.deltaName(1)));
+
+        databaseHelper.replaceJournal(Collections.<JournalEntry>emptyIterator());
+        JSONObject sections = chain.restore(null);
+
+        // Neither the delta's journal changes nor its settings were applied
+        assertEquals(10, databaseHelper.getJournalEntryCount());
+        assertNotNull(databaseHelper.getJournalEntry(ids.get(0)));
+        assertEquals(0, databaseHelper.searchJournal("lost", 10).size());
+        assertEquals("6", sections.getJSONObject("settings").getString("drink_cost"));
+    }
+
+    // Cut the last few bytes of the final entry's data, ahead of its data descriptor
+    private static void truncateLastEntry(File file) throws IOException {
+        byte[] written = Files.readAllBytes(file.toPath());
+        // The end of central directory record is the last 22 bytes without a comment;
+        // the central directory's offset is at byte 16 of it
+        int end = written.length - 22;
+        int centralDirectory = (written[end + 16] & 0xff) | (written[end + 17] & 0xff) << 8
+                | (written[end + 18] & 0xff) << 16 | (written[end + 19] & 0xff) << 24;
+        // The signature, CRC and both sizes
+        int dataDescriptor = 16;
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(written, 0, centralDirectory - dataDescriptor - 2);
+        }
+    }
+
+    private List<String> sortedFiles() {
+        List<String> names = new ArrayList<>(Arrays.asList(folder.list()));
+        Collections.sort(names);
+        return names;
+    }
+
+    private List<Long> addEntries(int count) {
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ids.add(databaseHelper.addJournalEntry(new JournalEntry("Entry " + i,
+                    "Wrote about the day, number " + i + ", and how the evening went", "Calm", i % 6, null)));
+        }
+        return ids;
+    }
+
+    private long addBuddy(final String name) {
+        return databaseHelper.runWrite(() -> {
+            ContentValues values = new ContentValues();
+            values.put("name", name);
+            values.put("phone", "555-0100");
+            return databaseHelper.getWritableDatabase().insert("accountability_buddy", null, values);
+        });
+    }
+
+    private void renameBuddy(final long id, final String name) {
+        databaseHelper.runWrite(() -> {
+            ContentValues values = new ContentValues();
+            values.put("name", name);
+            SQLiteDatabase db = databaseHelper.getWritableDatabase();
+            return db.update("accountability_buddy", values, "_id = ?", new String[]{String.valueOf(id)});
+        });
+    }
+
+    private void deleteBuddy(final long id) {
+        databaseHelper.runWrite(() -> databaseHelper.getWritableDatabase()
+                .delete("accountability_buddy", "_id = ?", new String[]{String.valueOf(id)}));
+    }
+
+    // Changes are found by millisecond timestamps; keep them apart from the previous backup's
+    private static void waitForClockTick() throws InterruptedException {
+        Thread.sleep(5);
+    }
+
+    private static class DirectoryStore implements BackupChain.BackupStore {
+
+        private final File folder;
+        // Bytes each new file accepts before writing fails, or -1 to never fail
+        long failWritesAfter = -1;
+
+        DirectoryStore(File folder) {
+            this.folder = folder;
+        }
+
+        @Override
+        public List<String> list() {
+            return Arrays.asList(folder.list());
+        }
+
+        @Override
+        public boolean exists(String name) {
+            return new File(folder, name).exists();
+        }
+
+        @Override
+        public long length(String name) {
+            return new File(folder, name).length();
+        }
+
+        @Override
+        public OutputStream create(String name, String mimeType) throws IOException {
+            final long limit = failWritesAfter;
+            OutputStream out = new FileOutputStream(new File(folder, name));
+            if (limit < 0) {
+                return out;
+            }
+            return new FilterOutputStream(out) {
+                private long written;
+
+                @Override
+                public void write(int b) throws IOException {
+                    if (++written > limit) {
+                        throw new IOException("No space left on device");
+                    }
+                    super.write(b);
+                }
+            };
+        }
+
+        @Override
+        public InputStream open(String name) throws IOException {
+            return new FileInputStream(new File(folder, name));
+        }
+
+        @Override
+        public boolean delete(String name) {
+            File file = new File(folder, name);
+            return !file.exists() || file.delete();
+        }
+
+        @Override
+        public boolean rename(String from, String to) {
+            delete(to);
+            return new File(folder, from).renameTo(new File(folder, to));
+        }
+    }
+}
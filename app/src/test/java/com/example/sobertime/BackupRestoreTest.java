@@ -0,0 +1,170 @@
+package com.example.sobertime;
+
+import android.content.Context;
+import android.util.JsonWriter;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round-trips backups through BackupWriter and BackupReader, checks that a broken
+ * backup leaves the journal alone, and streams a larger journal with progress reports.
+ * The 100k-entry comparison with the old restore path is in Benchmarks.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class BackupRestoreTest {
+
+    private static final int JOURNAL_SIZE = 5000;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Context context;
+    private DatabaseHelper databaseHelper;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+        context = RuntimeEnvironment.getApplication();
+        databaseHelper = DatabaseHelper.getInstance(context);
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+    }
+
+    @Test
+    public void roundTrip_restoresJournalAndIndexes() throws Exception {
+        long id = databaseHelper.addJournalEntry(new JournalEntry("Evening walk", "Went to the park", "Calm", 2, null));
+        databaseHelper.addJournalEntry(new JournalEntry("Rough day", "Craving after work", null, 6, "Stress"));
+        ByteArrayOutputStream backup = new ByteArrayOutputStream();
+        new BackupWriter(context).write(backup);
+
+        databaseHelper.deleteJournalEntry(id);
+        databaseHelper.addJournalEntry(new JournalEntry("Not in backup", "Gone after restore", "Calm", 1, null));
+
+        JSONObject sections = new BackupReader(context).read(new ByteArrayInputStream(backup.toByteArray()), -1);
+
+        assertFalse(sections.has("journal_entries"));
+        assertTrue(sections.has("settings"));
+        assertEquals(2, databaseHelper.getJournalEntryCount());
+        assertEquals("Evening walk", databaseHelper.getJournalEntry(id).getTitle());
+
+        // The search index and rollups were rebuilt, and their triggers put back
+        assertEquals(1, databaseHelper.searchJournal("park", 10).size());
+        assertTrue(databaseHelper.searchJournal("restore", 10).isEmpty());
+        databaseHelper.addJournalEntry(new JournalEntry("After", "Added after the restore", "Calm", 1, null));
+        assertEquals(1, databaseHelper.searchJournal("restore", 10).size());
+        assertEquals(3, totalRollupEntries());
+    }
+
+    @Test
+    public void brokenBackup_leavesJournalUntouched() throws Exception {
+        databaseHelper.addJournalEntry(new JournalEntry("Keep me", "Still here", "Calm", 1, null));
+
+        String truncated = "{\"journal_entries\":[{\"id\":1,\"timestamp\":1,\"title\":\"a\",\"content\":\"b\"},"
+                + "{\"id\":2,\"timestamp\":2,\"title\":\"c\"";
+        try {
+            new BackupReader(context).read(new ByteArrayInputStream(truncated.getBytes(StandardCharsets.UTF_8)), -1);
+            fail("Expected a truncated backup to be rejected");
+        } catch (IOException expected) {
+            // The journal transaction was rolled back
+        }
+
+        try {
+            new BackupReader(context).read(new ByteArrayInputStream("{\"other\":1}".getBytes(StandardCharsets.UTF_8)), -1);
+            fail("Expected a file without backup sections to be rejected");
+        } catch (IOException expected) {
+            // Not a backup
+        }
+
+        assertEquals(1, databaseHelper.getJournalEntryCount());
+        assertEquals(1, databaseHelper.searchJournal("still", 10).size());
+    }
+
+    @Test
+    public void streamingRestoreReportsProgress() throws Exception {
+        File file = temporaryFolder.newFile("backup.json");
+        writeJournalBackup(file, JOURNAL_SIZE);
+
+        final List<Integer> reported = new ArrayList<>();
+        final long[] lastBytesRead = {0};
+        BackupReader reader = new BackupReader(context);
+        reader.setProgressListener(new BackupReader.ProgressListener() {
+            @Override
+            public void onProgress(int journalEntries, long bytesRead, long totalBytes) {
+                reported.add(journalEntries);
+                assertTrue(bytesRead >= lastBytesRead[0] && bytesRead <= totalBytes);
+                lastBytesRead[0] = bytesRead;
+            }
+        });
+        try (InputStream in = new FileInputStream(file)) {
+            reader.read(in, file.length());
+        }
+
+        assertEquals(Arrays.asList(1000, 2000, 3000, 4000, 5000), reported);
+        assertEquals(JOURNAL_SIZE, databaseHelper.getJournalEntryCount());
+        assertEquals(JOURNAL_SIZE, totalRollupEntries());
+        assertEquals(1, databaseHelper.searchJournal("4321", 10).size());
+    }
+
+    // A plain JSON backup holding only settings and a journal of the given size
+    static void writeJournalBackup(File file, int entries) throws IOException {
+        String[] moods = {"Calm", "Anxious", "Hopeful", "Tired"};
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8))) {
+            writer.beginObject();
+            writer.name("settings").beginObject().name("drink_cost").value("6").endObject();
+            writer.name("journal_entries").beginArray();
+            for (int i = 1; i <= entries; i++) {
+                writer.beginObject();
+                writer.name("id").value(i);
+                writer.name("timestamp").value(1700000000000L + i * 3600000L);
+                writer.name("title").value("Entry " + i);
+                writer.name("content").value("Wrote about the day, number " + i + ", and how the evening went");
+                writer.name("mood").value(moods[i % moods.length]);
+                writer.name("craving_level").value(i % 6);
+                writer.endObject();
+            }
+            writer.endArray();
+            writer.endObject();
+        }
+    }
+
+    private int totalRollupEntries() {
+        int total = 0;
+        for (JournalDailyStats day : databaseHelper.getJournalDailyStats(Long.MIN_VALUE, Long.MAX_VALUE)) {
+            total += day.getEntryCount();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,77 @@
+package com.example.sobertime;
+
+import android.content.Context;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the streamed backup has the layout the restore code reads
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class BackupWriterTest {
+
+    private Context context;
+    private DatabaseHelper databaseHelper;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+        context = RuntimeEnvironment.getApplication();
+        databaseHelper = DatabaseHelper.getInstance(context);
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+    }
+
+    @Test
+    public void write_producesLegacyLayout() throws Exception {
+        databaseHelper.addJournalEntry(new JournalEntry("Day one", "Line \"quoted\"\nand ünïcode", "Calm", 3, null));
+        databaseHelper.addJournalEntry(new JournalEntry("Day two", "Fine", null, 0, "Stress"));
+        databaseHelper.setSetting("drink_cost", "7.5");
+        PreferenceStore.getInstance(context).getPreferences("EmergencyContactPrefs")
+                .edit().putString("sponsor_name", "Sam").commit();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new BackupWriter(context).write(out);
+        JSONObject backup = new JSONObject(new String(out.toByteArray(), StandardCharsets.UTF_8));
+
+        JSONArray entries = backup.getJSONArray("journal_entries");
+        assertEquals(2, entries.length());
+        JSONObject first = entries.getJSONObject(0);
+        assertEquals("Line \"quoted\"\nand ünïcode", first.getString("content"));
+        assertEquals(3, first.getInt("craving_level"));
+        // Null columns are omitted, as before
+        assertFalse(first.has("trigger"));
+        assertFalse(entries.getJSONObject(1).has("mood"));
+
+        assertEquals("7.5", backup.getJSONObject("settings").getString("drink_cost"));
+        assertEquals("Sam", backup.getJSONObject("emergency_contacts").getString("sponsor_name"));
+        assertTrue(backup.has("sobriety_start_date"));
+        assertTrue(backup.getJSONObject("notification_settings").getBoolean("notifications_enabled"));
+        assertEquals("medium", backup.getJSONObject("intrusive_notification_settings").getString("intrusive_frequency"));
+        assertTrue(backup.has("theme_settings"));
+        assertEquals(0, backup.getJSONArray("accountability_buddies").length());
+        assertTrue(backup.has("support_resources"));
+        assertTrue(backup.has("achievements"));
+    }
+}
@@ -0,0 +1,433 @@
+package com.example.sobertime;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+/**
+ * Times the replaced code paths against their replacements on large inputs and prints
+ * the results. These depend on the host and take a while, so they are skipped unless
+ * the tests run with -Pbenchmarks.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class Benchmarks {
+
+    private static final int SETTINGS_KEYS = 500;
+    private static final int SETTINGS_ROUNDS = 5;
+    private static final int LARGE_JOURNAL = 100000;
+    private static final int DAY_MATH_WARMUP = 200000;
+    private static final int DAY_MATH_CALLS = 1000000;
+    private static final long DAY_MILLIS = TimeUnit.DAYS.toMillis(1);
+
+    // The old restore held the whole file as a String on top of the parsed entries, so it
+    // retained more than the file size; streaming keeps one entry at a time and may hold
+    // on to at most this share of it
+    private static final double MAX_RETAINED_SHARE_OF_FILE = 0.25;
+
+    // The old restore also committed every insert on its own
+    private static final double MIN_RESTORE_SPEEDUP = 2.0;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Context context;
+    private DatabaseHelper databaseHelper;
+
+    @Before
+    public void setUp() {
+        assumeTrue("Run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+        context = RuntimeEnvironment.getApplication();
+        databaseHelper = DatabaseHelper.getInstance(context);
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+    }
+
+    @Test
+    public void settingsWritePerKey() {
+        long legacyNanos = 0;
+        long upsertNanos = 0;
+        long batchNanos = 0;
+
+        for (int round = 0; round < SETTINGS_ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < SETTINGS_KEYS; i++) {
+                legacySetSetting("legacy_" + i, String.valueOf(round));
+            }
+            legacyNanos += System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < SETTINGS_KEYS; i++) {
+                databaseHelper.setSetting("upsert_" + i, String.valueOf(round));
+            }
+            upsertNanos += System.nanoTime() - start;
+
+            Map<String, String> batch = new HashMap<>();
+            for (int i = 0; i < SETTINGS_KEYS; i++) {
+                batch.put("batch_" + i, String.valueOf(round));
+            }
+            start = System.nanoTime();
+            databaseHelper.setSettings(batch);
+            batchNanos += System.nanoTime() - start;
+        }
+
+        int writes = SETTINGS_KEYS * SETTINGS_ROUNDS;
+        System.out.printf("settings write per key: legacy %.1f us, upsert %.1f us, batched %.1f us%n",
+                legacyNanos / 1000.0 / writes,
+                upsertNanos / 1000.0 / writes,
+                batchNanos / 1000.0 / writes);
+
+        String last = String.valueOf(SETTINGS_ROUNDS - 1);
+        assertEquals(last, databaseHelper.getSetting("upsert_0", null));
+        assertEquals(last, databaseHelper.getSetting("batch_" + (SETTINGS_KEYS - 1), null));
+    }
+
+    @Test
+    public void mapHundredThousandJournalRows() {
+        long insertNanos = insertJournalRows();
+
+        // Warm up both paths once so neither pays for class loading
+        mapJournalLegacy();
+        databaseHelper.getAllJournalEntries();
+
+        long allocatedBefore = allocatedBytes();
+        long start = System.nanoTime();
+        List<JournalEntry> legacy = mapJournalLegacy();
+        long legacyNanos = System.nanoTime() - start;
+        long legacyBytes = allocatedBytes() - allocatedBefore;
+
+        allocatedBefore = allocatedBytes();
+        start = System.nanoTime();
+        List<JournalEntry> mapped = databaseHelper.getAllJournalEntries();
+        long mapperNanos = System.nanoTime() - start;
+        long mapperBytes = allocatedBytes() - allocatedBefore;
+
+        System.out.printf("journal insert: %.2f us/row via compiled statement%n",
+                insertNanos / 1000.0 / LARGE_JOURNAL);
+        System.out.printf("journal mapping of %d rows: legacy %d ms / %d KB, mapper %d ms / %d KB%n",
+                LARGE_JOURNAL, legacyNanos / 1000000, legacyBytes / 1024,
+                mapperNanos / 1000000, mapperBytes / 1024);
+
+        assertEquals(LARGE_JOURNAL, legacy.size());
+        assertEquals(LARGE_JOURNAL, mapped.size());
+        assertEquals(legacy.get(LARGE_JOURNAL / 2).getTitle(), mapped.get(LARGE_JOURNAL / 2).getTitle());
+    }
+
+    @Test
+    public void compareBackupFormats() throws Exception {
+        insertJournalRows();
+        BackupWriter writer = new BackupWriter(context);
+
+        // Warm up both writers so neither pays for class loading
+        writer.write(new ByteArrayOutputStream());
+        writer.writeArchive(new ByteArrayOutputStream());
+
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        long start = System.nanoTime();
+        writer.write(plain);
+        long plainWriteNanos = System.nanoTime() - start;
+
+        ByteArrayOutputStream archive = new ByteArrayOutputStream();
+        start = System.nanoTime();
+        writer.writeArchive(archive);
+        long archiveWriteNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        new BackupReader(context).read(new ByteArrayInputStream(plain.toByteArray()), plain.size());
+        long plainReadNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        new BackupReader(context).read(new ByteArrayInputStream(archive.toByteArray()), archive.size());
+        long archiveReadNanos = System.nanoTime() - start;
+
+        System.out.printf("%d entries: plain %.1f MB (write %.0f ms, restore %.0f ms), "
+                        + "archive %.1f MB (write %.0f ms, restore %.0f ms), %.1fx smaller%n",
+                LARGE_JOURNAL, plain.size() / 1e6, plainWriteNanos / 1e6, plainReadNanos / 1e6,
+                archive.size() / 1e6, archiveWriteNanos / 1e6, archiveReadNanos / 1e6,
+                (double) plain.size() / archive.size());
+
+        assertEquals(LARGE_JOURNAL, databaseHelper.getJournalEntryCount());
+        assertTrue(archive.size() < plain.size());
+    }
+
+    @Test
+    public void restoreHundredThousandEntries() throws Exception {
+        File file = temporaryFolder.newFile("backup.json");
+        BackupRestoreTest.writeJournalBackup(file, LARGE_JOURNAL);
+
+        long start = System.nanoTime();
+        restoreLegacy(file);
+        long legacyNanos = System.nanoTime() - start;
+        assertEquals(LARGE_JOURNAL, databaseHelper.getJournalEntryCount());
+
+        // Sampled after a collection, so only what the restore holds on to counts
+        final long baselineHeap = retainedHeap();
+        final long[] peakHeap = {baselineHeap};
+        BackupReader reader = new BackupReader(context);
+        reader.setProgressListener(new BackupReader.ProgressListener() {
+            @Override
+            public void onProgress(int journalEntries, long bytesRead, long totalBytes) {
+                if (journalEntries % (LARGE_JOURNAL / 10) == 0) {
+                    peakHeap[0] = Math.max(peakHeap[0], retainedHeap());
+                }
+            }
+        });
+
+        start = System.nanoTime();
+        try (InputStream in = new FileInputStream(file)) {
+            reader.read(in, file.length());
+        }
+        long streamingNanos = System.nanoTime() - start;
+
+        long retained = peakHeap[0] - baselineHeap;
+        double speedup = (double) legacyNanos / streamingNanos;
+        System.out.printf("restore %d entries (%.1f MB): legacy %.0f ms, streaming %.0f ms (%.1fx), "
+                        + "heap retained while streaming %.1f MB%n",
+                LARGE_JOURNAL, file.length() / 1e6, legacyNanos / 1e6, streamingNanos / 1e6,
+                speedup, retained / 1e6);
+
+        assertEquals(LARGE_JOURNAL, databaseHelper.getJournalEntryCount());
+        assertTrue("Streaming retained " + retained + " bytes for a " + file.length() + " byte backup",
+                retained < file.length() * MAX_RETAINED_SHARE_OF_FILE);
+        assertTrue("Streaming was only " + speedup + "x faster", speedup >= MIN_RESTORE_SPEEDUP);
+    }
+
+    @Test
+    public void epochDaysAgainstCalendar() {
+        long now = System.currentTimeMillis();
+        long[] timestamps = new long[1024];
+        for (int i = 0; i < timestamps.length; i++) {
+            timestamps[i] = now - (i % 3) * DAY_MILLIS / 2 - i * 60000L;
+        }
+
+        // Warm up both paths so neither pays for class loading or compilation
+        runDayMath(timestamps, DAY_MATH_WARMUP, now);
+        long[] result = runDayMath(timestamps, DAY_MATH_CALLS, now);
+
+        System.out.printf("%d calls: same day calendar %.0f ns, epoch-day %.1f ns; "
+                        + "day difference calendar %.0f ns, epoch-day %.1f ns%n",
+                DAY_MATH_CALLS, (double) result[0] / DAY_MATH_CALLS, (double) result[1] / DAY_MATH_CALLS,
+                (double) result[2] / DAY_MATH_CALLS, (double) result[3] / DAY_MATH_CALLS);
+        assertEquals(result[4], result[5]);
+    }
+
+    // The setSetting() implementation before the upsert
+    private void legacySetSetting(String key, String value) {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+
+        ContentValues values = new ContentValues();
+        values.put("value", value);
+
+        Cursor cursor = db.query("settings", new String[]{"key"},
+                "key=?", new String[]{key}, null, null, null);
+
+        if (cursor.getCount() > 0) {
+            db.update("settings", values, "key = ?", new String[]{key});
+        } else {
+            values.put("key", key);
+            db.insert("settings", null, values);
+        }
+
+        cursor.close();
+    }
+
+    // Insert through the same compiled statement addJournalEntry() uses, in one transaction
+    private long insertJournalRows() {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement(DatabaseHelper.INSERT_JOURNAL);
+        long start = System.nanoTime();
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < LARGE_JOURNAL; i++) {
+                statement.bindLong(1, 1700000000000L + i * 60000L);
+                statement.bindString(2, "Entry " + i);
+                statement.bindString(3, "Some journal content for entry " + i);
+                statement.bindString(4, "Calm");
+                statement.bindLong(5, i % 10);
+                statement.bindNull(6);
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    // The getAllJournalEntries() loop before JournalRowMapper
+    private List<JournalEntry> mapJournalLegacy() {
+        List<JournalEntry> entries = new ArrayList<>();
+        Cursor cursor = databaseHelper.getReadableDatabase()
+                .rawQuery(DatabaseHelper.QUERY_JOURNAL_ALL, null);
+        if (cursor.moveToFirst()) {
+            do {
+                JournalEntry entry = new JournalEntry();
+                entry.setId(cursor.getLong(cursor.getColumnIndex("id")));
+                entry.setTimestamp(cursor.getLong(cursor.getColumnIndex("timestamp")));
+                entry.setTitle(cursor.getString(cursor.getColumnIndex("title")));
+                entry.setContent(cursor.getString(cursor.getColumnIndex("content")));
+                entry.setMood(cursor.getString(cursor.getColumnIndex("mood")));
+                entry.setCravingLevel(cursor.getInt(cursor.getColumnIndex("craving_level")));
+                entry.setTrigger(cursor.getString(cursor.getColumnIndex("trigger")));
+                entries.add(entry);
+            } while (cursor.moveToNext());
+        }
+        cursor.close();
+        return entries;
+    }
+
+    // What restore did before: read the whole file, parse it, then insert row by row
+    private void restoreLegacy(File file) throws Exception {
+        String content = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        JSONArray entries = new JSONObject(content).getJSONArray("journal_entries");
+        final List<ContentValues> rows = new ArrayList<>();
+        for (int i = 0; i < entries.length(); i++) {
+            JSONObject entry = entries.getJSONObject(i);
+            ContentValues values = new ContentValues();
+            values.put("id", entry.getLong("id"));
+            values.put("timestamp", entry.getLong("timestamp"));
+            values.put("title", entry.getString("title"));
+            values.put("content", entry.getString("content"));
+            values.put("mood", entry.getString("mood"));
+            values.put("craving_level", entry.getInt("craving_level"));
+            rows.add(values);
+        }
+        databaseHelper.runWrite(() -> {
+            SQLiteDatabase db = databaseHelper.getWritableDatabase();
+            db.delete("journal", null, null);
+            for (ContentValues values : rows) {
+                db.insert("journal", null, values);
+            }
+            return null;
+        });
+    }
+
+    // Nanos for each of the four paths, then the same-day counts from both same-day paths
+    private static long[] runDayMath(long[] timestamps, int calls, long now) {
+        int mask = timestamps.length - 1;
+
+        long start = System.nanoTime();
+        long calendarSameDay = 0;
+        for (int i = 0; i < calls; i++) {
+            if (calendarSameDay(timestamps[i & mask], now)) {
+                calendarSameDay++;
+            }
+        }
+        long calendarSameDayNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long epochSameDay = 0;
+        long today = EpochDays.localDay(now);
+        for (int i = 0; i < calls; i++) {
+            if (EpochDays.localDay(timestamps[i & mask]) == today) {
+                epochSameDay++;
+            }
+        }
+        long epochSameDayNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long calendarDays = 0;
+        for (int i = 0; i < calls; i++) {
+            calendarDays += calendarDaysBetween(timestamps[i & mask] - 30 * DAY_MILLIS, now);
+        }
+        long calendarDaysNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        long epochDays = 0;
+        for (int i = 0; i < calls; i++) {
+            epochDays += EpochDays.daysBetween(timestamps[i & mask] - 30 * DAY_MILLIS, now);
+        }
+        long epochDaysNanos = System.nanoTime() - start;
+
+        if (calendarDays <= 0 || epochDays <= 0) {
+            throw new AssertionError("Day differences should be positive");
+        }
+        return new long[]{calendarSameDayNanos, epochSameDayNanos, calendarDaysNanos, epochDaysNanos,
+                calendarSameDay, epochSameDay};
+    }
+
+    // What MainActivity.hasCheckedInToday() did
+    private static boolean calendarSameDay(long millis, long now) {
+        Calendar lastConfirmedCal = Calendar.getInstance();
+        lastConfirmedCal.setTimeInMillis(millis);
+        Calendar todayCal = Calendar.getInstance();
+        todayCal.setTimeInMillis(now);
+        return lastConfirmedCal.get(Calendar.YEAR) == todayCal.get(Calendar.YEAR)
+                && lastConfirmedCal.get(Calendar.DAY_OF_YEAR) == todayCal.get(Calendar.DAY_OF_YEAR);
+    }
+
+    // What SobrietyTracker.getConfirmedDaysSober() did
+    private static int calendarDaysBetween(long startDate, long now) {
+        Calendar startCalendar = Calendar.getInstance();
+        startCalendar.setTimeInMillis(startDate);
+        startCalendar.set(Calendar.HOUR_OF_DAY, 0);
+        startCalendar.set(Calendar.MINUTE, 0);
+        startCalendar.set(Calendar.SECOND, 0);
+        startCalendar.set(Calendar.MILLISECOND, 0);
+
+        Calendar currentCalendar = Calendar.getInstance();
+        currentCalendar.setTimeInMillis(now);
+        currentCalendar.set(Calendar.HOUR_OF_DAY, 0);
+        currentCalendar.set(Calendar.MINUTE, 0);
+        currentCalendar.set(Calendar.SECOND, 0);
+        currentCalendar.set(Calendar.MILLISECOND, 0);
+
+        long diffInMillis = currentCalendar.getTimeInMillis() - startCalendar.getTimeInMillis();
+        return (int) TimeUnit.MILLISECONDS.toDays(diffInMillis);
+    }
+
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean)
+                    .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+
+    private static long retainedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
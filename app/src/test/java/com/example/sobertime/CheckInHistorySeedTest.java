@@ -0,0 +1,69 @@
+package com.example.sobertime;
+
+import android.content.Context;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the streak kept in the old preference keys is moved into the check-in
+ * history before the first check-in after an upgrade overwrites those keys.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class CheckInHistorySeedTest {
+
+    private SobrietyTracker tracker;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+        SobrietyTracker.resetInstance();
+
+        // An install from before the history table: a five-day streak ending yesterday
+        Context context = RuntimeEnvironment.getApplication();
+        PreferenceStore.getInstance(context).getPreferences(SobrietyTracker.PREFS_NAME).edit()
+                .putInt(SobrietyTracker.CURRENT_STREAK_KEY, 5)
+                .putInt(SobrietyTracker.BEST_STREAK_KEY, 5)
+                .putLong(SobrietyTracker.LAST_CONFIRMED_DATE_KEY, EpochDays.startOfDay(EpochDays.today() - 1))
+                .apply();
+        tracker = SobrietyTracker.getInstance(context);
+    }
+
+    @After
+    public void tearDown() {
+        SobrietyTracker.resetInstance();
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+    }
+
+    @Test
+    public void firstConfirmationExtendsTheOldStreak() {
+        tracker.confirmSobrietyForToday();
+        tracker.recordCheckInOutcome(true);
+
+        assertEquals(6, tracker.getCurrentStreak());
+        assertEquals(6, tracker.getBestStreak());
+    }
+
+    @Test
+    public void firstRelapseEndsTheOldStreak() {
+        tracker.resetSobrietyCounter();
+        tracker.recordCheckInOutcome(false);
+
+        assertEquals(0, tracker.getCurrentStreak());
+        assertEquals(5, tracker.getBestStreak());
+
+        // A confirmation later the same day doesn't bring it back
+        tracker.recordCheckInOutcome(true);
+        assertEquals(0, tracker.getCurrentStreak());
+    }
+}
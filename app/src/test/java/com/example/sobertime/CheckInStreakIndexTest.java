@@ -0,0 +1,112 @@
+package com.example.sobertime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the word-at-a-time streak queries with a day-by-day walk over random histories
+ */
+public class CheckInStreakIndexTest {
+
+    @Test
+    public void currentStreak_allowsTodayToBePending() {
+        CheckInStreakIndex index = CheckInStreakIndex.fromDays(new long[]{10, 11, 12, 14});
+
+        assertEquals(1, index.currentStreak(14));
+        assertEquals(1, index.currentStreak(15));
+        assertEquals(0, index.currentStreak(16));
+        assertEquals(3, index.currentStreak(13));
+        assertEquals(3, index.bestStreak());
+    }
+
+    @Test
+    public void runsAcrossWordBoundaries() {
+        long[] days = new long[200];
+        for (int i = 0; i < days.length; i++) {
+            days[i] = 1000 + i;
+        }
+        CheckInStreakIndex index = CheckInStreakIndex.fromDays(days);
+
+        assertEquals(200, index.bestStreak());
+        assertEquals(200, index.currentStreak(1199));
+        assertEquals(50, index.longestStreak(1100, 1149));
+        assertEquals(200, index.countDays(0, 5000));
+    }
+
+    @Test
+    public void matchesDayByDayWalk() {
+        Random random = new Random(42);
+        for (int iteration = 0; iteration < 2000; iteration++) {
+            long base = random.nextInt(40000) - 20000;
+            int span = 1 + random.nextInt(400);
+            double density = random.nextDouble();
+
+            // Insert in random order so the index has to grow in both directions
+            List<Long> days = new ArrayList<>();
+            for (int i = 0; i < span; i++) {
+                if (random.nextDouble() < density) {
+                    days.add(base + i);
+                }
+            }
+            Collections.shuffle(days, random);
+
+            Set<Long> expected = new HashSet<>();
+            CheckInStreakIndex index = new CheckInStreakIndex();
+            for (long day : days) {
+                expected.add(day);
+                index.set(day);
+            }
+            for (int i = 0; i < 3; i++) {
+                long day = base + random.nextInt(span);
+                expected.remove(day);
+                index.clear(day);
+            }
+
+            long from = base - 5 + random.nextInt(span + 10);
+            long to = from + random.nextInt(span + 10) - 3;
+            assertEquals(longestRun(expected, from, to), index.longestStreak(from, to));
+            assertEquals(count(expected, from, to), index.countDays(from, to));
+            assertEquals(longestRun(expected, base - 70, base + span + 70), index.bestStreak());
+
+            long today = base + random.nextInt(span + 3);
+            assertEquals(currentRun(expected, today), index.currentStreak(today));
+        }
+    }
+
+    private static int longestRun(Set<Long> days, long from, long to) {
+        int best = 0;
+        int run = 0;
+        for (long day = from; day <= to; day++) {
+            run = days.contains(day) ? run + 1 : 0;
+            best = Math.max(best, run);
+        }
+        return best;
+    }
+
+    private static int count(Set<Long> days, long from, long to) {
+        int count = 0;
+        for (long day = from; day <= to; day++) {
+            if (days.contains(day)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int currentRun(Set<Long> days, long today) {
+        long end = days.contains(today) ? today : today - 1;
+        int run = 0;
+        while (days.contains(end - run)) {
+            run++;
+        }
+        return run;
+    }
+}
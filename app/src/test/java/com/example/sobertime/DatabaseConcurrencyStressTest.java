@@ -0,0 +1,121 @@
+package com.example.sobertime;
+
+import android.database.Cursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Hammers the database with journal writers, a backup-style full read and paged reads
+ * at the same time. Every call must succeed (no SQLITE_BUSY / locked errors) and no
+ * write may be lost.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class DatabaseConcurrencyStressTest {
+
+    private static final int WRITERS = 4;
+    private static final int ENTRIES_PER_WRITER = 250;
+    private static final int READERS = 3;
+
+    private DatabaseHelper databaseHelper;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.resetInstance();
+        databaseHelper = DatabaseHelper.getInstance(RuntimeEnvironment.getApplication());
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.resetInstance();
+    }
+
+    @Test
+    public void concurrentWritesAndReads_doNotFailOrLoseRows() throws Exception {
+        final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch writersDone = new CountDownLatch(WRITERS);
+        List<Thread> threads = new ArrayList<>();
+
+        for (int w = 0; w < WRITERS; w++) {
+            final int writer = w;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    for (int i = 0; i < ENTRIES_PER_WRITER; i++) {
+                        JournalEntry entry = new JournalEntry("Entry " + i, "Written by " + writer,
+                                "Calm", i % 10, null);
+                        entry.setTimestamp(1700000000000L + writer * 1000000L + i);
+                        long id = databaseHelper.addJournalEntry(entry);
+                        if (i % 10 == 0) {
+                            databaseHelper.setSetting("writer_" + writer, String.valueOf(i));
+                        }
+                        if (i % 25 == 0) {
+                            entry.setId(id);
+                            entry.setTitle("Edited " + i);
+                            databaseHelper.updateJournalEntry(entry);
+                        }
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                } finally {
+                    writersDone.countDown();
+                }
+            }, "writer-" + w));
+        }
+
+        for (int r = 0; r < READERS; r++) {
+            final boolean backupReader = r == 0;
+            threads.add(new Thread(() -> {
+                try {
+                    start.await();
+                    while (writersDone.getCount() > 0) {
+                        if (backupReader) {
+                            // Full-table read, like the backup exporter
+                            Cursor cursor = databaseHelper.getReadableDatabase()
+                                    .rawQuery(DatabaseHelper.QUERY_JOURNAL_ALL, null);
+                            while (cursor.moveToNext()) {
+                                cursor.getString(2);
+                            }
+                            cursor.close();
+                        } else {
+                            databaseHelper.getJournalEntriesPage(Long.MAX_VALUE, Long.MAX_VALUE, 30);
+                            databaseHelper.getJournalEntryCount();
+                            databaseHelper.getJournalEntryCountsByWeek(0);
+                        }
+                    }
+                } catch (Throwable t) {
+                    failures.add(t);
+                }
+            }, "reader-" + r));
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join(60000);
+        }
+
+        int writes = WRITERS * ENTRIES_PER_WRITER;
+        assertTrue("Database calls failed: " + failures, failures.isEmpty());
+        assertEquals(writes, databaseHelper.getJournalEntryCount());
+        assertEquals(String.valueOf(ENTRIES_PER_WRITER - 10),
+                databaseHelper.getSetting("writer_0", null));
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.sobertime;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs EXPLAIN QUERY PLAN on every DatabaseHelper query and fails if SQLite
+ * would scan a whole table or build a temporary B-tree to sort.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class DatabaseQueryPlanTest {
+
+    private SQLiteDatabase db;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.resetInstance();
+        db = DatabaseHelper.getInstance(RuntimeEnvironment.getApplication()).getReadableDatabase();
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.resetInstance();
+    }
+
+    @Test
+    public void journalById_usesPrimaryKey() {
+        assertNoScanOrSort(DatabaseHelper.QUERY_JOURNAL_BY_ID, "1");
+    }
+
+    @Test
+    public void journalAll_walksTimestampIndex() {
+        assertNoScanOrSort(DatabaseHelper.QUERY_JOURNAL_ALL);
+    }
+
+    @Test
+    public void journalPage_searchesTimestampIndex() {
+        List<String> plan = assertNoScanOrSort(DatabaseHelper.QUERY_JOURNAL_PAGE,
+                "1700000000000", "1700000000000", "42", "30");
+        assertTrue("Expected an index range search: " + plan, containsLine(plan, "SEARCH"));
+    }
+
+    @Test
+    public void journalCount_usesCoveringIndex() {
+        assertNoScanOrSort(DatabaseHelper.QUERY_JOURNAL_COUNT);
+    }
+
+    @Test
+    public void journalSearch_usesFullTextIndex() {
+        // Virtual tables always plan as a SCAN; index 0 is the full scan and the
+        // higher numbers are the MATCH lookups
+        List<String> plan = explain(DatabaseHelper.QUERY_JOURNAL_SEARCH_MATCHINFO, "sponsor");
+        assertTrue("Expected a virtual table index: " + plan, containsLine(plan, "VIRTUAL TABLE INDEX"));
+        assertFalse("Full-text table scanned: " + plan, containsLine(plan, "VIRTUAL TABLE INDEX 0:"));
+        assertFalse("Temp B-tree in search: " + plan, containsLine(plan, "TEMP B-TREE"));
+    }
+
+    @Test
+    public void journalRecentDays_walksRollupKeyWithoutSorting() {
+        // A reverse walk of the day primary key that stops at the LIMIT
+        assertNoSort(DatabaseHelper.QUERY_JOURNAL_RECENT_DAYS, "5");
+    }
+
+    @Test
+    public void journalDailyRanges_searchRollupKeys() {
+        String day = "19700";
+        List<String> plan = assertNoScanOrSort(DatabaseHelper.QUERY_JOURNAL_DAILY_COUNTS_SINCE, day);
+        assertTrue("Expected a key range search: " + plan, containsLine(plan, "SEARCH"));
+
+        plan = assertNoScanOrSort(DatabaseHelper.QUERY_JOURNAL_DAILY_STATS_RANGE, day, day);
+        assertTrue("Expected a key range search: " + plan, containsLine(plan, "SEARCH"));
+
+        plan = assertNoScanOrSort(DatabaseHelper.QUERY_JOURNAL_DAILY_MOOD_RANGE, day, day);
+        assertTrue("Expected a key range search: " + plan, containsLine(plan, "SEARCH"));
+
+        plan = assertNoScanOrSort(DatabaseHelper.QUERY_JOURNAL_DAILY_TRIGGER_RANGE, day, day);
+        assertTrue("Expected a key range search: " + plan, containsLine(plan, "SEARCH"));
+    }
+
+    @Test
+    public void checkIns_searchOutcomeIndex() {
+        List<String> plan = assertNoScanOrSort(DatabaseHelper.QUERY_LAST_LAPSE_DAY);
+        assertTrue("Expected an index search: " + plan, containsLine(plan, "SEARCH"));
+
+        plan = assertNoScanOrSort(DatabaseHelper.QUERY_CHECK_IN_DAYS_MAINTAINED);
+        assertTrue("Expected an index search: " + plan, containsLine(plan, "SEARCH"));
+    }
+
+    @Test
+    public void settingsLoad_doesNotSort() {
+        // The settings cache reads this tiny table once per process, so a scan is expected
+        assertNoSort(DatabaseHelper.QUERY_SETTINGS_ALL);
+    }
+
+    @Test
+    public void achievementsUnlocked_doesNotSort() {
+        // One row per defined achievement, a few dozen at most, so a scan is expected
+        assertNoSort(DatabaseHelper.QUERY_ACHIEVEMENTS_UNLOCKED);
+    }
+
+    @Test
+    public void sobrietyPeriods_walkStartDayKey() {
+        // Every period is loaded into the interval index, so the whole table is read on
+        // purpose; start_day is the rowid, so it comes back in order without a sort
+        assertNoSort(DatabaseHelper.QUERY_SOBRIETY_PERIODS);
+    }
+
+    @Test
+    public void settingsHistory_walksDayKey() {
+        // Loaded whole into the savings rate index; one row per settings change
+        assertNoSort(DatabaseHelper.QUERY_SETTINGS_HISTORY);
+    }
+
+    @Test
+    public void journalStreakQueries_useKeys() {
+        // The streak index loads every journal day once, so that read is a whole-table walk
+        assertNoSort(DatabaseHelper.QUERY_JOURNAL_DAYS);
+
+        List<String> plan = assertNoScanOrSort(DatabaseHelper.QUERY_JOURNAL_DAY_EXISTS, "19700");
+        assertTrue("Expected a key lookup: " + plan, containsLine(plan, "SEARCH"));
+
+        plan = assertNoScanOrSort(DatabaseHelper.QUERY_JOURNAL_TIMESTAMP_BY_ID, "1");
+        assertTrue("Expected a key lookup: " + plan, containsLine(plan, "SEARCH"));
+    }
+
+    private List<String> assertNoSort(String query, String... args) {
+        List<String> plan = explain(query, args);
+        assertFalse("Temp B-tree in plan for " + query + ": " + plan, containsLine(plan, "TEMP B-TREE"));
+        return plan;
+    }
+
+    private List<String> assertNoScanOrSort(String query, String... args) {
+        List<String> plan = explain(query, args);
+        for (String line : plan) {
+            assertFalse("Temp B-tree in plan for " + query + ": " + plan,
+                    line.contains("TEMP B-TREE"));
+            // "SCAN journal" with no index is a full table scan; index walks say "USING"
+            assertFalse("Full table scan in plan for " + query + ": " + plan,
+                    line.startsWith("SCAN") && !line.contains("USING"));
+        }
+        return plan;
+    }
+
+    private List<String> explain(String query, String... args) {
+        List<String> plan = new ArrayList<>();
+        Cursor cursor = db.rawQuery("EXPLAIN QUERY PLAN " + query, args);
+        int detailIndex = cursor.getColumnIndexOrThrow("detail");
+        while (cursor.moveToNext()) {
+            plan.add(cursor.getString(detailIndex));
+        }
+        cursor.close();
+        return plan;
+    }
+
+    private boolean containsLine(List<String> plan, String fragment) {
+        for (String line : plan) {
+            if (line.contains(fragment)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.sobertime;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Looper;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Checks that the day count is only worked out again when the start date, the day or
+ * the clock changes.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class DayCountCacheTest {
+
+    private static final long DAY = TimeUnit.DAYS.toMillis(1);
+
+    private Context context;
+    private final AtomicInteger computations = new AtomicInteger();
+
+    private final DayCountCache.Counter elapsedDays = new DayCountCache.Counter() {
+        @Override
+        public int count(long startDate, long now) {
+            computations.incrementAndGet();
+            return (int) ((now - startDate) / DAY);
+        }
+
+        @Override
+        public long nextChange(long startDate, long now) {
+            return startDate + ((now - startDate) / DAY + 1) * DAY;
+        }
+    };
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.resetInstance();
+        context = RuntimeEnvironment.getApplication();
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.resetInstance();
+    }
+
+    @Test
+    public void countIsKeptUntilSomethingChanges() {
+        DayCountCache cache = new DayCountCache(context, elapsedDays);
+        long startDate = System.currentTimeMillis() - 10 * DAY;
+        for (int i = 0; i < 100; i++) {
+            assertEquals(10, cache.getDays(startDate));
+        }
+        assertEquals(1, computations.get());
+
+        assertEquals(3, cache.getDays(System.currentTimeMillis() - 3 * DAY - 1000));
+        assertEquals(2, computations.get());
+    }
+
+    @Test
+    public void clockBroadcastsInvalidateAndNotify() {
+        DayCountCache cache = new DayCountCache(context, elapsedDays);
+        final AtomicInteger notified = new AtomicInteger();
+        cache.addListener(new DayCountCache.Listener() {
+            @Override
+            public void onDayCountChanged() {
+                notified.incrementAndGet();
+            }
+        });
+        long startDate = System.currentTimeMillis() - 5 * DAY;
+        cache.getDays(startDate);
+
+        for (String action : new String[]{Intent.ACTION_DATE_CHANGED, Intent.ACTION_TIME_CHANGED,
+                Intent.ACTION_TIMEZONE_CHANGED}) {
+            context.sendBroadcast(new Intent(action));
+            shadowOf(Looper.getMainLooper()).idle();
+            assertEquals(5, cache.getDays(startDate));
+        }
+        assertEquals(3, notified.get());
+        assertEquals(4, computations.get());
+
+        // Let the daily stats rebuild queued by the time zone change finish
+        DatabaseHelper.getInstance(context).runWrite(() -> null);
+    }
+}
@@ -0,0 +1,102 @@
+package com.example.sobertime;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Property checks for the epoch-day helpers against java.time, in zones with DST
+ * transitions at 02:00, at midnight (Sao Paulo, 2018) and of half an hour (Lord Howe),
+ * and in zones with fractional offsets.
+ */
+public class EpochDaysTest {
+
+    private static final String[] ZONES = {
+            "UTC", "America/New_York", "Europe/London", "America/Sao_Paulo", "Australia/Lord_Howe",
+            "Pacific/Auckland", "Asia/Kolkata", "America/St_Johns", "Asia/Kathmandu"
+    };
+
+    private static final int SAMPLES = 20000;
+
+    // 1990-01-01 to 2040-01-01
+    private static final long FROM_MILLIS = 631152000000L;
+    private static final long TO_MILLIS = 2208988800000L;
+
+    @After
+    public void tearDown() {
+        EpochDays.onTimeZoneChanged();
+    }
+
+    @Test
+    public void localDayMatchesTheCalendarDate() {
+        Random random = new Random(19);
+        for (String id : ZONES) {
+            EpochDays.setTimeZone(TimeZone.getTimeZone(id));
+            ZoneId zone = ZoneId.of(id);
+            for (int i = 0; i < SAMPLES; i++) {
+                long millis = FROM_MILLIS + (long) (random.nextDouble() * (TO_MILLIS - FROM_MILLIS));
+                long expected = Instant.ofEpochMilli(millis).atZone(zone).toLocalDate().toEpochDay();
+                assertEquals(id + " at " + millis, expected, EpochDays.localDay(millis));
+            }
+        }
+    }
+
+    @Test
+    public void everyDayStartsWhereJavaTimeSaysItDoes() {
+        long first = LocalDate.of(2017, 1, 1).toEpochDay();
+        long last = LocalDate.of(2020, 12, 31).toEpochDay();
+        for (String id : ZONES) {
+            EpochDays.setTimeZone(TimeZone.getTimeZone(id));
+            ZoneId zone = ZoneId.of(id);
+            long previousStart = Long.MIN_VALUE;
+            for (long day = first; day <= last; day++) {
+                long start = EpochDays.startOfDay(day);
+                long expected = LocalDate.ofEpochDay(day).atStartOfDay(zone).toInstant().toEpochMilli();
+                assertEquals(id + " day " + LocalDate.ofEpochDay(day), expected, start);
+                assertEquals(day, EpochDays.localDay(start));
+                assertEquals(day - 1, EpochDays.localDay(start - 1));
+                // Days are 23 to 25 hours long, never less, never out of order
+                assertTrue(start - previousStart >= 23 * 60 * 60 * 1000L || previousStart == Long.MIN_VALUE);
+                previousStart = start;
+            }
+        }
+    }
+
+    @Test
+    public void daysBetweenCountsCalendarDaysAcrossTransitions() {
+        Random random = new Random(23);
+        for (String id : ZONES) {
+            EpochDays.setTimeZone(TimeZone.getTimeZone(id));
+            ZoneId zone = ZoneId.of(id);
+            for (int i = 0; i < SAMPLES; i++) {
+                long from = FROM_MILLIS + (long) (random.nextDouble() * (TO_MILLIS - FROM_MILLIS));
+                long to = from + (long) (random.nextDouble() * 400 * EpochDays.MILLIS_PER_DAY);
+                long expected = Instant.ofEpochMilli(to).atZone(zone).toLocalDate().toEpochDay()
+                        - Instant.ofEpochMilli(from).atZone(zone).toLocalDate().toEpochDay();
+                assertEquals(id, expected, EpochDays.daysBetween(from, to));
+                assertEquals(id, -expected, EpochDays.daysBetween(to, from));
+            }
+        }
+    }
+
+    @Test
+    public void ofMatchesLocalDate() {
+        Random random = new Random(29);
+        for (int i = 0; i < SAMPLES; i++) {
+            LocalDate date = LocalDate.ofEpochDay(random.nextInt(2 * 800000) - 800000);
+            assertEquals(date.toString(), date.toEpochDay(),
+                    EpochDays.of(date.getYear(), date.getMonthValue(), date.getDayOfMonth()));
+        }
+        assertEquals(0, EpochDays.of(1970, 1, 1));
+        assertEquals(LocalDate.of(2024, 2, 29).toEpochDay(), EpochDays.of(2024, 2, 29));
+        assertEquals(LocalDate.of(2000, 3, 1).toEpochDay(), EpochDays.of(2000, 3, 1));
+    }
+}
@@ -0,0 +1,161 @@
+package com.example.sobertime;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Calendar;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the journal_daily_stats triggers keep the rollup equal to a full rebuild
+ * through inserts, edits that move an entry between days, and deletes, and that the
+ * journaling streak follows the same changes.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class JournalDailyStatsTest {
+
+    private DatabaseHelper databaseHelper;
+    private long dayOneNoon;
+    private long dayTwoNoon;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.resetInstance();
+        databaseHelper = DatabaseHelper.getInstance(RuntimeEnvironment.getApplication());
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2024, Calendar.MARCH, 10, 12, 0, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        dayOneNoon = calendar.getTimeInMillis();
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        dayTwoNoon = calendar.getTimeInMillis();
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.resetInstance();
+    }
+
+    @Test
+    public void triggersTrackInsertUpdateAndDelete() {
+        long calm = add(dayOneNoon, "Calm", 2, "Stress");
+        long anxious = add(dayOneNoon + 60000, "Anxious", 5, "Stress");
+        add(dayTwoNoon, "Calm", 1, null);
+
+        long dayOne = EpochDays.localDay(dayOneNoon);
+        long dayTwo = EpochDays.localDay(dayTwoNoon);
+        assertEquals(dayOne + 1, dayTwo);
+
+        List<JournalDailyStats> stats = databaseHelper.getJournalDailyStats(dayOne, dayTwo);
+        assertEquals(2, stats.size());
+        JournalDailyStats first = stats.get(0);
+        assertEquals(2, first.getEntryCount());
+        assertEquals(7, first.getCravingSum());
+        assertEquals(5, first.getCravingMax());
+        assertEquals(Integer.valueOf(1), first.getMoodCounts().get("Anxious"));
+        assertEquals(Integer.valueOf(2), first.getTriggerCounts().get("Stress"));
+
+        // Deleting the day's maximum recomputes it from the remaining entries
+        databaseHelper.deleteJournalEntry(anxious);
+        first = databaseHelper.getJournalDailyStats(dayOne, dayOne).get(0);
+        assertEquals(1, first.getEntryCount());
+        assertEquals(2, first.getCravingMax());
+        assertNull(first.getMoodCounts().get("Anxious"));
+
+        // Moving the last entry of day one to day two removes day one entirely
+        JournalEntry entry = databaseHelper.getJournalEntry(calm);
+        entry.setTimestamp(dayTwoNoon + 60000);
+        databaseHelper.updateJournalEntry(entry);
+        stats = databaseHelper.getJournalDailyStats(dayOne, dayTwo);
+        assertEquals(1, stats.size());
+        assertEquals(dayTwo, stats.get(0).getDay());
+        assertEquals(2, stats.get(0).getEntryCount());
+        assertEquals(Integer.valueOf(2), stats.get(0).getMoodCounts().get("Calm"));
+
+        assertMatchesRebuild(dayOne, dayTwo);
+    }
+
+    @Test
+    public void recentDaysAndWeeklyCountsComeFromRollup() {
+        for (int i = 0; i < 5; i++) {
+            add(dayOneNoon + i * 24L * 60 * 60 * 1000, "Calm", 1, null);
+        }
+
+        long[] days = databaseHelper.getRecentJournalDays(5);
+        assertEquals(5, days.length);
+        assertEquals(4, days[0] - days[4]);
+
+        assertEquals(Integer.valueOf(5), databaseHelper.getJournalEntryCountsByWeek(dayOneNoon).get(1));
+    }
+
+    @Test
+    public void streakFollowsInsertUpdateAndDelete() {
+        long dayMillis = 24L * 60 * 60 * 1000;
+        // Loaded before the writes, so every change below is applied incrementally
+        JournalStreakTracker streak = databaseHelper.getJournalStreak();
+        long[] ids = new long[5];
+        for (int i = 0; i < 5; i++) {
+            ids[i] = add(dayOneNoon + i * dayMillis, "Calm", 1, null);
+        }
+        long second = add(dayOneNoon + 2 * dayMillis + 60000, "Calm", 1, null);
+        assertEquals(5, streak.getCurrentRun());
+        assertEquals(EpochDays.localDay(dayOneNoon) + 4, streak.getLastDay());
+
+        // The day keeps its other entry
+        databaseHelper.deleteJournalEntry(ids[2]);
+        assertEquals(5, streak.getCurrentRun());
+
+        // Moving the day's last entry away splits the run
+        JournalEntry entry = databaseHelper.getJournalEntry(second);
+        entry.setTimestamp(dayOneNoon + 10 * dayMillis);
+        databaseHelper.updateJournalEntry(entry);
+        assertEquals(1, streak.getCurrentRun());
+        assertEquals(2, streak.getLongestRun());
+
+        databaseHelper.deleteJournalEntry(second);
+        assertEquals(2, streak.getCurrentRun());
+        assertEquals(EpochDays.localDay(dayOneNoon) + 4, streak.getLastDay());
+
+        // A fresh load from the rollups agrees
+        databaseHelper.rebuildJournalDailyStats();
+        JournalStreakTracker reloaded = databaseHelper.getJournalStreak();
+        assertEquals(streak.getLastDay(), reloaded.getLastDay());
+        assertEquals(streak.getCurrentRun(), reloaded.getCurrentRun());
+        assertEquals(streak.getLongestRun(), reloaded.getLongestRun());
+    }
+
+    private long add(long timestamp, String mood, int craving, String trigger) {
+        JournalEntry entry = new JournalEntry("Title", "Content", mood, craving, trigger);
+        entry.setTimestamp(timestamp);
+        return databaseHelper.addJournalEntry(entry);
+    }
+
+    private void assertMatchesRebuild(long fromDay, long toDay) {
+        List<JournalDailyStats> incremental = databaseHelper.getJournalDailyStats(fromDay, toDay);
+        databaseHelper.rebuildJournalDailyStats();
+        List<JournalDailyStats> rebuilt = databaseHelper.getJournalDailyStats(fromDay, toDay);
+
+        assertEquals(rebuilt.size(), incremental.size());
+        for (int i = 0; i < rebuilt.size(); i++) {
+            JournalDailyStats expected = rebuilt.get(i);
+            JournalDailyStats actual = incremental.get(i);
+            assertEquals(expected.getDay(), actual.getDay());
+            assertEquals(expected.getEntryCount(), actual.getEntryCount());
+            assertEquals(expected.getCravingSum(), actual.getCravingSum());
+            assertEquals(expected.getCravingMax(), actual.getCravingMax());
+            assertEquals(expected.getMoodCounts(), actual.getMoodCounts());
+            assertEquals(expected.getTriggerCounts(), actual.getTriggerCounts());
+        }
+        assertTrue(incremental.size() > 0);
+    }
+}
@@ -0,0 +1,117 @@
+package com.example.sobertime;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the journal full-text index follows inserts, edits and deletes,
+ * ranks title matches first, and honours the limit over a larger journal.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class JournalSearchTest {
+
+    private static final int LARGE_JOURNAL = 2000;
+
+    private DatabaseHelper databaseHelper;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.resetInstance();
+        databaseHelper = DatabaseHelper.getInstance(RuntimeEnvironment.getApplication());
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.resetInstance();
+    }
+
+    @Test
+    public void matchQuery_isSanitized() {
+        // Lowercase "or" is a plain term, not an operator
+        assertEquals("walk or park*", JournalSearchResult.toMatchQuery("Walk OR park"));
+        assertEquals("cravings after work*", JournalSearchResult.toMatchQuery("  \"cravings\" (after) work-"));
+        assertNull(JournalSearchResult.toMatchQuery(" \"*- "));
+        assertNull(JournalSearchResult.toMatchQuery(null));
+    }
+
+    @Test
+    public void search_followsInsertUpdateAndDelete() {
+        JournalEntry entry = new JournalEntry("Evening walk", "Went to the park instead of the bar",
+                "Calm", 2, null);
+        long id = databaseHelper.addJournalEntry(entry);
+
+        List<JournalSearchResult> results = databaseHelper.searchJournal("park", 10);
+        assertEquals(1, results.size());
+        assertEquals(id, results.get(0).getEntry().getId());
+        assertTrue(results.get(0).getSnippet().contains(
+                JournalSearchResult.HIGHLIGHT_START + "park" + JournalSearchResult.HIGHLIGHT_END));
+
+        entry.setId(id);
+        entry.setContent("Stayed home and read a book");
+        databaseHelper.updateJournalEntry(entry);
+        assertTrue(databaseHelper.searchJournal("park", 10).isEmpty());
+        assertEquals(1, databaseHelper.searchJournal("book", 10).size());
+
+        databaseHelper.deleteJournalEntry(id);
+        assertTrue(databaseHelper.searchJournal("book", 10).isEmpty());
+    }
+
+    @Test
+    public void search_ranksTitleMatchesFirst() {
+        long contentHit = databaseHelper.addJournalEntry(new JournalEntry("Tuesday",
+                "Had a strong craving on the drive home but called my sponsor", "Anxious", 4, null));
+        long titleHit = databaseHelper.addJournalEntry(new JournalEntry("Craving",
+                "Noticed it early and it passed", "Calm", 3, null));
+
+        List<JournalSearchResult> results = databaseHelper.searchJournal("craving", 10);
+        assertEquals(2, results.size());
+        assertEquals(titleHit, results.get(0).getEntry().getId());
+        assertEquals(contentHit, results.get(1).getEntry().getId());
+    }
+
+    @Test
+    public void search_overLargeJournal_findsSelectiveTermsAndHonoursLimit() {
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        SQLiteStatement statement = db.compileStatement(DatabaseHelper.INSERT_JOURNAL);
+        String[] words = {"meeting", "sponsor", "walk", "craving", "family", "work", "sleep", "gym"};
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < LARGE_JOURNAL; i++) {
+                statement.bindLong(1, 1700000000000L + i * 60000L);
+                statement.bindString(2, "Day " + i);
+                statement.bindString(3, "Today was about " + words[i % words.length]
+                        + " and " + words[(i / 8) % words.length] + ", entry " + i);
+                statement.bindNull(4);
+                statement.bindLong(5, i % 6);
+                statement.bindNull(6);
+                statement.executeInsert();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            statement.close();
+        }
+
+        List<JournalSearchResult> rare = databaseHelper.searchJournal("entry 1234", 20);
+        assertEquals(1, rare.size());
+        assertEquals("Day 1234", rare.get(0).getEntry().getTitle());
+
+        List<JournalSearchResult> common = databaseHelper.searchJournal("sponsor", 20);
+        assertEquals(20, common.size());
+    }
+}
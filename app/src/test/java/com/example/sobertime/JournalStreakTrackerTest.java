@@ -0,0 +1,98 @@
+package com.example.sobertime;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the incrementally kept journaling streaks with a walk over the journaled days
+ * after every change.
+ */
+public class JournalStreakTrackerTest {
+
+    @Test
+    public void followsAddsAndRemovals() {
+        JournalStreakTracker tracker = new JournalStreakTracker(new long[]{103, 101, 102, 110});
+        assertEquals(110, tracker.getLastDay());
+        assertEquals(1, tracker.getCurrentRun());
+        assertEquals(3, tracker.getLongestRun());
+
+        tracker.dayJournaled(111);
+        assertEquals(2, tracker.getCurrentRun());
+
+        // Deleting the last day falls back to the one before it
+        tracker.dayCleared(111);
+        tracker.dayCleared(110);
+        assertEquals(103, tracker.getLastDay());
+        assertEquals(3, tracker.getCurrentRun());
+
+        // A backdated entry can join two runs
+        tracker.dayJournaled(99);
+        tracker.dayJournaled(100);
+        assertEquals(5, tracker.getCurrentRun());
+        assertEquals(5, tracker.getLongestRun());
+
+        tracker.dayCleared(101);
+        assertEquals(2, tracker.getCurrentRun());
+        assertEquals(2, tracker.getLongestRun());
+    }
+
+    @Test
+    public void startsEmpty() {
+        JournalStreakTracker tracker = new JournalStreakTracker(new long[0]);
+        assertEquals(Long.MIN_VALUE, tracker.getLastDay());
+        assertEquals(0, tracker.getCurrentRun());
+        assertEquals(0, tracker.getLongestRun());
+
+        tracker.dayJournaled(500);
+        tracker.dayCleared(500);
+        assertEquals(Long.MIN_VALUE, tracker.getLastDay());
+        assertEquals(0, tracker.getCurrentRun());
+        assertEquals(0, tracker.getLongestRun());
+    }
+
+    @Test
+    public void matchesWalkOverRandomChanges() {
+        Random random = new Random(23);
+        for (int iteration = 0; iteration < 200; iteration++) {
+            TreeSet<Long> days = new TreeSet<>();
+            JournalStreakTracker tracker = new JournalStreakTracker(new long[0]);
+            for (int change = 0; change < 300; change++) {
+                long day = 20000 + random.nextInt(200);
+                if (random.nextInt(3) == 0) {
+                    days.remove(day);
+                    tracker.dayCleared(day);
+                } else {
+                    days.add(day);
+                    tracker.dayJournaled(day);
+                }
+
+                long lastDay = days.isEmpty() ? Long.MIN_VALUE : days.last();
+                assertEquals(lastDay, tracker.getLastDay());
+                assertEquals(runEndingOn(days, lastDay), tracker.getCurrentRun());
+                assertEquals(longestRun(days), tracker.getLongestRun());
+            }
+        }
+    }
+
+    private static int runEndingOn(TreeSet<Long> days, long day) {
+        int run = 0;
+        while (days.contains(day - run)) {
+            run++;
+        }
+        return run;
+    }
+
+    private static int longestRun(TreeSet<Long> days) {
+        int longest = 0;
+        for (long day : days) {
+            if (!days.contains(day + 1)) {
+                longest = Math.max(longest, runEndingOn(days, day));
+            }
+        }
+        return longest;
+    }
+}
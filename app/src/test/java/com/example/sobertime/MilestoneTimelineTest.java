@@ -0,0 +1,101 @@
+package com.example.sobertime;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the timeline lookups against the milestone list the widget used to scan and
+ * the list AchievementManager used to build and scan.
+ */
+public class MilestoneTimelineTest {
+
+    private static final int[] WIDGET_MILESTONES = {1, 7, 14, 30, 60, 90, 180, 365, 730, 1095};
+    private static final int[] ACHIEVEMENT_DAYS = {1, 7, 14, 30, 60, 90, 180, 365, 730, 1095, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+
+    @Test
+    public void dayCountLookupsMatchTheOldScan() {
+        for (int days = 0; days < 36500; days++) {
+            int expectedNext = widgetNextMilestone(days + 1);
+            assertEquals("next after " + days, expectedNext, MilestoneTimeline.nextAfter(days));
+            assertEquals("is " + days, widgetNextMilestone(days) == days, MilestoneTimeline.isMilestone(days));
+        }
+        assertEquals(0, MilestoneTimeline.lastReached(0));
+        assertEquals(1, MilestoneTimeline.lastReached(6));
+        assertEquals(7, MilestoneTimeline.lastReached(7));
+        assertEquals(1095, MilestoneTimeline.lastReached(1459));
+        assertEquals(1460, MilestoneTimeline.lastReached(1460));
+    }
+
+    @Test
+    public void datesFollowTheCalendarDayCount() {
+        MilestoneTimeline timeline = MilestoneTimeline.forStartDay(20000);
+
+        // Day 1 is the start day itself
+        assertTrue(timeline.isMilestoneDay(20000));
+        assertFalse(timeline.isMilestoneDay(20001));
+        assertTrue(timeline.isMilestoneDay(20006));
+        assertEquals(20364, timeline.dateOf(365));
+        assertEquals(7, timeline.nextAfterDay(20000));
+        assertEquals(1, timeline.nextAfterDay(19000));
+        assertEquals(730, timeline.nextAfterDay(20364));
+        assertArrayEquals(new long[]{20029, 20059, 20089}, Arrays.copyOf(timeline.datesFrom(20014), 3));
+
+        assertSame(timeline, MilestoneTimeline.forStartDay(20000));
+    }
+
+    @Test
+    public void titles() {
+        assertEquals("First Day Milestone!", MilestoneTimeline.titleFor(1));
+        assertEquals("One Year Milestone!", MilestoneTimeline.titleFor(365));
+        assertEquals("3 Years Milestone!", MilestoneTimeline.titleFor(1095));
+        assertEquals("45 Days Milestone!", MilestoneTimeline.titleFor(45));
+    }
+
+    @Test
+    public void nextMilestoneMatchesTheAchievementScan() {
+        // The achievement list stopped at three years
+        for (int days = 0; days < 1095; days++) {
+            assertEquals("next after " + days, achievementNextMilestone(days), MilestoneTimeline.nextAfter(days));
+        }
+    }
+
+    // What AchievementManager.getNextMilestone() did: copy out the time milestones from
+    // every achievement (0 for the other categories), then scan for the nearest one above
+    private static int achievementNextMilestone(int daysSober) {
+        List<Integer> milestones = new ArrayList<>();
+        for (int days : ACHIEVEMENT_DAYS) {
+            if (days > 0) {
+                milestones.add(days);
+            }
+        }
+        int next = -1;
+        int daysToNext = Integer.MAX_VALUE;
+        for (int days : milestones) {
+            if (days > daysSober && days - daysSober < daysToNext) {
+                next = days;
+                daysToNext = days - daysSober;
+            }
+        }
+        return next;
+    }
+
+    // What SobrietyWidgetProvider.getNextMilestone() did: the first milestone at or after
+    // daysSober. Past the list it skipped a yearly milestone falling on daysSober itself.
+    private static int widgetNextMilestone(int daysSober) {
+        for (int milestone : WIDGET_MILESTONES) {
+            if (daysSober <= milestone) {
+                return milestone;
+            }
+        }
+        return (daysSober + 364) / 365 * 365;
+    }
+}
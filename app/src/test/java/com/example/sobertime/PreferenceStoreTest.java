@@ -0,0 +1,167 @@
+package com.example.sobertime;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that every preference type survives a reload of the store, that applied edits
+ * are on disk once an activity pauses, and that the legacy SharedPreferences files are
+ * migrated once and removed.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class PreferenceStoreTest {
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        PreferenceStore.resetInstance();
+        context = RuntimeEnvironment.getApplication();
+    }
+
+    @After
+    public void tearDown() {
+        PreferenceStore.resetInstance();
+    }
+
+    @Test
+    public void valuesSurviveReload() {
+        Set<String> days = new HashSet<>(Arrays.asList("mon", "thu"));
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences("SobrietyTrackerPrefs");
+        prefs.edit()
+                .putBoolean("onboarding_complete", true)
+                .putInt("user_status", 2)
+                .putLong("sobriety_start_date", 1700000000000L)
+                .putFloat("drink_cost", 7.3f)
+                .putString("theme", "dark")
+                .putStringSet("days", days)
+                .apply();
+        // Visible straight away, before the background write
+        assertEquals(2, prefs.getInt("user_status", 0));
+        assertTrue(prefs.edit().putString("quote", "One day at a time").commit());
+
+        PreferenceStore.resetInstance();
+        prefs = PreferenceStore.getInstance(context).getPreferences("SobrietyTrackerPrefs");
+        assertTrue(prefs.getBoolean("onboarding_complete", false));
+        assertEquals(2, prefs.getInt("user_status", 0));
+        assertEquals(1700000000000L, prefs.getLong("sobriety_start_date", 0));
+        assertEquals(7.3f, prefs.getFloat("drink_cost", 0), 0f);
+        assertEquals("dark", prefs.getString("theme", null));
+        assertEquals(days, prefs.getStringSet("days", null));
+        assertEquals("One day at a time", prefs.getString("quote", null));
+    }
+
+    @Test
+    public void nonFiniteFloatsSurviveReload() {
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences("app_settings");
+        assertTrue(prefs.edit()
+                .putFloat("not_a_number", Float.NaN)
+                .putFloat("too_big", Float.POSITIVE_INFINITY)
+                .putFloat("too_small", Float.NEGATIVE_INFINITY)
+                .commit());
+
+        PreferenceStore.resetInstance();
+        prefs = PreferenceStore.getInstance(context).getPreferences("app_settings");
+        assertTrue(Float.isNaN(prefs.getFloat("not_a_number", 0)));
+        assertEquals(Float.POSITIVE_INFINITY, prefs.getFloat("too_big", 0), 0f);
+        assertEquals(Float.NEGATIVE_INFINITY, prefs.getFloat("too_small", 0), 0f);
+    }
+
+    @Test
+    public void appliedEditsAreWrittenWhenAnActivityPauses() throws Exception {
+        ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class).setup();
+        PreferenceStore.getInstance(context).getPreferences("CheckInPrefs").edit()
+                .putLong("last_check_in", 1700000000000L)
+                .apply();
+
+        // Written on the main thread by the time onPause() returns, whatever the writer thread is doing
+        controller.pause();
+        String written = new String(Files.readAllBytes(
+                new File(context.getFilesDir(), PreferenceStore.FILE_NAME).toPath()), StandardCharsets.UTF_8);
+        assertTrue(written.contains("CheckInPrefs/last_check_in"));
+    }
+
+    @Test
+    public void scopesAreSeparate() {
+        PreferenceStore store = PreferenceStore.getInstance(context);
+        SharedPreferences tracker = store.getPreferences("SobrietyTrackerPrefs");
+        SharedPreferences theme = store.getPreferences("ThemePreferences");
+        tracker.edit().putBoolean("dark_mode", true).putInt("user_status", 1).commit();
+        theme.edit().putBoolean("dark_mode", false).commit();
+
+        tracker.edit().clear().putInt("user_status", 3).commit();
+
+        assertFalse(tracker.contains("dark_mode"));
+        assertEquals(3, tracker.getInt("user_status", 0));
+        assertEquals(1, tracker.getAll().size());
+        assertTrue(theme.contains("dark_mode"));
+        assertFalse(theme.getBoolean("dark_mode", true));
+    }
+
+    @Test
+    public void legacyFilesAreMigratedOnce() {
+        context.getSharedPreferences("SobrietyTrackerPrefs", Context.MODE_PRIVATE).edit()
+                .putLong("sobriety_start_date", 1690000000000L)
+                .putBoolean("onboarding_complete", true)
+                .commit();
+        context.getSharedPreferences("EmergencyContactPrefs", Context.MODE_PRIVATE).edit()
+                .putString("sponsor_name", "Sam")
+                .commit();
+        SharedPreferences legacyQuotes = context.getSharedPreferences("QuotePrefs", Context.MODE_PRIVATE);
+        legacyQuotes.edit().putInt("last_quote_day", 12).commit();
+
+        PreferenceStore store = PreferenceStore.getInstance(context);
+        assertEquals(1690000000000L, store.getPreferences("SobrietyTrackerPrefs").getLong("sobriety_start_date", 0));
+        assertTrue(store.getPreferences("SobrietyTrackerPrefs").getBoolean("onboarding_complete", false));
+        assertEquals("Sam", store.getPreferences("EmergencyContactPrefs").getString("sponsor_name", null));
+        assertEquals(12, store.getPreferences("QuotePrefs").getInt("last_quote_day", 0));
+        assertTrue(new File(context.getFilesDir(), PreferenceStore.FILE_NAME).exists());
+
+        // The legacy files are gone, so later changes to them are not picked up again
+        assertEquals(0, legacyQuotes.getAll().size());
+        legacyQuotes.edit().putInt("last_quote_day", 99).commit();
+        PreferenceStore.resetInstance();
+        assertEquals(12, PreferenceStore.getInstance(context).getPreferences("QuotePrefs").getInt("last_quote_day", 0));
+    }
+
+    @Test
+    public void migratedStoreLoadsInOneRead() {
+        for (String name : PreferenceStore.LEGACY_FILES) {
+            SharedPreferences.Editor editor = context.getSharedPreferences(name, Context.MODE_PRIVATE).edit();
+            for (int i = 0; i < 10; i++) {
+                editor.putString("key_" + i, "value " + i);
+            }
+            editor.commit();
+        }
+        PreferenceStore.getInstance(context);
+
+        PreferenceStore.resetInstance();
+        SharedPreferences prefs = PreferenceStore.getInstance(context).getPreferences("QuotePrefs");
+        assertEquals("value 3", prefs.getString("key_3", null));
+        assertNull(prefs.getString("key_10", null));
+    }
+}
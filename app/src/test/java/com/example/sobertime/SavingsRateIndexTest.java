@@ -0,0 +1,98 @@
+package com.example.sobertime;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the running-total lookups with a day-by-day sum over random rate histories.
+ */
+public class SavingsRateIndexTest {
+
+    private static final double DELTA = 1e-6;
+
+    @Test
+    public void priceChangeOnlyAffectsLaterDays() {
+        SavingsRateIndex rates = new SavingsRateIndex(new long[]{100, 200},
+                new double[]{2, 5}, new double[]{300, 100});
+
+        assertEquals(20, rates.moneySaved(110, 119), DELTA);
+        assertEquals(2 * 5 + 5 * 5, rates.moneySaved(195, 204), DELTA);
+        assertEquals(50, rates.moneySaved(300, 309), DELTA);
+        assertEquals(3000, rates.caloriesSaved(110, 119), DELTA);
+        // The first rates also hold before the first recorded change
+        assertEquals(20, rates.moneySaved(0, 9), DELTA);
+        assertEquals(0, rates.moneySaved(10, 9), DELTA);
+    }
+
+    @Test
+    public void constantRatesMatchTheOldFormula() {
+        SettingsSnapshot settings = SettingsSnapshot.EMPTY;
+        SavingsRateIndex rates = SavingsRateIndex.constant(settings);
+        int daysSober = 45;
+        float drinksAvoided = (daysSober / 7.0f) * settings.getDrinksPerWeek();
+
+        assertEquals(drinksAvoided * settings.getDrinkCost(), rates.moneySaved(19000, 19000 + daysSober - 1), 0.01);
+        assertEquals((int) (drinksAvoided * settings.getCaloriesPerDrink()),
+                (int) Math.round(rates.caloriesSaved(19000, 19000 + daysSober - 1)));
+    }
+
+    @Test
+    public void matchesDayByDaySum() {
+        Random random = new Random(5);
+        for (int iteration = 0; iteration < 500; iteration++) {
+            History history = new History(random, 1 + random.nextInt(20));
+            for (int query = 0; query < 50; query++) {
+                long from = random.nextInt(1200) - 100;
+                long to = from + random.nextInt(300) - 5;
+                assertEquals(history.walk(from, to), history.rates.moneySaved(from, to), DELTA);
+            }
+        }
+    }
+
+    @Test
+    public void sumsOnlyTheSoberDays() {
+        SavingsRateIndex rates = new SavingsRateIndex(new long[]{0, 120}, new double[]{1, 3}, new double[]{0, 0});
+        SobrietyPeriodIndex periods = new SobrietyPeriodIndex(
+                new long[]{100, 150}, new long[]{130, SobrietyPeriodIndex.OPEN});
+
+        // Days 110 to 119 at 1, 120 to 129 at 3, then 150 to 159 at 3
+        assertEquals(10 + 30 + 30, periods.sum(110, 159, rates::moneySaved), DELTA);
+        assertEquals(0, periods.sum(130, 149, rates::moneySaved), DELTA);
+        assertEquals(3, periods.sum(1000, 1000, rates::moneySaved), DELTA);
+    }
+
+    // Random money rates and the index built from them
+    private static final class History {
+        final long[] days;
+        final double[] money;
+        final SavingsRateIndex rates;
+
+        History(Random random, int count) {
+            days = new long[count];
+            money = new double[count];
+            long day = random.nextInt(100);
+            for (int i = 0; i < count; i++) {
+                days[i] = day;
+                day += 1 + random.nextInt(90);
+                money[i] = random.nextInt(40) / 7.0 * (1 + random.nextInt(1500) / 100.0);
+            }
+            rates = new SavingsRateIndex(days, money, new double[count]);
+        }
+
+        // Find each day's rate by scanning the changes, as a plain list of them would have to
+        double walk(long fromDay, long toDay) {
+            double total = 0;
+            for (long day = fromDay; day <= toDay; day++) {
+                int segment = 0;
+                while (segment + 1 < days.length && days[segment + 1] <= day) {
+                    segment++;
+                }
+                total += money[segment];
+            }
+            return total;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.sobertime;
+
+import android.content.ContentValues;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that settings writes record the savings rates from the day they change, so
+ * earlier days keep the rates they had, and that defaults nobody entered are never
+ * kept as the rates of the past.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class SettingsHistoryTest {
+
+    private static final double DELTA = 1e-3;
+
+    private DatabaseHelper databaseHelper;
+    private long today;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.resetInstance();
+        databaseHelper = DatabaseHelper.getInstance(RuntimeEnvironment.getApplication());
+        today = EpochDays.today();
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.resetInstance();
+    }
+
+    @Test
+    public void changesApplyFromToday() {
+        // 15 drinks a week at 8.50, entered rather than defaulted
+        double before = 15 / 7.0 * 8.5;
+        databaseHelper.setSetting(SettingsSnapshot.KEY_DRINK_COST, "8.5");
+        assertEquals(10 * before, databaseHelper.getSavingsRates().moneySaved(today - 10, today - 1), DELTA);
+
+        databaseHelper.setSetting(SettingsSnapshot.KEY_DRINK_COST, "10");
+        SavingsRateIndex rates = databaseHelper.getSavingsRates();
+        assertEquals(10 * before, rates.moneySaved(today - 10, today - 1), DELTA);
+        assertEquals(15 / 7.0 * 10, rates.moneySaved(today, today), DELTA);
+
+        // Several keys at once are one change
+        Map<String, String> settings = new HashMap<>();
+        settings.put(SettingsSnapshot.KEY_DRINKS_PER_WEEK, "7");
+        settings.put(SettingsSnapshot.KEY_CALORIES_PER_DRINK, "200");
+        databaseHelper.setSettings(settings);
+        rates = databaseHelper.getSavingsRates();
+        assertEquals(10, rates.moneySaved(today, today), DELTA);
+        assertEquals(200, rates.caloriesSaved(today, today), DELTA);
+        assertEquals(150 * 15 / 7.0, rates.caloriesSaved(today - 1, today - 1), DELTA);
+    }
+
+    @Test
+    public void historySurvivesReopening() {
+        databaseHelper.setSetting(SettingsSnapshot.KEY_DRINK_COST, "8.5");
+        databaseHelper.setSetting(SettingsSnapshot.KEY_DRINK_COST, "10");
+
+        DatabaseHelper.resetInstance();
+        databaseHelper = DatabaseHelper.getInstance(RuntimeEnvironment.getApplication());
+        SavingsRateIndex rates = databaseHelper.getSavingsRates();
+        assertEquals(15 / 7.0 * 8.5, rates.moneySaved(today - 1, today - 1), DELTA);
+        assertEquals(15 / 7.0 * 10, rates.moneySaved(today, today), DELTA);
+    }
+
+    @Test
+    public void changesAfterReopeningAreRecorded() {
+        databaseHelper.setSetting(SettingsSnapshot.KEY_DRINK_COST, "10");
+
+        // Nothing has read the settings yet, so the first write finds the cache cold
+        DatabaseHelper.resetInstance();
+        databaseHelper = DatabaseHelper.getInstance(RuntimeEnvironment.getApplication());
+        databaseHelper.setSetting(SettingsSnapshot.KEY_DRINK_COST, "12");
+        assertEquals(15 / 7.0 * 12, databaseHelper.getSavingsRates().moneySaved(today, today), DELTA);
+
+        DatabaseHelper.resetInstance();
+        databaseHelper = DatabaseHelper.getInstance(RuntimeEnvironment.getApplication());
+        Map<String, String> settings = new HashMap<>();
+        settings.put(SettingsSnapshot.KEY_DRINKS_PER_WEEK, "7");
+        databaseHelper.setSettings(settings);
+        assertEquals(12, databaseHelper.getSavingsRates().moneySaved(today, today), DELTA);
+    }
+
+    @Test
+    public void firstRatesEnteredOverDefaultsApplyToThePast() {
+        // A new user backdates the start date, then enters what they really spent
+        databaseHelper.setSetting(SettingsSnapshot.KEY_DRINK_COST, "10");
+
+        SavingsRateIndex rates = databaseHelper.getSavingsRates();
+        assertEquals(15 / 7.0 * 10, rates.moneySaved(today - 100, today - 100), DELTA);
+        assertEquals(15 / 7.0 * 10, rates.moneySaved(today, today), DELTA);
+    }
+
+    @Test
+    public void restoringSettingsWithoutHistoryUsesTheRestoredRates() {
+        databaseHelper.setSetting(SettingsSnapshot.KEY_DRINK_COST, "12");
+
+        // What restoring a backup from before the history was kept does
+        Map<String, String> restored = new HashMap<>();
+        restored.put(SettingsSnapshot.KEY_DRINK_COST, "5");
+        restored.put(SettingsSnapshot.KEY_DRINKS_PER_WEEK, "7");
+        databaseHelper.replaceAllSettings(restored);
+        databaseHelper.replaceSettingsHistory(Collections.<ContentValues>emptyList());
+
+        SavingsRateIndex rates = databaseHelper.getSavingsRates();
+        assertEquals(5, rates.moneySaved(today - 100, today - 100), DELTA);
+        assertEquals(5, rates.moneySaved(today, today), DELTA);
+    }
+
+    @Test
+    public void unrelatedSettingsAndResetsLeaveNoHistory() {
+        databaseHelper.setSetting("theme", "dark");
+        databaseHelper.setSetting(SettingsSnapshot.KEY_DRINK_COST, "10");
+        databaseHelper.resetAllData();
+
+        SavingsRateIndex rates = databaseHelper.getSavingsRates();
+        assertEquals(15 / 7.0 * 8.5, rates.moneySaved(today, today), DELTA);
+        assertEquals(15 / 7.0 * 8.5, rates.moneySaved(today - 100, today - 100), DELTA);
+    }
+}
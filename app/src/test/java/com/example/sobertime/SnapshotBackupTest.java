@@ -0,0 +1,113 @@
+package com.example.sobertime;
+
+import android.content.Context;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Round-trips the database through a snapshot and checks that snapshots from a newer
+ * schema are refused.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class SnapshotBackupTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Context context;
+    private DatabaseHelper databaseHelper;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+        context = RuntimeEnvironment.getApplication();
+        databaseHelper = DatabaseHelper.getInstance(context);
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+    }
+
+    @Test
+    public void snapshotRestoresTheDatabase() throws Exception {
+        long kept = databaseHelper.addJournalEntry(new JournalEntry("Evening walk", "Went to the park", "Calm", 2, null));
+        databaseHelper.setSetting("drink_cost", "6");
+        ByteArrayOutputStream snapshot = new ByteArrayOutputStream();
+        new SnapshotBackup(context).write(snapshot);
+
+        databaseHelper.deleteJournalEntry(kept);
+        long dropped = databaseHelper.addJournalEntry(new JournalEntry("Not in snapshot", "Gone after restore", "Calm", 1, null));
+        databaseHelper.setSetting("drink_cost", "9");
+
+        JSONObject sections = new SnapshotBackup(context).restore(new ByteArrayInputStream(snapshot.toByteArray()));
+
+        assertTrue(sections.has("sobriety_start_date"));
+        assertTrue(sections.has("emergency_contacts"));
+        assertEquals(1, databaseHelper.getJournalEntryCount());
+        assertEquals("Evening walk", databaseHelper.getJournalEntry(kept).getTitle());
+        assertNull(databaseHelper.getJournalEntry(dropped));
+        assertEquals("6", databaseHelper.getSetting("drink_cost", null));
+        assertEquals(1, databaseHelper.searchJournal("park", 10).size());
+
+        // The swapped-in database is fully usable, triggers included
+        databaseHelper.addJournalEntry(new JournalEntry("After", "Added after the restore", "Calm", 1, null));
+        assertEquals(1, databaseHelper.searchJournal("restore", 10).size());
+    }
+
+    @Test
+    public void newerOrForeignDatabasesAreRefused() throws Exception {
+        File newer = temporaryFolder.newFile("newer.db");
+        SQLiteDatabase db = SQLiteDatabase.openOrCreateDatabase(newer, null);
+        db.execSQL("CREATE TABLE journal(id INTEGER PRIMARY KEY)");
+        db.setVersion(databaseHelper.getReadableDatabase().getVersion() + 1);
+        db.close();
+        assertRefused(newer);
+
+        File foreign = temporaryFolder.newFile("foreign.db");
+        db = SQLiteDatabase.openOrCreateDatabase(foreign, null);
+        db.execSQL("CREATE TABLE notes(id INTEGER PRIMARY KEY)");
+        db.setVersion(1);
+        db.close();
+        assertRefused(foreign);
+
+        try {
+            new SnapshotBackup(context).restore(new ByteArrayInputStream("not a zip".getBytes("UTF-8")));
+            fail("Expected a non-snapshot to be refused");
+        } catch (IOException expected) {
+            // Nothing was replaced
+        }
+    }
+
+    private void assertRefused(File database) {
+        try {
+            DatabaseHelper.validateDatabaseFile(database);
+            fail("Expected " + database.getName() + " to be refused");
+        } catch (IOException expected) {
+            // Not a database this version can take
+        }
+    }
+}
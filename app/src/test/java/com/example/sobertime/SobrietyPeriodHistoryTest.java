@@ -0,0 +1,130 @@
+package com.example.sobertime;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that relapses keep earlier sobriety periods and that correcting the start date
+ * only moves the current one.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 34)
+public class SobrietyPeriodHistoryTest {
+
+    private DatabaseHelper databaseHelper;
+
+    @Before
+    public void setUp() {
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+        databaseHelper = DatabaseHelper.getInstance(RuntimeEnvironment.getApplication());
+    }
+
+    @After
+    public void tearDown() {
+        DatabaseHelper.resetInstance();
+        PreferenceStore.resetInstance();
+    }
+
+    @Test
+    public void relapsesKeepEarlierPeriods() {
+        databaseHelper.setCurrentSobrietyPeriodStart(100);
+        databaseHelper.startSobrietyPeriod(100, 150);
+        databaseHelper.startSobrietyPeriod(150, 200);
+
+        SobrietyPeriodIndex periods = databaseHelper.getSobrietyPeriods();
+        assertEquals(3, periods.size());
+        assertEquals(150, periods.getEnd(0));
+        assertEquals(200, periods.getEnd(1));
+        assertEquals(SobrietyPeriodIndex.OPEN, periods.getEnd(2));
+        assertEquals(110, periods.countDays(0, 209));
+    }
+
+    @Test
+    public void firstRelapseOpensThePeriodFromTheStartDate() {
+        assertTrue(databaseHelper.getSobrietyPeriods().isEmpty());
+
+        databaseHelper.startSobrietyPeriod(100, 130);
+
+        SobrietyPeriodIndex periods = databaseHelper.getSobrietyPeriods();
+        assertEquals(2, periods.size());
+        assertEquals(100, periods.getStart(0));
+        assertEquals(130, periods.getEnd(0));
+        assertEquals(130, periods.getStart(1));
+    }
+
+    @Test
+    public void secondRelapseOnTheSameDayReplacesTheNewPeriod() {
+        databaseHelper.setCurrentSobrietyPeriodStart(100);
+        databaseHelper.startSobrietyPeriod(100, 150);
+        databaseHelper.startSobrietyPeriod(150, 150);
+
+        SobrietyPeriodIndex periods = databaseHelper.getSobrietyPeriods();
+        assertEquals(2, periods.size());
+        assertEquals(150, periods.getEnd(0));
+        assertEquals(150, periods.getStart(1));
+    }
+
+    @Test
+    public void movingTheStartTrimsOverlappedPeriods() {
+        databaseHelper.setCurrentSobrietyPeriodStart(100);
+        databaseHelper.startSobrietyPeriod(100, 150);
+        databaseHelper.startSobrietyPeriod(150, 200);
+
+        // A later start only shortens the current period
+        databaseHelper.setCurrentSobrietyPeriodStart(210);
+        SobrietyPeriodIndex periods = databaseHelper.getSobrietyPeriods();
+        assertEquals(3, periods.size());
+        assertEquals(210, periods.getStart(2));
+
+        // An earlier one swallows the periods it reaches back over
+        databaseHelper.setCurrentSobrietyPeriodStart(120);
+        periods = databaseHelper.getSobrietyPeriods();
+        assertEquals(2, periods.size());
+        assertEquals(100, periods.getStart(0));
+        assertEquals(120, periods.getEnd(0));
+        assertEquals(120, periods.getStart(1));
+        assertEquals(SobrietyPeriodIndex.OPEN, periods.getEnd(1));
+    }
+
+    @Test
+    public void resetClearsThePeriods() {
+        databaseHelper.setCurrentSobrietyPeriodStart(100);
+        databaseHelper.startSobrietyPeriod(100, 150);
+
+        databaseHelper.resetAllData();
+
+        assertTrue(databaseHelper.getSobrietyPeriods().isEmpty());
+        DatabaseHelper.resetInstance();
+        databaseHelper = DatabaseHelper.getInstance(RuntimeEnvironment.getApplication());
+        assertTrue(databaseHelper.getSobrietyPeriods().isEmpty());
+    }
+
+    @Test
+    public void upgradeOpensTheCurrentPeriodAtTheStartDate() {
+        PreferenceStore.getInstance(RuntimeEnvironment.getApplication()).getPreferences(SobrietyTracker.PREFS_NAME)
+                .edit().putLong(SobrietyTracker.START_DATE_KEY, EpochDays.startOfDay(100)).commit();
+
+        // Take the database back to version 9, from before periods were kept
+        SQLiteDatabase db = databaseHelper.getWritableDatabase();
+        db.execSQL("DROP TABLE sobriety_periods");
+        db.setVersion(9);
+        DatabaseHelper.resetInstance();
+        databaseHelper = DatabaseHelper.getInstance(RuntimeEnvironment.getApplication());
+
+        SobrietyPeriodIndex periods = databaseHelper.getSobrietyPeriods();
+        assertEquals(1, periods.size());
+        assertEquals(100, periods.getStart(0));
+        assertEquals(SobrietyPeriodIndex.OPEN, periods.getEnd(0));
+    }
+}
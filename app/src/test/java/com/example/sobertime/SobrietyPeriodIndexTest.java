@@ -0,0 +1,78 @@
+package com.example.sobertime;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares the prefix-sum range queries with a day-by-day walk over random period
+ * histories.
+ */
+public class SobrietyPeriodIndexTest {
+
+    @Test
+    public void clipsPeriodsToTheRange() {
+        SobrietyPeriodIndex index = new SobrietyPeriodIndex(
+                new long[]{100, 150, 200}, new long[]{130, 160, SobrietyPeriodIndex.OPEN});
+
+        assertEquals(30, index.countDays(100, 129));
+        assertEquals(0, index.countDays(130, 149));
+        assertEquals(6, index.countDays(125, 150));
+        assertEquals(40, index.countDays(0, 199));
+        assertEquals(51, index.countDays(0, 210));
+        assertEquals(1, index.countDays(1000, 1000));
+        assertEquals(0, index.countDays(50, 99));
+        assertEquals(0, index.countDays(120, 110));
+        assertEquals(0, SobrietyPeriodIndex.EMPTY.countDays(0, 1000));
+    }
+
+    @Test
+    public void matchesDayByDayWalk() {
+        Random random = new Random(7);
+        for (int iteration = 0; iteration < 500; iteration++) {
+            SobrietyPeriodIndex index = randomHistory(random, 1 + random.nextInt(30));
+            long last = index.getStart(index.size() - 1) + 100;
+            for (int query = 0; query < 50; query++) {
+                long from = random.nextInt((int) last + 50) - 50;
+                long to = from + random.nextInt(400) - 10;
+                assertEquals(walk(index, from, to), index.countDays(from, to));
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOverlappingPeriods() {
+        new SobrietyPeriodIndex(new long[]{100, 120}, new long[]{130, SobrietyPeriodIndex.OPEN});
+    }
+
+    // Periods separated by gaps of up to nine days, the last one open
+    private static SobrietyPeriodIndex randomHistory(Random random, int count) {
+        long[] starts = new long[count];
+        long[] ends = new long[count];
+        long day = random.nextInt(1000);
+        for (int i = 0; i < count; i++) {
+            starts[i] = day;
+            day += 1 + random.nextInt(60);
+            ends[i] = day;
+            day += random.nextInt(10);
+        }
+        ends[count - 1] = SobrietyPeriodIndex.OPEN;
+        return new SobrietyPeriodIndex(starts, ends);
+    }
+
+    // Check every day against every period, as a list of periods would have to
+    private static long walk(SobrietyPeriodIndex index, long fromDay, long toDay) {
+        long days = 0;
+        for (long day = fromDay; day <= toDay; day++) {
+            for (int i = 0; i < index.size(); i++) {
+                if (day >= index.getStart(i) && day < index.getEnd(i)) {
+                    days++;
+                    break;
+                }
+            }
+        }
+        return days;
+    }
+}